@@ -0,0 +1,123 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package ai.spice.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.arrow.flight.FlightStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ai.spice.SpiceClient;
+import ai.spice.TokenStore;
+
+/**
+ * Cost of building a client: allocator, executors and gRPC channel setup, and
+ * of the first authenticated query with a new or a shared token store.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-opens=java.base/java.nio=ALL-UNNAMED")
+public class ClientBenchmark {
+
+    private static final String FIRST_QUERY = TestFlightSqlServer.query(1, 1);
+
+    private TestFlightSqlServer server;
+    private TestFlightSqlServer authServer;
+    private final TokenStore tokenStore = new TokenStore();
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        this.server = TestFlightSqlServer.start(false);
+        this.authServer = TestFlightSqlServer.start(true);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        this.server.close();
+        this.authServer.close();
+    }
+
+    @Benchmark
+    public SpiceClient construct() throws Exception {
+        SpiceClient client = SpiceClient.builder()
+                .withFlightAddress(this.server.address())
+                .build();
+        client.close();
+        return client;
+    }
+
+    @Benchmark
+    public SpiceClient constructAuthenticated() throws Exception {
+        // the handshake starts in the background, construction does not wait for it
+        SpiceClient client = SpiceClient.builder()
+                .withFlightAddress(this.authServer.address())
+                .withApiKey(TestFlightSqlServer.API_KEY)
+                .build();
+        client.close();
+        return client;
+    }
+
+    @Benchmark
+    public long firstQueryWithHandshake() throws Exception {
+        try (SpiceClient client = SpiceClient.builder()
+                .withFlightAddress(this.authServer.address())
+                .withApiKey(TestFlightSqlServer.API_KEY)
+                .build()) {
+            return drain(client.query(FIRST_QUERY));
+        }
+    }
+
+    @Benchmark
+    public long firstQueryWithSharedToken() throws Exception {
+        try (SpiceClient client = SpiceClient.builder()
+                .withFlightAddress(this.authServer.address())
+                .withApiKey(TestFlightSqlServer.API_KEY)
+                .withTokenStore(this.tokenStore)
+                .build()) {
+            return drain(client.query(FIRST_QUERY));
+        }
+    }
+
+    private static long drain(FlightStream stream) throws Exception {
+        long rowCount = 0;
+        try (stream) {
+            while (stream.next()) {
+                rowCount += stream.getRoot().getRowCount();
+            }
+        }
+        return rowCount;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package ai.spice.benchmarks;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.arrow.flight.CallHeaders;
+import org.apache.arrow.flight.CallInfo;
+import org.apache.arrow.flight.CallStatus;
+import org.apache.arrow.flight.ErrorFlightMetadata;
+import org.apache.arrow.flight.FlightClientMiddleware;
+import org.apache.arrow.flight.FlightMethod;
+import org.apache.arrow.flight.auth2.ClientBearerHeaderHandler;
+import org.apache.arrow.flight.auth2.ClientIncomingAuthHeaderMiddleware;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ai.spice.HeaderAuthMiddlewareFactory;
+
+/**
+ * Per-call overhead of the client middleware: one call start, outgoing headers,
+ * incoming headers and completion, compared with the bearer token middleware
+ * alone. Run with {@code -prof gc} to compare allocations per call.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-opens=java.base/java.nio=ALL-UNNAMED")
+public class MiddlewareBenchmark {
+
+    private static final CallInfo CALL_INFO = new CallInfo(FlightMethod.DO_GET);
+
+    private ClientIncomingAuthHeaderMiddleware.Factory authFactory;
+    private HeaderAuthMiddlewareFactory headerFactory;
+    private HeaderAuthMiddlewareFactory callHeadersFactory;
+    private CallHeaders responseHeaders;
+
+    @Setup
+    public void setup() {
+        this.authFactory = new ClientIncomingAuthHeaderMiddleware.Factory(new ClientBearerHeaderHandler());
+        Map<String, String> headers = Collections.singletonMap("User-Agent", "spice-java/benchmark");
+        this.headerFactory = new HeaderAuthMiddlewareFactory(this.authFactory, headers);
+        this.callHeadersFactory = new HeaderAuthMiddlewareFactory(this.authFactory, headers,
+                (callInfo, callHeaders) -> callHeaders.insert("x-trace-id", "4bf92f3577b34da6a3ce929d0e0e4736"));
+
+        this.responseHeaders = new ErrorFlightMetadata();
+        this.responseHeaders.insert("authorization", "Bearer benchmark-token");
+    }
+
+    @Benchmark
+    public CallHeaders bearerOnly() {
+        return call(this.authFactory, this.responseHeaders);
+    }
+
+    @Benchmark
+    public CallHeaders headerAuth() {
+        return call(this.headerFactory, this.responseHeaders);
+    }
+
+    @Benchmark
+    public CallHeaders headerAuthWithCallHeaders() {
+        return call(this.callHeadersFactory, this.responseHeaders);
+    }
+
+    private static CallHeaders call(FlightClientMiddleware.Factory factory, CallHeaders responseHeaders) {
+        FlightClientMiddleware middleware = factory.onCallStarted(CALL_INFO);
+        CallHeaders outgoing = new ErrorFlightMetadata();
+        middleware.onBeforeSendingHeaders(outgoing);
+        middleware.onHeadersReceived(responseHeaders);
+        middleware.onCallCompleted(CallStatus.OK);
+        return outgoing;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package ai.spice.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.arrow.flight.FlightStream;
+import org.apache.arrow.vector.ipc.ArrowReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ai.spice.QueryOptions;
+import ai.spice.SpiceClient;
+
+/**
+ * Round-trip latency of queries returning a small result, covering execute,
+ * the DoGet stream and decoding.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-opens=java.base/java.nio=ALL-UNNAMED")
+public class QueryLatencyBenchmark {
+
+    @Param({ "1", "100" })
+    public int rows;
+
+    private TestFlightSqlServer server;
+    private SpiceClient client;
+    private String sql;
+    private QueryOptions options;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        this.server = TestFlightSqlServer.start(true);
+        this.client = SpiceClient.builder()
+                .withFlightAddress(this.server.address())
+                .withApiKey(TestFlightSqlServer.API_KEY)
+                .build();
+        this.sql = TestFlightSqlServer.query(this.rows, 1024);
+        this.options = new QueryOptions();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        this.client.close();
+        this.server.close();
+    }
+
+    @Benchmark
+    public long query() throws Exception {
+        long rowCount = 0;
+        try (FlightStream stream = this.client.query(this.sql)) {
+            while (stream.next()) {
+                rowCount += stream.getRoot().getRowCount();
+            }
+        }
+        return rowCount;
+    }
+
+    @Benchmark
+    public long queryWithOptions() throws Exception {
+        long rowCount = 0;
+        try (ArrowReader reader = this.client.query(this.sql, this.options)) {
+            while (reader.loadNextBatch()) {
+                rowCount += reader.getVectorSchemaRoot().getRowCount();
+            }
+        }
+        return rowCount;
+    }
+}
@@ -0,0 +1,166 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package ai.spice.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.arrow.flight.FlightStream;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowReader;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ai.spice.QueryOptions;
+import ai.spice.SpiceClient;
+
+/**
+ * Streaming throughput of large results across batch sizes. Besides queries
+ * per second, the rows and bytes counters report rows/s and bytes/s of decoded
+ * Arrow data. The spilling reader shows the cost of writing batches to disk and
+ * reading them back. The busy cases spend CPU time on every batch, to compare
+ * the FlightStream read by the caller with the reader fetching batches ahead.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "--add-opens=java.base/java.nio=ALL-UNNAMED")
+public class StreamingThroughputBenchmark {
+
+    // roughly the time it takes to receive a batch of 8192 rows
+    private static final long CONSUMER_WORK_TOKENS = 50_000;
+
+    @Param({ "1000000" })
+    public long rows;
+
+    @Param({ "1024", "8192", "65536" })
+    public int batchSize;
+
+    private TestFlightSqlServer server;
+    private SpiceClient client;
+    private String sql;
+    private QueryOptions options;
+    private QueryOptions spillOptions;
+
+    /**
+     * Rows and bytes read, reported by JMH as rates.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long rows;
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            this.rows = 0;
+            this.bytes = 0;
+        }
+
+        void add(VectorSchemaRoot root) {
+            this.rows += root.getRowCount();
+            for (FieldVector vector : root.getFieldVectors()) {
+                this.bytes += vector.getBufferSize();
+            }
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        this.server = TestFlightSqlServer.start(false);
+        this.client = SpiceClient.builder()
+                .withFlightAddress(this.server.address())
+                .build();
+        this.sql = TestFlightSqlServer.query(this.rows, this.batchSize);
+        this.options = new QueryOptions();
+        // small enough that most batches of the result go through the spill file
+        this.spillOptions = new QueryOptions().withSpillThreshold(1024 * 1024);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        this.client.close();
+        this.server.close();
+    }
+
+    @Benchmark
+    public void stream(Counters counters) throws Exception {
+        try (FlightStream stream = this.client.query(this.sql)) {
+            while (stream.next()) {
+                counters.add(stream.getRoot());
+            }
+        }
+    }
+
+    @Benchmark
+    public void reader(Counters counters) throws Exception {
+        try (ArrowReader reader = this.client.query(this.sql, this.options)) {
+            while (reader.loadNextBatch()) {
+                counters.add(reader.getVectorSchemaRoot());
+            }
+        }
+    }
+
+    @Benchmark
+    public void spillingReader(Counters counters) throws Exception {
+        try (ArrowReader reader = this.client.query(this.sql, this.spillOptions)) {
+            while (reader.loadNextBatch()) {
+                counters.add(reader.getVectorSchemaRoot());
+            }
+        }
+    }
+
+    @Benchmark
+    public void busyStream(Counters counters) throws Exception {
+        try (FlightStream stream = this.client.query(this.sql)) {
+            while (stream.next()) {
+                counters.add(stream.getRoot());
+                Blackhole.consumeCPU(CONSUMER_WORK_TOKENS);
+            }
+        }
+    }
+
+    @Benchmark
+    public void busyReader(Counters counters) throws Exception {
+        try (ArrowReader reader = this.client.query(this.sql, this.options)) {
+            while (reader.loadNextBatch()) {
+                counters.add(reader.getVectorSchemaRoot());
+                Blackhole.consumeCPU(CONSUMER_WORK_TOKENS);
+            }
+        }
+    }
+}
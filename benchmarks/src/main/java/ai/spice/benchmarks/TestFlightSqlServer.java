@@ -0,0 +1,216 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package ai.spice.benchmarks;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.arrow.flight.CallStatus;
+import org.apache.arrow.flight.FlightDescriptor;
+import org.apache.arrow.flight.FlightEndpoint;
+import org.apache.arrow.flight.FlightInfo;
+import org.apache.arrow.flight.FlightServer;
+import org.apache.arrow.flight.Location;
+import org.apache.arrow.flight.Ticket;
+import org.apache.arrow.flight.auth2.BasicCallHeaderAuthenticator;
+import org.apache.arrow.flight.auth2.CallHeaderAuthenticator;
+import org.apache.arrow.flight.auth2.GeneratedBearerTokenAuthenticator;
+import org.apache.arrow.flight.sql.NoOpFlightSqlProducer;
+import org.apache.arrow.flight.sql.impl.FlightSql.CommandStatementQuery;
+import org.apache.arrow.flight.sql.impl.FlightSql.TicketStatementQuery;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+import com.google.protobuf.Any;
+import com.google.protobuf.ByteString;
+
+/**
+ * In-process Flight SQL server listening on the loopback interface, so the
+ * benchmarks measure the client without network latency or a runtime.
+ *
+ * Every query returns generated rows of (id BIGINT, value DOUBLE, name
+ * VARCHAR). The SQL text is not parsed, it only carries settings:
+ * <ul>
+ * <li>{@code rows=N} - the number of rows to return (default 10)</li>
+ * <li>{@code batch=N} - the number of rows per record batch (default
+ * 1024)</li>
+ * <li>{@code flaky} - every other execute call fails with UNAVAILABLE, so each
+ * query is retried once</li>
+ * </ul>
+ */
+public final class TestFlightSqlServer implements AutoCloseable {
+
+    /** API key accepted by servers started with authentication */
+    public static final String API_KEY = "benchmark|secret";
+
+    static final Schema SCHEMA = new Schema(Arrays.asList(
+            Field.nullable("id", new ArrowType.Int(64, true)),
+            Field.nullable("value", new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE)),
+            new Field("name", FieldType.nullable(new ArrowType.Utf8()), null)));
+
+    private static final Pattern ROWS = Pattern.compile("rows=(\\d+)");
+    private static final Pattern BATCH = Pattern.compile("batch=(\\d+)");
+
+    private final BufferAllocator allocator;
+    private final FlightServer server;
+
+    private TestFlightSqlServer(boolean authenticate) throws Exception {
+        this.allocator = new RootAllocator(Long.MAX_VALUE);
+        FlightServer.Builder builder = FlightServer.builder(this.allocator,
+                Location.forGrpcInsecure("127.0.0.1", 0), new Producer(this.allocator));
+        if (authenticate) {
+            CallHeaderAuthenticator basic = new BasicCallHeaderAuthenticator((username, password) -> {
+                if (!API_KEY.equals(password)) {
+                    throw CallStatus.UNAUTHENTICATED.withDescription("Invalid API key").toRuntimeException();
+                }
+                return () -> username;
+            });
+            builder.headerAuthenticator(new GeneratedBearerTokenAuthenticator(basic));
+        }
+        this.server = builder.build().start();
+    }
+
+    /**
+     * Starts a server on an ephemeral loopback port
+     *
+     * @param authenticate whether calls must carry a token obtained by a
+     *                     handshake with {@link #API_KEY}
+     * @return the running server
+     * @throws Exception if the server can't be started
+     */
+    public static TestFlightSqlServer start(boolean authenticate) throws Exception {
+        return new TestFlightSqlServer(authenticate);
+    }
+
+    /**
+     * @return the address to pass to SpiceClientBuilder.withFlightAddress
+     */
+    public URI address() {
+        return URI.create("grpc+tcp://127.0.0.1:" + this.server.getPort());
+    }
+
+    /**
+     * Returns the SQL text of a query returning generated rows
+     *
+     * @param rows      the number of rows
+     * @param batchSize the number of rows per batch
+     * @return the SQL text
+     */
+    public static String query(long rows, int batchSize) {
+        return "SELECT * FROM generated /* rows=" + rows + " batch=" + batchSize + " */";
+    }
+
+    @Override
+    public void close() throws Exception {
+        try {
+            this.server.shutdown();
+            this.server.awaitTermination();
+        } finally {
+            this.allocator.close();
+        }
+    }
+
+    private static long setting(Pattern pattern, String sql, long defaultValue) {
+        Matcher matcher = pattern.matcher(sql);
+        return matcher.find() ? Long.parseLong(matcher.group(1)) : defaultValue;
+    }
+
+    private static final class Producer extends NoOpFlightSqlProducer {
+        private final BufferAllocator allocator;
+        private final AtomicLong executeCalls = new AtomicLong();
+
+        Producer(BufferAllocator allocator) {
+            this.allocator = allocator;
+        }
+
+        @Override
+        public FlightInfo getFlightInfoStatement(CommandStatementQuery command, CallContext context,
+                FlightDescriptor descriptor) {
+            String sql = command.getQuery();
+            if (sql.contains("flaky") && this.executeCalls.getAndIncrement() % 2 == 0) {
+                throw CallStatus.UNAVAILABLE.withDescription("Injected failure").toRuntimeException();
+            }
+
+            TicketStatementQuery handle = TicketStatementQuery.newBuilder()
+                    .setStatementHandle(ByteString.copyFromUtf8(sql))
+                    .build();
+            Ticket ticket = new Ticket(Any.pack(handle).toByteArray());
+            return new FlightInfo(SCHEMA, descriptor,
+                    Collections.singletonList(new FlightEndpoint(ticket)), -1,
+                    setting(ROWS, sql, 10));
+        }
+
+        @Override
+        public void getStreamStatement(TicketStatementQuery ticket, CallContext context,
+                ServerStreamListener listener) {
+            String sql = ticket.getStatementHandle().toStringUtf8();
+            long rows = setting(ROWS, sql, 10);
+            int batchSize = (int) setting(BATCH, sql, 1024);
+
+            try (VectorSchemaRoot root = VectorSchemaRoot.create(SCHEMA, this.allocator)) {
+                // the same batch is sent repeatedly, so generating data costs the server
+                // next to nothing compared to the client decoding it
+                fill(root, (int) Math.min(rows, batchSize));
+                listener.start(root);
+
+                long remaining = rows;
+                while (remaining > 0 && !listener.isCancelled()) {
+                    root.setRowCount((int) Math.min(remaining, batchSize));
+                    listener.putNext();
+                    remaining -= root.getRowCount();
+                }
+                listener.completed();
+            } catch (RuntimeException e) {
+                listener.error(CallStatus.INTERNAL.withCause(e).withDescription(e.toString()).toRuntimeException());
+            }
+        }
+
+        private static void fill(VectorSchemaRoot root, int rowCount) {
+            BigIntVector id = (BigIntVector) root.getVector("id");
+            Float8Vector value = (Float8Vector) root.getVector("value");
+            VarCharVector name = (VarCharVector) root.getVector("name");
+            id.allocateNew(rowCount);
+            value.allocateNew(rowCount);
+            name.allocateNew(rowCount);
+            for (int i = 0; i < rowCount; i++) {
+                id.set(i, i);
+                value.set(i, i * 0.5);
+                name.setSafe(i, ("row-" + i).getBytes(StandardCharsets.UTF_8));
+            }
+            root.setRowCount(rowCount);
+        }
+    }
+}
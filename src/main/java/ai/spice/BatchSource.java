@@ -0,0 +1,93 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package ai.spice;
+
+import java.io.IOException;
+
+import org.apache.arrow.flight.FlightStream;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowReader;
+
+/**
+ * A sequence of batches loaded into a single VectorSchemaRoot, so the row and
+ * column adapters work the same over an ArrowReader and a FlightStream.
+ */
+interface BatchSource extends AutoCloseable {
+
+    /**
+     * Loads the next batch into the root
+     *
+     * @return false once every batch has been read
+     * @throws IOException if the next batch can't be read
+     */
+    boolean next() throws IOException;
+
+    /**
+     * @return the root holding the current batch
+     * @throws IOException if the schema can't be read
+     */
+    VectorSchemaRoot root() throws IOException;
+
+    static BatchSource of(ArrowReader reader) {
+        if (reader == null) {
+            throw new IllegalArgumentException("reader can't be null");
+        }
+        return new BatchSource() {
+            @Override
+            public boolean next() throws IOException {
+                return reader.loadNextBatch();
+            }
+
+            @Override
+            public VectorSchemaRoot root() throws IOException {
+                return reader.getVectorSchemaRoot();
+            }
+
+            @Override
+            public void close() throws Exception {
+                reader.close();
+            }
+        };
+    }
+
+    static BatchSource of(FlightStream stream) {
+        if (stream == null) {
+            throw new IllegalArgumentException("stream can't be null");
+        }
+        return new BatchSource() {
+            @Override
+            public boolean next() {
+                return stream.next();
+            }
+
+            @Override
+            public VectorSchemaRoot root() {
+                return stream.getRoot();
+            }
+
+            @Override
+            public void close() throws Exception {
+                stream.close();
+            }
+        };
+    }
+}
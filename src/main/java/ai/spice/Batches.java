@@ -0,0 +1,106 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package ai.spice;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.VectorLoader;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.VectorUnloader;
+import org.apache.arrow.vector.ipc.message.ArrowRecordBatch;
+import org.apache.arrow.vector.util.TransferPair;
+
+/**
+ * Helpers for moving record batches between vector roots without copying the
+ * underlying buffers.
+ */
+final class Batches {
+
+    private Batches() {
+    }
+
+    /**
+     * Moves the buffers of a batch into a new root owned by the given allocator.
+     * The source root is left empty and can be reloaded with the next batch.
+     *
+     * @param source    the root holding the current batch
+     * @param allocator the allocator that takes ownership of the buffers
+     * @return a new root holding the batch
+     */
+    static VectorSchemaRoot transfer(VectorSchemaRoot source, BufferAllocator allocator) {
+        List<FieldVector> vectors = new ArrayList<>(source.getFieldVectors().size());
+        for (FieldVector vector : source.getFieldVectors()) {
+            TransferPair pair = vector.getTransferPair(allocator);
+            pair.transfer();
+            vectors.add((FieldVector) pair.getTo());
+        }
+        return new VectorSchemaRoot(source.getSchema(), vectors, source.getRowCount());
+    }
+
+    /**
+     * Moves the buffers of a batch into an existing root with the same schema.
+     *
+     * @param source the root holding the current batch
+     * @param target the root that receives the batch
+     */
+    static void transferInto(VectorSchemaRoot source, VectorSchemaRoot target) {
+        List<FieldVector> sourceVectors = source.getFieldVectors();
+        for (int i = 0; i < sourceVectors.size(); i++) {
+            sourceVectors.get(i).makeTransferPair(target.getVector(i)).transfer();
+        }
+        target.setRowCount(source.getRowCount());
+    }
+
+    /**
+     * Creates a new root that shares the buffers of a batch through reference
+     * counting. Both roots stay valid and must be closed independently.
+     *
+     * @param source    the root holding the batch
+     * @param allocator the allocator used for the new vectors
+     * @return a new root referencing the same buffers
+     */
+    static VectorSchemaRoot share(VectorSchemaRoot source, BufferAllocator allocator) {
+        VectorSchemaRoot shared = VectorSchemaRoot.create(source.getSchema(), allocator);
+        try (ArrowRecordBatch batch = new VectorUnloader(source).getRecordBatch()) {
+            new VectorLoader(shared).load(batch);
+        }
+        return shared;
+    }
+
+    /**
+     * Returns the number of bytes held by the buffers of a batch.
+     *
+     * @param root the root holding the batch
+     * @return the size of the batch buffers in bytes
+     */
+    static long sizeInBytes(VectorSchemaRoot root) {
+        long size = 0;
+        for (FieldVector vector : root.getFieldVectors()) {
+            size += vector.getBufferSize();
+        }
+        return size;
+    }
+}
@@ -0,0 +1,500 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package ai.spice;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.arrow.flight.CallStatus;
+import org.apache.arrow.flight.FlightClient;
+import org.apache.arrow.flight.FlightRuntimeException;
+import org.apache.arrow.flight.FlightStatusCode;
+import org.apache.arrow.flight.sql.FlightSqlClient;
+
+/**
+ * A set of Flight clients to one or more runtimes, each with its own gRPC
+ * channel. Spreading calls over several channels avoids funnelling every
+ * stream through the flow-control window and event loop of a single HTTP/2
+ * connection, and spreading them over several runtimes balances the load of
+ * replicas without a proxy pinning connections to one of them.
+ *
+ * A channel or runtime that fails several calls in a row with a connection
+ * error is skipped for a cool-down period, unless every candidate is in that
+ * state. The first call after the cool-down probes it: a runtime failing again
+ * is skipped for twice as long, up to a maximum.
+ */
+class ChannelPool implements AutoCloseable {
+
+    private static final int MAX_CONSECUTIVE_FAILURES = 3;
+    private static final long UNHEALTHY_COOL_DOWN_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private static final long MAX_COOL_DOWN_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final double LATENCY_SMOOTHING = 0.3;
+
+    /**
+     * A single Flight client and its gRPC channel.
+     */
+    static final class Channel {
+        private final Node node;
+        private final FlightClient client;
+        private final FlightSqlClient sqlClient;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private volatile long unhealthyUntilNanos = 0;
+
+        Channel(Node node, FlightClient client) {
+            this.node = node;
+            this.client = client;
+            this.sqlClient = new FlightSqlClient(client);
+        }
+
+        Node node() {
+            return this.node;
+        }
+
+        FlightClient client() {
+            return this.client;
+        }
+
+        FlightSqlClient sqlClient() {
+            return this.sqlClient;
+        }
+
+        boolean isHealthy(long nowNanos) {
+            return nowNanos - this.unhealthyUntilNanos >= 0;
+        }
+    }
+
+    /**
+     * A runtime of the pool and the channels connected to it. Query handles such
+     * as tickets and prepared statements are only valid on the runtime that
+     * issued them, and so is the bearer token issued by its handshake.
+     */
+    static final class Node {
+        private final URI flightAddress;
+        private final URI httpAddress;
+        private final TokenStore.Entry token;
+        private final List<Channel> channels;
+        private final AtomicInteger nextChannel = new AtomicInteger();
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private final AtomicInteger ejections = new AtomicInteger();
+        private volatile long unhealthyUntilNanos = 0;
+        // the bits of the smoothed latency as a double, updated without locking
+        private final AtomicLong latencyNanos = new AtomicLong(Double.doubleToRawLongBits(0));
+
+        /**
+         * @param flightAddress the Flight address of the runtime
+         * @param httpAddress   the HTTP address of the runtime, or null
+         * @param clients       the Flight clients connected to the runtime, one
+         *                      per channel
+         */
+        Node(URI flightAddress, URI httpAddress, List<FlightClient> clients) {
+            this(flightAddress, httpAddress, null, clients);
+        }
+
+        /**
+         * @param flightAddress the Flight address of the runtime
+         * @param httpAddress   the HTTP address of the runtime, or null
+         * @param token         the bearer token of the runtime, or null if calls
+         *                      are not authenticated
+         * @param clients       the Flight clients connected to the runtime, one
+         *                      per channel
+         */
+        Node(URI flightAddress, URI httpAddress, TokenStore.Entry token, List<FlightClient> clients) {
+            if (clients.isEmpty()) {
+                throw new IllegalArgumentException("A runtime needs at least one client");
+            }
+            this.flightAddress = flightAddress;
+            this.httpAddress = httpAddress;
+            this.token = token;
+            this.channels = new ArrayList<>(clients.size());
+            for (FlightClient client : clients) {
+                this.channels.add(new Channel(this, client));
+            }
+        }
+
+        URI flightAddress() {
+            return this.flightAddress;
+        }
+
+        URI httpAddress() {
+            return this.httpAddress;
+        }
+
+        /**
+         * @return the bearer token of the runtime, or null if calls are not
+         *         authenticated
+         */
+        TokenStore.Entry token() {
+            return this.token;
+        }
+
+        /**
+         * @return the first channel of the runtime, used for calls that should
+         *         always go to the same connection such as the handshake
+         */
+        Channel firstChannel() {
+            return this.channels.get(0);
+        }
+
+        boolean isHealthy(long nowNanos) {
+            return nowNanos - this.unhealthyUntilNanos >= 0;
+        }
+
+        /**
+         * @return the smoothed latency of the calls to the runtime, or 0 before the
+         *         first call
+         */
+        double latencyNanos() {
+            return Double.longBitsToDouble(this.latencyNanos.get());
+        }
+
+        private void recordLatency(long nanos) {
+            while (true) {
+                long currentBits = this.latencyNanos.get();
+                double current = Double.longBitsToDouble(currentBits);
+                double updated = current == 0 ? nanos : current + LATENCY_SMOOTHING * (nanos - current);
+                if (this.latencyNanos.compareAndSet(currentBits, Double.doubleToRawLongBits(updated))) {
+                    return;
+                }
+            }
+        }
+
+        private void recordFailure() {
+            long now = System.nanoTime();
+            // calls failing while the runtime is already skipped do not extend the cool-down
+            if (this.consecutiveFailures.incrementAndGet() >= MAX_CONSECUTIVE_FAILURES && this.isHealthy(now)) {
+                int ejections = Math.min(this.ejections.getAndIncrement(), 10);
+                long coolDown = Math.min(UNHEALTHY_COOL_DOWN_NANOS << ejections, MAX_COOL_DOWN_NANOS);
+                this.unhealthyUntilNanos = now + coolDown;
+            }
+        }
+
+        private void recordSuccess() {
+            this.consecutiveFailures.set(0);
+            this.ejections.set(0);
+        }
+    }
+
+    /**
+     * A call or stream in progress on a channel. Closing the lease records the
+     * outcome for the channel and runtime health.
+     */
+    final class Lease implements AutoCloseable {
+        private final Channel channel;
+        private final long startNanos;
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        /**
+         * @param channel    the leased channel
+         * @param startNanos the start of the call, or 0 if its duration is not a
+         *                   latency sample
+         */
+        private Lease(Channel channel, long startNanos) {
+            this.channel = channel;
+            this.startNanos = startNanos;
+        }
+
+        Channel channel() {
+            return this.channel;
+        }
+
+        Node node() {
+            return this.channel.node;
+        }
+
+        FlightSqlClient client() {
+            return this.channel.sqlClient;
+        }
+
+        /**
+         * Releases the channel after a call or stream has finished
+         *
+         * @param error the error the call failed with, or null if it succeeded
+         */
+        void release(Throwable error) {
+            if (!this.released.compareAndSet(false, true)) {
+                return;
+            }
+
+            Channel channel = this.channel;
+            channel.outstanding.decrementAndGet();
+            channel.node.outstanding.decrementAndGet();
+            if (isConnectionFailure(error)) {
+                if (channel.consecutiveFailures.incrementAndGet() >= MAX_CONSECUTIVE_FAILURES) {
+                    channel.unhealthyUntilNanos = System.nanoTime() + UNHEALTHY_COOL_DOWN_NANOS;
+                }
+                channel.node.recordFailure();
+            } else {
+                channel.consecutiveFailures.set(0);
+                channel.node.recordSuccess();
+                if (error == null && this.startNanos != 0) {
+                    channel.node.recordLatency(System.nanoTime() - this.startNanos);
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            this.release(null);
+        }
+    }
+
+    private final List<Node> nodes;
+    private final ChannelSelection selection;
+    private final AtomicInteger nextNode = new AtomicInteger();
+
+    /**
+     * @param nodes     the runtimes of the pool
+     * @param selection the strategy used to pick a runtime and a channel
+     */
+    ChannelPool(List<Node> nodes, ChannelSelection selection) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("A channel pool needs at least one runtime");
+        }
+        this.nodes = new ArrayList<>(nodes);
+        this.selection = selection;
+    }
+
+    /**
+     * @return the runtimes of the pool
+     */
+    List<Node> nodes() {
+        return this.nodes;
+    }
+
+    /**
+     * Returns the HTTP addresses of the healthy runtimes, or of every runtime with
+     * an HTTP address while all of them are skipped, so calls such as dataset
+     * refreshes still reach a runtime to probe.
+     *
+     * @return the HTTP addresses to send calls to, empty if no runtime has one
+     */
+    List<URI> httpAddresses() {
+        long now = System.nanoTime();
+        List<URI> healthy = new ArrayList<>();
+        List<URI> all = new ArrayList<>();
+        for (Node node : this.nodes) {
+            if (node.httpAddress() == null) {
+                continue;
+            }
+            all.add(node.httpAddress());
+            if (node.isHealthy(now)) {
+                healthy.add(node.httpAddress());
+            }
+        }
+        return healthy.isEmpty() ? all : healthy;
+    }
+
+    /**
+     * Returns the runtime of the pool with the given Flight address
+     *
+     * @param flightAddress the Flight address
+     * @return the runtime, or null if no runtime of the pool has this address
+     */
+    Node node(URI flightAddress) {
+        for (Node node : this.nodes) {
+            if (node.flightAddress.equals(flightAddress)) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the first channel of the first healthy runtime, used for calls that
+     * should always go to the same connection such as the handshake.
+     *
+     * @return the first channel
+     */
+    Channel primary() {
+        long now = System.nanoTime();
+        for (Node node : this.nodes) {
+            if (node.isHealthy(now)) {
+                return node.channels.get(0);
+            }
+        }
+        return this.nodes.get(0).channels.get(0);
+    }
+
+    /**
+     * Picks a runtime and a channel for a call and marks it as in use until the
+     * lease is released. The duration of the call feeds the latency of the
+     * runtime.
+     *
+     * @return a lease on the selected channel
+     */
+    Lease acquire() {
+        return this.acquire(null);
+    }
+
+    /**
+     * Picks a runtime and a channel for a call, other than the given channel
+     * unless it is the only healthy one, such as for a hedged call racing a call
+     * on that channel
+     *
+     * @param avoid the channel to avoid, or null
+     * @return a lease on the selected channel
+     */
+    Lease acquire(Channel avoid) {
+        // a runtime with a single channel can only be avoided as a whole
+        Node avoidNode = avoid != null && avoid.node.channels.size() == 1 ? avoid.node : null;
+        return this.lease(this.select(this.selectNode(avoidNode), avoid), System.nanoTime());
+    }
+
+    /**
+     * Picks a channel for a stream, whose duration is not a latency sample
+     *
+     * @param node the runtime the stream must be read from, or null to pick one
+     * @return a lease on the selected channel
+     */
+    Lease acquireStream(Node node) {
+        return this.lease(this.select(node != null ? node : this.selectNode(null), null), 0);
+    }
+
+    private Lease lease(Channel channel, long startNanos) {
+        channel.outstanding.incrementAndGet();
+        channel.node.outstanding.incrementAndGet();
+        return new Lease(channel, startNanos);
+    }
+
+    private Node selectNode(Node avoid) {
+        int size = this.nodes.size();
+        if (size == 1) {
+            return this.nodes.get(0);
+        }
+
+        long now = System.nanoTime();
+        int start = Math.floorMod(this.nextNode.getAndIncrement(), size);
+        Node selected = null;
+        Node fallback = null;
+        Node avoided = null;
+
+        for (int i = 0; i < size; i++) {
+            Node candidate = this.nodes.get((start + i) % size);
+            if (!candidate.isHealthy(now)) {
+                // remember the runtime that recovers first, in case none is healthy
+                if (fallback == null || candidate.unhealthyUntilNanos - fallback.unhealthyUntilNanos < 0) {
+                    fallback = candidate;
+                }
+                continue;
+            }
+            if (candidate == avoid) {
+                avoided = candidate;
+                continue;
+            }
+            if (this.selection == ChannelSelection.ROUND_ROBIN) {
+                return candidate;
+            }
+            if (selected == null || this.isCheaper(candidate, selected)) {
+                selected = candidate;
+            }
+        }
+        if (selected != null) {
+            return selected;
+        }
+        return avoided != null ? avoided : fallback;
+    }
+
+    private boolean isCheaper(Node candidate, Node selected) {
+        int candidateOutstanding = candidate.outstanding.get();
+        int selectedOutstanding = selected.outstanding.get();
+        if (this.selection == ChannelSelection.LOWEST_LATENCY) {
+            // a runtime without samples yet costs nothing, so it is tried early
+            double candidateCost = candidate.latencyNanos() * (candidateOutstanding + 1);
+            double selectedCost = selected.latencyNanos() * (selectedOutstanding + 1);
+            if (candidateCost != selectedCost) {
+                return candidateCost < selectedCost;
+            }
+        }
+        return candidateOutstanding < selectedOutstanding;
+    }
+
+    private Channel select(Node node, Channel avoid) {
+        List<Channel> channels = node.channels;
+        int size = channels.size();
+        if (size == 1) {
+            return channels.get(0);
+        }
+
+        long now = System.nanoTime();
+        int start = Math.floorMod(node.nextChannel.getAndIncrement(), size);
+        Channel selected = null;
+        Channel fallback = null;
+        Channel avoided = null;
+
+        for (int i = 0; i < size; i++) {
+            Channel candidate = channels.get((start + i) % size);
+            if (!candidate.isHealthy(now)) {
+                // remember the channel that recovers first, in case none is healthy
+                if (fallback == null || candidate.unhealthyUntilNanos - fallback.unhealthyUntilNanos < 0) {
+                    fallback = candidate;
+                }
+                continue;
+            }
+            if (candidate == avoid) {
+                avoided = candidate;
+                continue;
+            }
+            if (this.selection == ChannelSelection.ROUND_ROBIN) {
+                return candidate;
+            }
+            if (selected == null || candidate.outstanding.get() < selected.outstanding.get()) {
+                selected = candidate;
+            }
+        }
+        if (selected != null) {
+            return selected;
+        }
+        return avoided != null ? avoided : fallback;
+    }
+
+    private static boolean isConnectionFailure(Throwable error) {
+        if (error instanceof FlightRuntimeException) {
+            CallStatus status = ((FlightRuntimeException) error).status();
+            return status.code() == FlightStatusCode.UNAVAILABLE;
+        }
+        return false;
+    }
+
+    @Override
+    public void close() throws Exception {
+        Exception failure = null;
+        for (Node node : this.nodes) {
+            for (Channel channel : node.channels) {
+                try {
+                    channel.sqlClient.close();
+                } catch (Exception e) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package ai.spice;
+
+import org.apache.arrow.flight.FlightStatusCode;
+import org.apache.arrow.memory.BufferAllocator;
+
+/**
+ * Receives measurements from a SpiceClient. Every method has an empty default
+ * implementation, so implementations only override what they record.
+ *
+ * Methods are called on the query path, including client executor threads,
+ * and must be thread-safe and cheap. Nothing is recorded per batch: rows and
+ * bytes are reported once when a stream is closed.
+ *
+ * Stream measurements cover the ArrowReaders returned by
+ * {@code query(String, QueryOptions)}, {@code queryAsync(String, QueryOptions)}
+ * and PreparedQuery. Queries returning a FlightStream only report the time to
+ * FlightInfo and retries.
+ *
+ * @see MicrometerMetrics
+ */
+public interface ClientMetrics {
+
+    /** Metrics implementation discarding every measurement, used by default */
+    ClientMetrics NOOP = new ClientMetrics() {
+    };
+
+    /**
+     * Called once by the client constructor with the client allocator, so its
+     * usage can be exposed as gauges
+     *
+     * @param allocator the allocator holding every batch read by the client
+     */
+    default void bindAllocator(BufferAllocator allocator) {
+    }
+
+    /**
+     * Called when the FlightInfo of a query has been received
+     *
+     * @param nanos the time since the query started, including retries
+     */
+    default void flightInfoReceived(long nanos) {
+    }
+
+    /**
+     * Called when the first batch of a query is returned to the caller
+     *
+     * @param nanos the time since the query started
+     */
+    default void firstBatchReceived(long nanos) {
+    }
+
+    /**
+     * Called when a result stream is opened. Every opened stream is followed by
+     * exactly one call to {@link #streamClosed(long, long, long, boolean)}.
+     */
+    default void streamOpened() {
+    }
+
+    /**
+     * Called when a result stream is closed
+     *
+     * @param nanos  the time since the query started
+     * @param rows   the number of rows returned to the caller
+     * @param bytes  the number of bytes of Arrow buffers returned to the caller
+     * @param failed whether reading the stream failed
+     */
+    default void streamClosed(long nanos, long rows, long bytes, boolean failed) {
+    }
+
+    /**
+     * Called before a failed call is retried
+     *
+     * @param code the status code of the failed attempt
+     */
+    default void retried(FlightStatusCode code) {
+    }
+
+    /**
+     * Called when a second execute is sent because the first one is slower than
+     * the hedging delay
+     */
+    default void hedged() {
+    }
+
+    /**
+     * Called when a gRPC call ends, with the sizes of its messages on the wire
+     * and once decompressed. Both sizes are equal for uncompressed messages.
+     *
+     * @param receivedWireBytes the number of bytes received on the wire
+     * @param receivedBytes     the number of bytes received after decompression
+     * @param sentWireBytes     the number of bytes sent on the wire
+     * @param sentBytes         the number of bytes sent before compression
+     */
+    default void transferred(long receivedWireBytes, long receivedBytes, long sentWireBytes, long sentBytes) {
+    }
+}
@@ -0,0 +1,283 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package ai.spice;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.arrow.flight.FlightStream;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowReader;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+/**
+ * Reads a query result batch by batch through typed column accessors. Columns
+ * are looked up once and follow the result from batch to batch, reading values
+ * straight from the vectors of the result's single VectorSchemaRoot.
+ *
+ * <pre>
+ * try (ColumnarResult result = ColumnarResult.of(client.query(sql, new QueryOptions()))) {
+ *     ColumnarResult.DoubleColumn amounts = result.doubleColumn("total_amount");
+ *     while (result.next()) {
+ *         for (int i = 0; i &lt; result.getRowCount(); i++) {
+ *             total += amounts.get(i);
+ *         }
+ *     }
+ * }
+ * </pre>
+ *
+ * Closing the result closes the underlying reader or stream.
+ */
+public final class ColumnarResult implements AutoCloseable {
+
+    /**
+     * A column of the current batch. Primitive getters throw
+     * IllegalStateException on null values, check isNull first for nullable
+     * columns.
+     */
+    public abstract static class Column {
+        private final String name;
+        FieldVector vector;
+
+        Column(String name) {
+            this.name = name;
+        }
+
+        void bind(VectorSchemaRoot root) {
+            FieldVector vector = root.getVector(this.name);
+            if (vector == null) {
+                throw new IllegalArgumentException("No column named " + this.name);
+            }
+            this.vector = vector;
+        }
+
+        /**
+         * @return the column name
+         */
+        public String getName() {
+            return this.name;
+        }
+
+        /**
+         * @param row the row index in the current batch
+         * @return whether the value is null
+         */
+        public boolean isNull(int row) {
+            return this.vector.isNull(row);
+        }
+    }
+
+    /**
+     * Reads integer, timestamp, date and time columns as long.
+     */
+    public static final class LongColumn extends Column {
+        private BigIntVector bigInt;
+
+        LongColumn(String name) {
+            super(name);
+        }
+
+        @Override
+        void bind(VectorSchemaRoot root) {
+            super.bind(root);
+            this.bigInt = this.vector instanceof BigIntVector ? (BigIntVector) this.vector : null;
+        }
+
+        public long get(int row) {
+            if (this.bigInt != null) {
+                return this.bigInt.get(row);
+            }
+            return Values.getLong(this.vector, row);
+        }
+    }
+
+    /**
+     * Reads integer columns as int, failing on values that do not fit.
+     */
+    public static final class IntColumn extends Column {
+        private IntVector intVector;
+
+        IntColumn(String name) {
+            super(name);
+        }
+
+        @Override
+        void bind(VectorSchemaRoot root) {
+            super.bind(root);
+            this.intVector = this.vector instanceof IntVector ? (IntVector) this.vector : null;
+        }
+
+        public int get(int row) {
+            if (this.intVector != null) {
+                return this.intVector.get(row);
+            }
+            return Values.getInt(this.vector, row);
+        }
+    }
+
+    /**
+     * Reads floating point, integer and decimal columns as double.
+     */
+    public static final class DoubleColumn extends Column {
+        private Float8Vector float8;
+
+        DoubleColumn(String name) {
+            super(name);
+        }
+
+        @Override
+        void bind(VectorSchemaRoot root) {
+            super.bind(root);
+            this.float8 = this.vector instanceof Float8Vector ? (Float8Vector) this.vector : null;
+        }
+
+        public double get(int row) {
+            if (this.float8 != null) {
+                return this.float8.get(row);
+            }
+            return Values.getDouble(this.vector, row);
+        }
+    }
+
+    /**
+     * Reads boolean columns.
+     */
+    public static final class BooleanColumn extends Column {
+        BooleanColumn(String name) {
+            super(name);
+        }
+
+        public boolean get(int row) {
+            return Values.getBoolean(this.vector, row);
+        }
+    }
+
+    /**
+     * Reads any column as a string, decoding UTF-8 columns directly.
+     */
+    public static final class StringColumn extends Column {
+        StringColumn(String name) {
+            super(name);
+        }
+
+        /**
+         * @param row the row index in the current batch
+         * @return the value, or null if the value is null
+         */
+        public String get(int row) {
+            return Values.getString(this.vector, row);
+        }
+    }
+
+    private final BatchSource source;
+    private final List<Column> columns = new ArrayList<>();
+    private VectorSchemaRoot root;
+
+    private ColumnarResult(BatchSource source) {
+        this.source = source;
+    }
+
+    /**
+     * @param reader the reader returned by query(String, QueryOptions)
+     * @return a columnar view of the reader
+     */
+    public static ColumnarResult of(ArrowReader reader) {
+        return new ColumnarResult(BatchSource.of(reader));
+    }
+
+    /**
+     * @param stream the stream returned by query(String)
+     * @return a columnar view of the stream
+     */
+    public static ColumnarResult of(FlightStream stream) {
+        return new ColumnarResult(BatchSource.of(stream));
+    }
+
+    /**
+     * Loads the next batch, rebinding every column to it
+     *
+     * @return false once every batch has been read
+     * @throws IOException if the next batch can't be read
+     */
+    public boolean next() throws IOException {
+        if (!this.source.next()) {
+            return false;
+        }
+        this.root = this.source.root();
+        for (Column column : this.columns) {
+            column.bind(this.root);
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of rows of the current batch
+     */
+    public int getRowCount() {
+        return this.root == null ? 0 : this.root.getRowCount();
+    }
+
+    /**
+     * @return the schema of the result
+     * @throws IOException if the schema can't be read
+     */
+    public Schema getSchema() throws IOException {
+        return this.source.root().getSchema();
+    }
+
+    public LongColumn longColumn(String name) throws IOException {
+        return this.register(new LongColumn(name));
+    }
+
+    public IntColumn intColumn(String name) throws IOException {
+        return this.register(new IntColumn(name));
+    }
+
+    public DoubleColumn doubleColumn(String name) throws IOException {
+        return this.register(new DoubleColumn(name));
+    }
+
+    public BooleanColumn booleanColumn(String name) throws IOException {
+        return this.register(new BooleanColumn(name));
+    }
+
+    public StringColumn stringColumn(String name) throws IOException {
+        return this.register(new StringColumn(name));
+    }
+
+    private <T extends Column> T register(T column) throws IOException {
+        // binding checks the column exists before the first batch is read
+        column.bind(this.root != null ? this.root : this.source.root());
+        this.columns.add(column);
+        return column;
+    }
+
+    @Override
+    public void close() throws Exception {
+        this.source.close();
+    }
+}
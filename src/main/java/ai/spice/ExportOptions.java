@@ -0,0 +1,71 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package ai.spice;
+
+/**
+ * Options controlling how query results are written to files by
+ * {@link SpiceClient#export(String, java.nio.file.Path, ExportFormat, ExportOptions)}.
+ */
+public class ExportOptions {
+    private long maxFileBytes = Long.MAX_VALUE;
+    private QueryOptions queryOptions = new QueryOptions();
+
+    /**
+     * Sets the size at which the export rolls over to a new file. A file is
+     * closed once the Arrow buffers of the batches written to it reach this size,
+     * so files hold whole batches and may be slightly larger. By default all
+     * batches are written to a single file.
+     *
+     * @param maxFileBytes the number of bytes of batches per file
+     * @return The current instance of ExportOptions for method chaining.
+     */
+    public ExportOptions withMaxFileBytes(long maxFileBytes) {
+        if (maxFileBytes <= 0) {
+            throw new IllegalArgumentException("maxFileBytes must be greater than 0");
+        }
+        this.maxFileBytes = maxFileBytes;
+        return this;
+    }
+
+    /**
+     * Sets the options used to fetch the query results. Disabling order
+     * preservation lets batches of every endpoint be written as they arrive.
+     *
+     * @param queryOptions the options of the exported query
+     * @return The current instance of ExportOptions for method chaining.
+     */
+    public ExportOptions withQueryOptions(QueryOptions queryOptions) {
+        if (queryOptions == null) {
+            throw new IllegalArgumentException("queryOptions can't be null");
+        }
+        this.queryOptions = queryOptions;
+        return this;
+    }
+
+    long getMaxFileBytes() {
+        return maxFileBytes;
+    }
+
+    QueryOptions getQueryOptions() {
+        return queryOptions;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package ai.spice;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * The outcome of a completed export.
+ */
+public final class ExportResult {
+    private final List<Path> files;
+    private final long rows;
+    private final long batches;
+    private final long bytes;
+    private final long elapsedNanos;
+
+    ExportResult(List<Path> files, long rows, long batches, long bytes, long elapsedNanos) {
+        this.files = files;
+        this.rows = rows;
+        this.batches = batches;
+        this.bytes = bytes;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * @return the files written, in the order of the batches they hold
+     */
+    public List<Path> getFiles() {
+        return this.files;
+    }
+
+    /**
+     * @return the number of rows written
+     */
+    public long getRows() {
+        return this.rows;
+    }
+
+    /**
+     * @return the number of record batches written
+     */
+    public long getBatches() {
+        return this.batches;
+    }
+
+    /**
+     * @return the number of bytes of Arrow buffers written, before encoding
+     */
+    public long getBytes() {
+        return this.bytes;
+    }
+
+    /**
+     * @return the time from executing the query until the last file was closed
+     */
+    public Duration getDuration() {
+        return Duration.ofNanos(this.elapsedNanos);
+    }
+
+    /**
+     * @return the number of rows written per second over the duration of the
+     *         export
+     */
+    public double getRowsPerSecond() {
+        return this.elapsedNanos > 0 ? this.rows * 1e9 / this.elapsedNanos : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d rows in %d batches (%d bytes) to %d files in %d ms, %.0f rows/s", this.rows,
+                this.batches, this.bytes, this.files.size(), this.getDuration().toMillis(),
+                this.getRowsPerSecond());
+    }
+}
@@ -0,0 +1,102 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package ai.spice;
+
+import org.apache.arrow.flight.CallOptions;
+import org.apache.arrow.flight.auth2.Auth2Constants;
+
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ForwardingClientCall;
+import io.grpc.ForwardingClientCallListener;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import io.grpc.stub.AbstractStub;
+
+/**
+ * Call option capturing the bearer token returned by one handshake call. The
+ * token is read from the response headers of that call only, so calls running
+ * at the same time on the same channels can't be mistaken for the handshake.
+ */
+final class HandshakeBearer implements CallOptions.GrpcCallOption {
+    private static final Metadata.Key<String> AUTHORIZATION = Metadata.Key
+            .of(Auth2Constants.AUTHORIZATION_HEADER, Metadata.ASCII_STRING_MARSHALLER);
+
+    private volatile String bearer;
+
+    /**
+     * @return the bearer token returned by the handshake, or null if it returned
+     *         none
+     */
+    String bearer() {
+        return this.bearer;
+    }
+
+    @Override
+    public <T extends AbstractStub<T>> T wrapStub(T stub) {
+        return stub.withInterceptors(new ClientInterceptor() {
+            @Override
+            public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method,
+                    io.grpc.CallOptions callOptions, Channel next) {
+                return new ForwardingClientCall.SimpleForwardingClientCall<ReqT, RespT>(
+                        next.newCall(method, callOptions)) {
+                    @Override
+                    public void start(Listener<RespT> listener, Metadata headers) {
+                        super.start(new ForwardingClientCallListener.SimpleForwardingClientCallListener<RespT>(
+                                listener) {
+                            @Override
+                            public void onHeaders(Metadata responseHeaders) {
+                                HandshakeBearer.this.capture(responseHeaders);
+                                super.onHeaders(responseHeaders);
+                            }
+
+                            @Override
+                            public void onClose(Status status, Metadata trailers) {
+                                // a runtime answering with trailers only sends the token there
+                                HandshakeBearer.this.capture(trailers);
+                                super.onClose(status, trailers);
+                            }
+                        }, headers);
+                    }
+                };
+            }
+        });
+    }
+
+    private void capture(Metadata metadata) {
+        if (this.bearer != null || metadata == null) {
+            return;
+        }
+        Iterable<String> values = metadata.getAll(AUTHORIZATION);
+        if (values == null) {
+            return;
+        }
+        for (String value : values) {
+            if (value.startsWith(Auth2Constants.BEARER_PREFIX)) {
+                this.bearer = value.substring(Auth2Constants.BEARER_PREFIX.length());
+                return;
+            }
+        }
+    }
+}
@@ -9,34 +9,81 @@ import org.apache.arrow.flight.FlightClientMiddleware;
 import org.apache.arrow.flight.FlightClientMiddleware.Factory;
 import org.apache.arrow.flight.auth2.ClientIncomingAuthHeaderMiddleware;
 
+/**
+ * Adds the client headers to every Flight call and forwards the call to the
+ * bearer token middleware. Static headers are flattened once, and each call
+ * creates a single middleware and a single bearer token delegate.
+ */
 public class HeaderAuthMiddlewareFactory implements Factory {
     private final ClientIncomingAuthHeaderMiddleware.Factory authFactory;
-    private final Map<String, String> headers;
+    private final String[] headerNames;
+    private final String[] headerValues;
+    private final CallHeadersProvider callHeaders;
 
     public HeaderAuthMiddlewareFactory(ClientIncomingAuthHeaderMiddleware.Factory authFactory,
             Map<String, String> headers) {
+        this(authFactory, headers, null);
+    }
+
+    /**
+     * @param authFactory the bearer token middleware, or null to send no token
+     * @param headers     headers added to every call
+     * @param callHeaders adds per-call headers, or null
+     */
+    public HeaderAuthMiddlewareFactory(ClientIncomingAuthHeaderMiddleware.Factory authFactory,
+            Map<String, String> headers, CallHeadersProvider callHeaders) {
         this.authFactory = authFactory;
-        this.headers = headers;
+        this.headerNames = new String[headers.size()];
+        this.headerValues = new String[headers.size()];
+        int i = 0;
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            this.headerNames[i] = header.getKey();
+            this.headerValues[i] = header.getValue();
+            i++;
+        }
+        this.callHeaders = callHeaders;
     }
 
     @Override
     public FlightClientMiddleware onCallStarted(CallInfo callInfo) {
-        return new FlightClientMiddleware() {
-            @Override
-            public void onBeforeSendingHeaders(CallHeaders callHeaders) {
-                authFactory.onCallStarted(callInfo).onBeforeSendingHeaders(callHeaders);
-                headers.forEach(callHeaders::insert);
+        FlightClientMiddleware delegate = this.authFactory != null ? this.authFactory.onCallStarted(callInfo) : null;
+        return new Middleware(callInfo, delegate);
+    }
+
+    private final class Middleware implements FlightClientMiddleware {
+        private final CallInfo callInfo;
+        private final FlightClientMiddleware delegate;
+
+        Middleware(CallInfo callInfo, FlightClientMiddleware delegate) {
+            this.callInfo = callInfo;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void onBeforeSendingHeaders(CallHeaders outgoingHeaders) {
+            if (this.delegate != null) {
+                this.delegate.onBeforeSendingHeaders(outgoingHeaders);
+            }
+            for (int i = 0; i < headerNames.length; i++) {
+                outgoingHeaders.insert(headerNames[i], headerValues[i]);
+            }
+            if (callHeaders != null) {
+                callHeaders.addHeaders(this.callInfo, outgoingHeaders);
             }
+        }
 
-            @Override
-            public void onHeadersReceived(CallHeaders callHeaders) {
-                authFactory.onCallStarted(callInfo).onHeadersReceived(callHeaders);
+        @Override
+        public void onHeadersReceived(CallHeaders incomingHeaders) {
+            if (this.delegate != null) {
+                this.delegate.onHeadersReceived(incomingHeaders);
             }
+        }
 
-            @Override
-            public void onCallCompleted(CallStatus callStatus) {
-                authFactory.onCallStarted(callInfo).onCallCompleted(callStatus);
+        @Override
+        public void onCallCompleted(CallStatus status) {
+            if (this.delegate != null) {
+                this.delegate.onCallCompleted(status);
             }
-        };
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,108 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package ai.spice;
+
+/**
+ * Options controlling how rows are written to a table by an {@link IngestWriter}.
+ */
+public class IngestOptions {
+    private int targetBatchRows = 65536;
+    private int maxPendingBatches = 4;
+    private int streams = 1;
+    private boolean createTable = false;
+
+    /**
+     * Sets the number of rows sent per record batch. Smaller writes are coalesced
+     * until a batch reaches this size, so appending a few rows at a time does not
+     * send one tiny batch per call.
+     *
+     * @param targetBatchRows the number of rows per batch
+     * @return The current instance of IngestOptions for method chaining.
+     */
+    public IngestOptions withTargetBatchRows(int targetBatchRows) {
+        if (targetBatchRows <= 0) {
+            throw new IllegalArgumentException("targetBatchRows must be greater than 0");
+        }
+        this.targetBatchRows = targetBatchRows;
+        return this;
+    }
+
+    /**
+     * Sets the number of complete batches that can wait to be sent. Writes block
+     * once this many batches are pending, so a slow runtime slows the writer down
+     * instead of buffering without bound.
+     *
+     * @param maxPendingBatches the maximum number of pending batches
+     * @return The current instance of IngestOptions for method chaining.
+     */
+    public IngestOptions withMaxPendingBatches(int maxPendingBatches) {
+        if (maxPendingBatches <= 0) {
+            throw new IllegalArgumentException("maxPendingBatches must be greater than 0");
+        }
+        this.maxPendingBatches = maxPendingBatches;
+        return this;
+    }
+
+    /**
+     * Sets the number of DoPut streams batches are sent over, each on a channel
+     * of the client. Batches sent over different streams may be applied in any
+     * order.
+     *
+     * @param streams the number of concurrent streams
+     * @return The current instance of IngestOptions for method chaining.
+     */
+    public IngestOptions withStreams(int streams) {
+        if (streams <= 0) {
+            throw new IllegalArgumentException("streams must be greater than 0");
+        }
+        this.streams = streams;
+        return this;
+    }
+
+    /**
+     * Sets whether the runtime creates the table from the schema of the first
+     * batch when it does not exist, instead of failing the ingest.
+     *
+     * @param createTable true to create a missing table
+     * @return The current instance of IngestOptions for method chaining.
+     */
+    public IngestOptions withCreateTable(boolean createTable) {
+        this.createTable = createTable;
+        return this;
+    }
+
+    int getTargetBatchRows() {
+        return this.targetBatchRows;
+    }
+
+    int getMaxPendingBatches() {
+        return this.maxPendingBatches;
+    }
+
+    int getStreams() {
+        return this.streams;
+    }
+
+    boolean isCreateTable() {
+        return this.createTable;
+    }
+}
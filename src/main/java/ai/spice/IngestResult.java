@@ -0,0 +1,93 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package ai.spice;
+
+import java.time.Duration;
+
+/**
+ * The outcome of a completed ingest.
+ */
+public final class IngestResult {
+    private final long rows;
+    private final long batches;
+    private final long bytes;
+    private final long recordCount;
+    private final long elapsedNanos;
+
+    IngestResult(long rows, long batches, long bytes, long recordCount, long elapsedNanos) {
+        this.rows = rows;
+        this.batches = batches;
+        this.bytes = bytes;
+        this.recordCount = recordCount;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * @return the number of rows sent to the runtime
+     */
+    public long getRows() {
+        return this.rows;
+    }
+
+    /**
+     * @return the number of record batches sent to the runtime
+     */
+    public long getBatches() {
+        return this.batches;
+    }
+
+    /**
+     * @return the number of bytes of Arrow buffers sent to the runtime
+     */
+    public long getBytes() {
+        return this.bytes;
+    }
+
+    /**
+     * @return the number of rows the runtime reported as written, or -1 if it
+     *         did not report it
+     */
+    public long getRecordCount() {
+        return this.recordCount;
+    }
+
+    /**
+     * @return the time from opening the writer until the runtime acknowledged
+     *         the last batch
+     */
+    public Duration getDuration() {
+        return Duration.ofNanos(this.elapsedNanos);
+    }
+
+    /**
+     * @return the number of rows sent per second over the duration of the ingest
+     */
+    public double getRowsPerSecond() {
+        return this.elapsedNanos > 0 ? this.rows * 1e9 / this.elapsedNanos : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d rows in %d batches (%d bytes) in %d ms, %.0f rows/s", this.rows, this.batches,
+                this.bytes, this.getDuration().toMillis(), this.getRowsPerSecond());
+    }
+}
@@ -0,0 +1,447 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package ai.spice;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.arrow.flight.CallStatus;
+import org.apache.arrow.flight.FlightClient;
+import org.apache.arrow.flight.FlightDescriptor;
+import org.apache.arrow.flight.PutResult;
+import org.apache.arrow.flight.sql.impl.FlightSql.CommandStatementIngest;
+import org.apache.arrow.flight.sql.impl.FlightSql.CommandStatementIngest.TableDefinitionOptions;
+import org.apache.arrow.flight.sql.impl.FlightSql.DoPutUpdateResult;
+import org.apache.arrow.memory.ArrowBuf;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.apache.arrow.vector.util.VectorSchemaRootAppender;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.protobuf.Any;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+/**
+ * Appends record batches to a table of the runtime with Flight SQL bulk
+ * ingestion, a DoPut of a CommandStatementIngest.
+ *
+ * Written rows are copied into a batch owned by the writer until it reaches
+ * the target batch size, so small writes are coalesced. Complete batches are
+ * queued for one or more DoPut streams and sent while the caller builds the
+ * next one. Writes block once the configured number of batches is pending, and
+ * each stream waits for gRPC flow control before sending a batch, so a slow
+ * runtime slows the writer down instead of filling memory.
+ *
+ * An IngestWriter is not thread-safe. It must be finished to commit the last
+ * batches, or closed to abort the ingest.
+ */
+public class IngestWriter implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(IngestWriter.class);
+    private static final Object END_OF_BATCHES = new Object();
+    private static final long POLL_MILLIS = 100;
+    private static final long READY_POLL_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+    private final SpiceClient client;
+    private final String table;
+    private final FlightDescriptor descriptor;
+    private final IngestOptions options;
+    private final BufferAllocator allocator;
+    private final Executor executor;
+    private final BlockingQueue<Object> pending;
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final AtomicLong recordCount = new AtomicLong(-1);
+    private final long startNanos = System.nanoTime();
+    private volatile boolean aborted = false;
+    private CountDownLatch sendersDone;
+    private Schema schema;
+    private VectorSchemaRoot staging;
+    private long rows = 0;
+    private long batches = 0;
+    private long bytes = 0;
+    private boolean closed = false;
+
+    IngestWriter(SpiceClient client, String table, IngestOptions options, BufferAllocator allocator,
+            Executor executor) {
+        this.client = client;
+        this.table = table;
+        this.descriptor = descriptor(table, options.isCreateTable());
+        this.options = options;
+        this.allocator = allocator;
+        this.executor = executor;
+        this.pending = new ArrayBlockingQueue<>(options.getMaxPendingBatches());
+    }
+
+    /**
+     * Builds the DoPut descriptor appending to a table
+     *
+     * @param table       the name of the table
+     * @param createTable true to create the table if it does not exist
+     * @return the descriptor of a CommandStatementIngest
+     */
+    static FlightDescriptor descriptor(String table, boolean createTable) {
+        TableDefinitionOptions definition = TableDefinitionOptions.newBuilder()
+                .setIfNotExist(createTable ? TableDefinitionOptions.TableNotExistOption.TABLE_NOT_EXIST_OPTION_CREATE
+                        : TableDefinitionOptions.TableNotExistOption.TABLE_NOT_EXIST_OPTION_FAIL)
+                .setIfExists(TableDefinitionOptions.TableExistsOption.TABLE_EXISTS_OPTION_APPEND)
+                .build();
+        CommandStatementIngest command = CommandStatementIngest.newBuilder()
+                .setTable(table)
+                .setTableDefinitionOptions(definition)
+                .build();
+        return FlightDescriptor.command(Any.pack(command).toByteArray());
+    }
+
+    /**
+     * Appends the rows of a batch to the table. The rows are copied, the batch
+     * stays owned by the caller and can be reused once this method returns. The
+     * first batch sets the schema of the ingest.
+     *
+     * @param batch the rows to append
+     * @throws ExecutionException if sending a previous batch failed, or if the
+     *                            writer was interrupted while waiting to queue a
+     *                            batch
+     */
+    public void write(VectorSchemaRoot batch) throws ExecutionException {
+        this.checkOpen();
+        if (batch == null) {
+            throw new IllegalArgumentException("batch can't be null");
+        }
+        if (this.schema != null && !this.schema.equals(batch.getSchema())) {
+            throw new IllegalArgumentException("The batch schema does not match the schema of the ingest");
+        }
+        this.checkFailure();
+
+        if (this.schema == null) {
+            this.schema = batch.getSchema();
+            this.startSenders();
+        }
+        if (batch.getRowCount() == 0) {
+            return;
+        }
+
+        if (this.staging == null) {
+            this.staging = VectorSchemaRoot.create(this.schema, this.allocator);
+        }
+        VectorSchemaRootAppender.append(false, this.staging, batch);
+        if (this.staging.getRowCount() >= this.options.getTargetBatchRows()) {
+            this.flush();
+        }
+    }
+
+    /**
+     * Queues the rows written since the last batch was sent, even if they are
+     * fewer than the target batch size
+     *
+     * @throws ExecutionException if sending a previous batch failed, or if the
+     *                            writer was interrupted while waiting to queue
+     *                            the batch
+     */
+    public void flush() throws ExecutionException {
+        this.checkOpen();
+        if (this.staging == null || this.staging.getRowCount() == 0) {
+            return;
+        }
+
+        VectorSchemaRoot ready = this.staging;
+        this.staging = null;
+        this.rows += ready.getRowCount();
+        this.batches++;
+        this.bytes += Batches.sizeInBytes(ready);
+        this.enqueue(ready);
+    }
+
+    /**
+     * Sends the remaining rows and waits until the runtime has acknowledged every
+     * batch. The writer is closed afterwards.
+     *
+     * @return the number of rows written and the ingest throughput
+     * @throws ExecutionException if the ingest failed
+     */
+    public IngestResult finish() throws ExecutionException {
+        this.checkOpen();
+        boolean complete = false;
+        try {
+            this.flush();
+            if (this.sendersDone != null) {
+                for (int i = 0; i < this.options.getStreams(); i++) {
+                    this.enqueue(END_OF_BATCHES);
+                }
+                this.sendersDone.await();
+            }
+            this.checkFailure();
+            complete = true;
+            return new IngestResult(this.rows, this.batches, this.bytes, this.recordCount.get(),
+                    System.nanoTime() - this.startNanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ExecutionException("Interrupted while waiting for the ingest to complete", e);
+        } finally {
+            this.closed = true;
+            if (!complete) {
+                this.abort();
+            }
+            this.release();
+        }
+    }
+
+    /**
+     * Aborts the ingest if it was not finished. Batches already acknowledged by
+     * the runtime may have been written.
+     */
+    @Override
+    public void close() {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        this.abort();
+        this.release();
+    }
+
+    private void checkOpen() {
+        if (this.closed) {
+            throw new IllegalStateException("The ingest writer is closed");
+        }
+    }
+
+    private void checkFailure() throws ExecutionException {
+        Throwable error = this.failure.get();
+        if (error != null) {
+            throw new ExecutionException("Failed to ingest into table " + this.table + " due to error: " + error,
+                    error);
+        }
+    }
+
+    private void enqueue(Object item) throws ExecutionException {
+        try {
+            while (!this.pending.offer(item, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (this.failure.get() != null) {
+                    release(item);
+                    this.checkFailure();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            release(item);
+            throw new ExecutionException("Interrupted while waiting to send a batch", e);
+        }
+    }
+
+    private void startSenders() {
+        int streams = this.options.getStreams();
+        this.sendersDone = new CountDownLatch(streams);
+        for (int i = 0; i < streams; i++) {
+            try {
+                this.executor.execute(this::send);
+            } catch (RejectedExecutionException e) {
+                this.failure.compareAndSet(null, e);
+                this.sendersDone.countDown();
+            }
+        }
+    }
+
+    /**
+     * Sends queued batches over one DoPut stream until the end of the ingest
+     */
+    private void send() {
+        ChannelPool.Lease lease = null;
+        Throwable error = null;
+        try (VectorSchemaRoot putRoot = VectorSchemaRoot.create(this.schema, this.allocator)) {
+            ChannelPool.Lease channel = this.client.acquireStream();
+            lease = channel;
+            Acknowledgements acknowledgements = new Acknowledgements();
+            FlightClient.ClientStreamListener stream = this.client.withToken(channel.node(),
+                    auth -> channel.channel().client().startPut(this.descriptor, putRoot, acknowledgements, auth));
+            // each batch is handed over to the stream, its buffers are never modified
+            // after being sent
+            stream.setUseZeroCopy(true);
+            try {
+                this.sendBatches(stream, putRoot, acknowledgements);
+                stream.completed();
+            } catch (Throwable t) {
+                stream.error(t);
+                throw t;
+            }
+            acknowledgements.getResult();
+        } catch (Throwable t) {
+            error = t;
+            this.failure.compareAndSet(null, t);
+        } finally {
+            if (lease != null) {
+                lease.release(error);
+            }
+            this.sendersDone.countDown();
+        }
+    }
+
+    private void sendBatches(FlightClient.ClientStreamListener stream, VectorSchemaRoot putRoot,
+            Acknowledgements acknowledgements) throws InterruptedException {
+        while (true) {
+            Object item = this.pending.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            if (this.aborted) {
+                release(item);
+                throw new CancellationException("Ingest aborted before it was finished");
+            }
+            if (item == END_OF_BATCHES) {
+                return;
+            }
+            if (item == null) {
+                continue;
+            }
+
+            try (VectorSchemaRoot batch = (VectorSchemaRoot) item) {
+                this.awaitReady(stream, acknowledgements);
+                Batches.transferInto(batch, putRoot);
+            }
+            stream.putNext();
+        }
+    }
+
+    /**
+     * Waits until gRPC can buffer another message on the stream, so at most a
+     * few batches are in flight per stream
+     */
+    private void awaitReady(FlightClient.ClientStreamListener stream, Acknowledgements acknowledgements)
+            throws InterruptedException {
+        while (!stream.isReady()) {
+            if (acknowledgements.isDone()) {
+                // the runtime ended the stream early, surface its error
+                acknowledgements.getResult();
+                throw CallStatus.INTERNAL.withDescription("The runtime closed the ingest stream")
+                        .toRuntimeException();
+            }
+            if (this.aborted) {
+                throw new CancellationException("Ingest aborted before it was finished");
+            }
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            LockSupport.parkNanos(READY_POLL_NANOS);
+        }
+    }
+
+    private void abort() {
+        this.aborted = true;
+        if (this.sendersDone != null) {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    this.sendersDone.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void release() {
+        Object item;
+        while ((item = this.pending.poll()) != null) {
+            release(item);
+        }
+        if (this.staging != null) {
+            this.staging.close();
+            this.staging = null;
+        }
+        try {
+            this.allocator.close();
+        } catch (IllegalStateException e) {
+            // an aborted stream may still hold buffers queued in gRPC, they are
+            // released once the call is torn down
+            LOGGER.debug("Ingest closed with buffers still in flight", e);
+        }
+    }
+
+    private static void release(Object item) {
+        if (item instanceof VectorSchemaRoot) {
+            ((VectorSchemaRoot) item).close();
+        }
+    }
+
+    /**
+     * Collects the results of a DoPut stream and the row counts reported by the
+     * runtime.
+     */
+    private final class Acknowledgements implements FlightClient.PutListener {
+        private final CompletableFuture<Void> completed = new CompletableFuture<>();
+
+        boolean isDone() {
+            return this.completed.isDone();
+        }
+
+        @Override
+        public void getResult() {
+            try {
+                this.completed.join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                throw cause instanceof RuntimeException ? (RuntimeException) cause
+                        : CallStatus.INTERNAL.withCause(cause).toRuntimeException();
+            }
+        }
+
+        @Override
+        public void onNext(PutResult result) {
+            ArrowBuf metadata = result.getApplicationMetadata();
+            if (metadata == null || metadata.readableBytes() == 0) {
+                return;
+            }
+
+            byte[] bytes = new byte[(int) metadata.readableBytes()];
+            metadata.getBytes(metadata.readerIndex(), bytes);
+            try {
+                long written = DoPutUpdateResult.parseFrom(bytes).getRecordCount();
+                IngestWriter.this.recordCount.accumulateAndGet(written,
+                        (current, added) -> current < 0 ? added : current + added);
+            } catch (InvalidProtocolBufferException e) {
+                LOGGER.debug("Ignoring put result that is not a DoPutUpdateResult", e);
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            this.completed.completeExceptionally(t);
+        }
+
+        @Override
+        public void onCompleted() {
+            this.completed.complete(null);
+        }
+    }
+}
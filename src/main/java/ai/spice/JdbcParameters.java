@@ -0,0 +1,306 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package ai.spice;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.BaseIntVector;
+import org.apache.arrow.vector.BitVector;
+import org.apache.arrow.vector.DateDayVector;
+import org.apache.arrow.vector.DateMilliVector;
+import org.apache.arrow.vector.DecimalVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.FloatingPointVector;
+import org.apache.arrow.vector.LargeVarBinaryVector;
+import org.apache.arrow.vector.LargeVarCharVector;
+import org.apache.arrow.vector.TimeMicroVector;
+import org.apache.arrow.vector.TimeMilliVector;
+import org.apache.arrow.vector.TimeNanoVector;
+import org.apache.arrow.vector.TimeSecVector;
+import org.apache.arrow.vector.TimeStampVector;
+import org.apache.arrow.vector.VarBinaryVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.types.DateUnit;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+/**
+ * Binds JDBC parameter values to the single row batch sent with a prepared
+ * query.
+ *
+ * The parameter schema returned by the runtime is used when it has one field
+ * per value. Otherwise the types are inferred from the Java values, and the
+ * runtime casts them to the types the query expects.
+ */
+final class JdbcParameters {
+
+    private JdbcParameters() {
+    }
+
+    /**
+     * Creates a single row batch holding parameter values
+     *
+     * @param parameterSchema the parameter schema of the prepared query, or null
+     * @param values          the parameter values in order, null for SQL NULL
+     * @param allocator       the allocator for the batch
+     * @return the batch, owned by the caller
+     * @throws SQLException if a value can't be converted to its parameter type
+     */
+    static VectorSchemaRoot bind(Schema parameterSchema, List<Object> values, BufferAllocator allocator)
+            throws SQLException {
+        Schema schema = parameterSchema != null && parameterSchema.getFields().size() == values.size()
+                ? parameterSchema
+                : inferSchema(values);
+
+        VectorSchemaRoot root = VectorSchemaRoot.create(schema, allocator);
+        try {
+            // allocateNew clears the validity buffers, so unset values are null
+            root.allocateNew();
+            for (int i = 0; i < values.size(); i++) {
+                Object value = values.get(i);
+                if (value != null) {
+                    set(root.getVector(i), value);
+                }
+            }
+            root.setRowCount(1);
+            return root;
+        } catch (SQLException | RuntimeException e) {
+            root.close();
+            throw e;
+        }
+    }
+
+    static Schema inferSchema(List<Object> values) throws SQLException {
+        List<Field> fields = new ArrayList<>(values.size());
+        for (int i = 0; i < values.size(); i++) {
+            fields.add(new Field("$" + (i + 1), FieldType.nullable(typeOf(values.get(i), i + 1)), null));
+        }
+        return new Schema(fields);
+    }
+
+    private static ArrowType typeOf(Object value, int parameterIndex) throws SQLException {
+        if (value == null || value instanceof String || value instanceof Character) {
+            return ArrowType.Utf8.INSTANCE;
+        }
+        if (value instanceof Boolean) {
+            return ArrowType.Bool.INSTANCE;
+        }
+        if (value instanceof Byte || value instanceof Short || value instanceof Integer) {
+            return new ArrowType.Int(32, true);
+        }
+        if (value instanceof Long) {
+            return new ArrowType.Int(64, true);
+        }
+        if (value instanceof Float || value instanceof Double) {
+            return new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE);
+        }
+        if (value instanceof BigDecimal) {
+            BigDecimal decimal = (BigDecimal) value;
+            int scale = Math.max(0, decimal.scale());
+            int precision = Math.max(decimal.precision() - decimal.scale() + scale, scale + 1);
+            if (precision > 38) {
+                throw new SQLException(String.format("Parameter %d has more than 38 digits", parameterIndex),
+                        "22003");
+            }
+            return new ArrowType.Decimal(precision, scale, 128);
+        }
+        if (value instanceof byte[]) {
+            return ArrowType.Binary.INSTANCE;
+        }
+        if (value instanceof java.sql.Date || value instanceof LocalDate) {
+            return new ArrowType.Date(DateUnit.DAY);
+        }
+        if (value instanceof Time || value instanceof LocalTime) {
+            return new ArrowType.Time(org.apache.arrow.vector.types.TimeUnit.MICROSECOND, 64);
+        }
+        if (value instanceof Timestamp || value instanceof LocalDateTime) {
+            return new ArrowType.Timestamp(org.apache.arrow.vector.types.TimeUnit.MICROSECOND, null);
+        }
+        if (value instanceof Instant || value instanceof OffsetDateTime || value instanceof java.util.Date) {
+            return new ArrowType.Timestamp(org.apache.arrow.vector.types.TimeUnit.MICROSECOND, "UTC");
+        }
+        throw new SQLFeatureNotSupportedException(String.format("Parameter %d has unsupported type %s",
+                parameterIndex, value.getClass().getName()));
+    }
+
+    private static void set(FieldVector vector, Object value) throws SQLException {
+        try {
+            if (vector instanceof BitVector) {
+                boolean flag = value instanceof Boolean ? (Boolean) value : toLong(value) != 0;
+                ((BitVector) vector).set(0, flag ? 1 : 0);
+            } else if (vector instanceof BaseIntVector) {
+                ((BaseIntVector) vector).setWithPossibleTruncate(0, toLong(value));
+            } else if (vector instanceof FloatingPointVector) {
+                double number = value instanceof Number ? ((Number) value).doubleValue()
+                        : Double.parseDouble(value.toString().trim());
+                ((FloatingPointVector) vector).setWithPossibleTruncate(0, number);
+            } else if (vector instanceof DecimalVector) {
+                BigDecimal decimal = value instanceof BigDecimal ? (BigDecimal) value
+                        : new BigDecimal(value.toString().trim());
+                DecimalVector decimals = (DecimalVector) vector;
+                decimals.setSafe(0, decimal.setScale(decimals.getScale(), RoundingMode.HALF_UP));
+            } else if (vector instanceof VarCharVector) {
+                ((VarCharVector) vector).setSafe(0, value.toString().getBytes(StandardCharsets.UTF_8));
+            } else if (vector instanceof LargeVarCharVector) {
+                ((LargeVarCharVector) vector).setSafe(0, value.toString().getBytes(StandardCharsets.UTF_8));
+            } else if (vector instanceof VarBinaryVector && value instanceof byte[]) {
+                ((VarBinaryVector) vector).setSafe(0, (byte[]) value);
+            } else if (vector instanceof LargeVarBinaryVector && value instanceof byte[]) {
+                ((LargeVarBinaryVector) vector).setSafe(0, (byte[]) value);
+            } else if (vector instanceof DateDayVector) {
+                ((DateDayVector) vector).set(0, Math.toIntExact(toLocalDate(value).toEpochDay()));
+            } else if (vector instanceof DateMilliVector) {
+                ((DateMilliVector) vector).set(0, TimeUnit.DAYS.toMillis(toLocalDate(value).toEpochDay()));
+            } else if (vector instanceof TimeStampVector) {
+                ArrowType.Timestamp type = (ArrowType.Timestamp) vector.getField().getType();
+                ((TimeStampVector) vector).set(0, toEpoch(toInstant(value, type.getTimezone() != null),
+                        type.getUnit()));
+            } else if (vector instanceof TimeSecVector) {
+                ((TimeSecVector) vector).set(0, (int) TimeUnit.NANOSECONDS.toSeconds(toNanoOfDay(value)));
+            } else if (vector instanceof TimeMilliVector) {
+                ((TimeMilliVector) vector).set(0, (int) TimeUnit.NANOSECONDS.toMillis(toNanoOfDay(value)));
+            } else if (vector instanceof TimeMicroVector) {
+                ((TimeMicroVector) vector).set(0, TimeUnit.NANOSECONDS.toMicros(toNanoOfDay(value)));
+            } else if (vector instanceof TimeNanoVector) {
+                ((TimeNanoVector) vector).set(0, toNanoOfDay(value));
+            } else {
+                throw new SQLFeatureNotSupportedException(String.format("Parameter %s of type %s is not supported",
+                        vector.getName(), vector.getField().getType()));
+            }
+        } catch (IllegalArgumentException | ArithmeticException | ClassCastException e) {
+            // NumberFormatException and DateTimeException are IllegalArgumentExceptions too
+            throw new SQLException(String.format("%s can't be bound to parameter %s of type %s",
+                    value.getClass().getSimpleName(), vector.getName(), vector.getField().getType()), "22018", e);
+        }
+    }
+
+    private static long toLong(Object value) {
+        if (value instanceof BigDecimal) {
+            return ((BigDecimal) value).longValueExact();
+        }
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof Boolean) {
+            return (Boolean) value ? 1 : 0;
+        }
+        return Long.parseLong(value.toString().trim());
+    }
+
+    private static LocalDate toLocalDate(Object value) {
+        if (value instanceof LocalDate) {
+            return (LocalDate) value;
+        }
+        if (value instanceof java.sql.Date) {
+            return ((java.sql.Date) value).toLocalDate();
+        }
+        if (value instanceof Timestamp) {
+            return ((Timestamp) value).toLocalDateTime().toLocalDate();
+        }
+        if (value instanceof LocalDateTime) {
+            return ((LocalDateTime) value).toLocalDate();
+        }
+        return LocalDate.parse(value.toString().trim());
+    }
+
+    /**
+     * Converts a value to an instant. Values without an offset are read as UTC
+     * wall-clock times for columns without a time zone, matching how
+     * SpiceResultSet reads them, and in the JVM time zone otherwise.
+     */
+    private static Instant toInstant(Object value, boolean zoned) {
+        if (value instanceof Instant) {
+            return (Instant) value;
+        }
+        if (value instanceof OffsetDateTime) {
+            return ((OffsetDateTime) value).toInstant();
+        }
+        LocalDateTime local;
+        if (value instanceof Timestamp) {
+            Timestamp timestamp = (Timestamp) value;
+            if (zoned) {
+                return timestamp.toInstant();
+            }
+            local = timestamp.toLocalDateTime();
+        } else if (value instanceof LocalDateTime) {
+            local = (LocalDateTime) value;
+        } else if (value instanceof java.sql.Date || value instanceof LocalDate) {
+            local = toLocalDate(value).atStartOfDay();
+        } else if (value instanceof java.util.Date) {
+            return ((java.util.Date) value).toInstant();
+        } else {
+            local = LocalDateTime.parse(value.toString().trim().replace(' ', 'T'));
+        }
+        return zoned ? local.atZone(java.time.ZoneId.systemDefault()).toInstant() : local.toInstant(ZoneOffset.UTC);
+    }
+
+    static long toEpoch(Instant instant, org.apache.arrow.vector.types.TimeUnit unit) {
+        switch (unit) {
+            case SECOND:
+                return instant.getEpochSecond();
+            case MILLISECOND:
+                return instant.toEpochMilli();
+            case MICROSECOND:
+                return Math.addExact(Math.multiplyExact(instant.getEpochSecond(), 1_000_000L),
+                        instant.getNano() / 1_000L);
+            default:
+                return Math.addExact(Math.multiplyExact(instant.getEpochSecond(), 1_000_000_000L),
+                        instant.getNano());
+        }
+    }
+
+    private static long toNanoOfDay(Object value) {
+        if (value instanceof LocalTime) {
+            return ((LocalTime) value).toNanoOfDay();
+        }
+        if (value instanceof Time) {
+            return ((Time) value).toLocalTime().toNanoOfDay();
+        }
+        if (value instanceof LocalDateTime) {
+            return ((LocalDateTime) value).toLocalTime().toNanoOfDay();
+        }
+        if (value instanceof Timestamp) {
+            return ((Timestamp) value).toLocalDateTime().toLocalTime().toNanoOfDay();
+        }
+        return LocalTime.parse(value.toString().trim()).toNanoOfDay();
+    }
+}
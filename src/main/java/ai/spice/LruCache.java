@@ -0,0 +1,208 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package ai.spice;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * A thread-safe map bounded by the total weight of its values, evicting the
+ * least recently used entry first. Entries can optionally expire a fixed time
+ * after they were added.
+ *
+ * Evicted, expired and removed values are passed to the eviction listener after
+ * the cache lock has been released, so the listener can do blocking work such
+ * as closing a server-side handle.
+ */
+class LruCache<K, V> {
+
+    private static final class Node<V> {
+        private final V value;
+        private final long weight;
+        private final long expiresAtNanos;
+
+        Node(V value, long weight, long expiresAtNanos) {
+            this.value = value;
+            this.weight = weight;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+    }
+
+    private final long maxWeight;
+    private final long ttlNanos;
+    private final ToLongFunction<V> weigher;
+    private final Consumer<V> onEviction;
+    private final LinkedHashMap<K, Node<V>> entries;
+    private final ReentrantLock lock = new ReentrantLock();
+    private long totalWeight = 0;
+
+    /**
+     * Creates a cache bounded by its number of entries, without expiry.
+     *
+     * @param maxSize    the maximum number of entries kept in the cache
+     * @param onEviction called with every value that leaves the cache
+     */
+    LruCache(int maxSize, Consumer<V> onEviction) {
+        this(maxSize, value -> 1, 0, onEviction);
+    }
+
+    /**
+     * @param maxWeight  the maximum total weight of the cached values
+     * @param weigher    computes the weight of a value when it is added
+     * @param ttlNanos   the time after which an entry expires, or 0 to never
+     *                   expire entries
+     * @param onEviction called with every value that leaves the cache
+     */
+    LruCache(long maxWeight, ToLongFunction<V> weigher, long ttlNanos, Consumer<V> onEviction) {
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+        this.ttlNanos = ttlNanos;
+        this.onEviction = onEviction;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    V get(K key) {
+        V expired = null;
+        this.lock.lock();
+        try {
+            Node<V> node = this.entries.get(key);
+            if (node == null) {
+                return null;
+            }
+            if (this.ttlNanos > 0 && System.nanoTime() - node.expiresAtNanos > 0) {
+                this.entries.remove(key);
+                this.totalWeight -= node.weight;
+                expired = node.value;
+            } else {
+                return node.value;
+            }
+        } finally {
+            this.lock.unlock();
+        }
+        this.onEviction.accept(expired);
+        return null;
+    }
+
+    /**
+     * Adds a value to the cache. A value heavier than the maximum weight is not
+     * cached and is passed straight to the eviction listener.
+     *
+     * @param key   the key of the value
+     * @param value the value to cache
+     */
+    void put(K key, V value) {
+        List<V> evicted = new ArrayList<>(1);
+        long weight = this.weigher.applyAsLong(value);
+        this.lock.lock();
+        try {
+            if (weight > this.maxWeight) {
+                evicted.add(value);
+            } else {
+                Node<V> previous = this.entries.put(key,
+                        new Node<>(value, weight, System.nanoTime() + this.ttlNanos));
+                this.totalWeight += weight;
+                if (previous != null) {
+                    this.totalWeight -= previous.weight;
+                    if (previous.value != value) {
+                        evicted.add(previous.value);
+                    }
+                }
+
+                Iterator<Node<V>> iterator = this.entries.values().iterator();
+                while (this.totalWeight > this.maxWeight && iterator.hasNext()) {
+                    Node<V> eldest = iterator.next();
+                    iterator.remove();
+                    this.totalWeight -= eldest.weight;
+                    evicted.add(eldest.value);
+                }
+            }
+        } finally {
+            this.lock.unlock();
+        }
+        evicted.forEach(this.onEviction);
+    }
+
+    void remove(K key) {
+        Node<V> removed;
+        this.lock.lock();
+        try {
+            removed = this.entries.remove(key);
+            if (removed != null) {
+                this.totalWeight -= removed.weight;
+            }
+        } finally {
+            this.lock.unlock();
+        }
+        if (removed != null) {
+            this.onEviction.accept(removed.value);
+        }
+    }
+
+    void removeIf(BiPredicate<K, V> predicate) {
+        List<V> evicted = new ArrayList<>();
+        this.lock.lock();
+        try {
+            Iterator<Map.Entry<K, Node<V>>> iterator = this.entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<K, Node<V>> entry = iterator.next();
+                if (predicate.test(entry.getKey(), entry.getValue().value)) {
+                    iterator.remove();
+                    this.totalWeight -= entry.getValue().weight;
+                    evicted.add(entry.getValue().value);
+                }
+            }
+        } finally {
+            this.lock.unlock();
+        }
+        evicted.forEach(this.onEviction);
+    }
+
+    void clear() {
+        this.removeIf((key, value) -> true);
+    }
+
+    int size() {
+        this.lock.lock();
+        try {
+            return this.entries.size();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    long weight() {
+        this.lock.lock();
+        try {
+            return this.totalWeight;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package ai.spice;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Client-side cache of query and catalog metadata, such as result schemas and
+ * table listings, so tools that only need metadata do not plan a query on the
+ * runtime each time.
+ *
+ * Entries are bounded by count and expire after a time to live. Each entry
+ * records the tables it depends on, so refreshing a dataset drops the entries
+ * that may describe it.
+ */
+final class MetadataCache {
+
+    private static final class Entry {
+        private final Object value;
+        private final Set<String> tables;
+
+        Entry(Object value, Set<String> tables) {
+            this.value = value;
+            this.tables = tables;
+        }
+    }
+
+    private final LruCache<String, Entry> entries;
+
+    /**
+     * @param maxEntries the maximum number of cached entries
+     * @param ttlNanos   the time after which an entry expires
+     */
+    MetadataCache(int maxEntries, long ttlNanos) {
+        this.entries = new LruCache<>(maxEntries, entry -> 1, ttlNanos, entry -> {
+        });
+    }
+
+    /**
+     * Returns a cached value
+     *
+     * @param key the key of the value
+     * @return the value, or null if it is not cached
+     */
+    @SuppressWarnings("unchecked")
+    <T> T get(String key) {
+        Entry entry = this.entries.get(key);
+        return entry != null ? (T) entry.value : null;
+    }
+
+    /**
+     * Caches a value
+     *
+     * @param key    the key of the value
+     * @param tables the tables the value describes, lower-cased, or an empty set
+     *               if it may describe any table
+     * @param value  the value, which must be immutable
+     */
+    void put(String key, Set<String> tables, Object value) {
+        this.entries.put(key, new Entry(value, Collections.unmodifiableSet(tables)));
+    }
+
+    /**
+     * Removes every entry that may describe a dataset
+     *
+     * @param dataset the name of the dataset
+     */
+    void invalidate(String dataset) {
+        this.entries.removeIf((key, entry) -> SqlText.mayReference(entry.tables, dataset));
+    }
+
+    /**
+     * @return the number of cached entries
+     */
+    int size() {
+        return this.entries.size();
+    }
+}
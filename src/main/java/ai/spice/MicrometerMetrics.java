@@ -0,0 +1,201 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package ai.spice;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.arrow.flight.FlightStatusCode;
+import org.apache.arrow.memory.BufferAllocator;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * ClientMetrics recording to a Micrometer MeterRegistry. Micrometer is an
+ * optional dependency of the SDK, add {@code io.micrometer:micrometer-core} to
+ * the application to use this class.
+ *
+ * <ul>
+ * <li>{@code spice.query.flight_info} - timer, time to FlightInfo</li>
+ * <li>{@code spice.query.first_batch} - timer, time to first batch</li>
+ * <li>{@code spice.query.stream} - timer tagged by {@code outcome}, total
+ * stream duration</li>
+ * <li>{@code spice.query.rows} - counter, rows received</li>
+ * <li>{@code spice.query.bytes} - counter, bytes received</li>
+ * <li>{@code spice.query.retries} - counter tagged by {@code code}</li>
+ * <li>{@code spice.query.hedges} - counter, hedged executes sent</li>
+ * <li>{@code spice.query.streams.in_flight} - gauge, open streams</li>
+ * <li>{@code spice.memory.allocated} and {@code spice.memory.peak} - gauges,
+ * client allocator usage in bytes</li>
+ * </ul>
+ */
+public class MicrometerMetrics implements ClientMetrics {
+
+    private final MeterRegistry registry;
+    private final Tags tags;
+    private final Timer flightInfo;
+    private final Timer firstBatch;
+    private final Timer streamSucceeded;
+    private final Timer streamFailed;
+    private final Counter rows;
+    private final Counter bytes;
+    private final Counter hedges;
+    private final Counter receivedWireBytes;
+    private final Counter receivedBytes;
+    private final Counter sentWireBytes;
+    private final Counter sentBytes;
+    private final Map<FlightStatusCode, Counter> retries = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * @param registry the registry to record to
+     */
+    public MicrometerMetrics(MeterRegistry registry) {
+        this(registry, Tags.empty());
+    }
+
+    /**
+     * @param registry the registry to record to
+     * @param tags     tags added to every meter, for example to tell clients
+     *                 apart
+     */
+    public MicrometerMetrics(MeterRegistry registry, Iterable<Tag> tags) {
+        if (registry == null) {
+            throw new IllegalArgumentException("registry can't be null");
+        }
+        this.registry = registry;
+        this.tags = Tags.of(tags);
+
+        this.flightInfo = Timer.builder("spice.query.flight_info")
+                .description("Time from the start of a query to its FlightInfo")
+                .tags(this.tags)
+                .register(registry);
+        this.firstBatch = Timer.builder("spice.query.first_batch")
+                .description("Time from the start of a query to its first batch")
+                .tags(this.tags)
+                .register(registry);
+        this.streamSucceeded = streamTimer(registry, this.tags, "success");
+        this.streamFailed = streamTimer(registry, this.tags, "error");
+        this.rows = Counter.builder("spice.query.rows")
+                .description("Rows received")
+                .tags(this.tags)
+                .register(registry);
+        this.bytes = Counter.builder("spice.query.bytes")
+                .description("Bytes of Arrow buffers received")
+                .baseUnit("bytes")
+                .tags(this.tags)
+                .register(registry);
+        this.hedges = Counter.builder("spice.query.hedges")
+                .description("Second executes sent for slow queries")
+                .tags(this.tags)
+                .register(registry);
+        this.receivedWireBytes = transportCounter(registry, this.tags, "received", "wire");
+        this.receivedBytes = transportCounter(registry, this.tags, "received", "uncompressed");
+        this.sentWireBytes = transportCounter(registry, this.tags, "sent", "wire");
+        this.sentBytes = transportCounter(registry, this.tags, "sent", "uncompressed");
+        Gauge.builder("spice.query.streams.in_flight", this.inFlight, AtomicInteger::get)
+                .description("Result streams currently open")
+                .tags(this.tags)
+                .register(registry);
+    }
+
+    private static Timer streamTimer(MeterRegistry registry, Tags tags, String outcome) {
+        return Timer.builder("spice.query.stream")
+                .description("Time from the start of a query until its result stream is closed")
+                .tags(tags.and("outcome", outcome))
+                .register(registry);
+    }
+
+    private static Counter transportCounter(MeterRegistry registry, Tags tags, String direction, String size) {
+        return Counter.builder("spice.transport.bytes")
+                .description("Bytes of gRPC messages, on the wire and uncompressed")
+                .baseUnit("bytes")
+                .tags(tags.and("direction", direction, "size", size))
+                .register(registry);
+    }
+
+    @Override
+    public void bindAllocator(BufferAllocator allocator) {
+        Gauge.builder("spice.memory.allocated", allocator, BufferAllocator::getAllocatedMemory)
+                .description("Memory currently allocated by the client")
+                .baseUnit("bytes")
+                .tags(this.tags)
+                .register(this.registry);
+        Gauge.builder("spice.memory.peak", allocator, BufferAllocator::getPeakMemoryAllocation)
+                .description("Peak memory allocated by the client")
+                .baseUnit("bytes")
+                .tags(this.tags)
+                .register(this.registry);
+    }
+
+    @Override
+    public void flightInfoReceived(long nanos) {
+        this.flightInfo.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void firstBatchReceived(long nanos) {
+        this.firstBatch.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void streamOpened() {
+        this.inFlight.incrementAndGet();
+    }
+
+    @Override
+    public void streamClosed(long nanos, long rows, long bytes, boolean failed) {
+        this.inFlight.decrementAndGet();
+        (failed ? this.streamFailed : this.streamSucceeded).record(nanos, TimeUnit.NANOSECONDS);
+        this.rows.increment(rows);
+        this.bytes.increment(bytes);
+    }
+
+    @Override
+    public void retried(FlightStatusCode code) {
+        this.retries.computeIfAbsent(code, key -> Counter.builder("spice.query.retries")
+                .description("Calls retried, by status code of the failed attempt")
+                .tags(this.tags.and("code", key.name()))
+                .register(this.registry))
+                .increment();
+    }
+
+    @Override
+    public void hedged() {
+        this.hedges.increment();
+    }
+
+    @Override
+    public void transferred(long receivedWireBytes, long receivedBytes, long sentWireBytes, long sentBytes) {
+        this.receivedWireBytes.increment(receivedWireBytes);
+        this.receivedBytes.increment(receivedBytes);
+        this.sentWireBytes.increment(sentWireBytes);
+        this.sentBytes.increment(sentBytes);
+    }
+}
@@ -0,0 +1,540 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package ai.spice;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import org.apache.arrow.flight.FlightEndpoint;
+import org.apache.arrow.flight.FlightInfo;
+import org.apache.arrow.flight.FlightStream;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.OutOfMemoryException;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+/**
+ * Reads every endpoint of a FlightInfo concurrently on a bounded executor and
+ * exposes the batches as a single ArrowReader.
+ *
+ * Each endpoint is drained by its own task into a bounded queue, so at most
+ * {@code queueDepth} batches per endpoint are held in memory ahead of the
+ * consumer. A task finding its queue full returns its thread to the executor
+ * and is resubmitted once the consumer takes a batch from the queue, so tasks
+ * waiting for a slow consumer never hold the threads other endpoints, or other
+ * readers, need to make progress. Batches are handed over by transferring buffer ownership into the
+ * reader's allocator, never by copying, and the reader closes that allocator
+ * once every endpoint task has stopped.
+ *
+ * Cancelling the reader cancels the endpoint streams, releases the queued
+ * batches and wakes up a consumer waiting for the next batch.
+ *
+ * With a spill file, endpoint tasks never wait for the consumer: the queues are
+ * unbounded, and batches beyond the spill threshold are queued as handles to
+ * batches written to disk.
+ */
+class MultiEndpointReader extends QueryReader {
+
+    /**
+     * Opens the stream for a single endpoint. Implementations are expected to
+     * retry transient failures before the first batch is received.
+     */
+    interface StreamOpener {
+        EndpointStream open(FlightEndpoint endpoint) throws Exception;
+    }
+
+    /**
+     * An open endpoint stream, with a callback run once the stream is finished.
+     */
+    static final class EndpointStream {
+        private final FlightStream stream;
+        private final Consumer<Throwable> onClose;
+
+        /**
+         * @param stream  the endpoint stream
+         * @param onClose called with the error the stream failed with, or null
+         *                once it has been read or cancelled
+         */
+        EndpointStream(FlightStream stream, Consumer<Throwable> onClose) {
+            this.stream = stream;
+            this.onClose = onClose;
+        }
+    }
+
+    private static final Object END_OF_STREAM = new Object();
+    private static final Object CANCELLED = new Object();
+    private static final long CLOSE_TIMEOUT_SECONDS = 10;
+
+    private static final class Failure {
+        private final Throwable cause;
+
+        Failure(Throwable cause) {
+            this.cause = cause;
+        }
+    }
+
+    private final FlightInfo flightInfo;
+    private final BufferAllocator batchAllocator;
+    private final List<BlockingQueue<Object>> queues;
+    private final List<EndpointTask> tasks = new ArrayList<>();
+    private final Executor executor;
+    private final CountDownLatch runningTasks;
+    private final ConcurrentLinkedQueue<FlightStream> openStreams = new ConcurrentLinkedQueue<>();
+    private final CompletableFuture<Schema> schema = new CompletableFuture<>();
+    private final int endpointCount;
+    private final ClientMetrics metrics;
+    private final long startNanos;
+    private final Runnable onCancel;
+    private final SpillFile spill;
+    private final AtomicBoolean cancelled = new AtomicBoolean(false);
+
+    private volatile boolean closed = false;
+    private int currentQueue = 0;
+    private int finishedEndpoints = 0;
+    private long bytesRead = 0;
+    private long rowsRead = 0;
+    private boolean firstBatch = true;
+    private boolean failed = false;
+
+    /**
+     * Creates the reader and immediately starts fetching every endpoint.
+     *
+     * @param allocator     the allocator owning the batches handed to the
+     *                      consumer, closed with the reader
+     * @param flightInfo    the FlightInfo returned by the query
+     * @param preserveOrder whether batches are returned in endpoint order
+     * @param queueDepth    the number of batches buffered per endpoint
+     * @param executor      the executor that drains the endpoint streams
+     * @param opener        opens the stream for an endpoint
+     * @param metrics       the metrics the stream is reported to
+     * @param startNanos    the System.nanoTime() at which the query started
+     * @param onCancel      run once when the reader is cancelled, to stop the
+     *                      query on the runtime
+     * @param spill         the spill file buffering the batches read ahead of the
+     *                      consumer, closed with the reader, or null to wait for
+     *                      the consumer once queueDepth batches are buffered
+     */
+    MultiEndpointReader(BufferAllocator allocator, FlightInfo flightInfo, boolean preserveOrder, int queueDepth,
+            Executor executor, StreamOpener opener, ClientMetrics metrics, long startNanos, Runnable onCancel,
+            SpillFile spill) {
+        super(allocator);
+        this.flightInfo = flightInfo;
+        this.batchAllocator = allocator;
+        this.metrics = metrics;
+        this.startNanos = startNanos;
+        this.onCancel = onCancel;
+        this.spill = spill;
+        this.executor = executor;
+        metrics.streamOpened();
+
+        List<FlightEndpoint> endpoints = flightInfo.getEndpoints();
+        this.endpointCount = endpoints.size();
+        this.queues = new ArrayList<>();
+        this.runningTasks = new CountDownLatch(this.endpointCount);
+
+        if (this.endpointCount == 0) {
+            this.schema.complete(flightInfo.getSchema());
+            return;
+        }
+
+        if (spill != null) {
+            for (int i = 0; i < (preserveOrder ? this.endpointCount : 1); i++) {
+                this.queues.add(new LinkedBlockingQueue<>());
+            }
+        } else if (preserveOrder) {
+            for (int i = 0; i < this.endpointCount; i++) {
+                this.queues.add(new ArrayBlockingQueue<>(queueDepth + 1));
+            }
+        } else {
+            this.queues.add(new ArrayBlockingQueue<>(queueDepth * this.endpointCount + 1));
+        }
+
+        for (int i = 0; i < this.endpointCount; i++) {
+            BlockingQueue<Object> queue = preserveOrder ? this.queues.get(i) : this.queues.get(0);
+            this.tasks.add(new EndpointTask(endpoints.get(i), opener, queue));
+        }
+        for (EndpointTask task : this.tasks) {
+            executor.execute(task);
+        }
+    }
+
+    /**
+     * Returns the FlightInfo this reader is fetching.
+     *
+     * @return the FlightInfo of the query
+     */
+    FlightInfo getFlightInfo() {
+        return flightInfo;
+    }
+
+    @Override
+    public void cancel() {
+        if (this.closed || !this.cancelled.compareAndSet(false, true)) {
+            return;
+        }
+
+        this.schema.completeExceptionally(new CancellationException("Query cancelled"));
+        for (FlightStream stream : this.openStreams) {
+            stream.cancel("Query cancelled", null);
+        }
+        // free the memory held ahead of the consumer now, instead of on close
+        for (BlockingQueue<Object> queue : this.queues) {
+            this.discardQueued(queue);
+        }
+        this.resumeParked(null);
+        this.onCancel.run();
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return this.cancelled.get();
+    }
+
+    @Override
+    public boolean loadNextBatch() throws IOException {
+        VectorSchemaRoot root = getVectorSchemaRoot();
+
+        VectorSchemaRoot batch = this.nextBatch();
+        if (batch == null) {
+            root.setRowCount(0);
+            return false;
+        }
+
+        try {
+            this.bytesRead += Batches.sizeInBytes(batch);
+            this.rowsRead += batch.getRowCount();
+            Batches.transferInto(batch, root);
+        } finally {
+            batch.close();
+        }
+        if (this.firstBatch) {
+            this.firstBatch = false;
+            this.metrics.firstBatchReceived(System.nanoTime() - this.startNanos);
+        }
+        return true;
+    }
+
+    @Override
+    public long bytesRead() {
+        return bytesRead;
+    }
+
+    @Override
+    protected Schema readSchema() throws IOException {
+        try {
+            return this.schema.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the query schema");
+        } catch (CancellationException e) {
+            throw new IOException("Query cancelled", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to read query schema due to error: " + e.getCause().toString(),
+                    e.getCause());
+        }
+    }
+
+    @Override
+    protected void closeReadSource() throws IOException {
+        if (!this.closed) {
+            this.metrics.streamClosed(System.nanoTime() - this.startNanos, this.rowsRead, this.bytesRead,
+                    this.failed);
+        }
+        this.closed = true;
+
+        FlightStream stream;
+        while ((stream = this.openStreams.poll()) != null) {
+            stream.cancel("Reader closed", null);
+        }
+        // parked endpoint tasks only run again when resumed, and stop once they do
+        this.resumeParked(null);
+
+        boolean stopped;
+        try {
+            // endpoint tasks notice the cancellation on their next read or offer
+            stopped = this.runningTasks.await(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stopped = false;
+        }
+
+        for (BlockingQueue<Object> queue : this.queues) {
+            releaseQueued(queue);
+        }
+
+        IOException timeout = stopped ? null
+                : new IOException("Timed out waiting for endpoint streams to stop, query memory may not be released");
+        try {
+            if (this.spill != null) {
+                this.spill.close();
+            }
+        } finally {
+            try {
+                this.batchAllocator.close();
+            } catch (IllegalStateException e) {
+                // a task still running holds a batch, its memory is released when the allocator
+                // of the client is closed
+                if (timeout == null) {
+                    throw e;
+                }
+                timeout.addSuppressed(e);
+            }
+        }
+        if (timeout != null) {
+            throw timeout;
+        }
+    }
+
+    private VectorSchemaRoot nextBatch() throws IOException {
+        try {
+            while (true) {
+                if (this.cancelled.get()) {
+                    throw new IOException("Query cancelled");
+                }
+
+                BlockingQueue<Object> queue;
+                if (this.queues.size() > 1) {
+                    if (this.currentQueue >= this.queues.size()) {
+                        return null;
+                    }
+                    queue = this.queues.get(this.currentQueue);
+                } else {
+                    if (this.finishedEndpoints >= this.endpointCount) {
+                        return null;
+                    }
+                    queue = this.queues.get(0);
+                }
+                Object item = queue.take();
+                this.resumeParked(queue);
+
+                if (item == CANCELLED || this.cancelled.get()) {
+                    if (item instanceof VectorSchemaRoot) {
+                        ((VectorSchemaRoot) item).close();
+                    }
+                    throw new IOException("Query cancelled");
+                }
+
+                if (item == END_OF_STREAM) {
+                    this.currentQueue++;
+                    this.finishedEndpoints++;
+                    continue;
+                }
+
+                if (item instanceof Failure) {
+                    Throwable cause = ((Failure) item).cause;
+                    this.failed = true;
+                    throw new IOException("Failed to read query results due to error: " + cause.toString(), cause);
+                }
+
+                if (item instanceof SpillFile.Spilled) {
+                    return this.spill.read((SpillFile.Spilled) item, this.batchAllocator);
+                }
+                VectorSchemaRoot batch = (VectorSchemaRoot) item;
+                if (this.spill != null) {
+                    this.spill.taken(batch);
+                }
+                return batch;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for query results");
+        }
+    }
+
+    /**
+     * Resumes the endpoint tasks parked on a full queue
+     *
+     * @param queue the queue the consumer took a batch from, or null to resume
+     *              every parked task so it can stop
+     */
+    private void resumeParked(BlockingQueue<Object> queue) {
+        for (EndpointTask task : this.tasks) {
+            if ((queue == null || task.queue == queue) && task.parked.compareAndSet(true, false)) {
+                try {
+                    this.executor.execute(task);
+                } catch (RejectedExecutionException e) {
+                    // the executor is shut down with the client, the task only has to stop
+                    task.run();
+                }
+            }
+        }
+    }
+
+    private boolean isStopped() {
+        return this.closed || this.cancelled.get();
+    }
+
+    private void discardQueued(BlockingQueue<Object> queue) {
+        releaseQueued(queue);
+        if (this.cancelled.get()) {
+            // wake up a consumer waiting for the next batch, the queue was just emptied
+            // so there is room unless an endpoint task refilled it
+            queue.offer(CANCELLED);
+        }
+    }
+
+    private static void releaseQueued(BlockingQueue<Object> queue) {
+        Object item;
+        while ((item = queue.poll()) != null) {
+            if (item instanceof VectorSchemaRoot) {
+                ((VectorSchemaRoot) item).close();
+            }
+        }
+    }
+
+    /**
+     * Drains a single endpoint stream into its queue. The task runs until its
+     * queue is full, then parks: it keeps the item it could not queue and the open
+     * stream, and returns its thread to the executor until it is resumed.
+     */
+    private final class EndpointTask implements Runnable {
+        private final FlightEndpoint endpoint;
+        private final StreamOpener opener;
+        private final BlockingQueue<Object> queue;
+        private final AtomicBoolean parked = new AtomicBoolean(false);
+        private EndpointStream opened;
+        private Object pending;
+        private Throwable error;
+
+        EndpointTask(FlightEndpoint endpoint, StreamOpener opener, BlockingQueue<Object> queue) {
+            this.endpoint = endpoint;
+            this.opener = opener;
+            this.queue = queue;
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                if (this.pending != null) {
+                    if (isStopped()) {
+                        if (this.pending instanceof VectorSchemaRoot) {
+                            ((VectorSchemaRoot) this.pending).close();
+                        }
+                        break;
+                    }
+                    if (!this.queue.offer(this.pending)) {
+                        if (this.park()) {
+                            return;
+                        }
+                        continue;
+                    }
+                    if (isStopped()) {
+                        // the reader was closed or cancelled while offering, release anything it
+                        // could not see
+                        discardQueued(this.queue);
+                    }
+                    Object queued = this.pending;
+                    this.pending = null;
+                    if (queued == END_OF_STREAM || queued instanceof Failure) {
+                        break;
+                    }
+                }
+                if (isStopped()) {
+                    break;
+                }
+                try {
+                    this.pending = this.read();
+                } catch (Throwable t) {
+                    this.error = t;
+                    schema.completeExceptionally(t);
+                    this.pending = new Failure(t);
+                }
+                if (this.pending == null) {
+                    break;
+                }
+            }
+            this.finish();
+        }
+
+        /**
+         * @return the next item to queue, or null if the reader stopped while the
+         *         stream was opened
+         */
+        private Object read() throws Exception {
+            if (this.opened == null) {
+                this.opened = this.opener.open(this.endpoint);
+                openStreams.add(this.opened.stream);
+                if (isStopped()) {
+                    return null;
+                }
+                schema.complete(this.opened.stream.getSchema());
+            }
+
+            FlightStream stream = this.opened.stream;
+            if (!stream.next()) {
+                return END_OF_STREAM;
+            }
+            VectorSchemaRoot batch = Batches.transfer(stream.getRoot(), batchAllocator);
+            if (batchAllocator.getAllocatedMemory() > batchAllocator.getLimit()) {
+                batch.close();
+                throw new OutOfMemoryException(String.format(
+                        "Query results exceed the memory limit of %d bytes for allocator %s",
+                        batchAllocator.getLimit(), batchAllocator.getName()));
+            }
+            return spill != null ? spill.admit(batch) : batch;
+        }
+
+        /**
+         * Parks the task until the consumer takes an item from its queue
+         *
+         * @return true if the task is parked, false if it must keep running
+         */
+        private boolean park() {
+            this.parked.set(true);
+            // the consumer may have taken an item, or the reader stopped, before the task
+            // was parked
+            if (this.queue.remainingCapacity() > 0 || isStopped()) {
+                return !this.parked.compareAndSet(true, false);
+            }
+            return true;
+        }
+
+        private void finish() {
+            if (this.opened != null) {
+                openStreams.remove(this.opened.stream);
+                try {
+                    this.opened.stream.close();
+                } catch (Exception e) {
+                    // the stream is already cancelled or drained, nothing left to release
+                }
+                this.opened.onClose.accept(this.error);
+            }
+            runningTasks.countDown();
+        }
+    }
+}
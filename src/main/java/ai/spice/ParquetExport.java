@@ -0,0 +1,137 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package ai.spice;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import org.apache.arrow.dataset.file.DatasetFileWriter;
+import org.apache.arrow.dataset.file.FileFormat;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowReader;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+/**
+ * Writes Parquet files with the Arrow dataset writer. This class is only loaded
+ * for Parquet exports, so arrow-dataset stays an optional dependency.
+ */
+final class ParquetExport {
+
+    private static final String WRITER_CLASS = "org.apache.arrow.dataset.file.DatasetFileWriter";
+
+    private ParquetExport() {
+    }
+
+    /**
+     * @return true if arrow-dataset is on the classpath
+     */
+    static boolean isAvailable() {
+        try {
+            Class.forName(WRITER_CLASS, false, ParquetExport.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Writes batches of an export to a Parquet file until the file reaches the
+     * size threshold or the result has been read to the end
+     *
+     * @param allocator the allocator used to hand the batches to the native writer
+     * @param exporter  the export, positioned on the next batch to write
+     * @param file      the file to write
+     * @return true if the file was written, false if there was no batch to write
+     * @throws IOException if the file cannot be written
+     */
+    static boolean write(BufferAllocator allocator, ResultExporter exporter, Path file) throws IOException {
+        // the dataset writer names its own files, so each one is written to a staging
+        // directory next to the target and moved into place
+        Path staging = Files.createTempDirectory(file.getParent(), ".staging-");
+        try {
+            try (Window window = new Window(allocator, exporter)) {
+                DatasetFileWriter.write(allocator, window, FileFormat.PARQUET, staging.toUri().toString(),
+                        new String[0], 1, "part-{i}");
+            }
+            try (Stream<Path> written = Files.list(staging)) {
+                Path only = written.findFirst().orElse(null);
+                if (only == null) {
+                    return false;
+                }
+                Files.move(only, file);
+                return true;
+            }
+        } finally {
+            try (Stream<Path> leftover = Files.list(staging)) {
+                for (Path path : (Iterable<Path>) leftover::iterator) {
+                    Files.deleteIfExists(path);
+                }
+            }
+            Files.deleteIfExists(staging);
+        }
+    }
+
+    /**
+     * Hands the batches of one file to the dataset writer, moving each batch out
+     * of the query reader's root.
+     */
+    private static final class Window extends ArrowReader {
+        private final ResultExporter exporter;
+        private long fileBytes = 0;
+
+        Window(BufferAllocator allocator, ResultExporter exporter) {
+            super(allocator);
+            this.exporter = exporter;
+        }
+
+        @Override
+        public boolean loadNextBatch() throws IOException {
+            VectorSchemaRoot root = getVectorSchemaRoot();
+            if (!this.exporter.hasBatch() || this.fileBytes >= this.exporter.maxFileBytes()) {
+                root.setRowCount(0);
+                return false;
+            }
+            Batches.transferInto(this.exporter.current(), root);
+            this.fileBytes += this.exporter.count(root);
+            this.exporter.advance();
+            return true;
+        }
+
+        @Override
+        public long bytesRead() {
+            return this.fileBytes;
+        }
+
+        @Override
+        protected void closeReadSource() {
+            // the query reader is owned by the export
+        }
+
+        @Override
+        protected Schema readSchema() throws IOException {
+            return this.exporter.current().getSchema();
+        }
+    }
+}
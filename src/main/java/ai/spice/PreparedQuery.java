@@ -0,0 +1,207 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package ai.spice;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.arrow.flight.CallOption;
+import org.apache.arrow.flight.FlightInfo;
+import org.apache.arrow.flight.sql.FlightSqlClient;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+/**
+ * A query prepared on the Spice runtime, which can be executed many times with
+ * different parameters without being planned again.
+ *
+ * A PreparedQuery can be executed concurrently from several threads. Closing it
+ * releases this handle; the server-side statement is closed once every handle
+ * is closed and the statement has left the client's prepared statement cache.
+ */
+public class PreparedQuery implements AutoCloseable {
+
+    /**
+     * A server-side prepared statement shared by every handle and the cache.
+     */
+    static final class Statement {
+        private final SpiceClient client;
+        private final String sql;
+        private final FlightSqlClient.PreparedStatement statement;
+        private final ChannelPool.Node node;
+        private final ReentrantLock executeLock = new ReentrantLock();
+        private final AtomicInteger references = new AtomicInteger(1);
+
+        /**
+         * @param client    the client that prepared the statement
+         * @param sql       the SQL text of the statement
+         * @param statement the server-side prepared statement
+         * @param node      the runtime holding the statement, which serves its
+         *                  results
+         */
+        Statement(SpiceClient client, String sql, FlightSqlClient.PreparedStatement statement,
+                ChannelPool.Node node) {
+            this.client = client;
+            this.sql = sql;
+            this.statement = statement;
+            this.node = node;
+        }
+
+        /**
+         * Takes an additional reference to the statement.
+         *
+         * @return false if the statement has already been closed
+         */
+        boolean retain() {
+            while (true) {
+                int current = this.references.get();
+                if (current <= 0) {
+                    return false;
+                }
+                if (this.references.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        void release() {
+            if (this.references.decrementAndGet() == 0) {
+                try {
+                    this.statement.close(this.client.authCallOptions(this.node));
+                } catch (RuntimeException e) {
+                    // the runtime drops prepared statements of closed sessions on its own
+                }
+            }
+        }
+
+        FlightInfo execute(VectorSchemaRoot parameters, long timeoutNanos) throws ExecutionException {
+            // a FlightSqlClient.PreparedStatement holds the bound parameters, so binding
+            // and executing must not interleave between threads
+            this.executeLock.lock();
+            try {
+                if (parameters != null) {
+                    // the statement closes the bound root, bind a root sharing the caller's buffers
+                    this.statement.setParameters(Batches.share(parameters, this.client.allocator()));
+                }
+                long startNanos = System.nanoTime();
+                try {
+                    return this.client.callWithRetry(() -> {
+                        CallOption timeout = this.client.attemptTimeout(startNanos, timeoutNanos);
+                        return this.client.withToken(this.node, auth -> this.statement.execute(auth, timeout));
+                    });
+                } finally {
+                    this.statement.clearParameters();
+                }
+            } finally {
+                this.executeLock.unlock();
+            }
+        }
+    }
+
+    private final SpiceClient client;
+    private final Statement statement;
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    PreparedQuery(SpiceClient client, Statement statement) {
+        this.client = client;
+        this.statement = statement;
+    }
+
+    /**
+     * Returns the SQL text of the prepared query
+     *
+     * @return the SQL text
+     */
+    public String getSql() {
+        return this.statement.sql;
+    }
+
+    /**
+     * Returns the schema of the parameters expected by the query
+     *
+     * @return the parameter schema
+     */
+    public Schema getParameterSchema() {
+        return this.statement.statement.getParameterSchema();
+    }
+
+    /**
+     * Returns the schema of the query results
+     *
+     * @return the result schema
+     */
+    public Schema getResultSchema() {
+        return this.statement.statement.getResultSetSchema();
+    }
+
+    /**
+     * Executes the prepared query without parameters
+     *
+     * @return a QueryReader over the query results
+     * @throws ExecutionException if there is an error executing the query
+     */
+    public QueryReader execute() throws ExecutionException {
+        return this.execute(null, null);
+    }
+
+    /**
+     * Executes the prepared query with the given parameters
+     *
+     * @param parameters a single row batch holding the parameter values, matching
+     *                   the parameter schema. The batch is not modified and stays
+     *                   owned by the caller.
+     * @return a QueryReader over the query results
+     * @throws ExecutionException if there is an error executing the query
+     */
+    public QueryReader execute(VectorSchemaRoot parameters) throws ExecutionException {
+        return this.execute(parameters, null);
+    }
+
+    /**
+     * Executes the prepared query with the given parameters
+     *
+     * @param parameters a batch holding the parameter values, or null
+     * @param options    the options controlling how the results are fetched, or
+     *                   null for the defaults
+     * @return a QueryReader over the query results
+     * @throws ExecutionException if there is an error executing the query
+     */
+    public QueryReader execute(VectorSchemaRoot parameters, QueryOptions options) throws ExecutionException {
+        if (this.closed.get()) {
+            throw new IllegalStateException("PreparedQuery is closed");
+        }
+
+        long startNanos = System.nanoTime();
+        FlightInfo flightInfo = this.statement.execute(parameters, options != null ? options.getTimeoutNanos() : 0);
+        return this.client.readFlightInfo(flightInfo, this.statement.node, options, startNanos);
+    }
+
+    @Override
+    public void close() {
+        if (this.closed.compareAndSet(false, true)) {
+            this.statement.release();
+        }
+    }
+}
@@ -0,0 +1,561 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package ai.spice;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.OutOfMemoryException;
+import org.apache.arrow.vector.VectorLoader;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.VectorUnloader;
+import org.apache.arrow.vector.ipc.message.ArrowRecordBatch;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+/**
+ * Shares one execution between concurrent identical queries.
+ *
+ * The first caller executes the query, and callers asking for the same query
+ * while it is in flight subscribe to its results instead of executing it
+ * again. Batches are read from the runtime once and handed to every subscriber
+ * by reference counting on their buffers, without copies. A subscriber joining
+ * late first replays the batches already received.
+ *
+ * A query accepts new subscribers until its results have been read to the end,
+ * it failed, or the batches kept for replay exceed the byte budget. From then
+ * on, batches every subscriber has read are released, and batches received
+ * while the batches held for a lagging subscriber exceed the same budget are
+ * written to a spill file, which the lagging subscriber reads them back from.
+ * The batches of a query in memory are owned by an allocator limited to the
+ * memory limit of the query.
+ */
+final class QueryCoalescer implements AutoCloseable {
+
+    private final BufferAllocator allocator;
+    private final long maxReplayBytes;
+    private final Path spillDirectory;
+    private final AtomicLong queryCounter = new AtomicLong();
+    private final ConcurrentHashMap<String, SharedQuery> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * @param allocator      the allocator owning the shared batches, closed with
+     *                       the coalescer
+     * @param maxReplayBytes the maximum number of bytes kept for late subscribers,
+     *                       and kept in memory for lagging subscribers
+     * @param spillDirectory the directory of the spill files of batches held for
+     *                       lagging subscribers
+     */
+    QueryCoalescer(BufferAllocator allocator, long maxReplayBytes, Path spillDirectory) {
+        this.allocator = allocator;
+        this.maxReplayBytes = maxReplayBytes;
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * Returns a reader over the results of a query, subscribing to an identical
+     * query in flight or executing it
+     *
+     * @param key         the key of the query, such as its normalized SQL text
+     * @param memoryLimit the maximum number of bytes of batches of the query
+     *                    held in memory, if it is executed
+     * @param open        opens a reader over the results when the query is
+     *                    executed
+     * @return a future completed with a reader over the query results, or
+     *         completed exceptionally if the query could not be executed
+     */
+    CompletableFuture<QueryReader> query(String key, long memoryLimit,
+            Supplier<CompletableFuture<QueryReader>> open) {
+        while (true) {
+            SharedQuery created = new SharedQuery(key);
+            SharedQuery shared = this.inFlight.putIfAbsent(key, created);
+            if (shared == null) {
+                return created.lead(memoryLimit, open);
+            }
+            CompletableFuture<QueryReader> joined = shared.join();
+            if (joined != null) {
+                return joined;
+            }
+            // the query stopped accepting subscribers between the lookup and the join
+            this.inFlight.remove(key, shared);
+        }
+    }
+
+    /**
+     * @return the number of queries accepting new subscribers
+     */
+    int inFlight() {
+        return this.inFlight.size();
+    }
+
+    /**
+     * Closes a reader handed out after its caller stopped waiting for it
+     *
+     * @param reader the reader to close
+     */
+    static void closeQuietly(QueryReader reader) {
+        try {
+            reader.close();
+        } catch (IOException e) {
+            // the reader was never read, leaving the shared query is all that is left to do
+        }
+    }
+
+    @Override
+    public void close() {
+        this.inFlight.clear();
+        this.allocator.close();
+    }
+
+    /**
+     * A query execution and the batches received so far, shared by its
+     * subscribers.
+     */
+    private final class SharedQuery {
+        private final String key;
+        private final CompletableFuture<Void> opened = new CompletableFuture<>();
+        // locks rather than monitors, which would pin the carrier of a virtual thread
+        // waiting for a batch read by another subscriber
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition changed = this.lock.newCondition();
+        private final ReentrantLock schemaLock = new ReentrantLock();
+        private final List<SharedReader> subscribers = new ArrayList<>();
+        // each entry is an ArrowRecordBatch held in memory or a SpillFile.Spilled
+        private final List<Object> batches = new ArrayList<>();
+        private volatile BufferAllocator allocator;
+        private volatile QueryReader source;
+        private volatile Schema schema;
+        private SpillFile spill;
+        private int released = 0;
+        private long heldBytes = 0;
+        private boolean joinable = true;
+        private boolean reading = false;
+        private boolean done = false;
+        private boolean closed = false;
+        private Throwable failure = null;
+
+        SharedQuery(String key) {
+            this.key = key;
+        }
+
+        CompletableFuture<QueryReader> lead(long memoryLimit, Supplier<CompletableFuture<QueryReader>> open) {
+            this.allocator = QueryCoalescer.this.allocator.newChildAllocator(
+                    "spice-shared-query-" + QueryCoalescer.this.queryCounter.incrementAndGet(), 0, memoryLimit);
+            SharedReader reader;
+            this.lock.lock();
+            try {
+                reader = new SharedReader(this);
+                this.subscribers.add(reader);
+            } finally {
+                this.lock.unlock();
+            }
+
+            CompletableFuture<QueryReader> execution;
+            try {
+                execution = open.get();
+            } catch (RuntimeException e) {
+                execution = CompletableFuture.failedFuture(e);
+            }
+            execution.whenComplete((source, error) -> {
+                if (error != null) {
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null
+                            ? error.getCause()
+                            : error;
+                    this.fail(cause);
+                    this.opened.completeExceptionally(cause);
+                } else {
+                    this.source = source;
+                    this.opened.complete(null);
+                }
+            });
+            return this.subscribe(reader);
+        }
+
+        CompletableFuture<QueryReader> join() {
+            SharedReader reader;
+            this.lock.lock();
+            try {
+                if (!this.joinable) {
+                    return null;
+                }
+                reader = new SharedReader(this);
+                this.subscribers.add(reader);
+            } finally {
+                this.lock.unlock();
+            }
+            return this.subscribe(reader);
+        }
+
+        private CompletableFuture<QueryReader> subscribe(SharedReader reader) {
+            return this.opened.handle((ignored, error) -> {
+                if (error != null) {
+                    closeQuietly(reader);
+                    throw error instanceof CompletionException ? (CompletionException) error
+                            : new CompletionException(error);
+                }
+                return reader;
+            });
+        }
+
+        Schema schema() throws IOException {
+            this.schemaLock.lock();
+            try {
+                if (this.schema == null) {
+                    this.schema = this.source.getVectorSchemaRoot().getSchema();
+                }
+                return this.schema;
+            } finally {
+                this.schemaLock.unlock();
+            }
+        }
+
+        /**
+         * Returns the next batch for a subscriber, reading it from the source when
+         * the subscriber is ahead of the others.
+         *
+         * @return an ArrowRecordBatch shared with the other subscribers, a
+         *         SpillFile.Spilled handle, or a VectorSchemaRoot owned by the
+         *         caller, or null once the results have been read to the end
+         */
+        Object next(SharedReader reader) throws IOException {
+            boolean spillNext;
+            this.lock.lock();
+            try {
+                while (true) {
+                    if (reader.cancelled) {
+                        throw new IOException("Query cancelled");
+                    }
+                    if (reader.position < this.batches.size()) {
+                        Object batch = this.batches.get(reader.position++);
+                        this.trim();
+                        return batch;
+                    }
+                    if (this.failure != null) {
+                        throw new IOException("Failed to read the shared query results", this.failure);
+                    }
+                    if (this.done) {
+                        return null;
+                    }
+                    if (!this.reading) {
+                        this.reading = true;
+                        // a subscriber lags behind by more than the budget, keep the next batch on disk
+                        spillNext = !this.joinable && this.heldBytes >= QueryCoalescer.this.maxReplayBytes
+                                && this.subscribers.stream()
+                                        .anyMatch(subscriber -> subscriber.position < this.batches.size());
+                        break;
+                    }
+                    try {
+                        this.changed.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while waiting for the next batch", e);
+                    }
+                }
+            } finally {
+                this.lock.unlock();
+            }
+
+            Object batch = null;
+            VectorSchemaRoot own = null;
+            Throwable error = null;
+            try {
+                if (this.source.loadNextBatch()) {
+                    // move the batch out of the per-query allocator, so it outlives the source
+                    VectorSchemaRoot owned = Batches.transfer(this.source.getVectorSchemaRoot(), this.allocator);
+                    if (this.allocator.getAllocatedMemory() > this.allocator.getLimit()) {
+                        owned.close();
+                        throw new OutOfMemoryException(String.format(
+                                "Query results exceed the memory limit of %d bytes for allocator %s",
+                                this.allocator.getLimit(), this.allocator.getName()));
+                    }
+                    try {
+                        batch = spillNext ? this.spill().spill(owned) : new VectorUnloader(owned).getRecordBatch();
+                    } catch (IOException | RuntimeException e) {
+                        owned.close();
+                        throw e;
+                    }
+                    if (spillNext) {
+                        // the subscriber that read the batch keeps it, the others read the spilled copy
+                        own = owned;
+                    } else {
+                        owned.close();
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                error = e;
+            }
+
+            this.lock.lock();
+            try {
+                this.reading = false;
+                this.changed.signalAll();
+                if (error != null) {
+                    this.failure = error;
+                    this.stopJoining();
+                    throw error instanceof IOException ? (IOException) error
+                            : new IOException("Failed to read the shared query results", error);
+                }
+                if (batch == null) {
+                    this.done = true;
+                    this.stopJoining();
+                    return null;
+                }
+                this.batches.add(batch);
+                reader.position++;
+                if (own != null) {
+                    this.trim();
+                    return own;
+                }
+                this.heldBytes += ((ArrowRecordBatch) batch).computeBodyLength();
+                if (this.heldBytes > QueryCoalescer.this.maxReplayBytes) {
+                    // too large to replay to late subscribers, later callers execute the query again
+                    this.stopJoining();
+                }
+                this.trim();
+                return batch;
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        /**
+         * Reads a batch written to the spill file back into memory
+         */
+        VectorSchemaRoot restore(SpillFile.Spilled spilled, BufferAllocator allocator) throws IOException {
+            SpillFile file;
+            this.lock.lock();
+            try {
+                file = this.spill;
+            } finally {
+                this.lock.unlock();
+            }
+            return file.read(spilled, allocator);
+        }
+
+        private SpillFile spill() throws IOException {
+            this.lock.lock();
+            try {
+                if (this.closed) {
+                    throw new IOException("Shared query is closed");
+                }
+                if (this.spill == null) {
+                    this.spill = new SpillFile(QueryCoalescer.this.spillDirectory, 0);
+                }
+                return this.spill;
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        void cancelled() {
+            boolean cancelSource;
+            this.lock.lock();
+            try {
+                this.changed.signalAll();
+                cancelSource = this.subscribers.stream().allMatch(subscriber -> subscriber.cancelled);
+                if (cancelSource) {
+                    this.stopJoining();
+                }
+            } finally {
+                this.lock.unlock();
+            }
+            // the results are only abandoned once every subscriber has given up on them
+            QueryReader current = this.source;
+            if (cancelSource && current != null) {
+                current.cancel();
+            }
+        }
+
+        void leave(SharedReader reader) throws IOException {
+            QueryReader finished = null;
+            this.lock.lock();
+            try {
+                this.subscribers.remove(reader);
+                if (!this.subscribers.isEmpty()) {
+                    this.trim();
+                    return;
+                }
+                this.stopJoining();
+                this.closed = true;
+                while (this.released < this.batches.size()) {
+                    this.release(this.released++);
+                }
+                finished = this.source;
+                if (finished != null && !this.done && this.failure == null) {
+                    finished.cancel();
+                }
+            } finally {
+                this.lock.unlock();
+            }
+            try {
+                if (finished != null) {
+                    finished.close();
+                }
+            } finally {
+                SpillFile file;
+                this.lock.lock();
+                try {
+                    file = this.spill;
+                } finally {
+                    this.lock.unlock();
+                }
+                try {
+                    if (file != null) {
+                        file.close();
+                    }
+                } finally {
+                    if (this.allocator != null) {
+                        this.allocator.close();
+                    }
+                }
+            }
+        }
+
+        private void fail(Throwable error) {
+            this.lock.lock();
+            try {
+                this.failure = error;
+                this.stopJoining();
+                this.changed.signalAll();
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        private void stopJoining() {
+            if (this.joinable) {
+                this.joinable = false;
+                QueryCoalescer.this.inFlight.remove(this.key, this);
+            }
+        }
+
+        /**
+         * Releases the batches every subscriber has moved past, once no subscriber
+         * can join and replay them. The last batch handed to a subscriber is kept
+         * until it asks for the next one, as it may still be loading it.
+         */
+        private void trim() {
+            if (this.joinable) {
+                return;
+            }
+            int keepFrom = Integer.MAX_VALUE;
+            for (SharedReader subscriber : this.subscribers) {
+                keepFrom = Math.min(keepFrom, subscriber.position - 1);
+            }
+            while (this.released < Math.min(keepFrom, this.batches.size())) {
+                this.release(this.released++);
+            }
+        }
+
+        private void release(int index) {
+            Object batch = this.batches.set(index, null);
+            if (batch instanceof ArrowRecordBatch) {
+                ArrowRecordBatch held = (ArrowRecordBatch) batch;
+                this.heldBytes -= held.computeBodyLength();
+                held.close();
+            }
+        }
+    }
+
+    /**
+     * A subscriber to a shared query, reading its batches from the first one.
+     */
+    private final class SharedReader extends QueryReader {
+        private final SharedQuery shared;
+        private int position = 0;
+        private long bytesRead = 0;
+        private boolean left = false;
+        private volatile boolean cancelled = false;
+
+        SharedReader(SharedQuery shared) {
+            super(QueryCoalescer.this.allocator);
+            this.shared = shared;
+        }
+
+        @Override
+        public void cancel() {
+            if (!this.cancelled) {
+                this.cancelled = true;
+                this.shared.cancelled();
+            }
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return this.cancelled;
+        }
+
+        @Override
+        public boolean loadNextBatch() throws IOException {
+            if (this.cancelled) {
+                throw new IOException("Query cancelled");
+            }
+            VectorSchemaRoot root = getVectorSchemaRoot();
+            Object next = this.shared.next(this);
+            if (next == null) {
+                root.setRowCount(0);
+                return false;
+            }
+
+            if (next instanceof ArrowRecordBatch) {
+                // VectorLoader retains the shared buffers, the query keeps its own reference
+                ArrowRecordBatch batch = (ArrowRecordBatch) next;
+                new VectorLoader(root).load(batch);
+                this.bytesRead += batch.computeBodyLength();
+                return true;
+            }
+            try (VectorSchemaRoot batch = next instanceof VectorSchemaRoot ? (VectorSchemaRoot) next
+                    : this.shared.restore((SpillFile.Spilled) next, QueryCoalescer.this.allocator)) {
+                this.bytesRead += Batches.sizeInBytes(batch);
+                Batches.transferInto(batch, root);
+            }
+            return true;
+        }
+
+        @Override
+        public long bytesRead() {
+            return this.bytesRead;
+        }
+
+        @Override
+        protected void closeReadSource() throws IOException {
+            if (!this.left) {
+                this.left = true;
+                this.shared.leave(this);
+            }
+        }
+
+        @Override
+        protected Schema readSchema() throws IOException {
+            return this.shared.schema();
+        }
+    }
+}
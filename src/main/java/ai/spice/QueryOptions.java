@@ -0,0 +1,170 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package ai.spice;
+
+import java.time.Duration;
+
+/**
+ * Options controlling how the results of a query are fetched.
+ */
+public class QueryOptions {
+    private boolean preserveOrder = true;
+    private long memoryLimit = 0;
+    private boolean cacheEnabled = true;
+    private boolean coalescingEnabled = true;
+    private long timeoutNanos = 0;
+    private long spillThreshold = 0;
+    private int prefetchBatches = 0;
+
+    /**
+     * Sets whether batches are returned in endpoint order. When disabled, batches
+     * from all endpoints are interleaved in the order they arrive.
+     *
+     * @param preserveOrder true to return batches in endpoint order
+     * @return The current instance of QueryOptions for method chaining.
+     */
+    public QueryOptions withPreserveOrder(boolean preserveOrder) {
+        this.preserveOrder = preserveOrder;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of bytes the results of this query can hold in
+     * memory, overriding the client's query memory limit.
+     *
+     * @param memoryLimit the memory limit in bytes
+     * @return The current instance of QueryOptions for method chaining.
+     */
+    public QueryOptions withMemoryLimit(long memoryLimit) {
+        if (memoryLimit <= 0) {
+            throw new IllegalArgumentException("memoryLimit must be greater than 0");
+        }
+        this.memoryLimit = memoryLimit;
+        return this;
+    }
+
+    /**
+     * Sets whether this query can be served from, and added to, the client's
+     * result cache. Has no effect when the client has no result cache.
+     *
+     * @param cacheEnabled false to always execute the query on the runtime
+     * @return The current instance of QueryOptions for method chaining.
+     */
+    public QueryOptions withCache(boolean cacheEnabled) {
+        this.cacheEnabled = cacheEnabled;
+        return this;
+    }
+
+    /**
+     * Sets whether this query can share the execution of an identical query
+     * already in flight. Has no effect when the client does not coalesce queries.
+     *
+     * @param coalescingEnabled false to always execute the query on its own
+     * @return The current instance of QueryOptions for method chaining.
+     */
+    public QueryOptions withCoalescing(boolean coalescingEnabled) {
+        this.coalescingEnabled = coalescingEnabled;
+        return this;
+    }
+
+    /**
+     * Sets the time the query may take, from execution until its results have
+     * been read. The deadline is sent with the Flight calls, so the runtime stops
+     * the query once it has passed. Queries served from the result cache are not
+     * limited.
+     *
+     * @param timeout the maximum duration of the query
+     * @return The current instance of QueryOptions for method chaining.
+     */
+    public QueryOptions withTimeout(Duration timeout) {
+        if (timeout == null || timeout.isNegative() || timeout.isZero()) {
+            throw new IllegalArgumentException("timeout must be a positive duration");
+        }
+        this.timeoutNanos = timeout.toNanos();
+        return this;
+    }
+
+    /**
+     * Enables spilling to disk for this query. Endpoint streams are read as fast
+     * as the runtime sends them, and once more than the threshold of bytes is
+     * waiting for the consumer, further batches are written to a temporary Arrow
+     * IPC file in the client's spill directory. The consumer reads them back in
+     * order. Use it for large results read slower than they are sent.
+     *
+     * @param spillThreshold the number of bytes of batches kept in memory ahead
+     *                       of the consumer
+     * @return The current instance of QueryOptions for method chaining.
+     */
+    public QueryOptions withSpillThreshold(long spillThreshold) {
+        if (spillThreshold <= 0) {
+            throw new IllegalArgumentException("spillThreshold must be greater than 0");
+        }
+        this.spillThreshold = spillThreshold;
+        return this;
+    }
+
+    /**
+     * Sets the number of batches fetched ahead of the consumer for each result
+     * endpoint. A deeper queue keeps the network busy while the consumer works on
+     * a batch, at the cost of holding more batches in memory. Defaults to the
+     * client setting, see {@link SpiceClientBuilder#withPrefetchBatches(int)}.
+     *
+     * @param prefetchBatches the number of batches buffered per endpoint
+     * @return The current instance of QueryOptions for method chaining.
+     */
+    public QueryOptions withPrefetchBatches(int prefetchBatches) {
+        if (prefetchBatches <= 0) {
+            throw new IllegalArgumentException("prefetchBatches must be greater than 0");
+        }
+        this.prefetchBatches = prefetchBatches;
+        return this;
+    }
+
+    int getPrefetchBatches() {
+        return prefetchBatches;
+    }
+
+    long getSpillThreshold() {
+        return spillThreshold;
+    }
+
+    long getTimeoutNanos() {
+        return timeoutNanos;
+    }
+
+    boolean isCacheEnabled() {
+        return cacheEnabled;
+    }
+
+    boolean isCoalescingEnabled() {
+        return coalescingEnabled;
+    }
+
+    long getMemoryLimit() {
+        return memoryLimit;
+    }
+
+    boolean isPreserveOrder() {
+        return preserveOrder;
+    }
+}
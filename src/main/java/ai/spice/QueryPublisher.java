@@ -0,0 +1,168 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package ai.spice;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import org.apache.arrow.vector.VectorSchemaRoot;
+
+/**
+ * Publishes the batches of a query to a {@link Flow.Subscriber}, reading a new
+ * batch only when the subscriber has requested it.
+ *
+ * Every subscription runs the query again. The same VectorSchemaRoot instance
+ * is passed to every onNext call and is only valid until onNext returns.
+ */
+class QueryPublisher implements Flow.Publisher<VectorSchemaRoot> {
+
+    private final Supplier<CompletableFuture<QueryReader>> query;
+    private final Executor executor;
+
+    QueryPublisher(Supplier<CompletableFuture<QueryReader>> query, Executor executor) {
+        this.query = query;
+        this.executor = executor;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super VectorSchemaRoot> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber can't be null");
+        }
+
+        QuerySubscription subscription = new QuerySubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        this.query.get().whenComplete(subscription::onReader);
+    }
+
+    private final class QuerySubscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super VectorSchemaRoot> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger pendingDrains = new AtomicInteger();
+        private final AtomicReference<QueryReader> reader = new AtomicReference<>();
+
+        private volatile Throwable error = null;
+        private volatile boolean cancelled = false;
+        private boolean done = false;
+
+        QuerySubscription(Flow.Subscriber<? super VectorSchemaRoot> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                this.error = new IllegalArgumentException("Requested batch count must be positive (rule 3.9)");
+            } else {
+                this.demand.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+            }
+            this.scheduleDrain();
+        }
+
+        @Override
+        public void cancel() {
+            this.cancelled = true;
+            // stop the query now, a drain loop waiting for the next batch fails and
+            // closes the reader
+            QueryReader current = this.reader.get();
+            if (current != null) {
+                current.cancel();
+            }
+            this.scheduleDrain();
+        }
+
+        void onReader(QueryReader reader, Throwable error) {
+            if (error != null) {
+                this.error = error;
+            } else {
+                this.reader.set(reader);
+            }
+            this.scheduleDrain();
+        }
+
+        private void scheduleDrain() {
+            // only one drain loop runs at a time, signals raised while it runs are
+            // folded into it
+            if (this.pendingDrains.getAndIncrement() == 0) {
+                executor.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            int missed = 1;
+            do {
+                if (this.done || this.cancelled) {
+                    this.closeReader();
+                } else if (this.error != null) {
+                    this.finish(this.error);
+                } else {
+                    QueryReader current = this.reader.get();
+                    try {
+                        while (current != null && !this.cancelled && this.demand.get() > 0) {
+                            if (!current.loadNextBatch()) {
+                                this.finish(null);
+                                break;
+                            }
+                            this.demand.decrementAndGet();
+                            this.subscriber.onNext(current.getVectorSchemaRoot());
+                        }
+                    } catch (Throwable t) {
+                        if (this.cancelled) {
+                            // no signal is sent after cancel
+                            this.closeReader();
+                        } else {
+                            this.finish(t);
+                        }
+                    }
+                }
+                missed = this.pendingDrains.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void finish(Throwable failure) {
+            this.done = true;
+            this.closeReader();
+            if (failure != null) {
+                this.subscriber.onError(failure);
+            } else {
+                this.subscriber.onComplete();
+            }
+        }
+
+        private void closeReader() {
+            QueryReader current = this.reader.getAndSet(null);
+            if (current != null) {
+                try {
+                    current.close();
+                } catch (Exception e) {
+                    // the subscription is finished, there is no one left to report to
+                }
+            }
+        }
+    }
+}
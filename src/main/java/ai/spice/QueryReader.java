@@ -0,0 +1,55 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package ai.spice;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.ipc.ArrowReader;
+
+/**
+ * An ArrowReader over the results of a query that can be cancelled.
+ *
+ * {@link #cancel()} can be called from any thread, including while another
+ * thread is waiting in {@link #loadNextBatch()}. It stops the result streams,
+ * releases the batches fetched ahead of the caller and asks the runtime to stop
+ * working on the query. Reads after a cancellation fail with an IOException.
+ * The reader must still be closed to release the batch it last returned.
+ */
+public abstract class QueryReader extends ArrowReader {
+
+    QueryReader(BufferAllocator allocator) {
+        super(allocator);
+    }
+
+    /**
+     * Cancels the query. Has no effect once the reader is closed or the query has
+     * already been cancelled.
+     */
+    public abstract void cancel();
+
+    /**
+     * Returns whether the query has been cancelled
+     *
+     * @return true if {@link #cancel()} has been called
+     */
+    public abstract boolean isCancelled();
+}
@@ -0,0 +1,77 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package ai.spice;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The outcome of refreshing one dataset of a bulk refresh.
+ */
+public final class RefreshResult {
+    private final String dataset;
+    private final Throwable error;
+    private final Map<URI, Throwable> replicaErrors;
+
+    RefreshResult(String dataset, Throwable error, Map<URI, Throwable> replicaErrors) {
+        this.dataset = dataset;
+        this.error = error;
+        this.replicaErrors = Collections.unmodifiableMap(replicaErrors);
+    }
+
+    /**
+     * @return the name of the refreshed dataset
+     */
+    public String getDataset() {
+        return this.dataset;
+    }
+
+    /**
+     * @return true if the refresh was triggered on at least one runtime
+     */
+    public boolean isSuccess() {
+        return this.error == null;
+    }
+
+    /**
+     * @return the error the refresh failed with, or null if it succeeded
+     */
+    public Throwable getError() {
+        return this.error;
+    }
+
+    /**
+     * @return the errors of the runtimes that did not accept a refresh other
+     *         runtimes accepted, by HTTP address. Empty if every runtime accepted
+     *         it or if the refresh failed
+     */
+    public Map<URI, Throwable> getReplicaErrors() {
+        return this.replicaErrors;
+    }
+
+    @Override
+    public String toString() {
+        return this.isSuccess() ? this.dataset + ": refreshed" : this.dataset + ": " + this.error;
+    }
+}
@@ -0,0 +1,334 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package ai.spice;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.VectorLoader;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.VectorUnloader;
+import org.apache.arrow.vector.ipc.message.ArrowRecordBatch;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+/**
+ * Client-side cache of query results, keyed by normalized SQL text.
+ *
+ * Results are kept off-heap as Arrow record batches owned by the cache
+ * allocator, bounded by a byte budget with least recently used eviction and a
+ * time to live. A cache hit is replayed by referencing the cached buffers, so
+ * any number of readers can replay the same entry without copying it.
+ */
+class ResultCache implements AutoCloseable {
+
+    /**
+     * The batches of a complete query result. Entries are reference counted
+     * between the cache and the readers replaying them, and release their buffers
+     * once the last reference is dropped.
+     */
+    static final class Entry {
+        private final Schema schema;
+        private final List<ArrowRecordBatch> batches;
+        private final Set<String> tables;
+        private final long sizeInBytes;
+        private final AtomicInteger references = new AtomicInteger(1);
+
+        Entry(Schema schema, List<ArrowRecordBatch> batches, Set<String> tables, long sizeInBytes) {
+            this.schema = schema;
+            this.batches = batches;
+            this.tables = tables;
+            this.sizeInBytes = sizeInBytes;
+        }
+
+        boolean retain() {
+            while (true) {
+                int current = this.references.get();
+                if (current <= 0) {
+                    return false;
+                }
+                if (this.references.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        void release() {
+            if (this.references.decrementAndGet() == 0) {
+                this.batches.forEach(ArrowRecordBatch::close);
+            }
+        }
+    }
+
+    private final BufferAllocator allocator;
+    private final long maxBytes;
+    private final LruCache<String, Entry> entries;
+    private final Object invalidationLock = new Object();
+    // counts invalidations, so results read across one are not cached
+    private long generation = 0;
+
+    /**
+     * @param allocator the allocator owning the cached batches, closed with the
+     *                  cache
+     * @param maxBytes  the maximum number of bytes of cached batches
+     * @param ttlNanos  the time after which an entry expires
+     */
+    ResultCache(BufferAllocator allocator, long maxBytes, long ttlNanos) {
+        this.allocator = allocator;
+        this.maxBytes = maxBytes;
+        this.entries = new LruCache<>(maxBytes, entry -> entry.sizeInBytes, ttlNanos, Entry::release);
+    }
+
+    /**
+     * Returns a reader replaying a cached result
+     *
+     * @param sql           the SQL text of the query
+     * @param preserveOrder whether the batches must be in endpoint order
+     * @return a reader over the cached batches, or null if the query is not cached
+     */
+    QueryReader open(String sql, boolean preserveOrder) {
+        Entry entry = this.entries.get(SqlText.resultKey(sql, preserveOrder));
+        if (entry == null || !entry.retain()) {
+            return null;
+        }
+        return new ReplayReader(this.allocator, entry);
+    }
+
+    /**
+     * Wraps the reader of a query that missed the cache, so the result is cached
+     * once it has been read completely.
+     *
+     * @param sql           the SQL text of the query
+     * @param preserveOrder whether the batches are in endpoint order
+     * @param source        the reader over the query results
+     * @return a reader returning the same batches as the source
+     */
+    QueryReader record(String sql, boolean preserveOrder, QueryReader source) {
+        long startGeneration;
+        synchronized (this.invalidationLock) {
+            startGeneration = this.generation;
+        }
+        return new RecordingReader(this.allocator, SqlText.resultKey(sql, preserveOrder),
+                SqlText.referencedTables(sql), startGeneration, source);
+    }
+
+    /**
+     * Removes every entry that may read from a dataset
+     *
+     * @param dataset the name of the dataset
+     */
+    void invalidate(String dataset) {
+        synchronized (this.invalidationLock) {
+            this.generation++;
+            this.entries.removeIf((sql, entry) -> SqlText.mayReference(entry.tables, dataset));
+        }
+    }
+
+    @Override
+    public void close() {
+        this.entries.clear();
+        this.allocator.close();
+    }
+
+    /**
+     * Replays the batches of a cached entry.
+     */
+    private static final class ReplayReader extends QueryReader {
+        private final Entry entry;
+        private int nextBatch = 0;
+        private long bytesRead = 0;
+        private boolean released = false;
+        private volatile boolean cancelled = false;
+
+        ReplayReader(BufferAllocator allocator, Entry entry) {
+            super(allocator);
+            this.entry = entry;
+        }
+
+        @Override
+        public void cancel() {
+            this.cancelled = true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return this.cancelled;
+        }
+
+        @Override
+        public boolean loadNextBatch() throws IOException {
+            if (this.cancelled) {
+                throw new IOException("Query cancelled");
+            }
+            VectorSchemaRoot root = getVectorSchemaRoot();
+            if (this.nextBatch >= this.entry.batches.size()) {
+                root.setRowCount(0);
+                return false;
+            }
+
+            // VectorLoader retains the cached buffers, the entry keeps its own reference
+            ArrowRecordBatch batch = this.entry.batches.get(this.nextBatch++);
+            new VectorLoader(root).load(batch);
+            this.bytesRead += batch.computeBodyLength();
+            return true;
+        }
+
+        @Override
+        public long bytesRead() {
+            return this.bytesRead;
+        }
+
+        @Override
+        protected void closeReadSource() throws IOException {
+            if (!this.released) {
+                this.released = true;
+                this.entry.release();
+            }
+        }
+
+        @Override
+        protected Schema readSchema() throws IOException {
+            return this.entry.schema;
+        }
+    }
+
+    /**
+     * Passes the batches of a query through to the caller while keeping a
+     * reference to each of them, and adds them to the cache once the query has
+     * been read to the end within the byte budget. A result read while a dataset
+     * was refreshed may mix old and new rows, so it is dropped if the cache was
+     * invalidated since the query started.
+     */
+    private final class RecordingReader extends QueryReader {
+        private final String key;
+        private final Set<String> tables;
+        private final long startGeneration;
+        private final QueryReader source;
+        private List<ArrowRecordBatch> recorded = new ArrayList<>();
+        private long recordedBytes = 0;
+        private long bytesRead = 0;
+
+        RecordingReader(BufferAllocator allocator, String key, Set<String> tables, long startGeneration,
+                QueryReader source) {
+            super(allocator);
+            this.key = key;
+            this.tables = tables;
+            this.startGeneration = startGeneration;
+            this.source = source;
+        }
+
+        @Override
+        public void cancel() {
+            // the source fails the next read, so a cancelled result is never cached
+            this.source.cancel();
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return this.source.isCancelled();
+        }
+
+        @Override
+        public boolean loadNextBatch() throws IOException {
+            VectorSchemaRoot root = getVectorSchemaRoot();
+            if (!this.source.loadNextBatch()) {
+                root.setRowCount(0);
+                this.complete();
+                return false;
+            }
+
+            // move the batch out of the per-query allocator, so it can outlive the query
+            try (VectorSchemaRoot owned = Batches.transfer(this.source.getVectorSchemaRoot(),
+                    ResultCache.this.allocator)) {
+                ArrowRecordBatch batch = new VectorUnloader(owned).getRecordBatch();
+                try {
+                    new VectorLoader(root).load(batch);
+                } catch (RuntimeException e) {
+                    batch.close();
+                    throw e;
+                }
+                this.bytesRead += batch.computeBodyLength();
+                this.keep(batch);
+            }
+            return true;
+        }
+
+        private void keep(ArrowRecordBatch batch) {
+            if (this.recorded == null) {
+                batch.close();
+                return;
+            }
+
+            this.recordedBytes += batch.computeBodyLength();
+            if (this.recordedBytes > ResultCache.this.maxBytes) {
+                // the result can never fit in the cache, stop holding on to it
+                this.discard();
+                batch.close();
+                return;
+            }
+            this.recorded.add(batch);
+        }
+
+        private void complete() throws IOException {
+            if (this.recorded == null) {
+                return;
+            }
+            Entry entry = new Entry(getVectorSchemaRoot().getSchema(), this.recorded, this.tables,
+                    this.recordedBytes);
+            this.recorded = null;
+            synchronized (ResultCache.this.invalidationLock) {
+                if (ResultCache.this.generation == this.startGeneration) {
+                    ResultCache.this.entries.put(this.key, entry);
+                    return;
+                }
+            }
+            entry.release();
+        }
+
+        private void discard() {
+            if (this.recorded != null) {
+                this.recorded.forEach(ArrowRecordBatch::close);
+                this.recorded = null;
+            }
+        }
+
+        @Override
+        public long bytesRead() {
+            return this.bytesRead;
+        }
+
+        @Override
+        protected void closeReadSource() throws IOException {
+            this.discard();
+            this.source.close();
+        }
+
+        @Override
+        protected Schema readSchema() throws IOException {
+            return this.source.getVectorSchemaRoot().getSchema();
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package ai.spice;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowFileWriter;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.ipc.ArrowWriter;
+
+/**
+ * Writes the batches of a query result to files, rolling over to a new file
+ * once the current one reaches the size threshold.
+ *
+ * The reader fetches and decodes the result endpoints on the query executor,
+ * queueing a bounded number of batches ahead, while the exporting thread
+ * encodes them. Arrow IPC writers encode the reader's root in place and the
+ * Parquet writer receives its buffers by transfer, so batches are never
+ * copied. Files are named part-NNNNN with the extension of the format, and are
+ * deleted if the export fails.
+ */
+final class ResultExporter {
+
+    private final QueryReader reader;
+    private final Path directory;
+    private final ExportFormat format;
+    private final long maxFileBytes;
+    private final BufferAllocator allocator;
+    private final List<Path> files = new ArrayList<>();
+    private boolean hasBatch = false;
+    private long rows = 0;
+    private long batches = 0;
+    private long bytes = 0;
+
+    /**
+     * @param reader       the reader over the query results
+     * @param directory    the directory the files are written to, created if it
+     *                     does not exist
+     * @param format       the format of the files
+     * @param maxFileBytes the number of bytes of batches after which a new file is
+     *                     started
+     * @param allocator    the allocator used by the Parquet writer
+     */
+    ResultExporter(QueryReader reader, Path directory, ExportFormat format, long maxFileBytes,
+            BufferAllocator allocator) {
+        this.reader = reader;
+        this.directory = directory;
+        this.format = format;
+        this.maxFileBytes = maxFileBytes;
+        this.allocator = allocator;
+    }
+
+    /**
+     * Writes every batch of the reader
+     *
+     * @param startNanos the time the export started
+     * @return the outcome of the export
+     * @throws IOException if the results cannot be read or written
+     */
+    ExportResult run(long startNanos) throws IOException {
+        try {
+            Files.createDirectories(this.directory);
+            this.reader.getVectorSchemaRoot();
+            this.hasBatch = this.reader.loadNextBatch();
+            // an empty result still gets a file carrying its schema
+            do {
+                Path file = this.directory
+                        .resolve(String.format("part-%05d%s", this.files.size(), this.format.extension()));
+                if (this.format == ExportFormat.PARQUET) {
+                    // the Parquet writer does not create files without rows
+                    if (ParquetExport.write(this.allocator, this, file)) {
+                        this.files.add(file);
+                    }
+                } else {
+                    this.writeIpc(file);
+                }
+            } while (this.hasBatch);
+        } catch (IOException | RuntimeException e) {
+            this.deleteFiles(e);
+            throw e;
+        }
+        return new ExportResult(Collections.unmodifiableList(this.files), this.rows, this.batches, this.bytes,
+                System.nanoTime() - startNanos);
+    }
+
+    private void writeIpc(Path file) throws IOException {
+        VectorSchemaRoot root = this.reader.getVectorSchemaRoot();
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        // only files created by the export are deleted when it fails
+        this.files.add(file);
+        try (channel;
+                ArrowWriter writer = this.format == ExportFormat.ARROW_FILE
+                        ? new ArrowFileWriter(root, this.reader, channel)
+                        : new ArrowStreamWriter(root, this.reader, channel)) {
+            writer.start();
+            long fileBytes = 0;
+            while (this.hasBatch && fileBytes < this.maxFileBytes) {
+                // the writer encodes the batch the reader has just loaded into the same root
+                writer.writeBatch();
+                fileBytes += this.count(root);
+                this.advance();
+            }
+            writer.end();
+        }
+    }
+
+    boolean hasBatch() {
+        return this.hasBatch;
+    }
+
+    VectorSchemaRoot current() throws IOException {
+        return this.reader.getVectorSchemaRoot();
+    }
+
+    long maxFileBytes() {
+        return this.maxFileBytes;
+    }
+
+    /**
+     * Records a batch as written
+     *
+     * @return the size of the batch buffers in bytes
+     */
+    long count(VectorSchemaRoot root) {
+        long size = Batches.sizeInBytes(root);
+        this.rows += root.getRowCount();
+        this.batches++;
+        this.bytes += size;
+        return size;
+    }
+
+    /**
+     * Loads the next batch of the result into the reader's root
+     */
+    void advance() throws IOException {
+        this.hasBatch = this.reader.loadNextBatch();
+    }
+
+    private void deleteFiles(Exception failure) {
+        for (Path file : this.files) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                failure.addSuppressed(e);
+            }
+        }
+    }
+}
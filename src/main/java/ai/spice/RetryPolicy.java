@@ -0,0 +1,199 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package ai.spice;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Controls how the client retries failed calls to the runtime, how long a call
+ * may take, and whether slow query executions are hedged.
+ *
+ * Calls failing with UNAVAILABLE, UNKNOWN, TIMED_OUT or INTERNAL are retried
+ * after a random delay between zero and an exponentially growing ceiling,
+ * capped at the maximum backoff. Result streams are only retried until their
+ * schema has been received: once a batch has been returned to the caller, a
+ * failure is reported instead of being retried, and hedging never applies to
+ * streams.
+ */
+public class RetryPolicy {
+    private int maxRetries = 3;
+    private Duration initialBackoff = Duration.ofMillis(20);
+    private Duration maxBackoff = Duration.ofSeconds(2);
+    private Duration attemptTimeout = Duration.ZERO;
+    private Duration deadline = Duration.ZERO;
+    private boolean hedging = false;
+    private Duration hedgeDelay = Duration.ofMillis(50);
+
+    /**
+     * Sets the maximum number of retries after the first attempt. Defaults to 3.
+     *
+     * @param maxRetries the maximum number of retries
+     * @return The current instance of RetryPolicy for method chaining.
+     */
+    public RetryPolicy withMaxRetries(int maxRetries) {
+        if (maxRetries < 0) {
+            throw new IllegalArgumentException("maxRetries must be greater than or equal to 0");
+        }
+        this.maxRetries = maxRetries;
+        return this;
+    }
+
+    /**
+     * Sets the backoff between attempts. The ceiling of the delay starts at the
+     * initial backoff and doubles with every retry up to the maximum backoff.
+     * Defaults to 20 milliseconds and 2 seconds.
+     *
+     * @param initialBackoff the ceiling of the delay before the first retry
+     * @param maxBackoff     the largest delay between two attempts
+     * @return The current instance of RetryPolicy for method chaining.
+     */
+    public RetryPolicy withBackoff(Duration initialBackoff, Duration maxBackoff) {
+        if (!isPositive(initialBackoff)) {
+            throw new IllegalArgumentException("initialBackoff must be a positive duration");
+        }
+        if (maxBackoff == null || maxBackoff.compareTo(initialBackoff) < 0) {
+            throw new IllegalArgumentException("maxBackoff must not be shorter than initialBackoff");
+        }
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        return this;
+    }
+
+    /**
+     * Sets the time a single query execution or prepare call may take before it
+     * fails with TIMED_OUT and is retried. Does not apply to result streams, which
+     * may take as long as the result needs to be read. No limit by default.
+     *
+     * @param attemptTimeout the timeout of each attempt
+     * @return The current instance of RetryPolicy for method chaining.
+     */
+    public RetryPolicy withAttemptTimeout(Duration attemptTimeout) {
+        if (!isPositive(attemptTimeout)) {
+            throw new IllegalArgumentException("attemptTimeout must be a positive duration");
+        }
+        this.attemptTimeout = attemptTimeout;
+        return this;
+    }
+
+    /**
+     * Sets the time budget of a call across every attempt and backoff. Once the
+     * budget is spent no further attempt is made, and the attempt in progress is
+     * cut short. No limit by default.
+     *
+     * @param deadline the overall time budget of a call
+     * @return The current instance of RetryPolicy for method chaining.
+     */
+    public RetryPolicy withDeadline(Duration deadline) {
+        if (!isPositive(deadline)) {
+            throw new IllegalArgumentException("deadline must be a positive duration");
+        }
+        this.deadline = deadline;
+        return this;
+    }
+
+    /**
+     * Sets whether slow query executions are hedged. When enabled, a second
+     * execute is sent on another channel if the first has not completed after the
+     * 95th percentile of recent execution times, and whichever completes first
+     * is used while the other is cancelled. Prepared queries are not hedged.
+     * Disabled by default.
+     *
+     * @param hedging true to hedge query executions
+     * @return The current instance of RetryPolicy for method chaining.
+     */
+    public RetryPolicy withHedging(boolean hedging) {
+        this.hedging = hedging;
+        return this;
+    }
+
+    /**
+     * Sets the delay before a hedged execute is sent while too few executions
+     * have been timed to derive it, and the minimum delay afterwards. Defaults to
+     * 50 milliseconds.
+     *
+     * @param hedgeDelay the minimum delay before a hedged execute
+     * @return The current instance of RetryPolicy for method chaining.
+     */
+    public RetryPolicy withHedgeDelay(Duration hedgeDelay) {
+        if (!isPositive(hedgeDelay)) {
+            throw new IllegalArgumentException("hedgeDelay must be a positive duration");
+        }
+        this.hedgeDelay = hedgeDelay;
+        return this;
+    }
+
+    int getMaxRetries() {
+        return maxRetries;
+    }
+
+    boolean isHedging() {
+        return hedging;
+    }
+
+    long getHedgeDelayNanos() {
+        return hedgeDelay.toNanos();
+    }
+
+    long getAttemptTimeoutNanos() {
+        return attemptTimeout.toNanos();
+    }
+
+    long getDeadlineNanos() {
+        return deadline.toNanos();
+    }
+
+    /**
+     * @param failedAttempts the number of attempts made so far
+     * @param elapsedMillis  the time since the first attempt started
+     * @return whether the call should fail instead of being attempted again
+     */
+    boolean shouldStop(int failedAttempts, long elapsedMillis) {
+        if (failedAttempts > this.maxRetries) {
+            return true;
+        }
+        return !this.deadline.isZero() && elapsedMillis >= this.deadline.toMillis();
+    }
+
+    /**
+     * @param failedAttempts the number of attempts made so far
+     * @param elapsedMillis  the time since the first attempt started
+     * @return the delay before the next attempt, never past the deadline
+     */
+    long backoffMillis(int failedAttempts, long elapsedMillis) {
+        long initial = this.initialBackoff.toMillis();
+        long max = this.maxBackoff.toMillis();
+        int shift = Math.min(failedAttempts - 1, 62);
+        long ceiling = initial > (max >> shift) ? max : initial << shift;
+        long delay = ThreadLocalRandom.current().nextLong(ceiling + 1);
+
+        if (!this.deadline.isZero()) {
+            delay = Math.min(delay, Math.max(0, this.deadline.toMillis() - elapsedMillis));
+        }
+        return delay;
+    }
+
+    private static boolean isPositive(Duration duration) {
+        return duration != null && !duration.isNegative() && !duration.isZero();
+    }
+}
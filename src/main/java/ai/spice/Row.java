@@ -0,0 +1,177 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package ai.spice;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+/**
+ * A view of the current row of a {@link RowIterator}. The same instance is
+ * returned for every row and reads directly from the batch vectors, so it is
+ * only valid until the iterator advances. Copy the values out to keep them.
+ *
+ * Primitive accessors do not box. Reading a null value as a primitive throws
+ * IllegalStateException, check {@link #isNull(int)} first for nullable
+ * columns.
+ */
+public final class Row {
+    private VectorSchemaRoot root;
+    private Schema schema;
+    private List<FieldVector> vectors;
+    private Map<String, Integer> columnIndexes;
+    private int index;
+
+    Row() {
+    }
+
+    void bind(VectorSchemaRoot root) {
+        if (root != this.root || !root.getSchema().equals(this.schema)) {
+            this.root = root;
+            this.schema = root.getSchema();
+            this.columnIndexes = null;
+        }
+        // the root keeps its vectors across batches, but re-read them in case the
+        // stream replaced the schema
+        this.vectors = root.getFieldVectors();
+    }
+
+    void position(int index) {
+        this.index = index;
+    }
+
+    /**
+     * @return the schema of the row
+     */
+    public Schema getSchema() {
+        return this.schema;
+    }
+
+    /**
+     * @return the number of columns
+     */
+    public int getColumnCount() {
+        return this.vectors.size();
+    }
+
+    /**
+     * Returns the position of a column
+     *
+     * @param name the column name
+     * @return the zero-based column index
+     * @throws IllegalArgumentException if there is no column with that name
+     */
+    public int getColumnIndex(String name) {
+        if (this.columnIndexes == null) {
+            Map<String, Integer> indexes = new HashMap<>();
+            for (int i = 0; i < this.schema.getFields().size(); i++) {
+                indexes.putIfAbsent(this.schema.getFields().get(i).getName(), i);
+            }
+            this.columnIndexes = indexes;
+        }
+        Integer column = this.columnIndexes.get(name);
+        if (column == null) {
+            throw new IllegalArgumentException("No column named " + name);
+        }
+        return column;
+    }
+
+    public boolean isNull(int column) {
+        return this.vectors.get(column).isNull(this.index);
+    }
+
+    public boolean isNull(String column) {
+        return this.isNull(this.getColumnIndex(column));
+    }
+
+    public long getLong(int column) {
+        return Values.getLong(this.vectors.get(column), this.index);
+    }
+
+    public long getLong(String column) {
+        return this.getLong(this.getColumnIndex(column));
+    }
+
+    public int getInt(int column) {
+        return Values.getInt(this.vectors.get(column), this.index);
+    }
+
+    public int getInt(String column) {
+        return this.getInt(this.getColumnIndex(column));
+    }
+
+    public double getDouble(int column) {
+        return Values.getDouble(this.vectors.get(column), this.index);
+    }
+
+    public double getDouble(String column) {
+        return this.getDouble(this.getColumnIndex(column));
+    }
+
+    public boolean getBoolean(int column) {
+        return Values.getBoolean(this.vectors.get(column), this.index);
+    }
+
+    public boolean getBoolean(String column) {
+        return this.getBoolean(this.getColumnIndex(column));
+    }
+
+    /**
+     * @param column the zero-based column index
+     * @return the value as a string, or null if the value is null
+     */
+    public String getString(int column) {
+        return Values.getString(this.vectors.get(column), this.index);
+    }
+
+    public String getString(String column) {
+        return this.getString(this.getColumnIndex(column));
+    }
+
+    /**
+     * @param column the zero-based column index
+     * @return the value as returned by the vector's getObject, or null
+     */
+    public Object getObject(int column) {
+        return this.vectors.get(column).getObject(this.index);
+    }
+
+    public Object getObject(String column) {
+        return this.getObject(this.getColumnIndex(column));
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("Row{");
+        for (int i = 0; i < this.vectors.size(); i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(this.vectors.get(i).getName()).append('=').append(this.getObject(i));
+        }
+        return builder.append('}').toString();
+    }
+}
@@ -0,0 +1,143 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package ai.spice;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.apache.arrow.flight.FlightStream;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowReader;
+
+/**
+ * Iterates over the rows of a query result, loading one batch at a time into
+ * the result's single VectorSchemaRoot. Every call to next() returns the same
+ * {@link Row} positioned on the next row, so iterating allocates nothing per
+ * row.
+ *
+ * <pre>
+ * try (RowIterator rows = RowIterator.of(client.query(sql, new QueryOptions()))) {
+ *     while (rows.hasNext()) {
+ *         Row row = rows.next();
+ *         total += row.getDouble("total_amount");
+ *     }
+ * }
+ * </pre>
+ *
+ * Closing the iterator closes the underlying reader or stream.
+ */
+public final class RowIterator implements Iterator<Row>, AutoCloseable {
+    private final BatchSource source;
+    private final Row row = new Row();
+    private int rowCount = 0;
+    private int nextRow = 0;
+    private boolean finished = false;
+
+    private RowIterator(BatchSource source) {
+        this.source = source;
+    }
+
+    /**
+     * @param reader the reader returned by query(String, QueryOptions)
+     * @return an iterator over the rows of the reader
+     */
+    public static RowIterator of(ArrowReader reader) {
+        return new RowIterator(BatchSource.of(reader));
+    }
+
+    /**
+     * @param stream the stream returned by query(String)
+     * @return an iterator over the rows of the stream
+     */
+    public static RowIterator of(FlightStream stream) {
+        return new RowIterator(BatchSource.of(stream));
+    }
+
+    /**
+     * Loads the next batch when the current one is exhausted
+     *
+     * @throws UncheckedIOException if the next batch can't be read
+     */
+    @Override
+    public boolean hasNext() {
+        while (this.nextRow >= this.rowCount) {
+            if (this.finished) {
+                return false;
+            }
+            try {
+                if (!this.source.next()) {
+                    this.finished = true;
+                    return false;
+                }
+                VectorSchemaRoot root = this.source.root();
+                this.row.bind(root);
+                this.rowCount = root.getRowCount();
+                this.nextRow = 0;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Row next() {
+        if (!this.hasNext()) {
+            throw new NoSuchElementException();
+        }
+        this.row.position(this.nextRow++);
+        return this.row;
+    }
+
+    /**
+     * Returns a sequential stream over the remaining rows. Closing the stream
+     * closes this iterator. As with the iterator, each element is the same Row
+     * instance and must not be retained.
+     *
+     * @return a stream of the remaining rows
+     */
+    public Stream<Row> stream() {
+        return StreamSupport
+                .stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> {
+                    try {
+                        this.close();
+                    } catch (RuntimeException e) {
+                        throw e;
+                    } catch (Exception e) {
+                        throw new IllegalStateException("Failed to close query results due to error: " + e, e);
+                    }
+                });
+    }
+
+    @Override
+    public void close() throws Exception {
+        this.finished = true;
+        this.source.close();
+    }
+}
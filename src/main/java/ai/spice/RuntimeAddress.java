@@ -0,0 +1,114 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package ai.spice;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The Flight and HTTP addresses of one Spice runtime, used to spread a client
+ * over several replicas.
+ */
+public final class RuntimeAddress {
+    private final URI flightAddress;
+    private final URI httpAddress;
+
+    private RuntimeAddress(URI flightAddress, URI httpAddress) {
+        this.flightAddress = flightAddress;
+        this.httpAddress = httpAddress;
+    }
+
+    /**
+     * @param flightAddress the Flight address of the runtime
+     * @param httpAddress   the HTTP address of the runtime, or null if dataset
+     *                      refreshes are not sent to it
+     * @return the runtime address
+     */
+    public static RuntimeAddress of(URI flightAddress, URI httpAddress) {
+        if (flightAddress == null) {
+            throw new IllegalArgumentException("flightAddress can't be null");
+        }
+        return new RuntimeAddress(flightAddress, httpAddress);
+    }
+
+    /**
+     * Reads runtime addresses from a file, one runtime per line: the Flight
+     * address, optionally followed by whitespace and the HTTP address. Blank
+     * lines and lines starting with # are ignored.
+     *
+     * @param file the file listing the runtimes
+     * @return the runtime addresses, in file order
+     * @throws IOException if the file can't be read or holds an invalid address
+     */
+    public static List<RuntimeAddress> fromFile(Path file) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("file can't be null");
+        }
+
+        List<RuntimeAddress> addresses = new ArrayList<>();
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            lineNumber++;
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+
+            String[] parts = trimmed.split("\\s+");
+            if (parts.length > 2) {
+                throw new IOException(String.format("%s:%d: expected a Flight address and an optional HTTP address",
+                        file, lineNumber));
+            }
+            try {
+                addresses.add(new RuntimeAddress(new URI(parts[0]), parts.length > 1 ? new URI(parts[1]) : null));
+            } catch (URISyntaxException e) {
+                throw new IOException(String.format("%s:%d: %s", file, lineNumber, e.getMessage()), e);
+            }
+        }
+        return addresses;
+    }
+
+    /**
+     * @return the Flight address of the runtime
+     */
+    public URI getFlightAddress() {
+        return this.flightAddress;
+    }
+
+    /**
+     * @return the HTTP address of the runtime, or null
+     */
+    public URI getHttpAddress() {
+        return this.httpAddress;
+    }
+
+    @Override
+    public String toString() {
+        return this.httpAddress != null ? this.flightAddress + " " + this.httpAddress : this.flightAddress.toString();
+    }
+}
@@ -22,52 +22,120 @@ SOFTWARE.
 
 package ai.spice;
 
+import java.io.IOException;
 import java.net.ConnectException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
+import org.apache.arrow.flight.CallOption;
+import org.apache.arrow.flight.CallOptions;
 import org.apache.arrow.flight.CallStatus;
+import org.apache.arrow.flight.CancelFlightInfoRequest;
 import org.apache.arrow.flight.FlightClient;
 import org.apache.arrow.flight.FlightClient.Builder;
+import org.apache.arrow.flight.FlightClientMiddleware;
+import org.apache.arrow.flight.FlightEndpoint;
 import org.apache.arrow.flight.FlightStream;
 import org.apache.arrow.flight.Location;
 import org.apache.arrow.flight.Ticket;
 import org.apache.arrow.flight.auth2.BasicAuthCredentialWriter;
-import org.apache.arrow.flight.auth2.ClientBearerHeaderHandler;
-import org.apache.arrow.flight.auth2.ClientIncomingAuthHeaderMiddleware;
 import org.apache.arrow.flight.grpc.CredentialCallOption;
 import org.apache.arrow.flight.FlightInfo;
 import org.apache.arrow.flight.FlightRuntimeException;
+import org.apache.arrow.flight.FlightStatusCode;
+import org.apache.arrow.memory.BufferAllocator;
 import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.VarBinaryVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.types.pojo.Schema;
 
 import com.github.rholder.retry.RetryException;
 import com.github.rholder.retry.Retryer;
 import com.github.rholder.retry.RetryerBuilder;
-import com.github.rholder.retry.StopStrategies;
-import com.github.rholder.retry.WaitStrategies;
 import com.google.common.base.Strings;
 import com.google.gson.Gson;
 
-import org.apache.arrow.flight.sql.FlightSqlClient;
+import io.grpc.ClientInterceptor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Client to execute SQL queries against Spice.ai Cloud and Spice.ai OSS
  */
 public class SpiceClient implements AutoCloseable {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(SpiceClient.class);
+    private static final String REUSE_CONNECTION_SCHEME = "arrow-flight-reuse-connection";
+    private static final AtomicInteger CLIENT_COUNTER = new AtomicInteger();
+    private static final Gson GSON = new Gson();
+    private static final double HEDGE_PERCENTILE = 0.95;
+
     private String appId;
     private String apiKey;
     private URI flightAddress;
-    private URI httpAddress;
-    private int maxRetries;
-    private FlightSqlClient flightClient;
-    private CredentialCallOption authCallOptions = null;
+    private final List<URI> httpAddresses;
+    private final RetryPolicy retryPolicy;
+    private final Retryer<Object> retryer;
+    private final LatencyWindow executeLatencies = new LatencyWindow(256, 20);
+    private BufferAllocator allocator;
+    private long queryMemoryLimit;
+    private int prefetchBatches;
+    private final AtomicLong queryCounter = new AtomicLong();
+    private final ChannelPool channels;
+    private FlightClientMiddleware.Factory middlewareFactory = null;
+    private TokenStore tokenStore = null;
+    private final Map<URI, ChannelPool> endpointChannels = new ConcurrentHashMap<>();
+    private final int channelCount;
+    private final ChannelSelection channelSelection;
+    private final LruCache<String, PreparedQuery.Statement> preparedStatements;
+    private final ResultCache resultCache;
+    private final MetadataCache metadataCache;
+    private final QueryCoalescer coalescer;
+    private final ExecutorService queryExecutor;
+    private final ExecutorService callbackExecutor;
+    private final ScheduledExecutorService retryScheduler;
+    private final HttpClient httpClient;
+    private final int refreshConcurrency;
+    private final ClientMetrics metrics;
+    private final Path spillDirectory;
+    private final Compression requestCompression;
+    private final ClientInterceptor transportTracing;
 
     /**
      * Returns a new instance of SpiceClientBuilder
@@ -93,54 +161,125 @@ public class SpiceClient implements AutoCloseable {
      * @param maxRetries    the maximum number of connection retries for the client
      */
     public SpiceClient(String appId, String apiKey, URI flightAddress, URI httpAddress, int maxRetries, String userAgent) {
-        this.appId = appId;
-        this.apiKey = apiKey;
-        this.maxRetries = maxRetries;
-        this.httpAddress = httpAddress;
+        this(new SpiceClientBuilder(appId, apiKey, flightAddress, httpAddress, maxRetries, userAgent));
+    }
 
-        // Arrow Flight requires URI to be grpc protocol, convert http/https for
-        // convinience
-        if (flightAddress.getScheme().equals("https")) {
-            this.flightAddress = URI.create("grpc+tls://" + flightAddress.getHost() + ":" + flightAddress.getPort());
-        } else if (flightAddress.getScheme().equals("http")) {
-            this.flightAddress = URI.create("grpc+tcp://" + flightAddress.getHost() + ":" + flightAddress.getPort());
+    /**
+     * Constructs a new SpiceClient instance from the settings of a builder
+     *
+     * @param config the builder holding the client settings
+     */
+    SpiceClient(SpiceClientBuilder config) {
+        this.appId = config.appId;
+        this.apiKey = config.apiKey;
+        this.retryPolicy = config.retryPolicy != null ? config.retryPolicy
+                : new RetryPolicy().withMaxRetries(config.maxRetries);
+        List<RuntimeAddress> runtimes = config.runtimes != null ? config.runtimes
+                : Collections.singletonList(RuntimeAddress.of(config.flightAddress, config.httpAddress));
+        this.httpAddresses = new ArrayList<>();
+        for (RuntimeAddress runtime : runtimes) {
+            if (runtime.getHttpAddress() != null) {
+                this.httpAddresses.add(runtime.getHttpAddress());
+            }
+        }
+        this.flightAddress = toFlightUri(runtimes.get(0).getFlightAddress());
+        this.queryMemoryLimit = config.queryMemoryLimit;
+        this.prefetchBatches = config.prefetchBatches;
+        this.metrics = config.metrics;
+        this.spillDirectory = config.spillDirectory;
+        this.requestCompression = config.requestCompression;
+        // wire sizes are only traced when someone records them
+        this.transportTracing = config.metrics != ClientMetrics.NOOP ? TransportCallOption.tracing(config.metrics)
+                : null;
+        if (config.allocator != null) {
+            this.allocator = config.allocator.newChildAllocator("spice-client-" + CLIENT_COUNTER.incrementAndGet(),
+                    0, config.memoryLimit);
+        } else {
+            this.allocator = new RootAllocator(config.memoryLimit);
+        }
+        this.metrics.bindAllocator(this.allocator);
+        this.retryer = this.newRetryer();
+        this.preparedStatements = config.preparedStatementCacheSize > 0
+                ? new LruCache<>(config.preparedStatementCacheSize, PreparedQuery.Statement::release)
+                : null;
+        this.resultCache = config.resultCacheMaxBytes > 0
+                ? new ResultCache(this.allocator.newChildAllocator("spice-result-cache", 0, Long.MAX_VALUE),
+                        config.resultCacheMaxBytes, config.resultCacheTtl.toNanos())
+                : null;
+        this.metadataCache = config.metadataCacheMaxEntries > 0
+                ? new MetadataCache(config.metadataCacheMaxEntries, config.metadataCacheTtl.toNanos())
+                : null;
+        this.coalescer = config.coalescingMaxReplayBytes > 0
+                ? new QueryCoalescer(this.allocator.newChildAllocator("spice-coalescer", 0, Long.MAX_VALUE),
+                        config.coalescingMaxReplayBytes, config.spillDirectory)
+                : null;
+        if (config.virtualThreads && VirtualThreads.isAvailable()) {
+            this.queryExecutor = VirtualThreads.newExecutor("spice-query");
+            this.callbackExecutor = VirtualThreads.newExecutor("spice-callback");
         } else {
-            this.flightAddress = flightAddress;
+            if (config.virtualThreads) {
+                LOGGER.debug("Virtual threads are not available, using a pool of {} platform threads",
+                        config.queryParallelism);
+            }
+            this.queryExecutor = Executors.newFixedThreadPool(config.queryParallelism,
+                    daemonThreadFactory("spice-query"));
+            this.callbackExecutor = Executors.newCachedThreadPool(daemonThreadFactory("spice-callback"));
         }
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(daemonThreadFactory("spice-retry"));
+        // one client for every runtime HTTP call, so connections are kept alive and
+        // shared instead of being set up for each refresh
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .executor(this.callbackExecutor)
+                .build();
+        this.refreshConcurrency = config.refreshConcurrency;
 
-        Builder builder = FlightClient.builder(new RootAllocator(Long.MAX_VALUE), new Location(this.flightAddress));
+        this.channelCount = config.channels;
+        this.channelSelection = config.channelSelection;
 
-        if (Strings.isNullOrEmpty(apiKey)) {
-            this.flightClient = new FlightSqlClient(builder.build());
-            return;
-        }
+        if (!Strings.isNullOrEmpty(apiKey)) {
+            // prepare additional headers to insert into Flight requests
+            Map<String, String> headers = new HashMap<>();
+            String uaString;
+            if (Strings.isNullOrEmpty(config.userAgent)) {
+                uaString = Config.getUserAgent();
+            } else {
+                // Prepend the user-supplied user agent string with the Spice.ai user agent
+                uaString = config.userAgent + " " + Config.getUserAgent();
+            }
+            headers.put("User-Agent", uaString);
 
-        // prepare additional headers to insert into Flight requests
-        Map<String, String> headers = new HashMap<>();
-        String uaString;
-        if (Strings.isNullOrEmpty(userAgent)) {
-            uaString = Config.getUserAgent();
-        } else {
-            // Prepend the user-supplied user agent string with the Spice.ai user agent
-            uaString = userAgent + " " + Config.getUserAgent();
-        }
-        headers.put("User-Agent", uaString);
+            // builder can't chain .intercept()s, so we need to chain the middleware
+            // factories instead
+            this.middlewareFactory = new HeaderAuthMiddlewareFactory(null, headers, config.callHeaders);
 
-        final ClientIncomingAuthHeaderMiddleware.Factory authFactory = new ClientIncomingAuthHeaderMiddleware.Factory(
-                new ClientBearerHeaderHandler());
+            // each runtime issues its own bearer token, shared by the clients sharing a token
+            // store
+            this.tokenStore = config.tokenStore;
+        } else if (config.callHeaders != null) {
+            this.middlewareFactory = new HeaderAuthMiddlewareFactory(null, Collections.emptyMap(), config.callHeaders);
+        }
 
-        // builder can't chain .intercept()s, so we need to chain the middleware
-        // factories instead
-        final HeaderAuthMiddlewareFactory combinedFactory = new HeaderAuthMiddlewareFactory(authFactory, headers);
+        this.channels = this.createChannelPool(runtimes);
 
-        final FlightClient client = builder.intercept(combinedFactory).build();
-        client.handshake(new CredentialCallOption(new BasicAuthCredentialWriter(this.appId, this.apiKey)));
-        this.authCallOptions = authFactory.getCredentialCallOption();
-        this.flightClient = new FlightSqlClient(client);
+        if (this.tokenStore != null) {
+            // the handshakes run in the background, the first call to each runtime waits
+            // for its own
+            for (ChannelPool.Node node : this.channels.nodes()) {
+                node.token().token(() -> this.handshake(node), this.callbackExecutor);
+            }
+        }
     }
 
     /**
-     * Executes a sql query
+     * Executes a sql query. Only the first endpoint of the result is read, use
+     * {@link #query(String, QueryOptions)} for results split across several
+     * endpoints.
+     *
+     * The FlightStream is read by the caller, so no batch is received while the
+     * caller processes the current one. The reader returned by
+     * {@link #query(String, QueryOptions)} reads batches ahead of the caller in
+     * the background, which is faster for consumers doing heavy work per batch.
      *
      * @param sql the SQL query to execute
      * @return a FlightStream with the query results
@@ -151,12 +290,500 @@ public class SpiceClient implements AutoCloseable {
             throw new IllegalArgumentException("No SQL query provided");
         }
 
-        try {
-            return this.queryInternalWithRetry(sql);
-        } catch (RetryException e) {
-            Throwable err = e.getLastFailedAttempt().getExceptionCause();
-            throw new ExecutionException("Failed to execute query due to error: " + err.toString(), err);
+        final long startNanos = System.nanoTime();
+        Execution execution = this.callWithRetry(this.executeCall(sql, 0));
+        this.metrics.flightInfoReceived(System.nanoTime() - startNanos);
+        return this.callWithRetry(this.firstEndpointStream(execution));
+    }
+
+    /**
+     * Executes a sql query and fetches every endpoint of the result in parallel.
+     * Unlike {@link #query(String)}, which only reads the first endpoint, the
+     * returned reader yields the batches of all endpoints, and each endpoint is
+     * read from the locations it advertises.
+     *
+     * The batches are owned by a child allocator created for this query, bounded
+     * by the query memory limit, and released when the reader is closed.
+     *
+     * When the result cache is enabled, a cached result for the same normalized
+     * SQL is replayed without contacting the runtime, and a result read to the
+     * end is added to the cache.
+     *
+     * The returned reader can be cancelled from another thread, which stops the
+     * result streams and asks the runtime to cancel the query.
+     *
+     * @param sql     the SQL query to execute
+     * @param options the options controlling how the results are fetched, or null
+     *                for the defaults
+     * @return a QueryReader over the batches of every result endpoint
+     * @throws ExecutionException if there is an error executing the query
+     */
+    public QueryReader query(String sql, QueryOptions options) throws ExecutionException {
+        if (Strings.isNullOrEmpty(sql)) {
+            throw new IllegalArgumentException("No SQL query provided");
+        }
+
+        QueryReader cached = this.openCached(sql, options);
+        if (cached != null) {
+            return cached;
+        }
+
+        if (this.isCoalesced(options)) {
+            CompletableFuture<QueryReader> shared = this.coalescer.query(coalescingKey(sql, options),
+                    this.memoryLimit(options), () -> {
+                        try {
+                            return CompletableFuture.completedFuture(this.executeQuery(sql, options));
+                        } catch (ExecutionException e) {
+                            return CompletableFuture.failedFuture(e);
+                        }
+                    });
+            try {
+                return shared.get();
+            } catch (InterruptedException err) {
+                Thread.currentThread().interrupt();
+                // a reader handed over after the interrupt is closed, leaving the shared query
+                shared.thenAccept(QueryCoalescer::closeQuietly);
+                throw new ExecutionException("Interrupted while waiting for a shared query", err);
+            } catch (ExecutionException err) {
+                throw asExecutionException(unwrap(err.getCause()));
+            }
+        }
+        return this.executeQuery(sql, options);
+    }
+
+    private QueryReader executeQuery(String sql, QueryOptions options) throws ExecutionException {
+        long startNanos = System.nanoTime();
+        Execution execution = this.callWithRetry(this.executeCall(sql, timeoutNanos(options)));
+        return this.readQueryResults(sql, execution, options, startNanos);
+    }
+
+    /**
+     * Executes a sql query without blocking the calling thread. The query runs on
+     * the client's query executor, and retries are scheduled after the backoff
+     * delay instead of sleeping.
+     *
+     * @param sql the SQL query to execute
+     * @return a future completed with a FlightStream with the query results, or
+     *         completed exceptionally with an ExecutionException
+     */
+    public CompletableFuture<FlightStream> queryAsync(String sql) {
+        if (Strings.isNullOrEmpty(sql)) {
+            throw new IllegalArgumentException("No SQL query provided");
+        }
+
+        final long startNanos = System.nanoTime();
+        return this.callWithRetryAsync(this.executeCall(sql, 0))
+                .thenCompose(execution -> {
+                    this.metrics.flightInfoReceived(System.nanoTime() - startNanos);
+                    return this.callWithRetryAsync(this.firstEndpointStream(execution));
+                });
+    }
+
+    /**
+     * Executes a sql query without blocking the calling thread and fetches every
+     * endpoint of the result in parallel.
+     *
+     * @param sql     the SQL query to execute
+     * @param options the options controlling how the results are fetched, or null
+     *                for the defaults
+     * @return a future completed with a QueryReader over the batches of every
+     *         result endpoint, or completed exceptionally with an
+     *         ExecutionException
+     */
+    public CompletableFuture<QueryReader> queryAsync(String sql, QueryOptions options) {
+        if (Strings.isNullOrEmpty(sql)) {
+            throw new IllegalArgumentException("No SQL query provided");
+        }
+
+        QueryReader cached = this.openCached(sql, options);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        if (this.isCoalesced(options)) {
+            return this.coalescer
+                    .query(coalescingKey(sql, options), this.memoryLimit(options),
+                            () -> this.executeQueryAsync(sql, options))
+                    .handle((reader, error) -> {
+                        if (error != null) {
+                            throw new CompletionException(asExecutionException(unwrap(error)));
+                        }
+                        return reader;
+                    });
+        }
+        return this.executeQueryAsync(sql, options);
+    }
+
+    private CompletableFuture<QueryReader> executeQueryAsync(String sql, QueryOptions options) {
+        final long startNanos = System.nanoTime();
+        return this.callWithRetryAsync(this.executeCall(sql, timeoutNanos(options)))
+                .thenApply(execution -> this.readQueryResults(sql, execution, options, startNanos));
+    }
+
+    /**
+     * Returns a publisher of the query batches. The query is executed for every
+     * subscriber, and a batch is only read from the stream once the subscriber
+     * has requested it. The VectorSchemaRoot passed to onNext is reused for every
+     * batch and is only valid until onNext returns.
+     *
+     * @param sql     the SQL query to execute
+     * @param options the options controlling how the results are fetched, or null
+     *                for the defaults
+     * @return a publisher of the query batches
+     */
+    public Flow.Publisher<VectorSchemaRoot> queryPublisher(String sql, QueryOptions options) {
+        if (Strings.isNullOrEmpty(sql)) {
+            throw new IllegalArgumentException("No SQL query provided");
+        }
+
+        // subscribers are driven from a separate executor, as reading a batch waits on
+        // the endpoint tasks running on the query executor
+        return new QueryPublisher(() -> this.queryAsync(sql, options), this.callbackExecutor);
+    }
+
+    /**
+     * Executes a sql query and writes its results to files with the default
+     * export options
+     *
+     * @param sql       the SQL query to execute
+     * @param directory the directory the files are written to
+     * @param format    the format of the files
+     * @return the files written and the size of the export
+     * @throws ExecutionException if there is an error executing the query or
+     *                            writing the files
+     */
+    public ExportResult export(String sql, Path directory, ExportFormat format) throws ExecutionException {
+        return this.export(sql, directory, format, null);
+    }
+
+    /**
+     * Executes a sql query and writes its results to files named part-NNNNN in a
+     * directory, created if it does not exist. Existing files are never
+     * overwritten.
+     *
+     * The result endpoints are fetched and decoded in parallel on the query
+     * executor, a bounded number of batches ahead of the calling thread, which
+     * encodes them without copying. A new file is started once the current one
+     * reaches the size threshold. The files written are deleted if the export
+     * fails.
+     *
+     * @param sql       the SQL query to execute
+     * @param directory the directory the files are written to
+     * @param format    the format of the files
+     * @param options   the options controlling the export, or null for the
+     *                  defaults
+     * @return the files written and the size of the export
+     * @throws ExecutionException if there is an error executing the query or
+     *                            writing the files
+     */
+    public ExportResult export(String sql, Path directory, ExportFormat format, ExportOptions options)
+            throws ExecutionException {
+        if (Strings.isNullOrEmpty(sql)) {
+            throw new IllegalArgumentException("No SQL query provided");
+        }
+        if (directory == null) {
+            throw new IllegalArgumentException("directory can't be null");
+        }
+        if (format == null) {
+            throw new IllegalArgumentException("format can't be null");
+        }
+        if (format == ExportFormat.PARQUET && !ParquetExport.isAvailable()) {
+            throw new ExecutionException("Parquet export requires org.apache.arrow:arrow-dataset on the classpath",
+                    null);
+        }
+
+        final ExportOptions exportOptions = options != null ? options : new ExportOptions();
+        long startNanos = System.nanoTime();
+        try (BufferAllocator exportAllocator = this.allocator
+                .newChildAllocator("spice-export-" + this.queryCounter.incrementAndGet(), 0, Long.MAX_VALUE);
+                QueryReader reader = this.query(sql, exportOptions.getQueryOptions())) {
+            return new ResultExporter(reader, directory, format, exportOptions.getMaxFileBytes(), exportAllocator)
+                    .run(startNanos);
+        } catch (IOException e) {
+            throw new ExecutionException("Failed to export query results due to error: " + e.toString(), e);
+        }
+    }
+
+    /**
+     * Polls a query on a schedule and delivers the rows past the last watermark
+     * with the default subscription options
+     *
+     * @param sql             the SQL query to poll
+     * @param watermarkColumn the timestamp or monotonically increasing key column
+     *                        of the query results
+     * @param listener        the listener receiving the new rows
+     * @return the Subscription, which must be closed to stop polling
+     */
+    public Subscription subscribe(String sql, String watermarkColumn, SubscriptionListener listener) {
+        return this.subscribe(sql, watermarkColumn, null, listener);
+    }
+
+    /**
+     * Polls a query on a schedule and delivers the rows past the last watermark.
+     * Each poll wraps the query in a predicate on the watermark column, so only
+     * rows newer than the largest value seen so far are transferred. The first
+     * poll starts right away.
+     *
+     * @param sql             the SQL query to poll
+     * @param watermarkColumn the timestamp or monotonically increasing key column
+     *                        of the query results
+     * @param options         the options controlling the polling, or null for the
+     *                        defaults
+     * @param listener        the listener receiving the new rows
+     * @return the Subscription, which must be closed to stop polling
+     */
+    public Subscription subscribe(String sql, String watermarkColumn, SubscriptionOptions options,
+            SubscriptionListener listener) {
+        if (Strings.isNullOrEmpty(sql)) {
+            throw new IllegalArgumentException("No SQL query provided");
+        }
+        if (Strings.isNullOrEmpty(watermarkColumn)) {
+            throw new IllegalArgumentException("No watermark column provided");
+        }
+        if (listener == null) {
+            throw new IllegalArgumentException("listener can't be null");
+        }
+
+        Subscription.Source source = new Subscription.Source() {
+            @Override
+            public QueryReader query(String query) throws ExecutionException {
+                // the query text changes with the watermark, and an unchanged one must not
+                // be answered from the result cache
+                return SpiceClient.this.query(query, new QueryOptions().withCache(false));
+            }
+
+            @Override
+            public void refreshAppend(String dataset) throws ExecutionException {
+                SpiceClient.this.refreshDataset(dataset, new RefreshOptions().withRefreshMode("append"));
+            }
+        };
+        // the retry scheduler only times the polls, they run on the callback executor
+        Subscription subscription = new Subscription(source, sql, watermarkColumn,
+                options != null ? options : new SubscriptionOptions(), listener, this.retryScheduler,
+                this.callbackExecutor);
+        subscription.start();
+        return subscription;
+    }
+
+    /**
+     * Prepares a sql query on the runtime, so it can be executed many times with
+     * different parameters without being planned again. When the prepared
+     * statement cache is enabled, preparing the same SQL text again reuses the
+     * cached server-side statement.
+     *
+     * @param sql the SQL query to prepare, with parameter placeholders
+     * @return a PreparedQuery, which must be closed when no longer needed
+     * @throws ExecutionException if there is an error preparing the query
+     */
+    public PreparedQuery prepare(String sql) throws ExecutionException {
+        if (Strings.isNullOrEmpty(sql)) {
+            throw new IllegalArgumentException("No SQL query provided");
+        }
+
+        if (this.preparedStatements != null) {
+            PreparedQuery.Statement cached = this.preparedStatements.get(sql);
+            if (cached != null && cached.retain()) {
+                return new PreparedQuery(this, cached);
+            }
+        }
+
+        // the statement is only valid on the runtime that prepared it
+        PreparedQuery.Statement statement = this.callWithRetry(this.onChannel(
+                (lease, auth, timeout) -> new PreparedQuery.Statement(this, sql,
+                        lease.client().prepare(sql, auth, timeout), lease.node()),
+                0));
+
+        if (this.preparedStatements != null) {
+            // one reference for the cache, one for the returned handle
+            statement.retain();
+            this.preparedStatements.put(sql, statement);
+        }
+        return new PreparedQuery(this, statement);
+    }
+
+    /**
+     * Returns the schema of the results of a query without executing it. When
+     * the metadata cache is enabled, the schema is cached by normalized SQL text.
+     *
+     * @param sql the SQL query
+     * @return the schema of the query results
+     * @throws ExecutionException if there is an error planning the query
+     */
+    public Schema getSchema(String sql) throws ExecutionException {
+        if (Strings.isNullOrEmpty(sql)) {
+            throw new IllegalArgumentException("No SQL query provided");
+        }
+
+        return this.cachedMetadata("schema:" + SqlText.normalize(sql), SqlText.referencedTables(sql),
+                this.onChannel((lease, auth, timeout) -> lease.client().getExecuteSchema(sql, auth, timeout)
+                        .getSchema(), 0));
+    }
+
+    /**
+     * Lists the tables of the runtime catalog. Patterns follow the Flight SQL
+     * conventions: % matches any sequence of characters and _ matches a single
+     * character.
+     *
+     * @param catalog       the catalog of the tables, or null for every catalog
+     * @param schemaPattern the pattern of the database schemas, or null for every
+     *                      schema
+     * @param tablePattern  the pattern of the table names, or null for every
+     *                      table
+     * @return the matching tables
+     * @throws ExecutionException if there is an error listing the tables
+     */
+    public List<TableInfo> listTables(String catalog, String schemaPattern, String tablePattern)
+            throws ExecutionException {
+        String key = String.join("|", "tables", String.valueOf(catalog), String.valueOf(schemaPattern),
+                String.valueOf(tablePattern));
+        // a listing may change with any dataset, so it is dropped by every refresh
+        return this.cachedMetadata(key, Collections.emptySet(),
+                () -> Collections.unmodifiableList(this.readTables(catalog, schemaPattern, tablePattern, false,
+                        SpiceClient::tableInfo)));
+    }
+
+    /**
+     * Returns the schema of a table of the runtime catalog, without planning a
+     * query. When the metadata cache is enabled, the schema is cached until it
+     * expires or the table is refreshed through the client.
+     *
+     * @param table the name of the table, optionally qualified with its schema
+     *              and catalog
+     * @return the schema of the table
+     * @throws ExecutionException if the table does not exist or there is an error
+     *                            reading the catalog
+     */
+    public Schema getTableSchema(String table) throws ExecutionException {
+        if (Strings.isNullOrEmpty(table)) {
+            throw new IllegalArgumentException("No table name provided");
+        }
+
+        String[] parts = table.replace("\"", "").split("\\.");
+        if (parts.length > 3) {
+            throw new IllegalArgumentException("Invalid table name: " + table);
+        }
+        String name = parts[parts.length - 1];
+        String schema = parts.length >= 2 ? parts[parts.length - 2] : null;
+        String catalog = parts.length == 3 ? parts[0] : null;
+
+        Set<String> tables = new HashSet<>();
+        tables.add(String.join(".", parts).toLowerCase(Locale.ROOT));
+        tables.add(name.toLowerCase(Locale.ROOT));
+
+        Schema tableSchema = this.cachedMetadata("table:" + String.join(".", parts), tables, () -> {
+            List<Schema> matches = this.readTables(catalog, schema, name, true, (root, row) -> {
+                // _ is a wildcard in the filter patterns, only keep exact matches
+                TableInfo info = tableInfo(root, row);
+                if (!info.getName().equals(name) || (schema != null && !schema.equals(info.getSchema()))
+                        || (catalog != null && !catalog.equals(info.getCatalog()))) {
+                    return null;
+                }
+                byte[] bytes = ((VarBinaryVector) root.getVector("table_schema")).get(row);
+                return Schema.deserializeMessage(ByteBuffer.wrap(bytes));
+            });
+            return matches.isEmpty() ? null : matches.get(0);
+        });
+        if (tableSchema == null) {
+            throw new ExecutionException("Table not found: " + table, null);
         }
+        return tableSchema;
+    }
+
+    /**
+     * Reads the tables matching the filters from the runtime catalog, keeping
+     * the non-null values returned for each row.
+     */
+    private <T> List<T> readTables(String catalog, String schemaPattern, String tablePattern,
+            boolean includeSchema, CatalogRow<T> reader) throws ExecutionException {
+        return this.callWithRetry(this.onChannel((lease, auth, timeout) -> {
+            FlightInfo info = lease.client().getTables(catalog, schemaPattern, tablePattern, null, includeSchema,
+                    auth, timeout);
+            List<T> rows = new ArrayList<>();
+            // catalog results are small and served by the runtime that listed them
+            for (FlightEndpoint endpoint : info.getEndpoints()) {
+                try (FlightStream stream = lease.client().getStream(endpoint.getTicket(), auth, timeout)) {
+                    while (stream.next()) {
+                        VectorSchemaRoot root = stream.getRoot();
+                        for (int row = 0; row < root.getRowCount(); row++) {
+                            T value = reader.read(root, row);
+                            if (value != null) {
+                                rows.add(value);
+                            }
+                        }
+                    }
+                }
+            }
+            return rows;
+        }, 0));
+    }
+
+    private interface CatalogRow<T> {
+        T read(VectorSchemaRoot root, int row);
+    }
+
+    private static TableInfo tableInfo(VectorSchemaRoot root, int row) {
+        return new TableInfo(text(root, "catalog_name", row), text(root, "db_schema_name", row),
+                text(root, "table_name", row), text(root, "table_type", row));
+    }
+
+    private static String text(VectorSchemaRoot root, String column, int row) {
+        FieldVector vector = root.getVector(column);
+        if (vector == null || vector.isNull(row)) {
+            return null;
+        }
+        return vector.getObject(row).toString();
+    }
+
+    /**
+     * Returns a metadata value from the cache, or loads it with retries and
+     * caches it. Null values are returned without being cached.
+     */
+    private <T> T cachedMetadata(String key, Set<String> tables, Callable<T> load) throws ExecutionException {
+        if (this.metadataCache == null) {
+            return this.callWithRetry(load);
+        }
+        T cached = this.metadataCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        T value = this.callWithRetry(load);
+        if (value != null) {
+            this.metadataCache.put(key, tables, value);
+        }
+        return value;
+    }
+
+    /**
+     * Opens a writer appending record batches to a table of the runtime with the
+     * default ingest options
+     *
+     * @param table the name of the table to write to
+     * @return an IngestWriter, which must be finished or closed
+     */
+    public IngestWriter ingest(String table) {
+        return this.ingest(table, null);
+    }
+
+    /**
+     * Opens a writer appending record batches to a table of the runtime, using
+     * Flight SQL bulk ingestion. Small writes are coalesced into batches of the
+     * target size, and several batches are kept in flight while the caller builds
+     * the next ones.
+     *
+     * @param table   the name of the table to write to
+     * @param options the options controlling how batches are sent, or null for
+     *                the defaults
+     * @return an IngestWriter, which must be finished or closed
+     */
+    public IngestWriter ingest(String table, IngestOptions options) {
+        if (Strings.isNullOrEmpty(table)) {
+            throw new IllegalArgumentException("No table name provided");
+        }
+
+        final IngestOptions ingestOptions = options != null ? options : new IngestOptions();
+        BufferAllocator ingestAllocator = this.allocator
+                .newChildAllocator("spice-ingest-" + this.queryCounter.incrementAndGet(), 0, this.queryMemoryLimit);
+        return new IngestWriter(this, table, ingestOptions, ingestAllocator, this.callbackExecutor);
     }
 
     /**
@@ -176,78 +803,761 @@ public class SpiceClient implements AutoCloseable {
 
     /**
      * Refreshes an accelerated dataset using the configured dataset acceleration
-     * settings
+     * settings. Cached query results that may read from the dataset are
+     * invalidated once the refresh has been triggered.
      * 
      * @param dataset        the name of the dataset to refresh
      * @param refreshOptions the refresh options to use when refreshing the dataset
      * @throws ExecutionException if there is an error refreshing the dataset
      */
     public void refreshDataset(String dataset, RefreshOptions refreshOptions) throws ExecutionException {
+        CompletableFuture<Void> refresh = this.refreshDatasetAsync(dataset, refreshOptions);
+        try {
+            refresh.get();
+        } catch (InterruptedException err) {
+            Thread.currentThread().interrupt();
+            refresh.cancel(true);
+            throw new ExecutionException("Interrupted while triggering dataset refresh", err);
+        } catch (ExecutionException err) {
+            // the future fails with the ExecutionException describing the error
+            if (err.getCause() instanceof ExecutionException) {
+                throw (ExecutionException) err.getCause();
+            }
+            throw err;
+        }
+    }
+
+    /**
+     * Refreshes an accelerated dataset without blocking the calling thread. With
+     * several runtimes, the refresh is sent to every runtime that is not skipped
+     * after failing calls, and succeeds once at least one of them accepted it. The
+     * runtimes that rejected it are logged.
+     * 
+     * @param dataset        the name of the dataset to refresh
+     * @param refreshOptions the refresh options to use when refreshing the
+     *                       dataset, or null for the configured settings
+     * @return a future completed once the refresh has been triggered, or
+     *         completed exceptionally with an ExecutionException
+     */
+    public CompletableFuture<Void> refreshDatasetAsync(String dataset, RefreshOptions refreshOptions) {
+        return this.refreshReplicas(dataset, refreshOptions).thenApply(failures -> null);
+    }
+
+    /**
+     * @return a future completed with the errors of the runtimes that did not
+     *         accept the refresh, or completed exceptionally if none accepted it
+     */
+    private CompletableFuture<Map<URI, Throwable>> refreshReplicas(String dataset, RefreshOptions refreshOptions) {
         if (Strings.isNullOrEmpty(dataset)) {
             throw new IllegalArgumentException("No dataset name provided");
         }
 
+        if (this.httpAddresses.isEmpty()) {
+            return CompletableFuture.failedFuture(
+                    new ExecutionException("No runtime HTTP address is configured to refresh datasets", null));
+        }
+        if (this.httpAddresses.size() == 1) {
+            return this.refreshOn(this.httpAddresses.get(0), dataset, refreshOptions)
+                    .thenApply(ignored -> Collections.<URI, Throwable>emptyMap());
+        }
+
+        // every replica accelerates the dataset on its own, one that is down must not
+        // fail the refresh of the others
+        List<URI> targets = this.channels.httpAddresses();
+        Map<URI, Throwable> failures = new ConcurrentHashMap<>();
+        CompletableFuture<?>[] refreshes = new CompletableFuture<?>[targets.size()];
+        for (int i = 0; i < refreshes.length; i++) {
+            URI target = targets.get(i);
+            refreshes[i] = this.refreshOn(target, dataset, refreshOptions)
+                    .whenComplete((ignored, error) -> {
+                        if (error != null) {
+                            failures.put(target, unwrap(error));
+                        }
+                    });
+        }
+        return CompletableFuture.allOf(refreshes).handle((ignored, error) -> {
+            if (failures.size() == targets.size()) {
+                Throwable first = failures.get(targets.get(0));
+                for (int i = 1; i < targets.size(); i++) {
+                    first.addSuppressed(failures.get(targets.get(i)));
+                }
+                throw new CompletionException(first);
+            }
+            for (Map.Entry<URI, Throwable> failure : failures.entrySet()) {
+                LOGGER.warn("Runtime {} did not accept the refresh of {}: {}", failure.getKey(), dataset,
+                        failure.getValue().getMessage());
+            }
+            return failures;
+        });
+    }
+
+    private CompletableFuture<Void> refreshOn(URI httpAddress, String dataset, RefreshOptions refreshOptions) {
+        HttpRequest request;
         try {
-            HttpClient client = HttpClient.newHttpClient();
-            HttpRequest.Builder builder = HttpRequest.newBuilder()
-                    .uri(new URI(String.format("%s/v1/datasets/%s/acceleration/refresh", this.httpAddress, dataset)))
-                    .header("Content-Type", "application/json")
-                    .header("X-Spice-User-Agent", Config.getUserAgent());
+            request = this.refreshRequest(httpAddress, dataset, refreshOptions);
+        } catch (Exception err) {
+            return CompletableFuture.failedFuture(this.refreshError(httpAddress, err));
+        }
 
-            if (refreshOptions != null) {
-                Gson gson = new Gson();
-                String json = gson.toJson(refreshOptions);
+        return this.httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                .handle((response, error) -> {
+                    if (error != null) {
+                        throw new CompletionException(this.refreshError(httpAddress, unwrap(error)));
+                    }
+                    if (response.statusCode() != 201) {
+                        throw new CompletionException(new ExecutionException(
+                                String.format("Failed to trigger dataset refresh. Status Code: %d, Response: %s",
+                                        response.statusCode(),
+                                        response.body()),
+                                null));
+                    }
+                    if (this.resultCache != null) {
+                        this.resultCache.invalidate(dataset);
+                    }
+                    if (this.metadataCache != null) {
+                        this.metadataCache.invalidate(dataset);
+                    }
+                    return null;
+                });
+    }
 
-                builder = builder.POST(HttpRequest.BodyPublishers.ofString(json));
-            } else {
-                builder = builder.POST(HttpRequest.BodyPublishers.noBody());
+    /**
+     * Refreshes several accelerated datasets. At most refreshConcurrency refreshes
+     * are in flight at a time, see
+     * {@link SpiceClientBuilder#withRefreshConcurrency(int)}. A failed refresh
+     * does not stop the others.
+     * 
+     * @param datasets       the names of the datasets to refresh
+     * @param refreshOptions the refresh options to use for every dataset, or null
+     *                       for the configured settings
+     * @return the outcome of each refresh, in the order of the datasets
+     * @throws ExecutionException if the calling thread is interrupted
+     */
+    public List<RefreshResult> refreshDatasets(Collection<String> datasets, RefreshOptions refreshOptions)
+            throws ExecutionException {
+        if (datasets == null) {
+            throw new IllegalArgumentException("datasets can't be null");
+        }
+        List<String> names = new ArrayList<>(datasets);
+        for (String name : names) {
+            if (Strings.isNullOrEmpty(name)) {
+                throw new IllegalArgumentException("No dataset name provided");
             }
+        }
+
+        RefreshResult[] results = new RefreshResult[names.size()];
+        AtomicInteger next = new AtomicInteger();
+        CompletableFuture<?>[] workers = new CompletableFuture<?>[Math.min(this.refreshConcurrency, names.size())];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = this.refreshNext(names, refreshOptions, next, results);
+        }
+
+        try {
+            CompletableFuture.allOf(workers).get();
+        } catch (InterruptedException err) {
+            Thread.currentThread().interrupt();
+            throw new ExecutionException("Interrupted while triggering dataset refreshes", err);
+        }
+        return Arrays.asList(results);
+    }
+
+    private CompletableFuture<Void> refreshNext(List<String> datasets, RefreshOptions refreshOptions,
+            AtomicInteger next, RefreshResult[] results) {
+        int index = next.getAndIncrement();
+        if (index >= datasets.size()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        String dataset = datasets.get(index);
+        return this.refreshReplicas(dataset, refreshOptions)
+                .handle((failures, error) -> {
+                    results[index] = error != null
+                            ? new RefreshResult(dataset, unwrap(error), Collections.<URI, Throwable>emptyMap())
+                            : new RefreshResult(dataset, null, failures);
+                    return null;
+                })
+                .thenCompose(ignored -> this.refreshNext(datasets, refreshOptions, next, results));
+    }
+
+    private HttpRequest refreshRequest(URI httpAddress, String dataset, RefreshOptions refreshOptions)
+            throws URISyntaxException {
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .uri(new URI(String.format("%s/v1/datasets/%s/acceleration/refresh", httpAddress, dataset)))
+                .header("Content-Type", "application/json")
+                .header("X-Spice-User-Agent", Config.getUserAgent());
+
+        if (refreshOptions != null) {
+            String json = GSON.toJson(refreshOptions);
+
+            builder = builder.POST(HttpRequest.BodyPublishers.ofString(json));
+        } else {
+            builder = builder.POST(HttpRequest.BodyPublishers.noBody());
+        }
+
+        return builder.build();
+    }
+
+    private ExecutionException refreshError(URI httpAddress, Throwable err) {
+        if (err instanceof ExecutionException) {
+            // no need to wrap ExecutionException
+            return (ExecutionException) err;
+        }
+        if (err instanceof ConnectException) {
+            return new ExecutionException(
+                    String.format("The Spice runtime is unavailable at %s. Is it running?", httpAddress), err);
+        }
+        return new ExecutionException("Failed to trigger dataset refresh due to error: " + err.toString(), err);
+    }
+
+    private static Throwable unwrap(Throwable err) {
+        if (err instanceof CompletionException && err.getCause() != null) {
+            return err.getCause();
+        }
+        return err;
+    }
 
-            HttpRequest request = builder.build();
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+    /**
+     * Returns the call executing a query, racing a second execute on another
+     * channel against a slow one when hedging is enabled.
+     */
+    private Callable<Execution> executeCall(String sql, long queryTimeoutNanos) {
+        ChannelCall<Execution> execute = (lease, auth, timeout) -> new Execution(
+                lease.client().execute(sql, auth, timeout), lease.node());
+        if (!this.retryPolicy.isHedging()) {
+            return this.onChannel(execute, queryTimeoutNanos);
+        }
+        final long startNanos = System.nanoTime();
+        return () -> {
+            AtomicReference<ChannelPool.Channel> firstChannel = new AtomicReference<>();
+            return this.hedge(
+                    () -> this.callOnChannel(execute, startNanos, queryTimeoutNanos, () -> {
+                        ChannelPool.Lease lease = this.channels.acquire();
+                        firstChannel.set(lease.channel());
+                        return lease;
+                    }),
+                    () -> this.callOnChannel(execute, startNanos, queryTimeoutNanos,
+                            () -> this.channels.acquire(firstChannel.get())),
+                    // the runtime keeps working on a query whose execute completed, until told otherwise
+                    loser -> this.cancelOnRuntime(loser.flightInfo, loser.node));
+        };
+    }
+
+    private Callable<FlightStream> firstEndpointStream(Execution execution) {
+        Ticket ticket = execution.flightInfo.getEndpoints().get(0).getTicket();
+        // the attempt timeout is not applied to streams, it would bound the time to
+        // read the whole result
+        return () -> {
+            ChannelPool.Lease lease = this.channels.acquireStream(execution.node);
+            try {
+                FlightStream stream = this.withToken(lease.node(),
+                        auth -> lease.client().getStream(ticket, auth));
+                lease.release(null);
+                return stream;
+            } catch (Throwable t) {
+                lease.release(t);
+                throw t;
+            }
+        };
+    }
 
-            if (response.statusCode() != 201) {
-                throw new ExecutionException(
-                        String.format("Failed to trigger dataset refresh. Status Code: %d, Response: %s",
-                                response.statusCode(),
-                                response.body()),
-                        null);
+    /**
+     * Runs a call, and runs a second call if the first has not completed once the
+     * hedging delay has passed. The first attempt to succeed wins and the other
+     * is cancelled by interrupting it, which cancels its gRPC call. A losing
+     * attempt that still completes is handed to the discard callback.
+     *
+     * @param call    the first attempt
+     * @param hedge   the attempt racing a slow first attempt
+     * @param discard releases the result of the losing attempt
+     */
+    private <T> T hedge(Callable<T> call, Callable<T> hedge, Consumer<T> discard) throws Exception {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicInteger running = new AtomicInteger(1);
+        Future<?> primary = this.callbackExecutor.submit(() -> this.runHedged(call, result, running, discard));
+        Future<?> hedged = null;
+        try {
+            try {
+                return result.get(this.hedgeDelayNanos(), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                // slower than usual, race a second attempt against the first one
             }
+            running.incrementAndGet();
+            if (!result.isDone()) {
+                this.metrics.hedged();
+                hedged = this.callbackExecutor.submit(() -> this.runHedged(hedge, result, running, discard));
+            }
+            return result.get();
         } catch (ExecutionException e) {
-            // no need to wrap ExecutionException
+            // fail with the error of the call itself, so it is retried like any other
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
             throw e;
-        } catch (ConnectException err) {
-            throw new ExecutionException(
-                    String.format("The Spice runtime is unavailable at %s. Is it running?", this.httpAddress), err);
-        } catch (Exception err) {
-            throw new ExecutionException("Failed to trigger dataset refresh due to error: " + err.toString(), err);
+        } finally {
+            primary.cancel(true);
+            if (hedged != null) {
+                hedged.cancel(true);
+            }
+        }
+    }
+
+    private <T> void runHedged(Callable<T> call, CompletableFuture<T> result, AtomicInteger running,
+            Consumer<T> discard) {
+        long startNanos = System.nanoTime();
+        try {
+            T value = call.call();
+            this.executeLatencies.record(System.nanoTime() - startNanos);
+            if (!result.complete(value)) {
+                discard.accept(value);
+            }
+        } catch (Throwable t) {
+            // the call only fails once every attempt has failed
+            if (running.decrementAndGet() == 0) {
+                result.completeExceptionally(t);
+            }
         }
     }
 
-    private FlightStream queryInternal(String sql) {
-        FlightInfo flightInfo = this.flightClient.execute(sql, authCallOptions);
-        Ticket ticket = flightInfo.getEndpoints().get(0).getTicket();
-        return this.flightClient.getStream(ticket, authCallOptions);
+    private long hedgeDelayNanos() {
+        long observed = this.executeLatencies.percentile(HEDGE_PERCENTILE);
+        return Math.max(observed, this.retryPolicy.getHedgeDelayNanos());
+    }
+
+    private QueryReader openCached(String sql, QueryOptions options) {
+        if (this.resultCache == null || (options != null && !options.isCacheEnabled())) {
+            return null;
+        }
+        return this.resultCache.open(sql, options == null || options.isPreserveOrder());
     }
 
-    private FlightStream queryInternalWithRetry(String sql) throws ExecutionException, RetryException {
-        Retryer<FlightStream> retryer = RetryerBuilder.<FlightStream>newBuilder()
-                .retryIfException(throwable -> {
-                    if (throwable instanceof FlightRuntimeException) {
-                        FlightRuntimeException flightException = (FlightRuntimeException) throwable;
-                        CallStatus status = flightException.status();
-                        return shouldRetry(status);
+    private boolean isCoalesced(QueryOptions options) {
+        return this.coalescer != null && (options == null || options.isCoalescingEnabled());
+    }
+
+    private long memoryLimit(QueryOptions options) {
+        return options != null && options.getMemoryLimit() > 0 ? options.getMemoryLimit() : this.queryMemoryLimit;
+    }
+
+    private static String coalescingKey(String sql, QueryOptions options) {
+        return SqlText.resultKey(sql, options == null || options.isPreserveOrder());
+    }
+
+    private static ExecutionException asExecutionException(Throwable err) {
+        if (err instanceof ExecutionException) {
+            return (ExecutionException) err;
+        }
+        return new ExecutionException("Failed to execute query due to error: " + err.toString(), err);
+    }
+
+    private QueryReader readQueryResults(String sql, Execution execution, QueryOptions options,
+            long startNanos) {
+        QueryReader reader = this.readFlightInfo(execution.flightInfo, execution.node, options, startNanos);
+        if (this.resultCache == null || (options != null && !options.isCacheEnabled())) {
+            return reader;
+        }
+        return this.resultCache.record(sql, options == null || options.isPreserveOrder(), reader);
+    }
+
+    /**
+     * Reads every endpoint of a query result
+     *
+     * @param flightInfo the FlightInfo of the query
+     * @param origin     the runtime that executed the query, which serves the
+     *                   endpoints without a location of their own
+     * @param options    the options controlling how the results are fetched, or
+     *                   null for the defaults
+     * @param startNanos the time the query started
+     * @return a reader over the batches of every endpoint
+     */
+    QueryReader readFlightInfo(FlightInfo flightInfo, ChannelPool.Node origin, QueryOptions options,
+            long startNanos) {
+        this.metrics.flightInfoReceived(System.nanoTime() - startNanos);
+        final QueryOptions queryOptions = options != null ? options : new QueryOptions();
+        long memoryLimit = this.memoryLimit(queryOptions);
+        BufferAllocator queryAllocator = this.allocator
+                .newChildAllocator("spice-query-" + this.queryCounter.incrementAndGet(), 0, memoryLimit);
+
+        final long timeoutNanos = queryOptions.getTimeoutNanos();
+        SpillFile spill = queryOptions.getSpillThreshold() > 0
+                ? new SpillFile(this.spillDirectory, queryOptions.getSpillThreshold())
+                : null;
+
+        try {
+            int queueDepth = queryOptions.getPrefetchBatches() > 0 ? queryOptions.getPrefetchBatches()
+                    : this.prefetchBatches;
+            return new MultiEndpointReader(queryAllocator, flightInfo, queryOptions.isPreserveOrder(),
+                    queueDepth, this.queryExecutor,
+                    endpoint -> this.openEndpointStream(endpoint, origin, startNanos, timeoutNanos), this.metrics,
+                    startNanos, () -> this.cancelOnRuntime(flightInfo, origin), spill);
+        } catch (RuntimeException e) {
+            this.metrics.streamClosed(System.nanoTime() - startNanos, 0, 0, true);
+            queryAllocator.close();
+            throw e;
+        }
+    }
+
+    private MultiEndpointReader.EndpointStream openEndpointStream(FlightEndpoint endpoint, ChannelPool.Node origin,
+            long startNanos, long queryTimeoutNanos) throws ExecutionException {
+        return this.callWithRetry(() -> {
+            // the stream gets what is left of the query timeout, not the attempt timeout
+            CallOption timeout = timeoutOption(remainingNanos(startNanos, queryTimeoutNanos));
+            ChannelPool.Lease lease = this.leaseForEndpoint(endpoint, origin);
+            try {
+                FlightStream stream = this.withToken(lease.node(), auth -> {
+                    FlightStream opened = lease.client().getStream(endpoint.getTicket(), auth, timeout);
+                    try {
+                        // the schema is the first message of the stream, waiting for it surfaces
+                        // connection and authentication errors while the call can still be retried
+                        opened.getSchema();
+                    } catch (RuntimeException e) {
+                        opened.close();
+                        throw e;
                     }
-                    return false;
+                    return opened;
+                });
+                // the channel stays leased until the stream has been read
+                return new MultiEndpointReader.EndpointStream(stream, lease::release);
+            } catch (Throwable t) {
+                lease.release(t);
+                throw t;
+            }
+        });
+    }
+
+    /**
+     * Asks the runtime to stop working on a cancelled query, without waiting for
+     * the answer
+     */
+    private void cancelOnRuntime(FlightInfo flightInfo, ChannelPool.Node origin) {
+        try {
+            this.callbackExecutor.execute(() -> {
+                ChannelPool.Lease lease = this.channels.acquireStream(origin);
+                try {
+                    this.withToken(lease.node(), auth -> lease.client()
+                            .cancelFlightInfo(new CancelFlightInfoRequest(flightInfo), auth));
+                    lease.release(null);
+                } catch (Exception e) {
+                    lease.release(e);
+                    // runtimes without CancelFlightInfo answer UNIMPLEMENTED, cancelling the
+                    // streams still stops the query
+                    LOGGER.debug("Failed to cancel query on the runtime: {}", e.toString());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // the client is closed, its channels are going away with the query
+        }
+    }
+
+    private static long timeoutNanos(QueryOptions options) {
+        return options != null ? options.getTimeoutNanos() : 0;
+    }
+
+    /**
+     * Returns the time left before the timeout of a query
+     *
+     * @param startNanos   the time the query started
+     * @param timeoutNanos the timeout of the query, or 0 if it has none
+     * @return the remaining time in nanoseconds, or 0 if the query has no timeout
+     * @throws TimeoutException if the timeout has passed
+     */
+    private static long remainingNanos(long startNanos, long timeoutNanos) throws TimeoutException {
+        if (timeoutNanos <= 0) {
+            return 0;
+        }
+        long remainingNanos = timeoutNanos - (System.nanoTime() - startNanos);
+        if (remainingNanos <= 0) {
+            // not a Flight error, so it is not retried
+            throw new TimeoutException(
+                    String.format("Query timed out after %d ms", TimeUnit.NANOSECONDS.toMillis(timeoutNanos)));
+        }
+        return remainingNanos;
+    }
+
+    private static CallOption timeoutOption(long timeoutNanos) {
+        if (timeoutNanos <= 0) {
+            return null;
+        }
+        // round up, a zero timeout would fail the call immediately
+        return CallOptions.timeout(TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + 1, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Leases a channel to read an endpoint from. Endpoints without a location of
+     * their own are read from the runtime that executed the query, as their
+     * ticket is only valid there.
+     */
+    private ChannelPool.Lease leaseForEndpoint(FlightEndpoint endpoint, ChannelPool.Node origin) {
+        for (Location location : endpoint.getLocations()) {
+            URI uri = location.getUri();
+            if (REUSE_CONNECTION_SCHEME.equals(uri.getScheme())) {
+                return this.channels.acquireStream(origin);
+            }
+            ChannelPool.Node node = this.channels.node(uri);
+            if (node != null) {
+                return this.channels.acquireStream(node);
+            }
+            return this.endpointChannels.computeIfAbsent(uri, this::createChannelPool).acquireStream(null);
+        }
+        return this.channels.acquireStream(origin);
+    }
+
+    private ChannelPool createChannelPool(List<RuntimeAddress> runtimes) {
+        List<ChannelPool.Node> nodes = new ArrayList<>(runtimes.size());
+        for (RuntimeAddress runtime : runtimes) {
+            URI uri = toFlightUri(runtime.getFlightAddress());
+            nodes.add(new ChannelPool.Node(uri, runtime.getHttpAddress(), this.tokenEntry(uri),
+                    this.createClients(uri)));
+        }
+        return new ChannelPool(nodes, this.channelSelection);
+    }
+
+    private ChannelPool createChannelPool(URI uri) {
+        return new ChannelPool(
+                Collections.singletonList(new ChannelPool.Node(uri, null, this.tokenEntry(uri), this.createClients(uri))),
+                this.channelSelection);
+    }
+
+    private TokenStore.Entry tokenEntry(URI uri) {
+        return this.tokenStore != null ? this.tokenStore.entry(uri, this.apiKey) : null;
+    }
+
+    private List<FlightClient> createClients(URI uri) {
+        List<FlightClient> clients = new ArrayList<>(this.channelCount);
+        for (int i = 0; i < this.channelCount; i++) {
+            Builder builder = FlightClient.builder(this.allocator, new Location(uri));
+            if (this.middlewareFactory != null) {
+                builder.intercept(this.middlewareFactory);
+            }
+            clients.add(builder.build());
+        }
+        return clients;
+    }
+
+    /**
+     * Wraps a call so that every attempt runs on a channel leased from the pool,
+     * letting retries move to a healthier channel. Each attempt is given the
+     * timeout left by the retry policy and the query timeout.
+     */
+    private <T> Callable<T> onChannel(ChannelCall<T> call, long queryTimeoutNanos) {
+        final long startNanos = System.nanoTime();
+        return () -> this.callOnChannel(call, startNanos, queryTimeoutNanos, this.channels::acquire);
+    }
+
+    private <T> T callOnChannel(ChannelCall<T> call, long startNanos, long queryTimeoutNanos,
+            Supplier<ChannelPool.Lease> acquire) throws Exception {
+        CallOption timeout = this.attemptTimeout(startNanos, queryTimeoutNanos);
+        ChannelPool.Lease lease = acquire.get();
+        try {
+            T result = this.withToken(lease.node(), auth -> call.call(lease, auth, timeout));
+            lease.release(null);
+            return result;
+        } catch (Throwable t) {
+            lease.release(t);
+            throw t;
+        }
+    }
+
+    private interface ChannelCall<T> {
+        T call(ChannelPool.Lease lease, CallOption auth, CallOption timeout) throws Exception;
+    }
+
+    /**
+     * The FlightInfo of an executed query and the runtime that executed it.
+     */
+    private static final class Execution {
+        private final FlightInfo flightInfo;
+        private final ChannelPool.Node node;
+
+        Execution(FlightInfo flightInfo, ChannelPool.Node node) {
+            this.flightInfo = flightInfo;
+            this.node = node;
+        }
+    }
+
+    interface AuthenticatedCall<T> {
+        T call(CallOption auth) throws Exception;
+    }
+
+    /**
+     * Runs a call to a runtime with the current bearer token of that runtime. If
+     * the runtime rejects the token, the client authenticates again and replays
+     * the call once with the new token.
+     */
+    <T> T withToken(ChannelPool.Node node, AuthenticatedCall<T> call) throws Exception {
+        TokenStore.Entry token = node.token();
+        if (token == null) {
+            return call.call(this.transportOption(null));
+        }
+
+        TokenStore.Token current = awaitToken(token.token(() -> this.handshake(node), this.callbackExecutor));
+        try {
+            return call.call(this.transportOption(current.callOption()));
+        } catch (FlightRuntimeException e) {
+            if (e.status().code() != FlightStatusCode.UNAUTHENTICATED) {
+                throw e;
+            }
+            LOGGER.debug("Bearer token rejected by {}, authenticating again", node.flightAddress());
+            TokenStore.Token renewed = awaitToken(
+                    token.refresh(current, () -> this.handshake(node), this.callbackExecutor));
+            return call.call(this.transportOption(renewed.callOption()));
+        }
+    }
+
+    private String handshake(ChannelPool.Node node) {
+        // the bearer is read from the handshake call's own response, other calls on the
+        // same channels can't be taken for it
+        HandshakeBearer received = new HandshakeBearer();
+        node.firstChannel().client().handshake(
+                new CredentialCallOption(new BasicAuthCredentialWriter(this.appId, this.apiKey)), received);
+        String bearer = received.bearer();
+        if (bearer == null) {
+            throw CallStatus.UNAUTHENTICATED.withDescription("The runtime did not return a bearer token")
+                    .toRuntimeException();
+        }
+        return bearer;
+    }
+
+    private static TokenStore.Token awaitToken(CompletableFuture<TokenStore.Token> token) throws Exception {
+        try {
+            return token.get();
+        } catch (ExecutionException e) {
+            // rethrow the handshake error itself, so connection errors are retried like
+            // any other call
+            Throwable cause = e.getCause();
+            if (cause instanceof CompletionException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the timeout of an attempt of a call, the shortest of the attempt
+     * timeout, the time left before the deadline of the call and the time left
+     * before the query timeout
+     *
+     * @param startNanos        the time the call started
+     * @param queryTimeoutNanos the timeout of the query, or 0 if it has none
+     * @return the timeout call option, or null if attempts are not limited
+     * @throws TimeoutException if the query timeout has passed
+     */
+    CallOption attemptTimeout(long startNanos, long queryTimeoutNanos) throws TimeoutException {
+        long timeoutNanos = this.retryPolicy.getAttemptTimeoutNanos();
+        long deadlineNanos = this.retryPolicy.getDeadlineNanos();
+        if (deadlineNanos > 0) {
+            long remainingNanos = deadlineNanos - (System.nanoTime() - startNanos);
+            if (remainingNanos <= 0) {
+                throw CallStatus.TIMED_OUT.withDescription("Deadline of the call exceeded").toRuntimeException();
+            }
+            timeoutNanos = timeoutNanos > 0 ? Math.min(timeoutNanos, remainingNanos) : remainingNanos;
+        }
+        long queryRemainingNanos = remainingNanos(startNanos, queryTimeoutNanos);
+        if (queryRemainingNanos > 0) {
+            timeoutNanos = timeoutNanos > 0 ? Math.min(timeoutNanos, queryRemainingNanos) : queryRemainingNanos;
+        }
+        return timeoutOption(timeoutNanos);
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> T callWithRetry(Callable<T> callable) throws ExecutionException {
+        try {
+            // the retryer is shared by every call, values pass through it untouched
+            return (T) this.retryer.call((Callable<Object>) (Callable<?>) callable);
+        } catch (RetryException e) {
+            Throwable err = e.getLastFailedAttempt().getExceptionCause();
+            throw new ExecutionException("Failed to execute query due to error: " + err.toString(), err);
+        }
+    }
+
+    CallOption authCallOptions(ChannelPool.Node node) {
+        TokenStore.Entry token = node.token();
+        if (token == null) {
+            return this.transportOption(null);
+        }
+        TokenStore.Token current = token.current();
+        return this.transportOption(current != null ? current.callOption() : null);
+    }
+
+    private CallOption transportOption(CallOption credentials) {
+        return TransportCallOption.of(credentials, this.requestCompression, this.transportTracing);
+    }
+
+    BufferAllocator allocator() {
+        return this.allocator;
+    }
+
+    ChannelPool.Lease acquireStream() {
+        return this.channels.acquireStream(null);
+    }
+
+    private <T> CompletableFuture<T> callWithRetryAsync(Callable<T> callable) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        this.attemptAsync(callable, result, 1, System.nanoTime());
+        return result;
+    }
+
+    private <T> void attemptAsync(Callable<T> callable, CompletableFuture<T> result, int attempt,
+            long startNanos) {
+        try {
+            this.queryExecutor.execute(() -> {
+                try {
+                    result.complete(callable.call());
+                } catch (Throwable err) {
+                    long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+                    if (isRetryable(err) && !this.retryPolicy.shouldStop(attempt, elapsedMillis)) {
+                        this.recordRetry(err);
+                        // same backoff as the blocking retryer, without parking a thread
+                        this.retryScheduler.schedule(
+                                () -> this.attemptAsync(callable, result, attempt + 1, startNanos),
+                                this.retryPolicy.backoffMillis(attempt, elapsedMillis), TimeUnit.MILLISECONDS);
+                    } else {
+                        result.completeExceptionally(new ExecutionException(
+                                "Failed to execute query due to error: " + err.toString(), err));
+                    }
+                }
+            });
+        } catch (RuntimeException err) {
+            // the executor rejects new work once the client is closed
+            result.completeExceptionally(
+                    new ExecutionException("Failed to execute query due to error: " + err.toString(), err));
+        }
+    }
+
+    private Retryer<Object> newRetryer() {
+        return RetryerBuilder.newBuilder()
+                .retryIfException(SpiceClient::isRetryable)
+                .withStopStrategy(attempt -> this.retryPolicy.shouldStop((int) attempt.getAttemptNumber(),
+                        attempt.getDelaySinceFirstAttempt()))
+                .withWaitStrategy(attempt -> {
+                    // only called when the failed attempt is about to be retried
+                    this.recordRetry(attempt.getExceptionCause());
+                    return this.retryPolicy.backoffMillis((int) attempt.getAttemptNumber(),
+                            attempt.getDelaySinceFirstAttempt());
                 })
-                .withWaitStrategy(WaitStrategies.fibonacciWait())
-                .withStopStrategy(StopStrategies.stopAfterAttempt(this.maxRetries + 1))
+                .withBlockStrategy(VirtualThreads.PARKING_BLOCK_STRATEGY)
                 .build();
+    }
+
+    private void recordRetry(Throwable err) {
+        // only retryable errors are retried, and those are all FlightRuntimeExceptions
+        if (err instanceof FlightRuntimeException) {
+            this.metrics.retried(((FlightRuntimeException) err).status().code());
+        }
+    }
 
-        return retryer.call(() -> this.queryInternal(sql));
+    private static boolean isRetryable(Throwable throwable) {
+        if (throwable instanceof FlightRuntimeException) {
+            FlightRuntimeException flightException = (FlightRuntimeException) throwable;
+            CallStatus status = flightException.status();
+            return shouldRetry(status);
+        }
+        return false;
     }
 
-    private boolean shouldRetry(CallStatus status) {
+    private static boolean shouldRetry(CallStatus status) {
         switch (status.code()) {
             case UNAVAILABLE:
             case UNKNOWN:
@@ -259,8 +1569,94 @@ public class SpiceClient implements AutoCloseable {
         }
     }
 
+    private static URI toFlightUri(URI flightAddress) {
+        // Arrow Flight requires URI to be grpc protocol, convert http/https for
+        // convinience
+        if (flightAddress.getScheme().equals("https")) {
+            return URI.create("grpc+tls://" + flightAddress.getHost() + ":" + flightAddress.getPort());
+        } else if (flightAddress.getScheme().equals("http")) {
+            return URI.create("grpc+tcp://" + flightAddress.getHost() + ":" + flightAddress.getPort());
+        }
+        return flightAddress;
+    }
+
+    private static ThreadFactory daemonThreadFactory(String prefix) {
+        final AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Returns the number of bytes currently allocated for query results by this
+     * client
+     *
+     * @return the allocated memory in bytes
+     */
+    public long getAllocatedMemory() {
+        return this.allocator.getAllocatedMemory();
+    }
+
+    /**
+     * Returns the highest number of bytes allocated for query results at any time
+     * by this client
+     *
+     * @return the peak allocated memory in bytes
+     */
+    public long getPeakMemoryAllocation() {
+        return this.allocator.getPeakMemoryAllocation();
+    }
+
+    private void closeAllocator() {
+        long leaked = this.allocator.getAllocatedMemory();
+        if (leaked > 0) {
+            LOGGER.warn("SpiceClient closed with {} bytes still allocated, query results were not closed:\n{}",
+                    leaked, this.allocator.toVerboseString());
+        }
+
+        try {
+            this.allocator.close();
+        } catch (IllegalStateException e) {
+            // leaked buffers are reported above, they are released when their owners
+            // are closed
+        }
+    }
+
     @Override
     public void close() throws Exception {
-        this.flightClient.close();
+        if (this.preparedStatements != null) {
+            this.preparedStatements.clear();
+        }
+        if (this.coalescer != null) {
+            try {
+                this.coalescer.close();
+            } catch (IllegalStateException e) {
+                LOGGER.warn("Shared query results are still being read: {}", e.getMessage());
+            }
+        }
+        if (this.resultCache != null) {
+            try {
+                this.resultCache.close();
+            } catch (IllegalStateException e) {
+                LOGGER.warn("Cached query results are still being read: {}", e.getMessage());
+            }
+        }
+        this.retryScheduler.shutdownNow();
+        this.callbackExecutor.shutdownNow();
+        this.queryExecutor.shutdownNow();
+        try {
+            try {
+                for (ChannelPool pool : this.endpointChannels.values()) {
+                    pool.close();
+                }
+                this.endpointChannels.clear();
+            } finally {
+                this.channels.close();
+            }
+        } finally {
+            this.closeAllocator();
+        }
     }
 }
@@ -24,6 +24,13 @@ package ai.spice;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.arrow.memory.BufferAllocator;
 
 import com.google.common.base.Strings;
 
@@ -32,12 +39,34 @@ import com.google.common.base.Strings;
  */
 public class SpiceClientBuilder {
 
-    private String appId;
-    private String apiKey;
-    private String userAgent;
-    private URI flightAddress;
-    private URI httpAddress;
-    private int maxRetries = 3;
+    String appId;
+    String apiKey;
+    String userAgent;
+    URI flightAddress;
+    URI httpAddress;
+    List<RuntimeAddress> runtimes = null;
+    int maxRetries = 3;
+    RetryPolicy retryPolicy = null;
+    int queryParallelism = Runtime.getRuntime().availableProcessors();
+    int prefetchBatches = 4;
+    BufferAllocator allocator;
+    long memoryLimit = Long.MAX_VALUE;
+    long queryMemoryLimit = Long.MAX_VALUE;
+    int preparedStatementCacheSize = 0;
+    long resultCacheMaxBytes = 0;
+    Duration resultCacheTtl = Duration.ZERO;
+    int metadataCacheMaxEntries = 0;
+    long coalescingMaxReplayBytes = 0;
+    Duration metadataCacheTtl = Duration.ZERO;
+    int channels = 1;
+    ChannelSelection channelSelection = ChannelSelection.LEAST_OUTSTANDING;
+    int refreshConcurrency = 8;
+    ClientMetrics metrics = ClientMetrics.NOOP;
+    boolean virtualThreads = false;
+    TokenStore tokenStore = new TokenStore();
+    CallHeadersProvider callHeaders = null;
+    Path spillDirectory = Paths.get(System.getProperty("java.io.tmpdir"));
+    Compression requestCompression = Compression.NONE;
 
     /**
      * Constructs a new SpiceClientBuilder instance
@@ -49,6 +78,20 @@ public class SpiceClientBuilder {
         this.httpAddress = Config.getLocalHttpAddressUri();
     }
 
+    /**
+     * Constructs a new SpiceClientBuilder instance with the settings accepted by
+     * the SpiceClient constructor
+     */
+    SpiceClientBuilder(String appId, String apiKey, URI flightAddress, URI httpAddress, int maxRetries,
+            String userAgent) {
+        this.appId = appId;
+        this.apiKey = apiKey;
+        this.flightAddress = flightAddress;
+        this.httpAddress = httpAddress;
+        this.maxRetries = maxRetries;
+        this.userAgent = userAgent;
+    }
+
     /**
      * Sets the client's flight address
      * 
@@ -77,6 +120,32 @@ public class SpiceClientBuilder {
         return this;
     }
 
+    /**
+     * Spreads the client over several runtimes serving the same datasets, such as
+     * replicas of Spice OSS. Calls are balanced between the runtimes with the
+     * channel selection strategy, a runtime failing with connection errors is
+     * skipped until a later call succeeds on it, and the result streams of a
+     * query are read from the runtime that executed it. Dataset refreshes are
+     * sent to every runtime with an HTTP address. The first runtime replaces the
+     * flight and HTTP addresses of the client.
+     * 
+     * @param runtimes The addresses of the runtimes, see
+     *                 {@link RuntimeAddress#fromFile(java.nio.file.Path)}
+     * @return The current instance of SpiceClientBuilder for method chaining.
+     */
+    public SpiceClientBuilder withRuntimes(List<RuntimeAddress> runtimes) {
+        if (runtimes == null || runtimes.isEmpty()) {
+            throw new IllegalArgumentException("runtimes can't be null or empty");
+        }
+        for (RuntimeAddress runtime : runtimes) {
+            if (runtime == null) {
+                throw new IllegalArgumentException("runtimes can't contain null");
+            }
+        }
+        this.runtimes = new ArrayList<>(runtimes);
+        return this;
+    }
+
     /**
      * Sets the client's Api Key.
      *
@@ -139,12 +208,337 @@ public class SpiceClientBuilder {
         return this;
     }
 
+    /**
+     * Sets how failed calls are retried, the timeouts of calls and whether slow
+     * query executions are hedged. The maximum number of retries of the policy
+     * replaces the one set with withMaxRetries.
+     * 
+     * @param retryPolicy The retry policy
+     * @return The current instance of SpiceClientBuilder for method chaining.
+     */
+    public SpiceClientBuilder withRetryPolicy(RetryPolicy retryPolicy) {
+        if (retryPolicy == null) {
+            throw new IllegalArgumentException("retryPolicy can't be null");
+        }
+        this.retryPolicy = retryPolicy;
+        return this;
+    }
+
+    /**
+     * Sets the number of threads used to fetch query result endpoints in
+     * parallel.
+     * 
+     * @param queryParallelism The maximum number of endpoints fetched at the same
+     *                         time
+     * @return The current instance of SpiceClientBuilder for method chaining.
+     */
+    public SpiceClientBuilder withQueryParallelism(int queryParallelism) {
+        if (queryParallelism < 1) {
+            throw new IllegalArgumentException("queryParallelism must be greater than 0");
+        }
+        this.queryParallelism = queryParallelism;
+        return this;
+    }
+
+    /**
+     * Sets the number of batches read ahead of the consumer for each result
+     * endpoint of {@link SpiceClient#query(String, QueryOptions)}. Batches are
+     * received in the background while the caller processes the current one, up
+     * to this depth and within the query memory limit. Defaults to 4, and can be
+     * overridden per query with {@link QueryOptions#withPrefetchBatches(int)}.
+     * 
+     * @param prefetchBatches The number of batches buffered per endpoint
+     * @return The current instance of SpiceClientBuilder for method chaining.
+     */
+    public SpiceClientBuilder withPrefetchBatches(int prefetchBatches) {
+        if (prefetchBatches < 1) {
+            throw new IllegalArgumentException("prefetchBatches must be greater than 0");
+        }
+        this.prefetchBatches = prefetchBatches;
+        return this;
+    }
+
+    /**
+     * Sets a shared allocator for the client. The client allocates query results
+     * from its own child of this allocator, so several clients can share one
+     * memory budget. The allocator is not closed by the client.
+     * 
+     * @param allocator The parent allocator for the client
+     * @return The current instance of SpiceClientBuilder for method chaining.
+     */
+    public SpiceClientBuilder withAllocator(BufferAllocator allocator) {
+        if (allocator == null) {
+            throw new IllegalArgumentException("allocator can't be null");
+        }
+        this.allocator = allocator;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of bytes of off-heap memory the client can allocate
+     * for query results.
+     * 
+     * @param memoryLimit The memory limit in bytes
+     * @return The current instance of SpiceClientBuilder for method chaining.
+     */
+    public SpiceClientBuilder withMemoryLimit(long memoryLimit) {
+        if (memoryLimit <= 0) {
+            throw new IllegalArgumentException("memoryLimit must be greater than 0");
+        }
+        this.memoryLimit = memoryLimit;
+        return this;
+    }
+
+    /**
+     * Sets the default maximum number of bytes of off-heap memory a single query
+     * can hold. Applies to queries executed with QueryOptions.
+     * 
+     * @param queryMemoryLimit The per-query memory limit in bytes
+     * @return The current instance of SpiceClientBuilder for method chaining.
+     */
+    public SpiceClientBuilder withQueryMemoryLimit(long queryMemoryLimit) {
+        if (queryMemoryLimit <= 0) {
+            throw new IllegalArgumentException("queryMemoryLimit must be greater than 0");
+        }
+        this.queryMemoryLimit = queryMemoryLimit;
+        return this;
+    }
+
+    /**
+     * Sets the number of prepared statements kept open by the client, keyed by
+     * SQL text. Statements evicted from the cache are closed on the runtime once
+     * no PreparedQuery uses them. Set to 0 (the default) to disable the cache.
+     * 
+     * @param preparedStatementCacheSize The maximum number of cached prepared
+     *                                   statements
+     * @return The current instance of SpiceClientBuilder for method chaining.
+     */
+    public SpiceClientBuilder withPreparedStatementCacheSize(int preparedStatementCacheSize) {
+        if (preparedStatementCacheSize < 0) {
+            throw new IllegalArgumentException("preparedStatementCacheSize must be greater than or equal to 0");
+        }
+        this.preparedStatementCacheSize = preparedStatementCacheSize;
+        return this;
+    }
+
+    /**
+     * Enables the client-side result cache for queries executed with
+     * QueryOptions. Results are cached off-heap by normalized SQL text, evicted
+     * least recently used first once the byte budget is exceeded, and expire
+     * after the time to live. Refreshing a dataset through the client
+     * invalidates the cached results that may read from it.
+     * 
+     * @param maxBytes The maximum number of bytes of cached results
+     * @param ttl      The time after which a cached result expires
+     * @return The current instance of SpiceClientBuilder for method chaining.
+     */
+    public SpiceClientBuilder withResultCache(long maxBytes, Duration ttl) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be greater than 0");
+        }
+        if (ttl == null || ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("ttl must be a positive duration");
+        }
+        this.resultCacheMaxBytes = maxBytes;
+        this.resultCacheTtl = ttl;
+        return this;
+    }
+
+    /**
+     * Enables the client-side metadata cache for query schemas and catalog
+     * lookups made with getSchema, listTables and getTableSchema. Entries are
+     * evicted least recently used first once the maximum is reached, and expire
+     * after the time to live. Refreshing a dataset through the client
+     * invalidates the entries that may describe it.
+     * 
+     * @param maxEntries The maximum number of cached schemas and listings
+     * @param ttl        The time after which a cached entry expires
+     * @return The current instance of SpiceClientBuilder for method chaining.
+     */
+    public SpiceClientBuilder withMetadataCache(int maxEntries, Duration ttl) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be greater than 0");
+        }
+        if (ttl == null || ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("ttl must be a positive duration");
+        }
+        this.metadataCacheMaxEntries = maxEntries;
+        this.metadataCacheTtl = ttl;
+        return this;
+    }
+
+    /**
+     * Enables coalescing of concurrent identical queries executed with
+     * QueryOptions. A query with the same normalized SQL text as a query in
+     * flight subscribes to its results instead of being executed again: the
+     * batches are read from the runtime once and shared by reference, and a late
+     * subscriber first replays the batches already received. The timeout and
+     * memory limit of the first caller apply to the shared execution.
+     * 
+     * @param maxReplayBytes The maximum number of bytes of batches kept for late
+     *                       subscribers, beyond which identical queries are
+     *                       executed again, and kept in memory for a lagging
+     *                       subscriber, beyond which batches are spilled to disk
+     * @return The current instance of SpiceClientBuilder for method chaining.
+     */
+    public SpiceClientBuilder withQueryCoalescing(long maxReplayBytes) {
+        if (maxReplayBytes <= 0) {
+            throw new IllegalArgumentException("maxReplayBytes must be greater than 0");
+        }
+        this.coalescingMaxReplayBytes = maxReplayBytes;
+        return this;
+    }
+
+    /**
+     * Sets the number of gRPC channels opened to each Flight address. Calls and
+     * result streams are spread over the channels, so concurrent queries do not
+     * all share the flow-control window of a single HTTP/2 connection. Defaults
+     * to 1.
+     * 
+     * @param channels The number of channels per Flight address
+     * @return The current instance of SpiceClientBuilder for method chaining.
+     */
+    public SpiceClientBuilder withChannels(int channels) {
+        if (channels <= 0) {
+            throw new IllegalArgumentException("channels must be greater than 0");
+        }
+        this.channels = channels;
+        return this;
+    }
+
+    /**
+     * Sets how a runtime and a channel are picked for each call when the client
+     * has more than one of them. Defaults to LEAST_OUTSTANDING.
+     * 
+     * @param channelSelection The channel selection strategy
+     * @return The current instance of SpiceClientBuilder for method chaining.
+     */
+    public SpiceClientBuilder withChannelSelection(ChannelSelection channelSelection) {
+        if (channelSelection == null) {
+            throw new IllegalArgumentException("channelSelection can't be null");
+        }
+        this.channelSelection = channelSelection;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of dataset refreshes in flight at a time during
+     * refreshDatasets. Defaults to 8.
+     * 
+     * @param refreshConcurrency The maximum number of concurrent refreshes
+     * @return The current instance of SpiceClientBuilder for method chaining.
+     */
+    public SpiceClientBuilder withRefreshConcurrency(int refreshConcurrency) {
+        if (refreshConcurrency <= 0) {
+            throw new IllegalArgumentException("refreshConcurrency must be greater than 0");
+        }
+        this.refreshConcurrency = refreshConcurrency;
+        return this;
+    }
+
+    /**
+     * Sets the metrics the client reports query timings, rows and bytes
+     * received, retries, open streams and memory usage to. Defaults to
+     * ClientMetrics.NOOP. Use MicrometerMetrics to record to a Micrometer
+     * MeterRegistry.
+     * 
+     * @param metrics The metrics implementation
+     * @return The current instance of SpiceClientBuilder for method chaining.
+     */
+    public SpiceClientBuilder withMetrics(ClientMetrics metrics) {
+        if (metrics == null) {
+            throw new IllegalArgumentException("metrics can't be null");
+        }
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * Runs the client's background work, such as endpoint fetches, asynchronous
+     * queries and dataset refreshes, on virtual threads when the JDK supports
+     * them (JDK 21 and later). Each task gets its own virtual thread and the
+     * query parallelism no longer applies. On older JDKs the client keeps using
+     * its pool of platform threads.
+     * 
+     * @param virtualThreads Whether to use virtual threads when available
+     * @return The current instance of SpiceClientBuilder for method chaining.
+     */
+    public SpiceClientBuilder withVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+        return this;
+    }
+
+    /**
+     * Sets the store holding the bearer tokens of the client. Clients built with
+     * the same store and API key share their token, so only the first of them
+     * performs a handshake. Defaults to a store owned by the client.
+     * 
+     * @param tokenStore The token store
+     * @return The current instance of SpiceClientBuilder for method chaining.
+     */
+    public SpiceClientBuilder withTokenStore(TokenStore tokenStore) {
+        if (tokenStore == null) {
+            throw new IllegalArgumentException("tokenStore can't be null");
+        }
+        this.tokenStore = tokenStore;
+        return this;
+    }
+
+    /**
+     * Sets a callback adding headers to every Flight call, such as trace IDs or
+     * tenant tags. The callback writes into the outgoing headers directly.
+     * 
+     * @param callHeaders The per-call headers provider
+     * @return The current instance of SpiceClientBuilder for method chaining.
+     */
+    public SpiceClientBuilder withCallHeaders(CallHeadersProvider callHeaders) {
+        if (callHeaders == null) {
+            throw new IllegalArgumentException("callHeaders can't be null");
+        }
+        this.callHeaders = callHeaders;
+        return this;
+    }
+
+    /**
+     * Sets the directory of the temporary files written by queries that spill to
+     * disk, see {@link QueryOptions#withSpillThreshold(long)}. Defaults to the
+     * java.io.tmpdir directory.
+     * 
+     * @param spillDirectory The directory of the spill files
+     * @return The current instance of SpiceClientBuilder for method chaining.
+     */
+    public SpiceClientBuilder withSpillDirectory(Path spillDirectory) {
+        if (spillDirectory == null) {
+            throw new IllegalArgumentException("spillDirectory can't be null");
+        }
+        this.spillDirectory = spillDirectory;
+        return this;
+    }
+
+    /**
+     * Sets the gRPC compression of the messages the client sends, such as ingest
+     * batches and query parameters. Only outbound messages are compressed: the
+     * runtime decides whether query results are compressed, and the client
+     * accepts gzip compressed responses whenever it is configured to compress
+     * them. Defaults to Compression.NONE.
+     * 
+     * @param compression The compression of sent messages
+     * @return The current instance of SpiceClientBuilder for method chaining.
+     */
+    public SpiceClientBuilder withRequestCompression(Compression compression) {
+        if (compression == null) {
+            throw new IllegalArgumentException("compression can't be null");
+        }
+        this.requestCompression = compression;
+        return this;
+    }
+
     /**
      * Creates SpiceClient with provided parameters.
      *
      * @return The SpiceClient instance
      */
     public SpiceClient build() {
-        return new SpiceClient(appId, apiKey, flightAddress, httpAddress, maxRetries, userAgent);
+        return new SpiceClient(this);
     }
 }
\ No newline at end of file
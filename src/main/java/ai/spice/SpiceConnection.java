@@ -0,0 +1,466 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package ai.spice;
+
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.CallableStatement;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.NClob;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLClientInfoException;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.sql.Struct;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * A JDBC connection running its statements with a {@link SpiceClient}.
+ *
+ * Connections are read-only and always in auto-commit mode: statements run
+ * queries, and rows are written with {@link SpiceClient#ingest(String)}.
+ * Catalog metadata is read with {@link SpiceClient#listTables(String, String, String)}
+ * rather than DatabaseMetaData.
+ */
+class SpiceConnection implements Connection {
+
+    private final SpiceClient client;
+    private final boolean ownsClient;
+    private final Set<Statement> statements = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed = false;
+    private String schema = null;
+    private String catalog = null;
+    private Properties clientInfo = new Properties();
+
+    /**
+     * @param client     the client running the statements
+     * @param ownsClient true to close the client with the connection
+     */
+    SpiceConnection(SpiceClient client, boolean ownsClient) {
+        this.client = client;
+        this.ownsClient = ownsClient;
+    }
+
+    SpiceClient client() {
+        return this.client;
+    }
+
+    void checkOpen() throws SQLException {
+        if (this.closed) {
+            throw new SQLException("Connection is closed", "08003");
+        }
+    }
+
+    void statementClosed(Statement statement) {
+        this.statements.remove(statement);
+    }
+
+    @Override
+    public Statement createStatement() throws SQLException {
+        this.checkOpen();
+        SpiceStatement statement = new SpiceStatement(this);
+        this.statements.add(statement);
+        return statement;
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql) throws SQLException {
+        this.checkOpen();
+        SpicePreparedStatement statement = new SpicePreparedStatement(this, sql);
+        this.statements.add(statement);
+        return statement;
+    }
+
+    @Override
+    public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException {
+        checkResultSetType(resultSetType, resultSetConcurrency);
+        return this.createStatement();
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency)
+            throws SQLException {
+        checkResultSetType(resultSetType, resultSetConcurrency);
+        return this.prepareStatement(sql);
+    }
+
+    @Override
+    public Statement createStatement(int resultSetType, int resultSetConcurrency, int resultSetHoldability)
+            throws SQLException {
+        checkResultSetType(resultSetType, resultSetConcurrency);
+        return this.createStatement();
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency,
+            int resultSetHoldability) throws SQLException {
+        checkResultSetType(resultSetType, resultSetConcurrency);
+        return this.prepareStatement(sql);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+        if (autoGeneratedKeys != Statement.NO_GENERATED_KEYS) {
+            throw new SQLFeatureNotSupportedException("Generated keys are not supported");
+        }
+        return this.prepareStatement(sql);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Generated keys are not supported");
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Generated keys are not supported");
+    }
+
+    private static void checkResultSetType(int resultSetType, int resultSetConcurrency) throws SQLException {
+        // results are streamed batch by batch and can only be read once
+        if (resultSetType != ResultSet.TYPE_FORWARD_ONLY || resultSetConcurrency != ResultSet.CONCUR_READ_ONLY) {
+            throw new SQLFeatureNotSupportedException("Only forward-only, read-only result sets are supported");
+        }
+    }
+
+    @Override
+    public CallableStatement prepareCall(String sql) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Stored procedures are not supported");
+    }
+
+    @Override
+    public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency)
+            throws SQLException {
+        throw new SQLFeatureNotSupportedException("Stored procedures are not supported");
+    }
+
+    @Override
+    public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency,
+            int resultSetHoldability) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Stored procedures are not supported");
+    }
+
+    @Override
+    public String nativeSQL(String sql) {
+        return sql;
+    }
+
+    @Override
+    public void setAutoCommit(boolean autoCommit) throws SQLException {
+        this.checkOpen();
+        if (!autoCommit) {
+            throw new SQLFeatureNotSupportedException("Transactions are not supported");
+        }
+    }
+
+    @Override
+    public boolean getAutoCommit() throws SQLException {
+        this.checkOpen();
+        return true;
+    }
+
+    @Override
+    public void commit() throws SQLException {
+        this.checkOpen();
+        throw new SQLException("Connection is in auto-commit mode");
+    }
+
+    @Override
+    public void rollback() throws SQLException {
+        this.checkOpen();
+        throw new SQLException("Connection is in auto-commit mode");
+    }
+
+    @Override
+    public void close() throws SQLException {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        for (Statement statement : this.statements) {
+            statement.close();
+        }
+        this.statements.clear();
+        if (this.ownsClient) {
+            try {
+                this.client.close();
+            } catch (Exception e) {
+                throw new SQLException("Failed to close the Spice client", e);
+            }
+        }
+    }
+
+    @Override
+    public boolean isClosed() {
+        return this.closed;
+    }
+
+    @Override
+    public DatabaseMetaData getMetaData() throws SQLException {
+        throw new SQLFeatureNotSupportedException(
+                "DatabaseMetaData is not supported, use SpiceClient.listTables and getTableSchema");
+    }
+
+    @Override
+    public void setReadOnly(boolean readOnly) throws SQLException {
+        this.checkOpen();
+    }
+
+    @Override
+    public boolean isReadOnly() throws SQLException {
+        this.checkOpen();
+        return true;
+    }
+
+    @Override
+    public void setCatalog(String catalog) throws SQLException {
+        this.checkOpen();
+        // queries name their tables, the catalog is only kept for tools reading it back
+        this.catalog = catalog;
+    }
+
+    @Override
+    public String getCatalog() throws SQLException {
+        this.checkOpen();
+        return this.catalog;
+    }
+
+    @Override
+    public void setTransactionIsolation(int level) throws SQLException {
+        this.checkOpen();
+        if (level != Connection.TRANSACTION_NONE) {
+            throw new SQLFeatureNotSupportedException("Transactions are not supported");
+        }
+    }
+
+    @Override
+    public int getTransactionIsolation() throws SQLException {
+        this.checkOpen();
+        return Connection.TRANSACTION_NONE;
+    }
+
+    @Override
+    public SQLWarning getWarnings() throws SQLException {
+        this.checkOpen();
+        return null;
+    }
+
+    @Override
+    public void clearWarnings() throws SQLException {
+        this.checkOpen();
+    }
+
+    @Override
+    public Map<String, Class<?>> getTypeMap() throws SQLException {
+        this.checkOpen();
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public void setTypeMap(Map<String, Class<?>> map) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Type maps are not supported");
+    }
+
+    @Override
+    public void setHoldability(int holdability) throws SQLException {
+        this.checkOpen();
+        // there are no transactions to commit, result sets stay open until closed
+    }
+
+    @Override
+    public int getHoldability() throws SQLException {
+        this.checkOpen();
+        return ResultSet.CLOSE_CURSORS_AT_COMMIT;
+    }
+
+    @Override
+    public Savepoint setSavepoint() throws SQLException {
+        throw new SQLFeatureNotSupportedException("Transactions are not supported");
+    }
+
+    @Override
+    public Savepoint setSavepoint(String name) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Transactions are not supported");
+    }
+
+    @Override
+    public void rollback(Savepoint savepoint) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Transactions are not supported");
+    }
+
+    @Override
+    public void releaseSavepoint(Savepoint savepoint) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Transactions are not supported");
+    }
+
+    @Override
+    public Clob createClob() throws SQLException {
+        throw new SQLFeatureNotSupportedException("LOBs are not supported");
+    }
+
+    @Override
+    public Blob createBlob() throws SQLException {
+        throw new SQLFeatureNotSupportedException("LOBs are not supported");
+    }
+
+    @Override
+    public NClob createNClob() throws SQLException {
+        throw new SQLFeatureNotSupportedException("LOBs are not supported");
+    }
+
+    @Override
+    public SQLXML createSQLXML() throws SQLException {
+        throw new SQLFeatureNotSupportedException("SQLXML is not supported");
+    }
+
+    /**
+     * Runs SELECT 1 on the runtime, so pools evict connections to an unreachable
+     * runtime
+     */
+    @Override
+    public boolean isValid(int timeout) throws SQLException {
+        if (timeout < 0) {
+            throw new SQLException("timeout must be greater than or equal to 0");
+        }
+        if (this.closed) {
+            return false;
+        }
+        QueryOptions options = new QueryOptions().withCache(false).withCoalescing(false);
+        if (timeout > 0) {
+            options.withTimeout(Duration.ofSeconds(timeout));
+        }
+        try (QueryReader reader = this.client.query("SELECT 1", options)) {
+            while (reader.loadNextBatch()) {
+                // drain the single row
+            }
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void setClientInfo(String name, String value) throws SQLClientInfoException {
+        if (value == null) {
+            this.clientInfo.remove(name);
+        } else {
+            this.clientInfo.setProperty(name, value);
+        }
+    }
+
+    @Override
+    public void setClientInfo(Properties properties) throws SQLClientInfoException {
+        Properties info = new Properties();
+        if (properties != null) {
+            info.putAll(properties);
+        }
+        this.clientInfo = info;
+    }
+
+    @Override
+    public String getClientInfo(String name) {
+        return this.clientInfo.getProperty(name);
+    }
+
+    @Override
+    public Properties getClientInfo() {
+        Properties info = new Properties();
+        info.putAll(this.clientInfo);
+        return info;
+    }
+
+    @Override
+    public Array createArrayOf(String typeName, Object[] elements) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Arrays are not supported");
+    }
+
+    @Override
+    public Struct createStruct(String typeName, Object[] attributes) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Structs are not supported");
+    }
+
+    @Override
+    public void setSchema(String schema) throws SQLException {
+        this.checkOpen();
+        this.schema = schema;
+    }
+
+    @Override
+    public String getSchema() throws SQLException {
+        this.checkOpen();
+        return this.schema;
+    }
+
+    @Override
+    public void abort(Executor executor) throws SQLException {
+        if (executor == null) {
+            throw new SQLException("executor can't be null");
+        }
+        executor.execute(() -> {
+            try {
+                this.close();
+            } catch (SQLException e) {
+                // the connection is marked closed before its resources are released
+            }
+        });
+    }
+
+    @Override
+    public void setNetworkTimeout(Executor executor, int milliseconds) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Use Statement.setQueryTimeout or the client's retry policy");
+    }
+
+    @Override
+    public int getNetworkTimeout() throws SQLException {
+        this.checkOpen();
+        return 0;
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        if (iface.isInstance(this.client)) {
+            return iface.cast(this.client);
+        }
+        throw new SQLException("Not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this) || iface.isInstance(this.client);
+    }
+}
@@ -0,0 +1,205 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package ai.spice;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * JDBC driver over {@link SpiceClient}, registered with the DriverManager
+ * through the java.sql.Driver service file.
+ *
+ * URLs take the form {@code jdbc:spice://host:port} for a Spice OSS runtime,
+ * the port defaulting to 50051, with {@code tls=true} to connect over TLS, or {@code jdbc:spice:cloud} for
+ * Spice.ai Cloud. Settings are given as URL parameters, such as
+ * {@code jdbc:spice://localhost:50051?httpAddress=http://localhost:8090}, or
+ * as connection properties: apiKey (or password), httpAddress, userAgent,
+ * maxRetries and tls.
+ *
+ * Every connection opened by the driver owns a client, with its own channels
+ * and threads. Connection pools should rather share one client through a
+ * {@link SpiceDataSource}.
+ */
+public class SpiceDriver implements Driver {
+
+    static final String URL_PREFIX = "jdbc:spice:";
+    private static final String CLOUD = "cloud";
+    private static final int DEFAULT_PORT = 50051;
+
+    static {
+        try {
+            DriverManager.registerDriver(new SpiceDriver());
+        } catch (SQLException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    @Override
+    public Connection connect(String url, Properties info) throws SQLException {
+        if (!this.acceptsURL(url)) {
+            // the DriverManager asks every driver, null lets the next one try
+            return null;
+        }
+        Properties properties = parse(url, info);
+        try {
+            return new SpiceConnection(build(url, properties), true);
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            throw new SQLException("Invalid Spice JDBC URL or property: " + e.getMessage(), "08001", e);
+        }
+    }
+
+    @Override
+    public boolean acceptsURL(String url) {
+        return url != null && url.startsWith(URL_PREFIX);
+    }
+
+    @Override
+    public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) throws SQLException {
+        Properties properties = parse(url, info);
+        return new DriverPropertyInfo[] {
+                property(properties, "apiKey", "The API key used to authenticate with the runtime"),
+                property(properties, "httpAddress", "The HTTP address of the runtime, used to refresh datasets"),
+                property(properties, "userAgent", "The user agent sent with every call"),
+                property(properties, "maxRetries", "The maximum number of retries of a failed call"),
+                property(properties, "tls", "true to connect to the Flight address over TLS"),
+        };
+    }
+
+    private static DriverPropertyInfo property(Properties properties, String name, String description) {
+        DriverPropertyInfo info = new DriverPropertyInfo(name, properties.getProperty(name));
+        info.description = description;
+        info.required = false;
+        return info;
+    }
+
+    @Override
+    public int getMajorVersion() {
+        return versionPart(0);
+    }
+
+    @Override
+    public int getMinorVersion() {
+        return versionPart(1);
+    }
+
+    private static int versionPart(int index) {
+        String[] parts = Version.SPICE_JAVA_VERSION.split("\\.");
+        try {
+            return index < parts.length ? Integer.parseInt(parts[index]) : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    @Override
+    public boolean jdbcCompliant() {
+        return false;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException("The driver logs through SLF4J");
+    }
+
+    /**
+     * Merges the URL parameters into the connection properties, URL parameters
+     * taking precedence
+     */
+    static Properties parse(String url, Properties info) {
+        Properties properties = new Properties();
+        if (info != null) {
+            properties.putAll(info);
+        }
+        int query = url != null ? url.indexOf('?') : -1;
+        if (query >= 0) {
+            for (String parameter : url.substring(query + 1).split("&")) {
+                if (parameter.isEmpty()) {
+                    continue;
+                }
+                int equals = parameter.indexOf('=');
+                String key = equals >= 0 ? parameter.substring(0, equals) : parameter;
+                String value = equals >= 0 ? parameter.substring(equals + 1) : "";
+                properties.setProperty(URLDecoder.decode(key, StandardCharsets.UTF_8),
+                        URLDecoder.decode(value, StandardCharsets.UTF_8));
+            }
+        }
+        return properties;
+    }
+
+    static SpiceClient build(String url, Properties properties) throws URISyntaxException {
+        String target = url.substring(URL_PREFIX.length());
+        int query = target.indexOf('?');
+        if (query >= 0) {
+            target = target.substring(0, query);
+        }
+
+        SpiceClientBuilder builder = SpiceClient.builder();
+        if (target.equals(CLOUD)) {
+            builder.withSpiceCloud();
+        } else if (target.startsWith("//")) {
+            builder.withFlightAddress(flightAddress(target, Boolean.parseBoolean(properties.getProperty("tls"))));
+        } else {
+            throw new IllegalArgumentException("Expected jdbc:spice://host:port or jdbc:spice:cloud, got " + url);
+        }
+
+        String apiKey = properties.getProperty("apiKey", properties.getProperty("password"));
+        if (apiKey != null && !apiKey.isEmpty()) {
+            builder.withApiKey(apiKey);
+        }
+        if (properties.getProperty("httpAddress") != null) {
+            builder.withHttpAddress(new URI(properties.getProperty("httpAddress")));
+        }
+        if (properties.getProperty("userAgent") != null) {
+            builder.withUserAgent(properties.getProperty("userAgent"));
+        }
+        if (properties.getProperty("maxRetries") != null) {
+            builder.withMaxRetries(Integer.parseInt(properties.getProperty("maxRetries")));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns the Flight address of a {@code //host:port} URL target, with the
+     * default Spice OSS port when the target has none
+     */
+    static URI flightAddress(String target, boolean tls) throws URISyntaxException {
+        URI address = new URI((tls ? "https:" : "http:") + target);
+        if (address.getHost() == null) {
+            throw new IllegalArgumentException("Expected jdbc:spice://host:port, got jdbc:spice:" + target);
+        }
+        if (address.getPort() != -1) {
+            return address;
+        }
+        return new URI(address.getScheme(), address.getUserInfo(), address.getHost(), DEFAULT_PORT,
+                address.getPath(), null, null);
+    }
+}
@@ -0,0 +1,441 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package ai.spice;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Date;
+import java.sql.NClob;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.Ref;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.RowId;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLXML;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.arrow.vector.VectorSchemaRoot;
+
+/**
+ * A JDBC prepared statement backed by a {@link PreparedQuery}.
+ *
+ * The query is prepared on the runtime when the statement is created, and
+ * parameter values are sent as a single row Arrow batch with each execution.
+ * Stream parameters are read into memory when they are set.
+ */
+class SpicePreparedStatement extends SpiceStatement implements PreparedStatement {
+
+    private static final Object UNSET = new Object();
+
+    private final PreparedQuery prepared;
+    private final List<Object> parameters = new ArrayList<>();
+
+    SpicePreparedStatement(SpiceConnection connection, String sql) throws SQLException {
+        super(connection);
+        if (sql == null || sql.isEmpty()) {
+            throw new SQLException("No SQL query provided");
+        }
+        try {
+            this.prepared = connection.client().prepare(sql);
+        } catch (ExecutionException e) {
+            throw new SQLException(e.getMessage(), e.getCause() != null ? e.getCause() : e);
+        }
+    }
+
+    private void set(int parameterIndex, Object value) throws SQLException {
+        this.checkOpen();
+        if (parameterIndex < 1) {
+            throw new SQLException("Invalid parameter index " + parameterIndex);
+        }
+        while (this.parameters.size() < parameterIndex) {
+            this.parameters.add(UNSET);
+        }
+        this.parameters.set(parameterIndex - 1, value);
+    }
+
+    @Override
+    public ResultSet executeQuery() throws SQLException {
+        this.checkOpen();
+        int unset = this.parameters.indexOf(UNSET);
+        if (unset >= 0) {
+            throw new SQLException("Parameter " + (unset + 1) + " is not set", "07001");
+        }
+        QueryOptions options = this.queryOptions();
+        List<Object> values = Collections.unmodifiableList(new ArrayList<>(this.parameters));
+        return this.open(() -> {
+            if (values.isEmpty()) {
+                return this.prepared.execute(null, options);
+            }
+            try (VectorSchemaRoot root = JdbcParameters.bind(this.prepared.getParameterSchema(), values,
+                    this.connection.client().allocator())) {
+                return this.prepared.execute(root, options);
+            }
+        });
+    }
+
+    @Override
+    public boolean execute() throws SQLException {
+        this.executeQuery();
+        return true;
+    }
+
+    @Override
+    public int executeUpdate() throws SQLException {
+        throw new SQLFeatureNotSupportedException("Updates are not supported, write rows with SpiceClient.ingest");
+    }
+
+    @Override
+    public ResultSet executeQuery(String sql) throws SQLException {
+        throw new SQLException("executeQuery(String) can't be called on a PreparedStatement");
+    }
+
+    @Override
+    public boolean execute(String sql) throws SQLException {
+        throw new SQLException("execute(String) can't be called on a PreparedStatement");
+    }
+
+    @Override
+    public void addBatch() throws SQLException {
+        throw new SQLFeatureNotSupportedException("Batch updates are not supported");
+    }
+
+    @Override
+    public void clearParameters() throws SQLException {
+        this.checkOpen();
+        this.parameters.clear();
+    }
+
+    @Override
+    public ResultSetMetaData getMetaData() throws SQLException {
+        this.checkOpen();
+        return new SpiceResultSetMetaData(this.prepared.getResultSchema());
+    }
+
+    @Override
+    public ParameterMetaData getParameterMetaData() throws SQLException {
+        throw new SQLFeatureNotSupportedException("Parameter metadata is not supported, use PreparedQuery.getParameterSchema");
+    }
+
+    @Override
+    public void close() throws SQLException {
+        if (this.isClosed()) {
+            return;
+        }
+        try {
+            super.close();
+        } finally {
+            this.prepared.close();
+        }
+    }
+
+    @Override
+    public void setNull(int parameterIndex, int sqlType) throws SQLException {
+        this.set(parameterIndex, null);
+    }
+
+    @Override
+    public void setNull(int parameterIndex, int sqlType, String typeName) throws SQLException {
+        this.set(parameterIndex, null);
+    }
+
+    @Override
+    public void setBoolean(int parameterIndex, boolean x) throws SQLException {
+        this.set(parameterIndex, x);
+    }
+
+    @Override
+    public void setByte(int parameterIndex, byte x) throws SQLException {
+        this.set(parameterIndex, x);
+    }
+
+    @Override
+    public void setShort(int parameterIndex, short x) throws SQLException {
+        this.set(parameterIndex, x);
+    }
+
+    @Override
+    public void setInt(int parameterIndex, int x) throws SQLException {
+        this.set(parameterIndex, x);
+    }
+
+    @Override
+    public void setLong(int parameterIndex, long x) throws SQLException {
+        this.set(parameterIndex, x);
+    }
+
+    @Override
+    public void setFloat(int parameterIndex, float x) throws SQLException {
+        this.set(parameterIndex, x);
+    }
+
+    @Override
+    public void setDouble(int parameterIndex, double x) throws SQLException {
+        this.set(parameterIndex, x);
+    }
+
+    @Override
+    public void setBigDecimal(int parameterIndex, BigDecimal x) throws SQLException {
+        this.set(parameterIndex, x);
+    }
+
+    @Override
+    public void setString(int parameterIndex, String x) throws SQLException {
+        this.set(parameterIndex, x);
+    }
+
+    @Override
+    public void setNString(int parameterIndex, String value) throws SQLException {
+        this.set(parameterIndex, value);
+    }
+
+    @Override
+    public void setBytes(int parameterIndex, byte[] x) throws SQLException {
+        this.set(parameterIndex, x);
+    }
+
+    @Override
+    public void setDate(int parameterIndex, Date x) throws SQLException {
+        this.set(parameterIndex, x);
+    }
+
+    @Override
+    public void setTime(int parameterIndex, Time x) throws SQLException {
+        this.set(parameterIndex, x);
+    }
+
+    @Override
+    public void setTimestamp(int parameterIndex, Timestamp x) throws SQLException {
+        this.set(parameterIndex, x);
+    }
+
+    @Override
+    public void setDate(int parameterIndex, Date x, Calendar cal) throws SQLException {
+        this.set(parameterIndex, x);
+    }
+
+    @Override
+    public void setTime(int parameterIndex, Time x, Calendar cal) throws SQLException {
+        this.set(parameterIndex, x);
+    }
+
+    @Override
+    public void setTimestamp(int parameterIndex, Timestamp x, Calendar cal) throws SQLException {
+        this.set(parameterIndex, x);
+    }
+
+    @Override
+    public void setObject(int parameterIndex, Object x) throws SQLException {
+        this.set(parameterIndex, x);
+    }
+
+    @Override
+    public void setObject(int parameterIndex, Object x, int targetSqlType) throws SQLException {
+        this.set(parameterIndex, x);
+    }
+
+    @Override
+    public void setObject(int parameterIndex, Object x, int targetSqlType, int scaleOrLength) throws SQLException {
+        this.set(parameterIndex, x);
+    }
+
+    private static byte[] readBytes(InputStream x, long length) throws SQLException {
+        if (x == null) {
+            return null;
+        }
+        try {
+            return length >= 0 ? x.readNBytes(Math.toIntExact(length)) : x.readAllBytes();
+        } catch (IOException | ArithmeticException e) {
+            throw new SQLException("Failed to read the parameter stream", e);
+        }
+    }
+
+    private static String readString(Reader reader, long length) throws SQLException {
+        if (reader == null) {
+            return null;
+        }
+        try {
+            StringWriter writer = new StringWriter();
+            char[] buffer = new char[8192];
+            long remaining = length >= 0 ? length : Long.MAX_VALUE;
+            int read;
+            while (remaining > 0 && (read = reader.read(buffer, 0, (int) Math.min(buffer.length, remaining))) > 0) {
+                writer.write(buffer, 0, read);
+                remaining -= read;
+            }
+            return writer.toString();
+        } catch (IOException e) {
+            throw new SQLException("Failed to read the parameter stream", e);
+        }
+    }
+
+    private static String asciiString(byte[] bytes) {
+        return bytes != null ? new String(bytes, StandardCharsets.US_ASCII) : null;
+    }
+
+    @Override
+    public void setAsciiStream(int parameterIndex, InputStream x, int length) throws SQLException {
+        this.set(parameterIndex, asciiString(readBytes(x, length)));
+    }
+
+    @Override
+    public void setAsciiStream(int parameterIndex, InputStream x, long length) throws SQLException {
+        this.set(parameterIndex, asciiString(readBytes(x, length)));
+    }
+
+    @Override
+    public void setAsciiStream(int parameterIndex, InputStream x) throws SQLException {
+        this.set(parameterIndex, asciiString(readBytes(x, -1)));
+    }
+
+    @Override
+    @Deprecated
+    public void setUnicodeStream(int parameterIndex, InputStream x, int length) throws SQLException {
+        throw new SQLFeatureNotSupportedException("setUnicodeStream is deprecated, use setCharacterStream");
+    }
+
+    @Override
+    public void setBinaryStream(int parameterIndex, InputStream x, int length) throws SQLException {
+        this.set(parameterIndex, readBytes(x, length));
+    }
+
+    @Override
+    public void setBinaryStream(int parameterIndex, InputStream x, long length) throws SQLException {
+        this.set(parameterIndex, readBytes(x, length));
+    }
+
+    @Override
+    public void setBinaryStream(int parameterIndex, InputStream x) throws SQLException {
+        this.set(parameterIndex, readBytes(x, -1));
+    }
+
+    @Override
+    public void setCharacterStream(int parameterIndex, Reader reader, int length) throws SQLException {
+        this.set(parameterIndex, readString(reader, length));
+    }
+
+    @Override
+    public void setCharacterStream(int parameterIndex, Reader reader, long length) throws SQLException {
+        this.set(parameterIndex, readString(reader, length));
+    }
+
+    @Override
+    public void setCharacterStream(int parameterIndex, Reader reader) throws SQLException {
+        this.set(parameterIndex, readString(reader, -1));
+    }
+
+    @Override
+    public void setNCharacterStream(int parameterIndex, Reader value, long length) throws SQLException {
+        this.set(parameterIndex, readString(value, length));
+    }
+
+    @Override
+    public void setNCharacterStream(int parameterIndex, Reader value) throws SQLException {
+        this.set(parameterIndex, readString(value, -1));
+    }
+
+    @Override
+    public void setRef(int parameterIndex, Ref x) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Refs are not supported");
+    }
+
+    @Override
+    public void setBlob(int parameterIndex, Blob x) throws SQLException {
+        throw new SQLFeatureNotSupportedException("LOBs are not supported, use setBytes");
+    }
+
+    @Override
+    public void setBlob(int parameterIndex, InputStream inputStream, long length) throws SQLException {
+        throw new SQLFeatureNotSupportedException("LOBs are not supported, use setBinaryStream");
+    }
+
+    @Override
+    public void setBlob(int parameterIndex, InputStream inputStream) throws SQLException {
+        throw new SQLFeatureNotSupportedException("LOBs are not supported, use setBinaryStream");
+    }
+
+    @Override
+    public void setClob(int parameterIndex, Clob x) throws SQLException {
+        throw new SQLFeatureNotSupportedException("LOBs are not supported, use setString");
+    }
+
+    @Override
+    public void setClob(int parameterIndex, Reader reader, long length) throws SQLException {
+        throw new SQLFeatureNotSupportedException("LOBs are not supported, use setCharacterStream");
+    }
+
+    @Override
+    public void setClob(int parameterIndex, Reader reader) throws SQLException {
+        throw new SQLFeatureNotSupportedException("LOBs are not supported, use setCharacterStream");
+    }
+
+    @Override
+    public void setNClob(int parameterIndex, NClob value) throws SQLException {
+        throw new SQLFeatureNotSupportedException("LOBs are not supported, use setString");
+    }
+
+    @Override
+    public void setNClob(int parameterIndex, Reader reader, long length) throws SQLException {
+        throw new SQLFeatureNotSupportedException("LOBs are not supported, use setCharacterStream");
+    }
+
+    @Override
+    public void setNClob(int parameterIndex, Reader reader) throws SQLException {
+        throw new SQLFeatureNotSupportedException("LOBs are not supported, use setCharacterStream");
+    }
+
+    @Override
+    public void setArray(int parameterIndex, Array x) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Array parameters are not supported");
+    }
+
+    @Override
+    public void setURL(int parameterIndex, URL x) throws SQLException {
+        throw new SQLFeatureNotSupportedException("URL parameters are not supported, use setString");
+    }
+
+    @Override
+    public void setRowId(int parameterIndex, RowId x) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Row ids are not supported");
+    }
+
+    @Override
+    public void setSQLXML(int parameterIndex, SQLXML xmlObject) throws SQLException {
+        throw new SQLFeatureNotSupportedException("SQLXML is not supported");
+    }
+}
@@ -0,0 +1,1453 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package ai.spice;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Date;
+import java.sql.NClob;
+import java.sql.Ref;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.RowId;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Statement;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.arrow.vector.BaseIntVector;
+import org.apache.arrow.vector.BitVector;
+import org.apache.arrow.vector.DateDayVector;
+import org.apache.arrow.vector.DateMilliVector;
+import org.apache.arrow.vector.Decimal256Vector;
+import org.apache.arrow.vector.DecimalVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.FixedSizeBinaryVector;
+import org.apache.arrow.vector.FloatingPointVector;
+import org.apache.arrow.vector.LargeVarBinaryVector;
+import org.apache.arrow.vector.LargeVarCharVector;
+import org.apache.arrow.vector.TimeMicroVector;
+import org.apache.arrow.vector.TimeMilliVector;
+import org.apache.arrow.vector.TimeNanoVector;
+import org.apache.arrow.vector.TimeSecVector;
+import org.apache.arrow.vector.TimeStampVector;
+import org.apache.arrow.vector.VarBinaryVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+
+/**
+ * A forward-only JDBC result set reading straight from the Arrow vectors of a
+ * {@link QueryReader}, one batch at a time.
+ *
+ * Values are read from the current batch without copying it into rows, and
+ * the next batch is only loaded once every row of the current one has been
+ * read. Timestamps without a time zone are returned with the same wall-clock
+ * time in the JVM time zone. Calendar arguments are ignored.
+ */
+class SpiceResultSet implements ResultSet {
+
+    private final SpiceStatement statement;
+    private final QueryReader reader;
+    private final long maxRows;
+    private final VectorSchemaRoot root;
+    private List<FieldVector> vectors;
+    private Map<String, Integer> columnIndexes;
+    private int index = -1;
+    private int batchRows = 0;
+    private long row = 0;
+    private boolean done = false;
+    private boolean wasNull = false;
+    private volatile boolean closed = false;
+    private int fetchSize;
+
+    /**
+     * @param statement the statement that ran the query
+     * @param reader    the reader over the query results, closed with the result
+     *                  set
+     * @param maxRows   the maximum number of rows returned, or 0 for every row
+     */
+    SpiceResultSet(SpiceStatement statement, QueryReader reader, long maxRows) throws SQLException {
+        this.statement = statement;
+        this.reader = reader;
+        this.maxRows = maxRows;
+        try {
+            this.root = reader.getVectorSchemaRoot();
+        } catch (IOException | RuntimeException e) {
+            closeQuietly(reader);
+            throw new SQLException("Failed to read the query schema: " + e.getMessage(), e);
+        }
+        this.vectors = this.root.getFieldVectors();
+    }
+
+    private static void closeQuietly(QueryReader reader) {
+        try {
+            reader.close();
+        } catch (IOException e) {
+            // the reader failed before returning any batch
+        }
+    }
+
+    private void checkOpen() throws SQLException {
+        if (this.closed) {
+            throw new SQLException("ResultSet is closed");
+        }
+    }
+
+    void cancel() {
+        this.reader.cancel();
+    }
+
+    @Override
+    public boolean next() throws SQLException {
+        this.checkOpen();
+        if (this.done) {
+            return false;
+        }
+        if (this.maxRows > 0 && this.row >= this.maxRows) {
+            this.done = true;
+            return false;
+        }
+        this.index++;
+        try {
+            while (this.index >= this.batchRows) {
+                if (!this.reader.loadNextBatch()) {
+                    this.done = true;
+                    return false;
+                }
+                // re-read the vectors in case the stream replaced the schema
+                this.vectors = this.root.getFieldVectors();
+                this.batchRows = this.root.getRowCount();
+                this.index = 0;
+            }
+        } catch (IOException | RuntimeException e) {
+            throw new SQLException("Failed to read the next batch: " + e.getMessage(), e);
+        }
+        this.row++;
+        return true;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        try {
+            this.reader.close();
+        } catch (IOException e) {
+            throw new SQLException("Failed to close the query reader", e);
+        } finally {
+            this.statement.resultSetClosed(this);
+        }
+    }
+
+    @Override
+    public boolean isClosed() {
+        return this.closed;
+    }
+
+    @Override
+    public boolean wasNull() throws SQLException {
+        this.checkOpen();
+        return this.wasNull;
+    }
+
+    /**
+     * Returns the vector of a column positioned on the current row, or null if
+     * the value is null
+     */
+    private FieldVector value(int columnIndex) throws SQLException {
+        this.checkOpen();
+        if (this.index < 0 || this.index >= this.batchRows) {
+            throw new SQLException("The result set is not positioned on a row");
+        }
+        if (columnIndex < 1 || columnIndex > this.vectors.size()) {
+            throw new SQLException("Invalid column index " + columnIndex);
+        }
+        FieldVector vector = this.vectors.get(columnIndex - 1);
+        this.wasNull = vector.isNull(this.index);
+        return this.wasNull ? null : vector;
+    }
+
+    private static SQLException conversionError(FieldVector vector, String type, Exception cause) {
+        return new SQLException(String.format("Column %s of type %s can't be read as %s", vector.getName(),
+                vector.getField().getType(), type), "22018", cause);
+    }
+
+    @Override
+    public String getString(int columnIndex) throws SQLException {
+        FieldVector vector = this.value(columnIndex);
+        if (vector == null) {
+            return null;
+        }
+        if (isTemporal(vector)) {
+            return this.temporal(vector).toString();
+        }
+        return Values.getString(vector, this.index);
+    }
+
+    @Override
+    public boolean getBoolean(int columnIndex) throws SQLException {
+        FieldVector vector = this.value(columnIndex);
+        if (vector == null) {
+            return false;
+        }
+        if (vector instanceof BitVector) {
+            return Values.getBoolean(vector, this.index);
+        }
+        if (vector instanceof VarCharVector || vector instanceof LargeVarCharVector) {
+            String value = Values.getString(vector, this.index).trim();
+            return value.equalsIgnoreCase("true") || value.equals("1");
+        }
+        return this.getLong(columnIndex) != 0;
+    }
+
+    @Override
+    public byte getByte(int columnIndex) throws SQLException {
+        return (byte) this.getLong(columnIndex);
+    }
+
+    @Override
+    public short getShort(int columnIndex) throws SQLException {
+        return (short) this.getLong(columnIndex);
+    }
+
+    @Override
+    public int getInt(int columnIndex) throws SQLException {
+        return (int) this.getLong(columnIndex);
+    }
+
+    @Override
+    public long getLong(int columnIndex) throws SQLException {
+        FieldVector vector = this.value(columnIndex);
+        if (vector == null) {
+            return 0;
+        }
+        try {
+            if (vector instanceof BaseIntVector) {
+                return ((BaseIntVector) vector).getValueAsLong(this.index);
+            }
+            if (vector instanceof BitVector) {
+                return Values.getBoolean(vector, this.index) ? 1 : 0;
+            }
+            if (vector instanceof FloatingPointVector) {
+                return (long) Values.getDouble(vector, this.index);
+            }
+            if (vector instanceof DecimalVector || vector instanceof Decimal256Vector) {
+                return ((BigDecimal) vector.getObject(this.index)).longValue();
+            }
+            if (vector instanceof VarCharVector || vector instanceof LargeVarCharVector) {
+                return Long.parseLong(Values.getString(vector, this.index).trim());
+            }
+            return Values.getLong(vector, this.index);
+        } catch (UnsupportedOperationException | NumberFormatException e) {
+            throw conversionError(vector, "long", e);
+        }
+    }
+
+    @Override
+    public float getFloat(int columnIndex) throws SQLException {
+        return (float) this.getDouble(columnIndex);
+    }
+
+    @Override
+    public double getDouble(int columnIndex) throws SQLException {
+        FieldVector vector = this.value(columnIndex);
+        if (vector == null) {
+            return 0;
+        }
+        try {
+            if (vector instanceof VarCharVector || vector instanceof LargeVarCharVector) {
+                return Double.parseDouble(Values.getString(vector, this.index).trim());
+            }
+            return Values.getDouble(vector, this.index);
+        } catch (UnsupportedOperationException | NumberFormatException e) {
+            throw conversionError(vector, "double", e);
+        }
+    }
+
+    @Override
+    public BigDecimal getBigDecimal(int columnIndex) throws SQLException {
+        FieldVector vector = this.value(columnIndex);
+        if (vector == null) {
+            return null;
+        }
+        try {
+            if (vector instanceof DecimalVector || vector instanceof Decimal256Vector) {
+                return (BigDecimal) vector.getObject(this.index);
+            }
+            if (vector instanceof BaseIntVector) {
+                return BigDecimal.valueOf(((BaseIntVector) vector).getValueAsLong(this.index));
+            }
+            if (vector instanceof FloatingPointVector) {
+                return BigDecimal.valueOf(((FloatingPointVector) vector).getValueAsDouble(this.index));
+            }
+            return new BigDecimal(Values.getString(vector, this.index).trim());
+        } catch (NumberFormatException e) {
+            throw conversionError(vector, "BigDecimal", e);
+        }
+    }
+
+    @Override
+    @Deprecated
+    public BigDecimal getBigDecimal(int columnIndex, int scale) throws SQLException {
+        BigDecimal value = this.getBigDecimal(columnIndex);
+        return value != null ? value.setScale(scale, RoundingMode.HALF_UP) : null;
+    }
+
+    @Override
+    public byte[] getBytes(int columnIndex) throws SQLException {
+        FieldVector vector = this.value(columnIndex);
+        if (vector == null) {
+            return null;
+        }
+        if (vector instanceof VarBinaryVector) {
+            return ((VarBinaryVector) vector).get(this.index);
+        }
+        if (vector instanceof LargeVarBinaryVector) {
+            return ((LargeVarBinaryVector) vector).get(this.index);
+        }
+        if (vector instanceof FixedSizeBinaryVector) {
+            return ((FixedSizeBinaryVector) vector).get(this.index);
+        }
+        if (vector instanceof VarCharVector) {
+            return ((VarCharVector) vector).get(this.index);
+        }
+        if (vector instanceof LargeVarCharVector) {
+            return ((LargeVarCharVector) vector).get(this.index);
+        }
+        throw conversionError(vector, "bytes", null);
+    }
+
+    private static boolean isTemporal(FieldVector vector) {
+        return vector instanceof TimeStampVector || vector instanceof DateDayVector
+                || vector instanceof DateMilliVector || vector instanceof TimeSecVector
+                || vector instanceof TimeMilliVector || vector instanceof TimeMicroVector
+                || vector instanceof TimeNanoVector;
+    }
+
+    /**
+     * Reads a date, time or timestamp column as a java.sql value
+     */
+    private java.util.Date temporal(FieldVector vector) throws SQLException {
+        long value = Values.getLong(vector, this.index);
+        if (vector instanceof TimeStampVector) {
+            ArrowType.Timestamp type = (ArrowType.Timestamp) vector.getField().getType();
+            Instant instant = toInstant(value, type.getUnit());
+            if (type.getTimezone() != null) {
+                return Timestamp.from(instant);
+            }
+            return Timestamp.valueOf(LocalDateTime.ofInstant(instant, java.time.ZoneOffset.UTC));
+        }
+        if (vector instanceof DateDayVector) {
+            return Date.valueOf(LocalDate.ofEpochDay(value));
+        }
+        if (vector instanceof DateMilliVector) {
+            return Date.valueOf(LocalDate.ofEpochDay(Math.floorDiv(value, TimeUnit.DAYS.toMillis(1))));
+        }
+        long nanos;
+        if (vector instanceof TimeSecVector) {
+            nanos = TimeUnit.SECONDS.toNanos(value);
+        } else if (vector instanceof TimeMilliVector) {
+            nanos = TimeUnit.MILLISECONDS.toNanos(value);
+        } else if (vector instanceof TimeMicroVector) {
+            nanos = TimeUnit.MICROSECONDS.toNanos(value);
+        } else if (vector instanceof TimeNanoVector) {
+            nanos = value;
+        } else {
+            throw conversionError(vector, "a date or time", null);
+        }
+        return Time.valueOf(LocalTime.ofNanoOfDay(nanos));
+    }
+
+    static Instant toInstant(long value, org.apache.arrow.vector.types.TimeUnit unit) {
+        switch (unit) {
+            case SECOND:
+                return Instant.ofEpochSecond(value);
+            case MILLISECOND:
+                return Instant.ofEpochMilli(value);
+            case MICROSECOND:
+                return Instant.ofEpochSecond(Math.floorDiv(value, 1_000_000L),
+                        Math.floorMod(value, 1_000_000L) * 1_000L);
+            default:
+                return Instant.ofEpochSecond(Math.floorDiv(value, 1_000_000_000L),
+                        Math.floorMod(value, 1_000_000_000L));
+        }
+    }
+
+    @Override
+    public Date getDate(int columnIndex) throws SQLException {
+        FieldVector vector = this.value(columnIndex);
+        if (vector == null) {
+            return null;
+        }
+        java.util.Date value = this.temporal(vector);
+        if (value instanceof Date) {
+            return (Date) value;
+        }
+        if (value instanceof Timestamp) {
+            return Date.valueOf(((Timestamp) value).toLocalDateTime().toLocalDate());
+        }
+        throw conversionError(vector, "Date", null);
+    }
+
+    @Override
+    public Time getTime(int columnIndex) throws SQLException {
+        FieldVector vector = this.value(columnIndex);
+        if (vector == null) {
+            return null;
+        }
+        java.util.Date value = this.temporal(vector);
+        if (value instanceof Time) {
+            return (Time) value;
+        }
+        if (value instanceof Timestamp) {
+            return Time.valueOf(((Timestamp) value).toLocalDateTime().toLocalTime());
+        }
+        throw conversionError(vector, "Time", null);
+    }
+
+    @Override
+    public Timestamp getTimestamp(int columnIndex) throws SQLException {
+        FieldVector vector = this.value(columnIndex);
+        if (vector == null) {
+            return null;
+        }
+        java.util.Date value = this.temporal(vector);
+        if (value instanceof Timestamp) {
+            return (Timestamp) value;
+        }
+        if (value instanceof Date) {
+            return Timestamp.valueOf(((Date) value).toLocalDate().atStartOfDay());
+        }
+        throw conversionError(vector, "Timestamp", null);
+    }
+
+    @Override
+    public Date getDate(int columnIndex, Calendar cal) throws SQLException {
+        return this.getDate(columnIndex);
+    }
+
+    @Override
+    public Time getTime(int columnIndex, Calendar cal) throws SQLException {
+        return this.getTime(columnIndex);
+    }
+
+    @Override
+    public Timestamp getTimestamp(int columnIndex, Calendar cal) throws SQLException {
+        return this.getTimestamp(columnIndex);
+    }
+
+    @Override
+    public Object getObject(int columnIndex) throws SQLException {
+        FieldVector vector = this.value(columnIndex);
+        if (vector == null) {
+            return null;
+        }
+        if (isTemporal(vector)) {
+            return this.temporal(vector);
+        }
+        if (vector instanceof VarCharVector || vector instanceof LargeVarCharVector) {
+            return Values.getString(vector, this.index);
+        }
+        return vector.getObject(this.index);
+    }
+
+    @Override
+    public Object getObject(int columnIndex, Map<String, Class<?>> map) throws SQLException {
+        return this.getObject(columnIndex);
+    }
+
+    @Override
+    public <T> T getObject(int columnIndex, Class<T> type) throws SQLException {
+        if (type == null) {
+            throw new SQLException("type can't be null");
+        }
+        Object value;
+        if (type == String.class) {
+            value = this.getString(columnIndex);
+        } else if (type == Long.class) {
+            value = this.getLong(columnIndex);
+        } else if (type == Integer.class) {
+            value = this.getInt(columnIndex);
+        } else if (type == Short.class) {
+            value = this.getShort(columnIndex);
+        } else if (type == Byte.class) {
+            value = this.getByte(columnIndex);
+        } else if (type == Double.class) {
+            value = this.getDouble(columnIndex);
+        } else if (type == Float.class) {
+            value = this.getFloat(columnIndex);
+        } else if (type == Boolean.class) {
+            value = this.getBoolean(columnIndex);
+        } else if (type == BigDecimal.class) {
+            value = this.getBigDecimal(columnIndex);
+        } else if (type == byte[].class) {
+            value = this.getBytes(columnIndex);
+        } else if (type == Date.class) {
+            value = this.getDate(columnIndex);
+        } else if (type == Time.class) {
+            value = this.getTime(columnIndex);
+        } else if (type == Timestamp.class) {
+            value = this.getTimestamp(columnIndex);
+        } else if (type == LocalDate.class) {
+            Date date = this.getDate(columnIndex);
+            value = date != null ? date.toLocalDate() : null;
+        } else if (type == LocalTime.class) {
+            Time time = this.getTime(columnIndex);
+            value = time != null ? time.toLocalTime() : null;
+        } else if (type == LocalDateTime.class) {
+            Timestamp timestamp = this.getTimestamp(columnIndex);
+            value = timestamp != null ? timestamp.toLocalDateTime() : null;
+        } else if (type == Instant.class) {
+            Timestamp timestamp = this.getTimestamp(columnIndex);
+            value = timestamp != null ? timestamp.toInstant() : null;
+        } else {
+            value = this.getObject(columnIndex);
+            if (value != null && !type.isInstance(value)) {
+                throw new SQLException(String.format("Column %d can't be read as %s", columnIndex, type.getName()),
+                        "22018");
+            }
+        }
+        // primitive getters return 0 for null values, getObject returns null
+        return this.wasNull ? null : type.cast(value);
+    }
+
+    @Override
+    public InputStream getAsciiStream(int columnIndex) throws SQLException {
+        String value = this.getString(columnIndex);
+        return value != null ? new ByteArrayInputStream(value.getBytes(StandardCharsets.US_ASCII)) : null;
+    }
+
+    @Override
+    @Deprecated
+    public InputStream getUnicodeStream(int columnIndex) throws SQLException {
+        throw new SQLFeatureNotSupportedException("getUnicodeStream is deprecated, use getCharacterStream");
+    }
+
+    @Override
+    public InputStream getBinaryStream(int columnIndex) throws SQLException {
+        byte[] value = this.getBytes(columnIndex);
+        return value != null ? new ByteArrayInputStream(value) : null;
+    }
+
+    @Override
+    public Reader getCharacterStream(int columnIndex) throws SQLException {
+        String value = this.getString(columnIndex);
+        return value != null ? new StringReader(value) : null;
+    }
+
+    @Override
+    public String getNString(int columnIndex) throws SQLException {
+        return this.getString(columnIndex);
+    }
+
+    @Override
+    public Reader getNCharacterStream(int columnIndex) throws SQLException {
+        return this.getCharacterStream(columnIndex);
+    }
+
+    @Override
+    public Ref getRef(int columnIndex) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Refs are not supported");
+    }
+
+    @Override
+    public Blob getBlob(int columnIndex) throws SQLException {
+        throw new SQLFeatureNotSupportedException("LOBs are not supported, use getBytes");
+    }
+
+    @Override
+    public Clob getClob(int columnIndex) throws SQLException {
+        throw new SQLFeatureNotSupportedException("LOBs are not supported, use getString");
+    }
+
+    @Override
+    public NClob getNClob(int columnIndex) throws SQLException {
+        throw new SQLFeatureNotSupportedException("LOBs are not supported, use getString");
+    }
+
+    @Override
+    public Array getArray(int columnIndex) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Arrays are not supported, use getObject");
+    }
+
+    @Override
+    public URL getURL(int columnIndex) throws SQLException {
+        throw new SQLFeatureNotSupportedException("URLs are not supported, use getString");
+    }
+
+    @Override
+    public RowId getRowId(int columnIndex) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Row ids are not supported");
+    }
+
+    @Override
+    public SQLXML getSQLXML(int columnIndex) throws SQLException {
+        throw new SQLFeatureNotSupportedException("SQLXML is not supported");
+    }
+
+    @Override
+    public int findColumn(String columnLabel) throws SQLException {
+        this.checkOpen();
+        if (this.columnIndexes == null) {
+            Map<String, Integer> indexes = new HashMap<>();
+            for (int i = 0; i < this.vectors.size(); i++) {
+                // exact names first, so a case-insensitive match never shadows them
+                indexes.putIfAbsent(this.vectors.get(i).getName(), i + 1);
+            }
+            for (int i = 0; i < this.vectors.size(); i++) {
+                indexes.putIfAbsent(this.vectors.get(i).getName().toLowerCase(Locale.ROOT), i + 1);
+            }
+            this.columnIndexes = indexes;
+        }
+        Integer column = this.columnIndexes.get(columnLabel);
+        if (column == null) {
+            column = this.columnIndexes.get(columnLabel.toLowerCase(Locale.ROOT));
+        }
+        if (column == null) {
+            throw new SQLException("No column named " + columnLabel);
+        }
+        return column;
+    }
+
+    @Override
+    public ResultSetMetaData getMetaData() throws SQLException {
+        this.checkOpen();
+        return new SpiceResultSetMetaData(this.root.getSchema());
+    }
+
+    @Override
+    public SQLWarning getWarnings() throws SQLException {
+        this.checkOpen();
+        return null;
+    }
+
+    @Override
+    public void clearWarnings() throws SQLException {
+        this.checkOpen();
+    }
+
+    @Override
+    public String getCursorName() throws SQLException {
+        throw new SQLFeatureNotSupportedException("Named cursors are not supported");
+    }
+
+    @Override
+    public boolean isBeforeFirst() throws SQLException {
+        this.checkOpen();
+        return this.row == 0 && !this.done;
+    }
+
+    @Override
+    public boolean isAfterLast() throws SQLException {
+        this.checkOpen();
+        return this.done && this.row > 0;
+    }
+
+    @Override
+    public boolean isFirst() throws SQLException {
+        this.checkOpen();
+        return this.row == 1 && !this.done;
+    }
+
+    @Override
+    public boolean isLast() throws SQLException {
+        throw new SQLFeatureNotSupportedException("isLast would read ahead of a streamed result");
+    }
+
+    @Override
+    public void beforeFirst() throws SQLException {
+        throw forwardOnly();
+    }
+
+    @Override
+    public void afterLast() throws SQLException {
+        throw forwardOnly();
+    }
+
+    @Override
+    public boolean first() throws SQLException {
+        throw forwardOnly();
+    }
+
+    @Override
+    public boolean last() throws SQLException {
+        throw forwardOnly();
+    }
+
+    @Override
+    public boolean absolute(int row) throws SQLException {
+        throw forwardOnly();
+    }
+
+    @Override
+    public boolean relative(int rows) throws SQLException {
+        throw forwardOnly();
+    }
+
+    @Override
+    public boolean previous() throws SQLException {
+        throw forwardOnly();
+    }
+
+    private static SQLException forwardOnly() {
+        return new SQLException("ResultSet is TYPE_FORWARD_ONLY");
+    }
+
+    @Override
+    public int getRow() throws SQLException {
+        this.checkOpen();
+        return this.done ? 0 : (int) Math.min(Integer.MAX_VALUE, this.row);
+    }
+
+    @Override
+    public void setFetchDirection(int direction) throws SQLException {
+        this.checkOpen();
+        if (direction != ResultSet.FETCH_FORWARD) {
+            throw new SQLFeatureNotSupportedException("Only FETCH_FORWARD is supported");
+        }
+    }
+
+    @Override
+    public int getFetchDirection() throws SQLException {
+        this.checkOpen();
+        return ResultSet.FETCH_FORWARD;
+    }
+
+    @Override
+    public void setFetchSize(int rows) throws SQLException {
+        this.checkOpen();
+        if (rows < 0) {
+            throw new SQLException("rows must be greater than or equal to 0");
+        }
+        // the batches are already being fetched ahead, the hint only applies to the next query
+        this.fetchSize = rows;
+    }
+
+    @Override
+    public int getFetchSize() throws SQLException {
+        this.checkOpen();
+        return this.fetchSize;
+    }
+
+    @Override
+    public int getType() throws SQLException {
+        this.checkOpen();
+        return ResultSet.TYPE_FORWARD_ONLY;
+    }
+
+    @Override
+    public int getConcurrency() throws SQLException {
+        this.checkOpen();
+        return ResultSet.CONCUR_READ_ONLY;
+    }
+
+    @Override
+    public int getHoldability() throws SQLException {
+        this.checkOpen();
+        return ResultSet.CLOSE_CURSORS_AT_COMMIT;
+    }
+
+    @Override
+    public Statement getStatement() throws SQLException {
+        this.checkOpen();
+        return this.statement;
+    }
+
+    @Override
+    public boolean rowUpdated() throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean rowInserted() throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean rowDeleted() throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void insertRow() throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateRow() throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void deleteRow() throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void refreshRow() throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void cancelRowUpdates() throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void moveToInsertRow() throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void moveToCurrentRow() throws SQLException {
+        throw readOnly();
+    }
+
+    private static SQLException readOnly() {
+        return new SQLFeatureNotSupportedException("ResultSet is CONCUR_READ_ONLY");
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("Not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+
+    // by column label
+
+    @Override
+    public String getString(String columnLabel) throws SQLException {
+        return this.getString(this.findColumn(columnLabel));
+    }
+
+    @Override
+    public boolean getBoolean(String columnLabel) throws SQLException {
+        return this.getBoolean(this.findColumn(columnLabel));
+    }
+
+    @Override
+    public byte getByte(String columnLabel) throws SQLException {
+        return this.getByte(this.findColumn(columnLabel));
+    }
+
+    @Override
+    public short getShort(String columnLabel) throws SQLException {
+        return this.getShort(this.findColumn(columnLabel));
+    }
+
+    @Override
+    public int getInt(String columnLabel) throws SQLException {
+        return this.getInt(this.findColumn(columnLabel));
+    }
+
+    @Override
+    public long getLong(String columnLabel) throws SQLException {
+        return this.getLong(this.findColumn(columnLabel));
+    }
+
+    @Override
+    public float getFloat(String columnLabel) throws SQLException {
+        return this.getFloat(this.findColumn(columnLabel));
+    }
+
+    @Override
+    public double getDouble(String columnLabel) throws SQLException {
+        return this.getDouble(this.findColumn(columnLabel));
+    }
+
+    @Override
+    @Deprecated
+    public BigDecimal getBigDecimal(String columnLabel, int scale) throws SQLException {
+        return this.getBigDecimal(this.findColumn(columnLabel), scale);
+    }
+
+    @Override
+    public byte[] getBytes(String columnLabel) throws SQLException {
+        return this.getBytes(this.findColumn(columnLabel));
+    }
+
+    @Override
+    public Date getDate(String columnLabel) throws SQLException {
+        return this.getDate(this.findColumn(columnLabel));
+    }
+
+    @Override
+    public Time getTime(String columnLabel) throws SQLException {
+        return this.getTime(this.findColumn(columnLabel));
+    }
+
+    @Override
+    public Timestamp getTimestamp(String columnLabel) throws SQLException {
+        return this.getTimestamp(this.findColumn(columnLabel));
+    }
+
+    @Override
+    public InputStream getAsciiStream(String columnLabel) throws SQLException {
+        return this.getAsciiStream(this.findColumn(columnLabel));
+    }
+
+    @Override
+    @Deprecated
+    public InputStream getUnicodeStream(String columnLabel) throws SQLException {
+        return this.getUnicodeStream(this.findColumn(columnLabel));
+    }
+
+    @Override
+    public InputStream getBinaryStream(String columnLabel) throws SQLException {
+        return this.getBinaryStream(this.findColumn(columnLabel));
+    }
+
+    @Override
+    public Object getObject(String columnLabel) throws SQLException {
+        return this.getObject(this.findColumn(columnLabel));
+    }
+
+    @Override
+    public Reader getCharacterStream(String columnLabel) throws SQLException {
+        return this.getCharacterStream(this.findColumn(columnLabel));
+    }
+
+    @Override
+    public BigDecimal getBigDecimal(String columnLabel) throws SQLException {
+        return this.getBigDecimal(this.findColumn(columnLabel));
+    }
+
+    @Override
+    public Object getObject(String columnLabel, Map<String, Class<?>> map) throws SQLException {
+        return this.getObject(this.findColumn(columnLabel), map);
+    }
+
+    @Override
+    public Ref getRef(String columnLabel) throws SQLException {
+        return this.getRef(this.findColumn(columnLabel));
+    }
+
+    @Override
+    public Blob getBlob(String columnLabel) throws SQLException {
+        return this.getBlob(this.findColumn(columnLabel));
+    }
+
+    @Override
+    public Clob getClob(String columnLabel) throws SQLException {
+        return this.getClob(this.findColumn(columnLabel));
+    }
+
+    @Override
+    public Array getArray(String columnLabel) throws SQLException {
+        return this.getArray(this.findColumn(columnLabel));
+    }
+
+    @Override
+    public Date getDate(String columnLabel, Calendar cal) throws SQLException {
+        return this.getDate(this.findColumn(columnLabel), cal);
+    }
+
+    @Override
+    public Time getTime(String columnLabel, Calendar cal) throws SQLException {
+        return this.getTime(this.findColumn(columnLabel), cal);
+    }
+
+    @Override
+    public Timestamp getTimestamp(String columnLabel, Calendar cal) throws SQLException {
+        return this.getTimestamp(this.findColumn(columnLabel), cal);
+    }
+
+    @Override
+    public URL getURL(String columnLabel) throws SQLException {
+        return this.getURL(this.findColumn(columnLabel));
+    }
+
+    @Override
+    public RowId getRowId(String columnLabel) throws SQLException {
+        return this.getRowId(this.findColumn(columnLabel));
+    }
+
+    @Override
+    public NClob getNClob(String columnLabel) throws SQLException {
+        return this.getNClob(this.findColumn(columnLabel));
+    }
+
+    @Override
+    public SQLXML getSQLXML(String columnLabel) throws SQLException {
+        return this.getSQLXML(this.findColumn(columnLabel));
+    }
+
+    @Override
+    public String getNString(String columnLabel) throws SQLException {
+        return this.getNString(this.findColumn(columnLabel));
+    }
+
+    @Override
+    public Reader getNCharacterStream(String columnLabel) throws SQLException {
+        return this.getNCharacterStream(this.findColumn(columnLabel));
+    }
+
+    @Override
+    public <T> T getObject(String columnLabel, Class<T> type) throws SQLException {
+        return this.getObject(this.findColumn(columnLabel), type);
+    }
+
+    // updates, the result set is read-only
+
+    @Override
+    public void updateNull(int columnIndex) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateBoolean(int columnIndex, boolean x) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateByte(int columnIndex, byte x) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateShort(int columnIndex, short x) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateInt(int columnIndex, int x) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateLong(int columnIndex, long x) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateFloat(int columnIndex, float x) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateDouble(int columnIndex, double x) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateBigDecimal(int columnIndex, BigDecimal x) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateString(int columnIndex, String x) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateBytes(int columnIndex, byte[] x) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateDate(int columnIndex, Date x) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateTime(int columnIndex, Time x) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateTimestamp(int columnIndex, Timestamp x) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateAsciiStream(int columnIndex, InputStream x, int length) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateBinaryStream(int columnIndex, InputStream x, int length) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateCharacterStream(int columnIndex, Reader x, int length) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateObject(int columnIndex, Object x, int scaleOrLength) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateObject(int columnIndex, Object x) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateNull(String columnLabel) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateBoolean(String columnLabel, boolean x) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateByte(String columnLabel, byte x) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateShort(String columnLabel, short x) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateInt(String columnLabel, int x) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateLong(String columnLabel, long x) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateFloat(String columnLabel, float x) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateDouble(String columnLabel, double x) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateBigDecimal(String columnLabel, BigDecimal x) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateString(String columnLabel, String x) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateBytes(String columnLabel, byte[] x) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateDate(String columnLabel, Date x) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateTime(String columnLabel, Time x) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateTimestamp(String columnLabel, Timestamp x) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateAsciiStream(String columnLabel, InputStream x, int length) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateBinaryStream(String columnLabel, InputStream x, int length) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateCharacterStream(String columnLabel, Reader x, int length) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateObject(String columnLabel, Object x, int scaleOrLength) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateObject(String columnLabel, Object x) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateRef(int columnIndex, Ref x) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateRef(String columnLabel, Ref x) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateBlob(int columnIndex, Blob x) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateBlob(String columnLabel, Blob x) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateClob(int columnIndex, Clob x) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateClob(String columnLabel, Clob x) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateArray(int columnIndex, Array x) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateArray(String columnLabel, Array x) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateRowId(int columnIndex, RowId x) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateRowId(String columnLabel, RowId x) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateNString(int columnIndex, String x) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateNString(String columnLabel, String x) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateNClob(int columnIndex, NClob x) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateNClob(String columnLabel, NClob x) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateSQLXML(int columnIndex, SQLXML x) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateSQLXML(String columnLabel, SQLXML x) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateNCharacterStream(int columnIndex, Reader x, long length) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateNCharacterStream(String columnLabel, Reader x, long length) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateAsciiStream(int columnIndex, InputStream x, long length) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateBinaryStream(int columnIndex, InputStream x, long length) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateCharacterStream(int columnIndex, Reader x, long length) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateAsciiStream(String columnLabel, InputStream x, long length) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateBinaryStream(String columnLabel, InputStream x, long length) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateCharacterStream(String columnLabel, Reader x, long length) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateBlob(int columnIndex, InputStream x, long length) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateBlob(String columnLabel, InputStream x, long length) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateClob(int columnIndex, Reader x, long length) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateClob(String columnLabel, Reader x, long length) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateNClob(int columnIndex, Reader x, long length) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateNClob(String columnLabel, Reader x, long length) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateNCharacterStream(int columnIndex, Reader x) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateNCharacterStream(String columnLabel, Reader x) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateAsciiStream(int columnIndex, InputStream x) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateBinaryStream(int columnIndex, InputStream x) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateCharacterStream(int columnIndex, Reader x) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateAsciiStream(String columnLabel, InputStream x) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateBinaryStream(String columnLabel, InputStream x) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateCharacterStream(String columnLabel, Reader x) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateBlob(int columnIndex, InputStream x) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateBlob(String columnLabel, InputStream x) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateClob(int columnIndex, Reader x) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateClob(String columnLabel, Reader x) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateNClob(int columnIndex, Reader x) throws SQLException {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateNClob(String columnLabel, Reader x) throws SQLException {
+        throw readOnly();
+    }
+}
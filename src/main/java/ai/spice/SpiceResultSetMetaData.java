@@ -0,0 +1,307 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package ai.spice;
+
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+/**
+ * Describes the columns of a {@link SpiceResultSet}, mapping the Arrow types
+ * of the result schema to JDBC types.
+ */
+class SpiceResultSetMetaData implements ResultSetMetaData {
+
+    private final Schema schema;
+
+    SpiceResultSetMetaData(Schema schema) {
+        this.schema = schema;
+    }
+
+    private Field field(int column) throws SQLException {
+        if (column < 1 || column > this.schema.getFields().size()) {
+            throw new SQLException("Invalid column index " + column);
+        }
+        return this.schema.getFields().get(column - 1);
+    }
+
+    private ArrowType type(int column) throws SQLException {
+        return this.field(column).getType();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return this.schema.getFields().size();
+    }
+
+    @Override
+    public int getColumnType(int column) throws SQLException {
+        return sqlType(this.type(column));
+    }
+
+    static int sqlType(ArrowType type) {
+        switch (type.getTypeID()) {
+            case Null:
+                return Types.NULL;
+            case Bool:
+                return Types.BOOLEAN;
+            case Int:
+                switch (((ArrowType.Int) type).getBitWidth()) {
+                    case 8:
+                        return Types.TINYINT;
+                    case 16:
+                        return Types.SMALLINT;
+                    case 32:
+                        return Types.INTEGER;
+                    default:
+                        return Types.BIGINT;
+                }
+            case FloatingPoint:
+                return ((ArrowType.FloatingPoint) type).getPrecision() == FloatingPointPrecision.DOUBLE
+                        ? Types.DOUBLE
+                        : Types.REAL;
+            case Decimal:
+                return Types.DECIMAL;
+            case Utf8:
+            case LargeUtf8:
+                return Types.VARCHAR;
+            case Binary:
+            case LargeBinary:
+                return Types.VARBINARY;
+            case FixedSizeBinary:
+                return Types.BINARY;
+            case Date:
+                return Types.DATE;
+            case Time:
+                return Types.TIME;
+            case Timestamp:
+                return ((ArrowType.Timestamp) type).getTimezone() != null
+                        ? Types.TIMESTAMP_WITH_TIMEZONE
+                        : Types.TIMESTAMP;
+            case List:
+            case LargeList:
+            case FixedSizeList:
+                return Types.ARRAY;
+            case Struct:
+                return Types.STRUCT;
+            default:
+                return Types.OTHER;
+        }
+    }
+
+    @Override
+    public String getColumnTypeName(int column) throws SQLException {
+        return this.type(column).toString();
+    }
+
+    @Override
+    public String getColumnClassName(int column) throws SQLException {
+        ArrowType type = this.type(column);
+        switch (type.getTypeID()) {
+            case Bool:
+                return Boolean.class.getName();
+            case Int:
+                switch (((ArrowType.Int) type).getBitWidth()) {
+                    case 8:
+                        return Byte.class.getName();
+                    case 16:
+                        return ((ArrowType.Int) type).getIsSigned() ? Short.class.getName()
+                                : Character.class.getName();
+                    case 32:
+                        return Integer.class.getName();
+                    default:
+                        return Long.class.getName();
+                }
+            case FloatingPoint:
+                return ((ArrowType.FloatingPoint) type).getPrecision() == FloatingPointPrecision.DOUBLE
+                        ? Double.class.getName()
+                        : Float.class.getName();
+            case Decimal:
+                return java.math.BigDecimal.class.getName();
+            case Utf8:
+            case LargeUtf8:
+                return String.class.getName();
+            case Binary:
+            case LargeBinary:
+            case FixedSizeBinary:
+                return byte[].class.getName();
+            case Date:
+                return java.sql.Date.class.getName();
+            case Time:
+                return java.sql.Time.class.getName();
+            case Timestamp:
+                return java.sql.Timestamp.class.getName();
+            default:
+                return Object.class.getName();
+        }
+    }
+
+    @Override
+    public int getPrecision(int column) throws SQLException {
+        ArrowType type = this.type(column);
+        switch (type.getTypeID()) {
+            case Decimal:
+                return ((ArrowType.Decimal) type).getPrecision();
+            case Int:
+                switch (((ArrowType.Int) type).getBitWidth()) {
+                    case 8:
+                        return 3;
+                    case 16:
+                        return 5;
+                    case 32:
+                        return 10;
+                    default:
+                        return 19;
+                }
+            case FloatingPoint:
+                return ((ArrowType.FloatingPoint) type).getPrecision() == FloatingPointPrecision.DOUBLE ? 15 : 7;
+            case Date:
+                return 10;
+            case Time:
+                return 18;
+            case Timestamp:
+                return 29;
+            default:
+                // unknown, variable width
+                return 0;
+        }
+    }
+
+    @Override
+    public int getScale(int column) throws SQLException {
+        ArrowType type = this.type(column);
+        return type instanceof ArrowType.Decimal ? ((ArrowType.Decimal) type).getScale() : 0;
+    }
+
+    @Override
+    public int getColumnDisplaySize(int column) throws SQLException {
+        int precision = this.getPrecision(column);
+        if (precision == 0) {
+            return Integer.MAX_VALUE;
+        }
+        // room for a sign and a decimal point
+        return this.type(column) instanceof ArrowType.Decimal ? precision + 2 : precision + 1;
+    }
+
+    @Override
+    public int isNullable(int column) throws SQLException {
+        return this.field(column).isNullable() ? ResultSetMetaData.columnNullable
+                : ResultSetMetaData.columnNoNulls;
+    }
+
+    @Override
+    public boolean isSigned(int column) throws SQLException {
+        ArrowType type = this.type(column);
+        if (type instanceof ArrowType.Int) {
+            return ((ArrowType.Int) type).getIsSigned();
+        }
+        return type instanceof ArrowType.FloatingPoint || type instanceof ArrowType.Decimal;
+    }
+
+    @Override
+    public String getColumnLabel(int column) throws SQLException {
+        return this.field(column).getName();
+    }
+
+    @Override
+    public String getColumnName(int column) throws SQLException {
+        return this.field(column).getName();
+    }
+
+    @Override
+    public String getSchemaName(int column) throws SQLException {
+        this.field(column);
+        return "";
+    }
+
+    @Override
+    public String getTableName(int column) throws SQLException {
+        this.field(column);
+        return "";
+    }
+
+    @Override
+    public String getCatalogName(int column) throws SQLException {
+        this.field(column);
+        return "";
+    }
+
+    @Override
+    public boolean isAutoIncrement(int column) throws SQLException {
+        this.field(column);
+        return false;
+    }
+
+    @Override
+    public boolean isCaseSensitive(int column) throws SQLException {
+        ArrowType type = this.type(column);
+        return type instanceof ArrowType.Utf8 || type instanceof ArrowType.LargeUtf8;
+    }
+
+    @Override
+    public boolean isSearchable(int column) throws SQLException {
+        this.field(column);
+        return true;
+    }
+
+    @Override
+    public boolean isCurrency(int column) throws SQLException {
+        this.field(column);
+        return false;
+    }
+
+    @Override
+    public boolean isReadOnly(int column) throws SQLException {
+        this.field(column);
+        return true;
+    }
+
+    @Override
+    public boolean isWritable(int column) throws SQLException {
+        this.field(column);
+        return false;
+    }
+
+    @Override
+    public boolean isDefinitelyWritable(int column) throws SQLException {
+        this.field(column);
+        return false;
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("Not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+}
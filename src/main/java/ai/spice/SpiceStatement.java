@@ -0,0 +1,411 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package ai.spice;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLWarning;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A JDBC statement running queries with {@link SpiceClient#query(String, QueryOptions)}.
+ *
+ * The fetch size hint maps to the number of batches fetched ahead of the
+ * result set for each endpoint, counting batches of 8192 rows, the default
+ * batch size of the runtime. The query timeout is sent with the Flight calls.
+ */
+class SpiceStatement implements Statement {
+
+    private static final int RUNTIME_BATCH_ROWS = 8192;
+    private static final int MAX_PREFETCH_BATCHES = 64;
+
+    final SpiceConnection connection;
+    private SpiceResultSet resultSet;
+    private int queryTimeout = 0;
+    private int fetchSize = 0;
+    private long maxRows = 0;
+    private volatile boolean closed = false;
+    private boolean closeOnCompletion = false;
+    private boolean poolable = false;
+
+    SpiceStatement(SpiceConnection connection) {
+        this.connection = connection;
+    }
+
+    void checkOpen() throws SQLException {
+        if (this.closed) {
+            throw new SQLException("Statement is closed");
+        }
+        this.connection.checkOpen();
+    }
+
+    QueryOptions queryOptions() {
+        QueryOptions options = new QueryOptions();
+        if (this.queryTimeout > 0) {
+            options.withTimeout(Duration.ofSeconds(this.queryTimeout));
+        }
+        if (this.fetchSize > 0) {
+            options.withPrefetchBatches(prefetchBatches(this.fetchSize));
+        }
+        return options;
+    }
+
+    static int prefetchBatches(int fetchSize) {
+        // rounded up without adding to fetchSize, which may be as large as Integer.MAX_VALUE
+        int batches = fetchSize / RUNTIME_BATCH_ROWS + (fetchSize % RUNTIME_BATCH_ROWS != 0 ? 1 : 0);
+        return Math.max(1, Math.min(MAX_PREFETCH_BATCHES, batches));
+    }
+
+    /**
+     * Opens the result set of a query, closing the previous one
+     */
+    ResultSet open(QueryCall call) throws SQLException {
+        this.checkOpen();
+        this.closeResultSet();
+        try {
+            this.resultSet = new SpiceResultSet(this, call.run(), this.maxRows);
+        } catch (ExecutionException e) {
+            throw new SQLException(e.getMessage(), e.getCause() != null ? e.getCause() : e);
+        }
+        return this.resultSet;
+    }
+
+    interface QueryCall {
+        QueryReader run() throws ExecutionException, SQLException;
+    }
+
+    void resultSetClosed(SpiceResultSet closedResultSet) throws SQLException {
+        if (this.resultSet == closedResultSet) {
+            this.resultSet = null;
+            if (this.closeOnCompletion) {
+                this.close();
+            }
+        }
+    }
+
+    private void closeResultSet() throws SQLException {
+        SpiceResultSet current = this.resultSet;
+        this.resultSet = null;
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    @Override
+    public ResultSet executeQuery(String sql) throws SQLException {
+        if (sql == null || sql.isEmpty()) {
+            throw new SQLException("No SQL query provided");
+        }
+        QueryOptions options = this.queryOptions();
+        return this.open(() -> this.connection.client().query(sql, options));
+    }
+
+    @Override
+    public boolean execute(String sql) throws SQLException {
+        this.executeQuery(sql);
+        return true;
+    }
+
+    @Override
+    public int executeUpdate(String sql) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Updates are not supported, write rows with SpiceClient.ingest");
+    }
+
+    @Override
+    public void close() throws SQLException {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        try {
+            this.closeResultSet();
+        } finally {
+            this.connection.statementClosed(this);
+        }
+    }
+
+    @Override
+    public int getMaxFieldSize() throws SQLException {
+        this.checkOpen();
+        return 0;
+    }
+
+    @Override
+    public void setMaxFieldSize(int max) throws SQLException {
+        this.checkOpen();
+    }
+
+    @Override
+    public int getMaxRows() throws SQLException {
+        this.checkOpen();
+        return (int) Math.min(Integer.MAX_VALUE, this.maxRows);
+    }
+
+    @Override
+    public void setMaxRows(int max) throws SQLException {
+        this.setLargeMaxRows(max);
+    }
+
+    @Override
+    public long getLargeMaxRows() throws SQLException {
+        this.checkOpen();
+        return this.maxRows;
+    }
+
+    @Override
+    public void setLargeMaxRows(long max) throws SQLException {
+        this.checkOpen();
+        if (max < 0) {
+            throw new SQLException("max must be greater than or equal to 0");
+        }
+        this.maxRows = max;
+    }
+
+    @Override
+    public void setEscapeProcessing(boolean enable) throws SQLException {
+        this.checkOpen();
+    }
+
+    @Override
+    public int getQueryTimeout() throws SQLException {
+        this.checkOpen();
+        return this.queryTimeout;
+    }
+
+    @Override
+    public void setQueryTimeout(int seconds) throws SQLException {
+        this.checkOpen();
+        if (seconds < 0) {
+            throw new SQLException("seconds must be greater than or equal to 0");
+        }
+        this.queryTimeout = seconds;
+    }
+
+    /**
+     * Cancels the query of the current result set, which stops its streams and
+     * asks the runtime to stop working on it
+     */
+    @Override
+    public void cancel() throws SQLException {
+        this.checkOpen();
+        SpiceResultSet current = this.resultSet;
+        if (current != null) {
+            current.cancel();
+        }
+    }
+
+    @Override
+    public SQLWarning getWarnings() throws SQLException {
+        this.checkOpen();
+        return null;
+    }
+
+    @Override
+    public void clearWarnings() throws SQLException {
+        this.checkOpen();
+    }
+
+    @Override
+    public void setCursorName(String name) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Named cursors are not supported");
+    }
+
+    @Override
+    public ResultSet getResultSet() throws SQLException {
+        this.checkOpen();
+        return this.resultSet;
+    }
+
+    @Override
+    public int getUpdateCount() throws SQLException {
+        this.checkOpen();
+        return -1;
+    }
+
+    @Override
+    public boolean getMoreResults() throws SQLException {
+        this.checkOpen();
+        this.closeResultSet();
+        return false;
+    }
+
+    @Override
+    public boolean getMoreResults(int current) throws SQLException {
+        this.checkOpen();
+        if (current != Statement.KEEP_CURRENT_RESULT) {
+            this.closeResultSet();
+        }
+        return false;
+    }
+
+    @Override
+    public void setFetchDirection(int direction) throws SQLException {
+        this.checkOpen();
+        if (direction != ResultSet.FETCH_FORWARD) {
+            throw new SQLFeatureNotSupportedException("Only FETCH_FORWARD is supported");
+        }
+    }
+
+    @Override
+    public int getFetchDirection() throws SQLException {
+        this.checkOpen();
+        return ResultSet.FETCH_FORWARD;
+    }
+
+    @Override
+    public void setFetchSize(int rows) throws SQLException {
+        this.checkOpen();
+        if (rows < 0) {
+            throw new SQLException("rows must be greater than or equal to 0");
+        }
+        this.fetchSize = rows;
+    }
+
+    @Override
+    public int getFetchSize() throws SQLException {
+        this.checkOpen();
+        return this.fetchSize;
+    }
+
+    @Override
+    public int getResultSetConcurrency() throws SQLException {
+        this.checkOpen();
+        return ResultSet.CONCUR_READ_ONLY;
+    }
+
+    @Override
+    public int getResultSetType() throws SQLException {
+        this.checkOpen();
+        return ResultSet.TYPE_FORWARD_ONLY;
+    }
+
+    @Override
+    public void addBatch(String sql) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Batch updates are not supported");
+    }
+
+    @Override
+    public void clearBatch() throws SQLException {
+        throw new SQLFeatureNotSupportedException("Batch updates are not supported");
+    }
+
+    @Override
+    public int[] executeBatch() throws SQLException {
+        throw new SQLFeatureNotSupportedException("Batch updates are not supported");
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        this.checkOpen();
+        return this.connection;
+    }
+
+    @Override
+    public ResultSet getGeneratedKeys() throws SQLException {
+        throw new SQLFeatureNotSupportedException("Generated keys are not supported");
+    }
+
+    @Override
+    public int executeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
+        return this.executeUpdate(sql);
+    }
+
+    @Override
+    public int executeUpdate(String sql, int[] columnIndexes) throws SQLException {
+        return this.executeUpdate(sql);
+    }
+
+    @Override
+    public int executeUpdate(String sql, String[] columnNames) throws SQLException {
+        return this.executeUpdate(sql);
+    }
+
+    @Override
+    public boolean execute(String sql, int autoGeneratedKeys) throws SQLException {
+        if (autoGeneratedKeys != Statement.NO_GENERATED_KEYS) {
+            throw new SQLFeatureNotSupportedException("Generated keys are not supported");
+        }
+        return this.execute(sql);
+    }
+
+    @Override
+    public boolean execute(String sql, int[] columnIndexes) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Generated keys are not supported");
+    }
+
+    @Override
+    public boolean execute(String sql, String[] columnNames) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Generated keys are not supported");
+    }
+
+    @Override
+    public int getResultSetHoldability() throws SQLException {
+        this.checkOpen();
+        return ResultSet.CLOSE_CURSORS_AT_COMMIT;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return this.closed;
+    }
+
+    @Override
+    public void setPoolable(boolean poolable) throws SQLException {
+        this.checkOpen();
+        this.poolable = poolable;
+    }
+
+    @Override
+    public boolean isPoolable() throws SQLException {
+        this.checkOpen();
+        return this.poolable;
+    }
+
+    @Override
+    public void closeOnCompletion() throws SQLException {
+        this.checkOpen();
+        this.closeOnCompletion = true;
+    }
+
+    @Override
+    public boolean isCloseOnCompletion() throws SQLException {
+        this.checkOpen();
+        return this.closeOnCompletion;
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("Not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+}
@@ -0,0 +1,249 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package ai.spice;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.VectorLoader;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.VectorUnloader;
+import org.apache.arrow.vector.ipc.ReadChannel;
+import org.apache.arrow.vector.ipc.WriteChannel;
+import org.apache.arrow.vector.ipc.message.ArrowBlock;
+import org.apache.arrow.vector.ipc.message.ArrowRecordBatch;
+import org.apache.arrow.vector.ipc.message.MessageSerializer;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+/**
+ * Buffers the batches of a query that the consumer has not read yet, keeping
+ * them in memory up to a threshold and writing the rest to a temporary file as
+ * Arrow IPC record batch messages.
+ *
+ * Endpoint streams are drained as fast as the network allows instead of
+ * waiting for the consumer, so the runtime is released early, while off-heap
+ * memory stays bounded by the threshold. Spilled batches are read back through
+ * a memory-mapped view of the file, one batch at a time. The file is created on
+ * the first spill and deleted when the buffer is closed.
+ */
+final class SpillFile implements AutoCloseable {
+
+    /**
+     * A batch written to the spill file, queued in place of the batch itself.
+     */
+    static final class Spilled {
+        private final Schema schema;
+        private final ArrowBlock block;
+
+        private Spilled(Schema schema, ArrowBlock block) {
+            this.schema = schema;
+            this.block = block;
+        }
+    }
+
+    private final Path directory;
+    private final long memoryThreshold;
+    private final AtomicLong bufferedBytes = new AtomicLong();
+    private final AtomicLong spilledBytes = new AtomicLong();
+    // a lock rather than a monitor, as file I/O runs while holding it and would pin
+    // the carrier of a virtual thread
+    private final ReentrantLock lock = new ReentrantLock();
+    private FileChannel channel;
+    private WriteChannel writer;
+    private boolean closed = false;
+
+    /**
+     * @param directory       the directory of the spill file
+     * @param memoryThreshold the number of bytes of batches kept in memory before
+     *                        batches are written to disk
+     */
+    SpillFile(Path directory, long memoryThreshold) {
+        this.directory = directory;
+        this.memoryThreshold = memoryThreshold;
+    }
+
+    /**
+     * Takes a batch fetched ahead of the consumer. The batch is kept if the
+     * batches in memory stay within the threshold, and is otherwise written to
+     * the spill file and closed.
+     *
+     * @param batch the batch to buffer
+     * @return the batch itself, or a Spilled handle to read it back with
+     * @throws IOException if the batch could not be written
+     */
+    Object admit(VectorSchemaRoot batch) throws IOException {
+        long size = Batches.sizeInBytes(batch);
+        if (this.bufferedBytes.addAndGet(size) <= this.memoryThreshold) {
+            return batch;
+        }
+        this.bufferedBytes.addAndGet(-size);
+
+        try {
+            return this.spill(batch);
+        } finally {
+            batch.close();
+        }
+    }
+
+    /**
+     * Writes a batch to the spill file, leaving the batch itself open
+     *
+     * @param batch the batch to write
+     * @return a Spilled handle to read the batch back with
+     * @throws IOException if the batch could not be written
+     */
+    Spilled spill(VectorSchemaRoot batch) throws IOException {
+        try (ArrowRecordBatch recordBatch = new VectorUnloader(batch).getRecordBatch()) {
+            ArrowBlock block = this.write(recordBatch);
+            this.spilledBytes.addAndGet(block.getMetadataLength() + block.getBodyLength());
+            return new Spilled(batch.getSchema(), block);
+        }
+    }
+
+    /**
+     * Called when the consumer takes a batch returned by admit, so the memory it
+     * holds no longer counts towards the threshold
+     *
+     * @param batch the batch taken by the consumer
+     */
+    void taken(VectorSchemaRoot batch) {
+        this.bufferedBytes.addAndGet(-Batches.sizeInBytes(batch));
+    }
+
+    /**
+     * Reads a spilled batch back into memory
+     *
+     * @param spilled   the handle returned by admit
+     * @param allocator the allocator owning the returned batch
+     * @return a new root holding the batch
+     * @throws IOException if the batch could not be read
+     */
+    VectorSchemaRoot read(Spilled spilled, BufferAllocator allocator) throws IOException {
+        long length = spilled.block.getMetadataLength() + spilled.block.getBodyLength();
+        MappedByteBuffer mapped;
+        this.lock.lock();
+        try {
+            if (this.closed) {
+                throw new IOException("Spill file is closed");
+            }
+            mapped = this.channel.map(FileChannel.MapMode.READ_ONLY, spilled.block.getOffset(), length);
+        } finally {
+            this.lock.unlock();
+        }
+
+        VectorSchemaRoot root = VectorSchemaRoot.create(spilled.schema, allocator);
+        try (ArrowRecordBatch recordBatch = MessageSerializer
+                .deserializeRecordBatch(new ReadChannel(new BufferChannel(mapped)), spilled.block, allocator)) {
+            new VectorLoader(root).load(recordBatch);
+        } catch (IOException | RuntimeException e) {
+            root.close();
+            throw e;
+        }
+        return root;
+    }
+
+    /**
+     * @return the number of bytes written to the spill file
+     */
+    long spilledBytes() {
+        return this.spilledBytes.get();
+    }
+
+    private ArrowBlock write(ArrowRecordBatch recordBatch) throws IOException {
+        this.lock.lock();
+        try {
+            if (this.closed) {
+                throw new IOException("Spill file is closed");
+            }
+            if (this.channel == null) {
+                Path file = Files.createTempFile(this.directory, "spice-spill-", ".arrow");
+                this.channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                        StandardOpenOption.DELETE_ON_CLOSE);
+                // block offsets are positions in the file, as every batch goes through this
+                // writer
+                this.writer = new WriteChannel(this.channel);
+            }
+            return MessageSerializer.serialize(this.writer, recordBatch);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.lock.lock();
+        try {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            if (this.channel != null) {
+                this.channel.close();
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Reads from a mapped region of the spill file.
+     */
+    private static final class BufferChannel implements ReadableByteChannel {
+        private final ByteBuffer buffer;
+
+        BufferChannel(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read(ByteBuffer target) {
+            if (!this.buffer.hasRemaining()) {
+                return -1;
+            }
+            int length = Math.min(target.remaining(), this.buffer.remaining());
+            ByteBuffer slice = this.buffer.duplicate();
+            slice.limit(slice.position() + length);
+            target.put(slice);
+            this.buffer.position(this.buffer.position() + length);
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
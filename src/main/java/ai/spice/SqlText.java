@@ -0,0 +1,315 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package ai.spice;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Lightweight SQL text helpers used to key client-side caches. This is not a
+ * SQL parser: table references are found by scanning the FROM lists of the
+ * tokenized text, and callers treat an empty result as "may reference any
+ * table".
+ */
+final class SqlText {
+
+    // clauses ending a FROM list
+    private static final Set<String> CLAUSES = new HashSet<>(Arrays.asList("SELECT", "WHERE", "GROUP", "HAVING",
+            "ORDER", "LIMIT", "OFFSET", "FETCH", "UNION", "EXCEPT", "INTERSECT", "WINDOW", "QUALIFY", "VALUES",
+            "WITH"));
+    // words that can't be a table name or a function name
+    private static final Set<String> KEYWORDS = new HashSet<>(Arrays.asList("SELECT", "FROM", "JOIN", "WHERE",
+            "GROUP", "HAVING", "ORDER", "LIMIT", "OFFSET", "FETCH", "UNION", "EXCEPT", "INTERSECT", "WINDOW",
+            "QUALIFY", "VALUES", "WITH", "ON", "USING", "AS", "IN", "EXISTS", "ANY", "ALL", "SOME", "NOT", "AND",
+            "OR", "LATERAL", "UNNEST", "LEFT", "RIGHT", "INNER", "OUTER", "FULL", "CROSS", "NATURAL", "BY",
+            "OVER", "FILTER", "WITHIN", "CASE", "WHEN", "THEN", "ELSE", "IS", "LIKE", "BETWEEN"));
+
+    private SqlText() {
+    }
+
+    /**
+     * Normalizes a query so that queries differing only in whitespace, comments
+     * or a trailing semicolon share a cache key. Comments are removed before
+     * whitespace is collapsed, as the end of a line comment is significant.
+     * Quoted literals and identifiers are left untouched.
+     *
+     * @param sql the SQL text
+     * @return the normalized SQL text
+     */
+    static String normalize(String sql) {
+        StringBuilder normalized = new StringBuilder(sql.length());
+        char quote = 0;
+        boolean pendingSpace = false;
+
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (quote != 0) {
+                normalized.append(c);
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '-' && sql.startsWith("--", i)) {
+                int end = sql.indexOf('\n', i);
+                i = end < 0 ? sql.length() : end;
+                pendingSpace = normalized.length() > 0;
+            } else if (c == '/' && sql.startsWith("/*", i)) {
+                int end = sql.indexOf("*/", i + 2);
+                i = end < 0 ? sql.length() : end + 1;
+                pendingSpace = normalized.length() > 0;
+            } else if (Character.isWhitespace(c)) {
+                pendingSpace = normalized.length() > 0;
+            } else {
+                if (pendingSpace) {
+                    normalized.append(' ');
+                    pendingSpace = false;
+                }
+                if (c == '\'' || c == '"') {
+                    quote = c;
+                }
+                normalized.append(c);
+            }
+        }
+
+        int end = normalized.length();
+        while (end > 0 && (normalized.charAt(end - 1) == ';' || normalized.charAt(end - 1) == ' ')) {
+            end--;
+        }
+        normalized.setLength(end);
+        return normalized.toString();
+    }
+
+    /**
+     * Returns the key of a query result in the client-side caches. Batches of an
+     * unordered query may interleave endpoints, so its results are never shared
+     * with an ordered query of the same text.
+     *
+     * @param sql           the SQL text
+     * @param preserveOrder whether batches are returned in endpoint order
+     * @return the key of the result
+     */
+    static String resultKey(String sql, boolean preserveOrder) {
+        return (preserveOrder ? "ordered:" : "unordered:") + normalize(sql);
+    }
+
+    /**
+     * Returns the tables referenced in FROM lists and after JOIN, lower-cased and
+     * without quotes. Qualified names are returned both in full and as their last
+     * segment, so a dataset name matches either form.
+     *
+     * Every item of a comma-separated FROM list is returned, at any nesting
+     * depth. When a FROM item is neither a table name nor a parenthesized query,
+     * such as a table function or LATERAL, or the text can't be tokenized, the
+     * referenced tables are unknown and an empty set is returned.
+     *
+     * @param sql the SQL text
+     * @return the referenced table names, empty if they are unknown
+     */
+    static Set<String> referencedTables(String sql) {
+        List<String> tokens = tokenize(sql);
+        if (tokens == null) {
+            return new HashSet<>();
+        }
+
+        Set<String> tables = new HashSet<>();
+        // one scope per open parenthesis, tracking whether a FROM list is being read
+        Deque<Scope> scopes = new ArrayDeque<>();
+        Scope scope = new Scope(false);
+        String previous = null;
+        for (int i = 0; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            String keyword = token.toUpperCase(Locale.ROOT);
+
+            if (scope.expectTable) {
+                scope.expectTable = false;
+                if ("(".equals(previous) && (keyword.equals("SELECT") || keyword.equals("WITH")
+                        || keyword.equals("VALUES"))) {
+                    // a subquery, its own FROM lists follow
+                    scope.inFrom = false;
+                    previous = token;
+                    continue;
+                }
+                if (token.equals("(")) {
+                    // a subquery or a parenthesized join, read as a FROM list of its own
+                    scopes.push(scope);
+                    scope = new Scope(false);
+                    scope.inFrom = true;
+                    scope.expectTable = true;
+                    previous = token;
+                    continue;
+                }
+                if (!isIdentifier(token) || KEYWORDS.contains(keyword)) {
+                    return new HashSet<>();
+                }
+                StringBuilder name = new StringBuilder(unquote(token));
+                while (i + 2 < tokens.size() && tokens.get(i + 1).equals(".") && isIdentifier(tokens.get(i + 2))) {
+                    name.append('.').append(unquote(tokens.get(i + 2)));
+                    i += 2;
+                }
+                if (i + 1 < tokens.size() && tokens.get(i + 1).equals("(")) {
+                    // a table function, its inputs are unknown
+                    return new HashSet<>();
+                }
+                addTable(tables, name.toString());
+                previous = tokens.get(i);
+                continue;
+            }
+
+            if (token.equals("(")) {
+                scopes.push(scope);
+                // FROM inside a function call, as in EXTRACT(YEAR FROM ts), is not a table
+                boolean call = previous != null && isIdentifier(previous)
+                        && !KEYWORDS.contains(previous.toUpperCase(Locale.ROOT));
+                scope = new Scope(call);
+            } else if (token.equals(")")) {
+                if (scopes.isEmpty()) {
+                    return new HashSet<>();
+                }
+                scope = scopes.pop();
+            } else if (token.equals(",")) {
+                if (scope.inFrom) {
+                    scope.expectTable = true;
+                }
+            } else if (!scope.call && (keyword.equals("FROM") || keyword.equals("JOIN"))) {
+                scope.inFrom = true;
+                scope.expectTable = true;
+            } else if (CLAUSES.contains(keyword)) {
+                scope.inFrom = false;
+            }
+            previous = token;
+        }
+
+        if (!scopes.isEmpty() || scope.expectTable) {
+            return new HashSet<>();
+        }
+        return tables;
+    }
+
+    private static final class Scope {
+        private final boolean call;
+        private boolean inFrom = false;
+        private boolean expectTable = false;
+
+        Scope(boolean call) {
+            this.call = call;
+        }
+    }
+
+    private static void addTable(Set<String> tables, String name) {
+        String table = name.toLowerCase(Locale.ROOT);
+        tables.add(table);
+        int lastDot = table.lastIndexOf('.');
+        if (lastDot >= 0) {
+            tables.add(table.substring(lastDot + 1));
+        }
+    }
+
+    private static boolean isIdentifier(String token) {
+        char first = token.charAt(0);
+        return first == '"' || first == '_' || Character.isLetter(first);
+    }
+
+    private static String unquote(String identifier) {
+        return identifier.startsWith("\"") ? identifier.substring(1, identifier.length() - 1).replace("\"\"", "\"")
+                : identifier;
+    }
+
+    /**
+     * Splits SQL text into identifiers, quoted identifiers, literals and single
+     * punctuation characters, dropping whitespace and comments
+     *
+     * @return the tokens, or null if a quote or comment is not terminated
+     */
+    private static List<String> tokenize(String sql) {
+        List<String> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < sql.length()) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (sql.startsWith("--", i)) {
+                int end = sql.indexOf('\n', i);
+                i = end < 0 ? sql.length() : end + 1;
+            } else if (sql.startsWith("/*", i)) {
+                int end = sql.indexOf("*/", i + 2);
+                if (end < 0) {
+                    return null;
+                }
+                i = end + 2;
+            } else if (c == '\'' || c == '"') {
+                int end = i + 1;
+                while (true) {
+                    end = sql.indexOf(c, end);
+                    if (end < 0) {
+                        return null;
+                    }
+                    if (end + 1 < sql.length() && sql.charAt(end + 1) == c) {
+                        // doubled quote inside the literal
+                        end += 2;
+                        continue;
+                    }
+                    break;
+                }
+                tokens.add(sql.substring(i, end + 1));
+                i = end + 1;
+            } else if (Character.isLetterOrDigit(c) || c == '_') {
+                int end = i + 1;
+                while (end < sql.length() && (Character.isLetterOrDigit(sql.charAt(end)) || sql.charAt(end) == '_'
+                        || sql.charAt(end) == '$')) {
+                    end++;
+                }
+                tokens.add(sql.substring(i, end));
+                i = end;
+            } else {
+                tokens.add(String.valueOf(c));
+                i++;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Returns whether a query may read from a dataset.
+     *
+     * @param tables  the tables referenced by the query
+     * @param dataset the dataset name
+     * @return true if the dataset is referenced, or if the referenced tables are
+     *         unknown
+     */
+    static boolean mayReference(Set<String> tables, String dataset) {
+        if (tables.isEmpty()) {
+            return true;
+        }
+        String name = dataset.replace("\"", "").toLowerCase(Locale.ROOT);
+        if (tables.contains(name)) {
+            return true;
+        }
+        int lastDot = name.lastIndexOf('.');
+        return lastDot >= 0 && tables.contains(name.substring(lastDot + 1));
+    }
+}
@@ -0,0 +1,187 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package ai.spice;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.arrow.vector.VectorSchemaRoot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Polls a query on a schedule and delivers only the rows past the last
+ * watermark, the largest value of a timestamp or monotonically increasing key
+ * column seen so far.
+ *
+ * Each poll runs the query wrapped in a predicate on the watermark column, so
+ * only new rows are transferred. The watermark advances once a poll has
+ * delivered all of its rows, so rows of a failed poll are delivered again:
+ * delivery is at least once. Rows arriving later with a watermark value already
+ * passed are not delivered, so the column must only grow.
+ */
+public final class Subscription implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Subscription.class);
+
+    /**
+     * Runs the queries and refreshes of a subscription, on a SpiceClient outside
+     * of tests.
+     */
+    interface Source {
+        QueryReader query(String sql) throws ExecutionException;
+
+        void refreshAppend(String dataset) throws ExecutionException;
+    }
+
+    private final Source source;
+    private final String sql;
+    private final String watermarkColumn;
+    private final SubscriptionOptions options;
+    private final SubscriptionListener listener;
+    private final ScheduledExecutorService scheduler;
+    private final Executor executor;
+    private volatile String watermark;
+    private volatile QueryReader current;
+    private volatile boolean closed = false;
+    private ScheduledFuture<?> next;
+
+    Subscription(Source source, String sql, String watermarkColumn, SubscriptionOptions options,
+            SubscriptionListener listener, ScheduledExecutorService scheduler, Executor executor) {
+        this.source = source;
+        this.sql = sql;
+        this.watermarkColumn = watermarkColumn;
+        this.options = options;
+        this.listener = listener;
+        this.scheduler = scheduler;
+        this.executor = executor;
+        this.watermark = options.getStartAfter();
+    }
+
+    void start() {
+        this.schedule(0);
+    }
+
+    /**
+     * @return the SQL literal of the watermark the next poll starts after, or
+     *         null if no row has been delivered yet
+     */
+    public String getWatermark() {
+        return this.watermark;
+    }
+
+    /**
+     * @return true if the subscription has been closed
+     */
+    public boolean isClosed() {
+        return this.closed;
+    }
+
+    private synchronized void schedule(long delayNanos) {
+        if (this.closed) {
+            return;
+        }
+        try {
+            // the scheduler only hands the poll over, reading the results blocks
+            this.next = this.scheduler.schedule(() -> this.executor.execute(this::poll), delayNanos,
+                    TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("Subscription stopped, the client is closed");
+            this.closed = true;
+        }
+    }
+
+    private void poll() {
+        if (this.closed) {
+            return;
+        }
+        long startNanos = System.nanoTime();
+        try {
+            this.pollOnce();
+        } catch (Exception e) {
+            if (!this.closed) {
+                this.listener.onError(e);
+            }
+        } finally {
+            long elapsedNanos = System.nanoTime() - startNanos;
+            this.schedule(Math.max(0, this.options.getIntervalNanos() - elapsedNanos));
+        }
+    }
+
+    void pollOnce() throws Exception {
+        String dataset = this.options.getRefreshDataset();
+        if (dataset != null) {
+            try {
+                this.source.refreshAppend(dataset);
+            } catch (Exception e) {
+                // rows already accelerated can still be delivered
+                this.listener.onError(e);
+            }
+        }
+
+        String query = Watermark.incrementalQuery(this.sql, this.watermarkColumn, this.watermark);
+        Watermark latest = new Watermark(this.watermarkColumn);
+        long rows = 0;
+        try (QueryReader reader = this.source.query(query)) {
+            this.current = reader;
+            if (this.closed) {
+                return;
+            }
+            while (reader.loadNextBatch()) {
+                VectorSchemaRoot batch = reader.getVectorSchemaRoot();
+                latest.observe(batch);
+                this.listener.onBatch(batch);
+                rows += batch.getRowCount();
+            }
+        } finally {
+            this.current = null;
+        }
+
+        String literal = latest.literal();
+        if (literal != null) {
+            this.watermark = literal;
+        }
+        this.listener.onPoll(rows, this.watermark);
+    }
+
+    /**
+     * Stops polling and cancels the poll in progress, if any
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            this.closed = true;
+            if (this.next != null) {
+                this.next.cancel(false);
+            }
+        }
+        QueryReader reader = this.current;
+        if (reader != null) {
+            reader.cancel();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package ai.spice;
+
+import org.apache.arrow.vector.VectorSchemaRoot;
+
+/**
+ * Receives the new rows of a {@link Subscription}. Methods are called from a
+ * client thread, one poll at a time.
+ */
+public interface SubscriptionListener {
+
+    /**
+     * Called for each batch of rows past the last watermark. The batch is only
+     * valid until the method returns. Throwing fails the poll, and its rows are
+     * delivered again by the next one.
+     *
+     * @param batch the batch of new rows
+     */
+    void onBatch(VectorSchemaRoot batch);
+
+    /**
+     * Called once a poll has delivered every new row
+     *
+     * @param rows      the number of rows delivered by the poll
+     * @param watermark the SQL literal of the watermark the next poll starts
+     *                  after, or null if no row has been seen yet
+     */
+    default void onPoll(long rows, String watermark) {
+    }
+
+    /**
+     * Called when a poll fails. The subscription keeps polling from the last
+     * watermark.
+     *
+     * @param error the error of the poll
+     */
+    default void onError(Exception error) {
+    }
+}
@@ -0,0 +1,94 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package ai.spice;
+
+import java.time.Duration;
+
+/**
+ * Options controlling how a {@link Subscription} polls for new rows.
+ */
+public class SubscriptionOptions {
+    private long intervalNanos = Duration.ofSeconds(5).toNanos();
+    private String startAfter = null;
+    private String refreshDataset = null;
+
+    /**
+     * Sets the time between the start of two polls. A poll taking longer than
+     * the interval is followed by the next one right away. Defaults to 5 seconds.
+     *
+     * @param interval the polling interval
+     * @return The current instance of SubscriptionOptions for method chaining.
+     */
+    public SubscriptionOptions withInterval(Duration interval) {
+        if (interval == null || interval.isNegative() || interval.isZero()) {
+            throw new IllegalArgumentException("interval must be a positive duration");
+        }
+        this.intervalNanos = interval.toNanos();
+        return this;
+    }
+
+    /**
+     * Sets the watermark the first poll starts after, such as a value returned by
+     * {@link Subscription#getWatermark()} before a restart. By default the first
+     * poll returns every row of the query.
+     *
+     * @param watermark the SQL literal of the watermark, inserted in the query as
+     *                  is, for example 42 or TIMESTAMP '2024-01-01T00:00:00'
+     * @return The current instance of SubscriptionOptions for method chaining.
+     */
+    public SubscriptionOptions withStartAfter(String watermark) {
+        if (watermark == null || watermark.trim().isEmpty()) {
+            throw new IllegalArgumentException("watermark can't be null");
+        }
+        this.startAfter = watermark;
+        return this;
+    }
+
+    /**
+     * Triggers an append refresh of an accelerated dataset before each poll, so
+     * the accelerated copy picks up new source rows. The refresh runs on the
+     * runtime in the background, its rows are returned by the poll that follows
+     * it completing.
+     *
+     * @param dataset the name of the dataset to refresh
+     * @return The current instance of SubscriptionOptions for method chaining.
+     */
+    public SubscriptionOptions withAppendRefresh(String dataset) {
+        if (dataset == null || dataset.isEmpty()) {
+            throw new IllegalArgumentException("dataset can't be null");
+        }
+        this.refreshDataset = dataset;
+        return this;
+    }
+
+    long getIntervalNanos() {
+        return intervalNanos;
+    }
+
+    String getStartAfter() {
+        return startAfter;
+    }
+
+    String getRefreshDataset() {
+        return refreshDataset;
+    }
+}
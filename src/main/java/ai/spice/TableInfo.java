@@ -0,0 +1,87 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package ai.spice;
+
+/**
+ * A table of the runtime catalog, as listed by
+ * {@link SpiceClient#listTables(String, String, String)}.
+ */
+public final class TableInfo {
+    private final String catalog;
+    private final String schema;
+    private final String name;
+    private final String type;
+
+    TableInfo(String catalog, String schema, String name, String type) {
+        this.catalog = catalog;
+        this.schema = schema;
+        this.name = name;
+        this.type = type;
+    }
+
+    /**
+     * @return the catalog of the table, or null
+     */
+    public String getCatalog() {
+        return this.catalog;
+    }
+
+    /**
+     * @return the database schema of the table, or null
+     */
+    public String getSchema() {
+        return this.schema;
+    }
+
+    /**
+     * @return the name of the table
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * @return the type of the table, such as TABLE or VIEW
+     */
+    public String getType() {
+        return this.type;
+    }
+
+    /**
+     * @return the name of the table qualified with its catalog and schema
+     */
+    public String getQualifiedName() {
+        StringBuilder name = new StringBuilder();
+        if (this.catalog != null) {
+            name.append(this.catalog).append('.');
+        }
+        if (this.schema != null) {
+            name.append(this.schema).append('.');
+        }
+        return name.append(this.name).toString();
+    }
+
+    @Override
+    public String toString() {
+        return this.getQualifiedName() + " (" + this.type + ")";
+    }
+}
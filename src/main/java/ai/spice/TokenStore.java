@@ -0,0 +1,265 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package ai.spice;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.arrow.flight.CallOption;
+import org.apache.arrow.flight.auth2.BearerCredentialWriter;
+import org.apache.arrow.flight.grpc.CredentialCallOption;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Holds the bearer tokens obtained by handshakes with Spice runtimes, keyed by
+ * Flight address and API key, as each runtime only accepts the tokens it
+ * issued. Clients built with the same store share tokens,
+ * so only the first of them pays for a handshake.
+ *
+ * Handshakes run asynchronously and at most one per address and key is in
+ * progress at a time. Tokens that carry an expiry (JWT {@code exp} claim) are
+ * refreshed in the background once they are within the refresh margin of
+ * expiring, while calls keep using the current token. A token rejected by the
+ * runtime is replaced by a new handshake.
+ */
+public final class TokenStore {
+
+    private static final Gson GSON = new Gson();
+
+    /**
+     * Authenticates with the runtime and returns the bearer token it issued.
+     */
+    interface Handshake {
+        String authenticate() throws Exception;
+    }
+
+    /**
+     * A bearer token and the call option sending it.
+     */
+    static final class Token {
+        private final String bearer;
+        private final long expiresAtNanos;
+        private final CallOption callOption;
+
+        Token(String bearer, long expiresAtNanos) {
+            this.bearer = bearer;
+            this.expiresAtNanos = expiresAtNanos;
+            this.callOption = new CredentialCallOption(new BearerCredentialWriter(bearer));
+        }
+
+        CallOption callOption() {
+            return this.callOption;
+        }
+
+        boolean isExpired(long nowNanos) {
+            return nowNanos - this.expiresAtNanos >= 0;
+        }
+
+        /**
+         * Creates a token, reading its expiry from the {@code exp} claim when the
+         * bearer is a JWT
+         */
+        static Token of(String bearer) {
+            long nowNanos = System.nanoTime();
+            long expiresAtNanos = nowNanos + Long.MAX_VALUE / 2;
+            Long expiresAtSeconds = jwtExpiry(bearer);
+            if (expiresAtSeconds != null) {
+                long remainingMillis = TimeUnit.SECONDS.toMillis(expiresAtSeconds) - System.currentTimeMillis();
+                expiresAtNanos = nowNanos + TimeUnit.MILLISECONDS.toNanos(remainingMillis);
+            }
+            return new Token(bearer, expiresAtNanos);
+        }
+
+        private static Long jwtExpiry(String bearer) {
+            String[] parts = bearer.split("\\.");
+            if (parts.length != 3) {
+                return null;
+            }
+            try {
+                String payload = new String(Base64.getUrlDecoder().decode(parts[1]), StandardCharsets.UTF_8);
+                JsonElement exp = GSON.fromJson(payload, JsonObject.class).get("exp");
+                return exp != null && exp.isJsonPrimitive() ? exp.getAsLong() : null;
+            } catch (RuntimeException e) {
+                // not a JWT, the token is only replaced once the runtime rejects it
+                return null;
+            }
+        }
+    }
+
+    /**
+     * The token of one address and API key.
+     */
+    final class Entry {
+        private final ReentrantLock lock = new ReentrantLock();
+        private volatile Token token;
+        private CompletableFuture<Token> pending;
+
+        /**
+         * Returns the current token, starting a handshake if there is none or it
+         * has expired, or a background refresh if it expires soon
+         */
+        CompletableFuture<Token> token(Handshake handshake, Executor executor) {
+            Token current = this.token;
+            long now = System.nanoTime();
+            if (current != null && !current.isExpired(now)) {
+                if (current.isExpired(now + TokenStore.this.refreshMarginNanos)) {
+                    this.refresh(current, handshake, executor);
+                }
+                return CompletableFuture.completedFuture(current);
+            }
+            return this.refresh(current, handshake, executor);
+        }
+
+        void invalidate() {
+            this.lock.lock();
+            try {
+                this.token = null;
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        /**
+         * @return the current token, or null if no handshake has completed yet
+         */
+        Token current() {
+            return this.token;
+        }
+
+        /**
+         * Replaces a token with the result of a new handshake, unless it has
+         * already been replaced or a handshake is in progress
+         *
+         * @param stale the token to replace, or null
+         * @return the future token
+         */
+        CompletableFuture<Token> refresh(Token stale, Handshake handshake, Executor executor) {
+            this.lock.lock();
+            try {
+                Token current = this.token;
+                if (current != stale && current != null && !current.isExpired(System.nanoTime())) {
+                    return CompletableFuture.completedFuture(current);
+                }
+                // a failed handshake may not have been cleared yet, start a new one
+                if (this.pending != null && !this.pending.isCompletedExceptionally()) {
+                    return this.pending;
+                }
+
+                CompletableFuture<Token> future = CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return Token.of(handshake.authenticate());
+                    } catch (RuntimeException e) {
+                        throw e;
+                    } catch (Exception e) {
+                        throw new CompletionException(e);
+                    }
+                }, executor);
+                this.pending = future;
+                future.whenComplete((token, error) -> {
+                    this.lock.lock();
+                    try {
+                        if (error == null) {
+                            this.token = token;
+                        }
+                        if (this.pending == future) {
+                            this.pending = null;
+                        }
+                    } finally {
+                        this.lock.unlock();
+                    }
+                });
+                return future;
+            } finally {
+                this.lock.unlock();
+            }
+        }
+    }
+
+    private static final class Key {
+        private final URI address;
+        private final String apiKey;
+
+        Key(URI address, String apiKey) {
+            this.address = address;
+            this.apiKey = apiKey;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return this.address.equals(key.address) && this.apiKey.equals(key.apiKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.address, this.apiKey);
+        }
+    }
+
+    private final long refreshMarginNanos;
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a store refreshing expiring tokens one minute before they expire
+     */
+    public TokenStore() {
+        this(Duration.ofMinutes(1));
+    }
+
+    /**
+     * @param refreshMargin how long before expiry a token is refreshed in the
+     *                      background
+     */
+    public TokenStore(Duration refreshMargin) {
+        if (refreshMargin == null || refreshMargin.isNegative()) {
+            throw new IllegalArgumentException("refreshMargin must be a positive duration");
+        }
+        this.refreshMarginNanos = refreshMargin.toNanos();
+    }
+
+    /**
+     * Drops every token, so the next call of each client authenticates again
+     */
+    public void clear() {
+        this.entries.values().forEach(Entry::invalidate);
+    }
+
+    Entry entry(URI address, String apiKey) {
+        return this.entries.computeIfAbsent(new Key(address, apiKey), key -> new Entry());
+    }
+}
@@ -0,0 +1,158 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package ai.spice;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.arrow.flight.CallOption;
+import org.apache.arrow.flight.CallOptions;
+
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ClientStreamTracer;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import io.grpc.stub.AbstractStub;
+
+/**
+ * Call option applying the credentials, message compression and wire size
+ * tracing of a client to a Flight call. Arrow Flight only exposes gRPC call
+ * settings through call options, so they are combined into the one option
+ * passed with every call.
+ */
+final class TransportCallOption implements CallOptions.GrpcCallOption {
+    private final CallOption credentials;
+    private final String compressor;
+    private final ClientInterceptor tracing;
+
+    /**
+     * @param credentials the credentials of the call, or null
+     * @param compressor  the name of the gRPC compressor, or null to send
+     *                    messages uncompressed
+     * @param tracing     the interceptor recording wire sizes, or null
+     */
+    private TransportCallOption(CallOption credentials, String compressor, ClientInterceptor tracing) {
+        this.credentials = credentials;
+        this.compressor = compressor;
+        this.tracing = tracing;
+    }
+
+    /**
+     * Returns the interceptor reporting the wire and uncompressed sizes of the
+     * messages of every call to the metrics
+     *
+     * @param metrics the client metrics
+     * @return the tracing interceptor
+     */
+    static ClientInterceptor tracing(ClientMetrics metrics) {
+        ClientStreamTracer.Factory factory = new ClientStreamTracer.Factory() {
+            @Override
+            public ClientStreamTracer newClientStreamTracer(ClientStreamTracer.StreamInfo info, Metadata headers) {
+                return new WireSizeTracer(metrics);
+            }
+        };
+        return new ClientInterceptor() {
+            @Override
+            public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method,
+                    io.grpc.CallOptions callOptions, Channel next) {
+                return next.newCall(method, callOptions.withStreamTracerFactory(factory));
+            }
+        };
+    }
+
+    /**
+     * Combines the credentials of a call with the transport settings of the
+     * client
+     *
+     * @param credentials the credentials of the call, or null
+     * @param compression the compression of sent messages
+     * @param tracing     the interceptor recording wire sizes, or null
+     * @return the call option, or the credentials alone if there is nothing to
+     *         add to them
+     */
+    static CallOption of(CallOption credentials, Compression compression, ClientInterceptor tracing) {
+        if (compression == Compression.NONE && tracing == null) {
+            return credentials;
+        }
+        return new TransportCallOption(credentials,
+                compression == Compression.GZIP ? "gzip" : null, tracing);
+    }
+
+    @Override
+    public <T extends AbstractStub<T>> T wrapStub(T stub) {
+        T wrapped = stub;
+        if (this.credentials instanceof CallOptions.GrpcCallOption) {
+            wrapped = ((CallOptions.GrpcCallOption) this.credentials).wrapStub(wrapped);
+        }
+        if (this.compressor != null) {
+            wrapped = wrapped.withCompression(this.compressor);
+        }
+        if (this.tracing != null) {
+            wrapped = wrapped.withInterceptors(this.tracing);
+        }
+        return wrapped;
+    }
+
+    /**
+     * Sums the sizes of the messages of one call and reports them once the call
+     * is closed.
+     */
+    private static final class WireSizeTracer extends ClientStreamTracer {
+        private final ClientMetrics metrics;
+        private final AtomicLong receivedWireBytes = new AtomicLong();
+        private final AtomicLong receivedBytes = new AtomicLong();
+        private final AtomicLong sentWireBytes = new AtomicLong();
+        private final AtomicLong sentBytes = new AtomicLong();
+
+        WireSizeTracer(ClientMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        @Override
+        public void inboundWireSize(long bytes) {
+            this.receivedWireBytes.addAndGet(bytes);
+        }
+
+        @Override
+        public void inboundUncompressedSize(long bytes) {
+            this.receivedBytes.addAndGet(bytes);
+        }
+
+        @Override
+        public void outboundWireSize(long bytes) {
+            this.sentWireBytes.addAndGet(bytes);
+        }
+
+        @Override
+        public void outboundUncompressedSize(long bytes) {
+            this.sentBytes.addAndGet(bytes);
+        }
+
+        @Override
+        public void streamClosed(Status status) {
+            this.metrics.transferred(this.receivedWireBytes.get(), this.receivedBytes.get(),
+                    this.sentWireBytes.get(), this.sentBytes.get());
+        }
+    }
+}
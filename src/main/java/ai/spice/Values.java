@@ -0,0 +1,127 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package ai.spice;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.arrow.vector.BaseIntVector;
+import org.apache.arrow.vector.BitVector;
+import org.apache.arrow.vector.DateDayVector;
+import org.apache.arrow.vector.DateMilliVector;
+import org.apache.arrow.vector.Decimal256Vector;
+import org.apache.arrow.vector.DecimalVector;
+import org.apache.arrow.vector.FloatingPointVector;
+import org.apache.arrow.vector.LargeVarCharVector;
+import org.apache.arrow.vector.TimeMicroVector;
+import org.apache.arrow.vector.TimeMilliVector;
+import org.apache.arrow.vector.TimeNanoVector;
+import org.apache.arrow.vector.TimeSecVector;
+import org.apache.arrow.vector.TimeStampVector;
+import org.apache.arrow.vector.ValueVector;
+import org.apache.arrow.vector.VarCharVector;
+
+/**
+ * Reads single values out of vectors as Java primitives, without going through
+ * the boxed getObject() accessors where the vector type allows it.
+ *
+ * Like the vector accessors, reading a null value as a primitive throws
+ * IllegalStateException; callers check isNull first.
+ */
+final class Values {
+
+    private Values() {
+    }
+
+    static long getLong(ValueVector vector, int index) {
+        if (vector instanceof BaseIntVector) {
+            return ((BaseIntVector) vector).getValueAsLong(index);
+        }
+        if (vector instanceof TimeStampVector) {
+            return ((TimeStampVector) vector).get(index);
+        }
+        if (vector instanceof DateDayVector) {
+            return ((DateDayVector) vector).get(index);
+        }
+        if (vector instanceof DateMilliVector) {
+            return ((DateMilliVector) vector).get(index);
+        }
+        if (vector instanceof TimeSecVector) {
+            return ((TimeSecVector) vector).get(index);
+        }
+        if (vector instanceof TimeMilliVector) {
+            return ((TimeMilliVector) vector).get(index);
+        }
+        if (vector instanceof TimeMicroVector) {
+            return ((TimeMicroVector) vector).get(index);
+        }
+        if (vector instanceof TimeNanoVector) {
+            return ((TimeNanoVector) vector).get(index);
+        }
+        throw unsupported(vector, "long");
+    }
+
+    static int getInt(ValueVector vector, int index) {
+        return Math.toIntExact(getLong(vector, index));
+    }
+
+    static double getDouble(ValueVector vector, int index) {
+        if (vector instanceof FloatingPointVector) {
+            return ((FloatingPointVector) vector).getValueAsDouble(index);
+        }
+        if (vector instanceof BaseIntVector) {
+            return ((BaseIntVector) vector).getValueAsLong(index);
+        }
+        if (vector instanceof DecimalVector || vector instanceof Decimal256Vector) {
+            if (vector.isNull(index)) {
+                throw new IllegalStateException("Value at index is null");
+            }
+            return ((BigDecimal) vector.getObject(index)).doubleValue();
+        }
+        throw unsupported(vector, "double");
+    }
+
+    static boolean getBoolean(ValueVector vector, int index) {
+        if (vector instanceof BitVector) {
+            return ((BitVector) vector).get(index) != 0;
+        }
+        throw unsupported(vector, "boolean");
+    }
+
+    static String getString(ValueVector vector, int index) {
+        if (vector.isNull(index)) {
+            return null;
+        }
+        if (vector instanceof VarCharVector) {
+            return new String(((VarCharVector) vector).get(index), StandardCharsets.UTF_8);
+        }
+        if (vector instanceof LargeVarCharVector) {
+            return new String(((LargeVarCharVector) vector).get(index), StandardCharsets.UTF_8);
+        }
+        return vector.getObject(index).toString();
+    }
+
+    private static UnsupportedOperationException unsupported(ValueVector vector, String type) {
+        return new UnsupportedOperationException(String.format("Column %s of type %s can't be read as %s",
+                vector.getName(), vector.getField().getType(), type));
+    }
+}
@@ -0,0 +1,113 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package ai.spice;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import com.github.rholder.retry.BlockStrategy;
+
+/**
+ * Access to virtual threads on JDK 21 and later while the SDK is compiled for
+ * Java 11. The JDK 21 API is looked up by reflection once, and callers fall
+ * back to platform threads when it is missing.
+ */
+final class VirtualThreads {
+
+    private static final Method OF_VIRTUAL = lookup(Thread.class, "ofVirtual");
+    private static final Method NEW_THREAD_PER_TASK_EXECUTOR = lookup(Executors.class,
+            "newThreadPerTaskExecutor", ThreadFactory.class);
+    private static final boolean AVAILABLE = probe();
+
+    /**
+     * A retry wait that parks the thread instead of sleeping in a monitor, so a
+     * waiting virtual thread releases its carrier thread.
+     */
+    static final BlockStrategy PARKING_BLOCK_STRATEGY = sleepTime -> {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(sleepTime);
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(VirtualThreads.class, remaining);
+            if (Thread.interrupted()) {
+                throw new InterruptedException("Interrupted while waiting to retry");
+            }
+        }
+    };
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return whether the running JDK supports virtual threads
+     */
+    static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    /**
+     * Creates an executor starting a new virtual thread for each task
+     *
+     * @param prefix the prefix of the thread names
+     * @return the executor
+     * @throws UnsupportedOperationException if virtual threads are not available
+     */
+    static ExecutorService newExecutor(String prefix) {
+        if (!AVAILABLE) {
+            throw new UnsupportedOperationException("Virtual threads require JDK 21 or later");
+        }
+        try {
+            Object builder = OF_VIRTUAL.invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, prefix + "-", 1L);
+            ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, factory);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Failed to create a virtual thread executor", e);
+        }
+    }
+
+    private static Method lookup(Class<?> type, String name, Class<?>... parameterTypes) {
+        try {
+            return type.getMethod(name, parameterTypes);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static boolean probe() {
+        if (OF_VIRTUAL == null || NEW_THREAD_PER_TASK_EXECUTOR == null) {
+            return false;
+        }
+        try {
+            // on JDK 19 and 20 the API exists but throws unless preview features are
+            // enabled
+            OF_VIRTUAL.invoke(null);
+            return true;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package ai.spice;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.arrow.vector.BaseIntVector;
+import org.apache.arrow.vector.DateDayVector;
+import org.apache.arrow.vector.DateMilliVector;
+import org.apache.arrow.vector.Decimal256Vector;
+import org.apache.arrow.vector.DecimalVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.FloatingPointVector;
+import org.apache.arrow.vector.LargeVarCharVector;
+import org.apache.arrow.vector.TimeStampVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.types.DateUnit;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+
+/**
+ * Tracks the largest value of a watermark column over the batches of a poll,
+ * and renders it as a SQL literal for the predicate of the next poll.
+ *
+ * Integers, decimals, floating point numbers, dates, timestamps and strings are
+ * supported. Null values are ignored.
+ */
+final class Watermark {
+
+    private final String column;
+    private ArrowType type;
+    private long longMax;
+    private BigDecimal decimalMax;
+    private String stringMax;
+    private boolean seen = false;
+
+    /**
+     * @param column the name of the watermark column
+     */
+    Watermark(String column) {
+        this.column = column;
+    }
+
+    /**
+     * Rewrites a query so that it only returns rows past a watermark
+     *
+     * @param sql       the SQL query
+     * @param column    the name of the watermark column
+     * @param watermark the SQL literal of the last watermark, or null for every
+     *                  row
+     * @return the SQL text of the incremental query
+     */
+    static String incrementalQuery(String sql, String column, String watermark) {
+        // the text is sent as written, as collapsing its lines would let a line comment
+        // swallow the rest of the query, and the closing parenthesis goes on a line of
+        // its own in case the query ends with one
+        int end = sql.length();
+        while (end > 0 && (sql.charAt(end - 1) == ';' || Character.isWhitespace(sql.charAt(end - 1)))) {
+            end--;
+        }
+        String query = "SELECT * FROM (" + sql.substring(0, end) + "\n) AS spice_subscription";
+        if (watermark == null) {
+            return query;
+        }
+        return query + " WHERE " + quoteIdentifier(column) + " > " + watermark;
+    }
+
+    private static String quoteIdentifier(String identifier) {
+        return "\"" + identifier.replace("\"", "\"\"") + "\"";
+    }
+
+    /**
+     * Takes the values of the watermark column of a batch into account
+     *
+     * @param root the batch
+     */
+    void observe(VectorSchemaRoot root) {
+        FieldVector vector = root.getVector(this.column);
+        if (vector == null) {
+            throw new IllegalArgumentException(
+                    String.format("Watermark column %s is not in the query results", this.column));
+        }
+        this.type = vector.getField().getType();
+
+        for (int i = 0; i < root.getRowCount(); i++) {
+            if (vector.isNull(i)) {
+                continue;
+            }
+            if (vector instanceof BaseIntVector || vector instanceof TimeStampVector
+                    || vector instanceof DateDayVector || vector instanceof DateMilliVector) {
+                long value = Values.getLong(vector, i);
+                if (!this.seen || value > this.longMax) {
+                    this.longMax = value;
+                }
+            } else if (vector instanceof DecimalVector || vector instanceof Decimal256Vector
+                    || vector instanceof FloatingPointVector) {
+                BigDecimal value = vector instanceof FloatingPointVector
+                        ? BigDecimal.valueOf(((FloatingPointVector) vector).getValueAsDouble(i))
+                        : (BigDecimal) vector.getObject(i);
+                if (!this.seen || value.compareTo(this.decimalMax) > 0) {
+                    this.decimalMax = value;
+                }
+            } else if (vector instanceof VarCharVector || vector instanceof LargeVarCharVector) {
+                String value = Values.getString(vector, i);
+                if (!this.seen || value.compareTo(this.stringMax) > 0) {
+                    this.stringMax = value;
+                }
+            } else {
+                throw new IllegalArgumentException(String.format("Unsupported watermark column type for %s: %s",
+                        this.column, this.type));
+            }
+            this.seen = true;
+        }
+    }
+
+    /**
+     * @return the SQL literal of the largest value seen, or null if every value
+     *         was null or there were no rows
+     */
+    String literal() {
+        if (!this.seen) {
+            return null;
+        }
+        if (this.decimalMax != null) {
+            return this.decimalMax.toPlainString();
+        }
+        if (this.stringMax != null) {
+            return "'" + this.stringMax.replace("'", "''") + "'";
+        }
+        if (this.type instanceof ArrowType.Timestamp) {
+            ArrowType.Timestamp timestamp = (ArrowType.Timestamp) this.type;
+            Instant instant = toInstant(this.longMax, timestamp);
+            String text = timestamp.getTimezone() != null ? instant.toString()
+                    : LocalDateTime.ofInstant(instant, ZoneOffset.UTC).toString();
+            return "TIMESTAMP '" + text + "'";
+        }
+        if (this.type instanceof ArrowType.Date) {
+            long days = ((ArrowType.Date) this.type).getUnit() == DateUnit.DAY
+                    ? this.longMax
+                    : Math.floorDiv(this.longMax, TimeUnit.DAYS.toMillis(1));
+            return "DATE '" + LocalDate.ofEpochDay(days) + "'";
+        }
+        return Long.toString(this.longMax);
+    }
+
+    private static Instant toInstant(long value, ArrowType.Timestamp type) {
+        switch (type.getUnit()) {
+            case SECOND:
+                return Instant.ofEpochSecond(value);
+            case MILLISECOND:
+                return Instant.ofEpochMilli(value);
+            case MICROSECOND:
+                return Instant.ofEpochSecond(Math.floorDiv(value, 1_000_000L),
+                        Math.floorMod(value, 1_000_000L) * 1_000L);
+            default:
+                return Instant.ofEpochSecond(Math.floorDiv(value, 1_000_000_000L),
+                        Math.floorMod(value, 1_000_000_000L));
+        }
+    }
+}
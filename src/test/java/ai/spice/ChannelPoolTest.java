@@ -0,0 +1,159 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package ai.spice;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.arrow.flight.CallStatus;
+import org.apache.arrow.flight.FlightClient;
+import org.apache.arrow.flight.Location;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+
+import junit.framework.TestCase;
+
+public class ChannelPoolTest
+        extends TestCase {
+    private BufferAllocator allocator;
+
+    @Override
+    protected void setUp() {
+        this.allocator = new RootAllocator();
+    }
+
+    @Override
+    protected void tearDown() {
+        this.allocator.close();
+    }
+
+    // gRPC channels connect lazily, so no runtime needs to listen on these ports
+    private ChannelPool.Node node(int port) {
+        URI uri = URI.create("grpc+tcp://localhost:" + port);
+        return new ChannelPool.Node(uri, null,
+                Collections.singletonList(FlightClient.builder(this.allocator, new Location(uri)).build()));
+    }
+
+    public void testLeastOutstandingSpreadsRuntimes() throws Exception {
+        ChannelPool.Node first = this.node(50001);
+        ChannelPool.Node second = this.node(50002);
+        try (ChannelPool pool = new ChannelPool(Arrays.asList(first, second), ChannelSelection.LEAST_OUTSTANDING)) {
+            ChannelPool.Lease a = pool.acquire();
+            ChannelPool.Lease b = pool.acquire();
+            assertNotSame("Busy runtimes should not be picked twice", a.node(), b.node());
+            a.close();
+            b.close();
+        }
+    }
+
+    public void testAcquireAvoidsChannel() throws Exception {
+        URI uri = URI.create("grpc+tcp://localhost:50001");
+        ChannelPool.Node shared = new ChannelPool.Node(uri, null,
+                Arrays.asList(FlightClient.builder(this.allocator, new Location(uri)).build(),
+                        FlightClient.builder(this.allocator, new Location(uri)).build()));
+        try (ChannelPool pool = new ChannelPool(Collections.singletonList(shared), ChannelSelection.ROUND_ROBIN)) {
+            for (int i = 0; i < 4; i++) {
+                ChannelPool.Lease first = pool.acquire();
+                ChannelPool.Lease hedged = pool.acquire(first.channel());
+                assertNotSame(first.channel(), hedged.channel());
+                first.close();
+                hedged.close();
+            }
+        }
+
+        ChannelPool.Node first = this.node(50002);
+        ChannelPool.Node second = this.node(50003);
+        try (ChannelPool pool = new ChannelPool(Arrays.asList(first, second), ChannelSelection.ROUND_ROBIN)) {
+            for (int i = 0; i < 4; i++) {
+                ChannelPool.Lease lease = pool.acquire(first.firstChannel());
+                assertSame("A runtime with a single channel should be avoided as a whole", second, lease.node());
+                lease.close();
+            }
+        }
+    }
+
+    public void testFailingRuntimeIsSkipped() throws Exception {
+        ChannelPool.Node first = this.node(50001);
+        ChannelPool.Node second = this.node(50002);
+        try (ChannelPool pool = new ChannelPool(Arrays.asList(first, second), ChannelSelection.ROUND_ROBIN)) {
+            for (int i = 0; i < 3; i++) {
+                pool.acquireStream(first).release(CallStatus.UNAVAILABLE.toRuntimeException());
+            }
+            for (int i = 0; i < 10; i++) {
+                ChannelPool.Lease lease = pool.acquire();
+                assertSame(second, lease.node());
+                lease.close();
+            }
+            assertSame("Calls to the primary channel should avoid a failing runtime", second,
+                    pool.primary().node());
+
+            // streams stay on the runtime holding their ticket, even while it is skipped
+            ChannelPool.Lease stream = pool.acquireStream(first);
+            assertSame(first, stream.node());
+            stream.close();
+        }
+    }
+
+    public void testHttpAddressesSkipFailingRuntime() throws Exception {
+        URI firstUri = URI.create("grpc+tcp://localhost:50001");
+        URI secondUri = URI.create("grpc+tcp://localhost:50002");
+        ChannelPool.Node first = new ChannelPool.Node(firstUri, URI.create("http://localhost:8091"),
+                Collections.singletonList(FlightClient.builder(this.allocator, new Location(firstUri)).build()));
+        ChannelPool.Node second = new ChannelPool.Node(secondUri, URI.create("http://localhost:8092"),
+                Collections.singletonList(FlightClient.builder(this.allocator, new Location(secondUri)).build()));
+        try (ChannelPool pool = new ChannelPool(Arrays.asList(first, second), ChannelSelection.ROUND_ROBIN)) {
+            assertEquals(Arrays.asList(first.httpAddress(), second.httpAddress()), pool.httpAddresses());
+
+            for (int i = 0; i < 3; i++) {
+                pool.acquireStream(first).release(CallStatus.UNAVAILABLE.toRuntimeException());
+            }
+            assertEquals(Collections.singletonList(second.httpAddress()), pool.httpAddresses());
+
+            for (int i = 0; i < 3; i++) {
+                pool.acquireStream(second).release(CallStatus.UNAVAILABLE.toRuntimeException());
+            }
+            assertEquals("Every runtime should be tried while all of them are skipped",
+                    Arrays.asList(first.httpAddress(), second.httpAddress()), pool.httpAddresses());
+        }
+    }
+
+    public void testLowestLatencyPrefersFastRuntime() throws Exception {
+        ChannelPool.Node first = this.node(50001);
+        ChannelPool.Node second = this.node(50002);
+        try (ChannelPool pool = new ChannelPool(Arrays.asList(first, second), ChannelSelection.LOWEST_LATENCY)) {
+            ChannelPool.Lease slow = pool.acquire();
+            ChannelPool.Lease fast = pool.acquire();
+            assertNotSame(slow.node(), fast.node());
+            fast.close();
+            Thread.sleep(50);
+            slow.close();
+
+            for (int i = 0; i < 10; i++) {
+                ChannelPool.Lease lease = pool.acquire();
+                assertSame(fast.node(), lease.node());
+                lease.close();
+            }
+            assertTrue(slow.node().latencyNanos() > fast.node().latencyNanos());
+        }
+    }
+}
@@ -22,10 +22,20 @@ SOFTWARE.
 
 package ai.spice;
 
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.arrow.flight.FlightStream;
 import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowReader;
 
 import com.google.common.base.Strings;
 
@@ -95,6 +105,194 @@ public class FlightQueryTest
         }
     }
 
+    public void testQueryAllEndpointsSpiceOSS() throws ExecutionException, InterruptedException {
+        try (SpiceClient spiceClient = SpiceClient.builder()
+                .withQueryParallelism(2)
+                .build()) {
+
+            String sql = "SELECT tpep_pickup_datetime, total_amount, passenger_count from taxi_trips limit 10;";
+
+            int totalRows = 0;
+            int columnCount = 0;
+
+            try (ArrowReader reader = spiceClient.query(sql, new QueryOptions().withPreserveOrder(false))) {
+                while (reader.loadNextBatch()) {
+                    VectorSchemaRoot root = reader.getVectorSchemaRoot();
+                    columnCount = root.getFieldVectors().size();
+                    totalRows += root.getRowCount();
+                }
+            }
+
+            assertEquals("Expected column count does not match", 3, columnCount);
+            assertEquals("Expected row count does not match", 10, totalRows);
+        } catch (Exception e) {
+            fail("Should not throw any exception: " + e.getMessage());
+        }
+    }
+
+    public void testQueryPrefetchSpiceOSS() throws ExecutionException, InterruptedException {
+        try (SpiceClient spiceClient = SpiceClient.builder()
+                .withPrefetchBatches(1)
+                .build()) {
+
+            String sql = "SELECT tpep_pickup_datetime, total_amount, passenger_count from taxi_trips limit 10;";
+
+            int totalRows = 0;
+            try (ArrowReader reader = spiceClient.query(sql,
+                    new QueryOptions().withCache(false).withPrefetchBatches(8))) {
+                while (reader.loadNextBatch()) {
+                    // batches keep arriving while the consumer is busy
+                    Thread.sleep(10);
+                    totalRows += reader.getVectorSchemaRoot().getRowCount();
+                }
+            }
+
+            assertEquals("Expected row count does not match", 10, totalRows);
+        } catch (Exception e) {
+            fail("Should not throw any exception: " + e.getMessage());
+        }
+    }
+
+    public void testPrefetchBatchesValidation() throws URISyntaxException {
+        try {
+            SpiceClient.builder().withPrefetchBatches(0);
+            fail("Should reject a prefetch depth of 0");
+        } catch (IllegalArgumentException e) {
+            assertEquals("prefetchBatches must be greater than 0", e.getMessage());
+        }
+    }
+
+    public void testQueryCancelSpiceOSS() throws ExecutionException, InterruptedException {
+        try (SpiceClient spiceClient = SpiceClient.builder().build()) {
+            String sql = "SELECT tpep_pickup_datetime, total_amount, passenger_count from taxi_trips";
+
+            try (QueryReader reader = spiceClient.query(sql,
+                    new QueryOptions().withCache(false).withTimeout(Duration.ofSeconds(30)))) {
+                assertTrue(reader.loadNextBatch());
+                reader.cancel();
+
+                assertTrue(reader.isCancelled());
+                try {
+                    reader.loadNextBatch();
+                    fail("Should fail to read a cancelled query");
+                } catch (IOException e) {
+                    assertEquals("Query cancelled", e.getMessage());
+                }
+            }
+        } catch (Exception e) {
+            fail("Should not throw any exception: " + e.getMessage());
+        }
+    }
+
+    public void testQueryAsyncSpiceOSS() throws ExecutionException, InterruptedException {
+        try (SpiceClient spiceClient = SpiceClient.builder()
+                .build()) {
+
+            String sql = "SELECT tpep_pickup_datetime, total_amount, passenger_count from taxi_trips limit 10;";
+            FlightStream res = spiceClient.queryAsync(sql).get();
+
+            int totalRows = 0;
+            while (res.next()) {
+                totalRows += res.getRoot().getRowCount();
+            }
+            assertEquals("Expected row count does not match", 10, totalRows);
+
+            final AtomicInteger publishedRows = new AtomicInteger();
+            final CompletableFuture<Void> completed = new CompletableFuture<>();
+            spiceClient.queryPublisher(sql, null).subscribe(new Flow.Subscriber<VectorSchemaRoot>() {
+                private Flow.Subscription subscription;
+
+                @Override
+                public void onSubscribe(Flow.Subscription subscription) {
+                    this.subscription = subscription;
+                    subscription.request(1);
+                }
+
+                @Override
+                public void onNext(VectorSchemaRoot root) {
+                    publishedRows.addAndGet(root.getRowCount());
+                    this.subscription.request(1);
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    completed.completeExceptionally(throwable);
+                }
+
+                @Override
+                public void onComplete() {
+                    completed.complete(null);
+                }
+            });
+
+            completed.get(30, TimeUnit.SECONDS);
+            assertEquals("Expected published row count does not match", 10, publishedRows.get());
+        } catch (Exception e) {
+            fail("Should not throw any exception: " + e.getMessage());
+        }
+    }
+
+    public void testPreparedQuerySpiceOSS() throws ExecutionException, InterruptedException {
+        try (SpiceClient spiceClient = SpiceClient.builder()
+                .withPreparedStatementCacheSize(4)
+                .build()) {
+
+            String sql = "SELECT tpep_pickup_datetime, total_amount, passenger_count from taxi_trips limit 10;";
+
+            for (int i = 0; i < 2; i++) {
+                try (PreparedQuery prepared = spiceClient.prepare(sql);
+                        ArrowReader reader = prepared.execute()) {
+                    int totalRows = 0;
+                    while (reader.loadNextBatch()) {
+                        totalRows += reader.getVectorSchemaRoot().getRowCount();
+                    }
+                    assertEquals("Expected row count does not match", 10, totalRows);
+                }
+            }
+        } catch (Exception e) {
+            fail("Should not throw any exception: " + e.getMessage());
+        }
+    }
+
+    public void testQueryResultCacheSpiceOSS() throws ExecutionException, InterruptedException {
+        // a query answered from the cache never receives a FlightInfo
+        AtomicInteger executions = new AtomicInteger();
+        ClientMetrics metrics = new ClientMetrics() {
+            @Override
+            public void flightInfoReceived(long nanos) {
+                executions.incrementAndGet();
+            }
+        };
+        try (SpiceClient spiceClient = SpiceClient.builder()
+                .withResultCache(16 * 1024 * 1024, Duration.ofMinutes(1))
+                .withMetrics(metrics)
+                .build()) {
+
+            String sql = "SELECT tpep_pickup_datetime, total_amount, passenger_count from taxi_trips limit 10;";
+
+            for (int i = 0; i < 2; i++) {
+                assertEquals("Expected row count does not match", 10, countRows(spiceClient, sql));
+            }
+            assertEquals("The second query should be answered from the cache", 1, executions.get());
+
+            spiceClient.refreshDataset("taxi_trips");
+            assertEquals("Expected row count does not match", 10, countRows(spiceClient, sql));
+            assertEquals("Refreshing the dataset should invalidate the cached result", 2, executions.get());
+        } catch (Exception e) {
+            fail("Should not throw any exception: " + e.getMessage());
+        }
+    }
+
+    private static int countRows(SpiceClient spiceClient, String sql) throws Exception {
+        int totalRows = 0;
+        try (ArrowReader reader = spiceClient.query(sql, new QueryOptions())) {
+            while (reader.loadNextBatch()) {
+                totalRows += reader.getVectorSchemaRoot().getRowCount();
+            }
+        }
+        return totalRows;
+    }
+
     public void testRefreshSpiceOSS() throws ExecutionException, InterruptedException {
         try {
             SpiceClient spiceClient = SpiceClient.builder()
@@ -114,6 +312,25 @@ public class FlightQueryTest
         }
     }
 
+    public void testRefreshDatasetsSpiceOSS() throws ExecutionException, InterruptedException {
+        try (SpiceClient spiceClient = SpiceClient.builder()
+                .withRefreshConcurrency(2)
+                .build()) {
+            spiceClient.refreshDatasetAsync("taxi_trips", null).get(30, TimeUnit.SECONDS);
+
+            List<RefreshResult> results = spiceClient.refreshDatasets(
+                    Arrays.asList("taxi_trips", "taxi_trips_does_not_exist", "taxi_trips"), null);
+
+            assertEquals(3, results.size());
+            assertTrue("Should refresh an existing dataset", results.get(0).isSuccess());
+            assertEquals("taxi_trips_does_not_exist", results.get(1).getDataset());
+            assertFalse("Should report a failed refresh", results.get(1).isSuccess());
+            assertTrue("Should not stop after a failed refresh", results.get(2).isSuccess());
+        } catch (Exception e) {
+            fail("Should not throw exception: " + e.getMessage());
+        }
+    }
+
     public void testRefreshWithOptionsSpiceOSS() throws ExecutionException, InterruptedException {
         try {
             String sql = "SELECT tpep_pickup_datetime, total_amount, passenger_count from taxi_trips limit 20;";
@@ -0,0 +1,84 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package ai.spice;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.arrow.flight.CallHeaders;
+import org.apache.arrow.flight.CallInfo;
+import org.apache.arrow.flight.CallStatus;
+import org.apache.arrow.flight.ErrorFlightMetadata;
+import org.apache.arrow.flight.FlightClientMiddleware;
+import org.apache.arrow.flight.FlightMethod;
+import org.apache.arrow.flight.auth2.ClientIncomingAuthHeaderMiddleware;
+
+import junit.framework.TestCase;
+
+public class HeaderAuthMiddlewareFactoryTest
+        extends TestCase {
+    public void testSingleDelegatePerCall() {
+        AtomicInteger delegates = new AtomicInteger();
+        AtomicReference<String> bearer = new AtomicReference<>();
+        ClientIncomingAuthHeaderMiddleware.Factory authFactory = new ClientIncomingAuthHeaderMiddleware.Factory(
+                headers -> {
+                    bearer.set(headers.get("authorization"));
+                    return null;
+                }) {
+            @Override
+            public ClientIncomingAuthHeaderMiddleware onCallStarted(CallInfo info) {
+                delegates.incrementAndGet();
+                return super.onCallStarted(info);
+            }
+        };
+        HeaderAuthMiddlewareFactory factory = new HeaderAuthMiddlewareFactory(authFactory,
+                Collections.singletonMap("User-Agent", "spice-java/test"),
+                (callInfo, headers) -> headers.insert("x-trace-id", callInfo.method().name()));
+
+        FlightClientMiddleware middleware = factory.onCallStarted(new CallInfo(FlightMethod.DO_GET));
+        CallHeaders outgoing = new ErrorFlightMetadata();
+        middleware.onBeforeSendingHeaders(outgoing);
+        CallHeaders incoming = new ErrorFlightMetadata();
+        incoming.insert("authorization", "Bearer token");
+        middleware.onHeadersReceived(incoming);
+        middleware.onCallCompleted(CallStatus.OK);
+
+        assertEquals(1, delegates.get());
+        assertEquals("spice-java/test", outgoing.get("User-Agent"));
+        assertEquals("DO_GET", outgoing.get("x-trace-id"));
+        assertEquals("Bearer token", bearer.get());
+    }
+
+    public void testWithoutAuthentication() {
+        HeaderAuthMiddlewareFactory factory = new HeaderAuthMiddlewareFactory(null, Collections.emptyMap(),
+                (callInfo, headers) -> headers.insert("x-tenant", "acme"));
+
+        FlightClientMiddleware middleware = factory.onCallStarted(new CallInfo(FlightMethod.GET_FLIGHT_INFO));
+        CallHeaders outgoing = new ErrorFlightMetadata();
+        middleware.onBeforeSendingHeaders(outgoing);
+        middleware.onHeadersReceived(new ErrorFlightMetadata());
+        middleware.onCallCompleted(CallStatus.OK);
+
+        assertEquals("acme", outgoing.get("x-tenant"));
+    }
+}
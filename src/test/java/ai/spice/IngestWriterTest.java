@@ -0,0 +1,210 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package ai.spice;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.arrow.flight.FlightDescriptor;
+import org.apache.arrow.flight.FlightServer;
+import org.apache.arrow.flight.FlightStream;
+import org.apache.arrow.flight.Location;
+import org.apache.arrow.flight.NoOpFlightProducer;
+import org.apache.arrow.flight.PutResult;
+import org.apache.arrow.flight.sql.impl.FlightSql.CommandStatementIngest;
+import org.apache.arrow.flight.sql.impl.FlightSql.DoPutUpdateResult;
+import org.apache.arrow.memory.ArrowBuf;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+import com.google.protobuf.Any;
+
+import junit.framework.TestCase;
+
+public class IngestWriterTest
+        extends TestCase {
+    private static final Schema SCHEMA = new Schema(
+            Arrays.asList(Field.nullable("id", new ArrowType.Int(64, true))));
+
+    /**
+     * Counts the rows put by the client and acknowledges them like a Flight SQL
+     * server.
+     */
+    private static final class IngestProducer extends NoOpFlightProducer {
+        private final BufferAllocator allocator;
+        private final AtomicLong rows = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicInteger batches = new AtomicInteger();
+        private volatile FlightDescriptor descriptor;
+
+        IngestProducer(BufferAllocator allocator) {
+            this.allocator = allocator;
+        }
+
+        @Override
+        public Runnable acceptPut(CallContext context, FlightStream flightStream, StreamListener<PutResult> ackStream) {
+            return () -> {
+                this.descriptor = flightStream.getDescriptor();
+                long received = 0;
+                while (flightStream.next()) {
+                    BigIntVector ids = (BigIntVector) flightStream.getRoot().getVector("id");
+                    for (int i = 0; i < ids.getValueCount(); i++) {
+                        this.sum.addAndGet(ids.get(i));
+                    }
+                    received += flightStream.getRoot().getRowCount();
+                    this.batches.incrementAndGet();
+                }
+                this.rows.addAndGet(received);
+
+                byte[] update = DoPutUpdateResult.newBuilder().setRecordCount(received).build().toByteArray();
+                try (ArrowBuf metadata = this.allocator.buffer(update.length)) {
+                    metadata.writeBytes(update);
+                    ackStream.onNext(PutResult.metadata(metadata));
+                }
+                ackStream.onCompleted();
+            };
+        }
+    }
+
+    private static void fill(VectorSchemaRoot root, long first, int count) {
+        BigIntVector ids = (BigIntVector) root.getVector("id");
+        ids.allocateNew(count);
+        for (int i = 0; i < count; i++) {
+            ids.set(i, first + i);
+        }
+        root.setRowCount(count);
+    }
+
+    public void testDescriptor() throws Exception {
+        FlightDescriptor descriptor = IngestWriter.descriptor("events", true);
+        CommandStatementIngest command = Any.parseFrom(descriptor.getCommand()).unpack(CommandStatementIngest.class);
+
+        assertEquals("events", command.getTable());
+        assertEquals(CommandStatementIngest.TableDefinitionOptions.TableNotExistOption.TABLE_NOT_EXIST_OPTION_CREATE,
+                command.getTableDefinitionOptions().getIfNotExist());
+        assertEquals(CommandStatementIngest.TableDefinitionOptions.TableExistsOption.TABLE_EXISTS_OPTION_APPEND,
+                command.getTableDefinitionOptions().getIfExists());
+    }
+
+    public void testIngestCoalescesSmallWrites() throws Exception {
+        try (BufferAllocator allocator = new RootAllocator()) {
+            IngestProducer producer = new IngestProducer(allocator);
+            try (FlightServer server = FlightServer
+                    .builder(allocator, Location.forGrpcInsecure("localhost", 0), producer).build().start();
+                    SpiceClient client = SpiceClient.builder()
+                            .withFlightAddress(new URI("grpc://localhost:" + server.getPort()))
+                            .build();
+                    VectorSchemaRoot batch = VectorSchemaRoot.create(SCHEMA, allocator)) {
+
+                IngestResult result;
+                try (IngestWriter writer = client.ingest("events",
+                        new IngestOptions().withTargetBatchRows(1000).withMaxPendingBatches(2))) {
+                    for (int i = 0; i < 100; i++) {
+                        fill(batch, i * 100L, 100);
+                        writer.write(batch);
+                    }
+                    result = writer.finish();
+                }
+
+                assertEquals(10000, result.getRows());
+                assertEquals("Small writes should be coalesced", 10, result.getBatches());
+                assertEquals(10, producer.batches.get());
+                assertEquals(10000, producer.rows.get());
+                assertEquals(10000L * 9999 / 2, producer.sum.get());
+                assertEquals(10000, result.getRecordCount());
+                assertTrue(result.getRowsPerSecond() > 0);
+                assertNotNull(producer.descriptor.getCommand());
+                assertEquals(0, client.getAllocatedMemory());
+            }
+        }
+    }
+
+    public void testIngestOverSeveralStreams() throws Exception {
+        try (BufferAllocator allocator = new RootAllocator()) {
+            IngestProducer producer = new IngestProducer(allocator);
+            try (FlightServer server = FlightServer
+                    .builder(allocator, Location.forGrpcInsecure("localhost", 0), producer).build().start();
+                    SpiceClient client = SpiceClient.builder()
+                            .withFlightAddress(new URI("grpc://localhost:" + server.getPort()))
+                            .withChannels(2)
+                            .build();
+                    VectorSchemaRoot batch = VectorSchemaRoot.create(SCHEMA, allocator)) {
+
+                IngestResult result;
+                try (IngestWriter writer = client.ingest("events",
+                        new IngestOptions().withTargetBatchRows(500).withStreams(3))) {
+                    for (int i = 0; i < 20; i++) {
+                        fill(batch, i * 250L, 250);
+                        writer.write(batch);
+                    }
+                    // the remaining rows are sent by finish
+                    fill(batch, 5000, 10);
+                    writer.write(batch);
+                    result = writer.finish();
+                }
+
+                assertEquals(5010, result.getRows());
+                assertEquals(11, result.getBatches());
+                assertEquals(5010, producer.rows.get());
+                assertEquals(5010L * 5009 / 2, producer.sum.get());
+            }
+        }
+    }
+
+    public void testSchemaMismatch() throws Exception {
+        try (BufferAllocator allocator = new RootAllocator();
+                SpiceClient client = SpiceClient.builder().build();
+                IngestWriter writer = client.ingest("events");
+                VectorSchemaRoot first = VectorSchemaRoot.create(SCHEMA, allocator);
+                VectorSchemaRoot other = VectorSchemaRoot.create(
+                        new Schema(Arrays.asList(Field.nullable("name", new ArrowType.Utf8()))), allocator)) {
+            writer.write(first);
+            try {
+                writer.write(other);
+                fail("Should not accept a batch with a different schema");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    public void testWriteAfterFinish() throws Exception {
+        try (SpiceClient client = SpiceClient.builder().build()) {
+            IngestWriter writer = client.ingest("events");
+            IngestResult result = writer.finish();
+            assertEquals(0, result.getRows());
+            try {
+                writer.flush();
+                fail("Should not accept writes once finished");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+        }
+    }
+}
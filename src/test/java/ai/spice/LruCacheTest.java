@@ -0,0 +1,87 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package ai.spice;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class LruCacheTest
+        extends TestCase {
+    public void testEvictsLeastRecentlyUsed() {
+        List<String> evicted = new ArrayList<>();
+        LruCache<String, String> cache = new LruCache<>(2, evicted::add);
+
+        cache.put("a", "1");
+        cache.put("b", "2");
+        // touch "a" so "b" becomes the least recently used entry
+        assertEquals("1", cache.get("a"));
+        cache.put("c", "3");
+
+        assertEquals(2, cache.size());
+        assertNull(cache.get("b"));
+        assertEquals("[2]", evicted.toString());
+    }
+
+    public void testRemoveNotifiesListener() {
+        List<String> evicted = new ArrayList<>();
+        LruCache<String, String> cache = new LruCache<>(10, evicted::add);
+
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.put("a", "3");
+        cache.remove("b");
+        cache.clear();
+
+        assertEquals(0, cache.size());
+        assertEquals("[1, 2, 3]", evicted.toString());
+    }
+
+    public void testEvictsByWeight() {
+        List<String> evicted = new ArrayList<>();
+        LruCache<String, String> cache = new LruCache<>(5, value -> value.length(), 0, evicted::add);
+
+        cache.put("a", "aa");
+        cache.put("b", "bbb");
+        cache.put("c", "cc");
+        cache.put("d", "dddddd");
+
+        assertEquals(5, cache.weight());
+        assertNull(cache.get("a"));
+        assertEquals("bbb", cache.get("b"));
+        assertEquals("[aa, dddddd]", evicted.toString());
+    }
+
+    public void testExpiresEntries() throws InterruptedException {
+        List<String> evicted = new ArrayList<>();
+        LruCache<String, String> cache = new LruCache<>(10, value -> 1, 1_000_000L, evicted::add);
+
+        cache.put("a", "1");
+        Thread.sleep(5);
+
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+        assertEquals("[1]", evicted.toString());
+    }
+}
@@ -0,0 +1,62 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package ai.spice;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+public class MetadataCacheTest
+        extends TestCase {
+    public void testEvictsBeyondMaxEntries() {
+        MetadataCache cache = new MetadataCache(2, TimeUnit.MINUTES.toNanos(1));
+
+        cache.put("a", Collections.singleton("a"), "1");
+        cache.put("b", Collections.singleton("b"), "2");
+        cache.put("c", Collections.singleton("c"), "3");
+
+        assertEquals(2, cache.size());
+        assertNull(cache.get("a"));
+        assertEquals("3", cache.get("c"));
+    }
+
+    public void testInvalidateByTable() {
+        MetadataCache cache = new MetadataCache(10, TimeUnit.MINUTES.toNanos(1));
+
+        cache.put("schema:SELECT * FROM taxi_trips", SqlText.referencedTables("SELECT * FROM taxi_trips"), "trips");
+        cache.put("schema:SELECT * FROM eth.blocks", SqlText.referencedTables("SELECT * FROM eth.blocks"), "blocks");
+        cache.invalidate("spice.public.taxi_trips");
+
+        assertNull(cache.get("schema:SELECT * FROM taxi_trips"));
+        assertEquals("blocks", cache.get("schema:SELECT * FROM eth.blocks"));
+    }
+
+    public void testUnknownTablesAreInvalidatedByAnyDataset() {
+        MetadataCache cache = new MetadataCache(10, TimeUnit.MINUTES.toNanos(1));
+
+        cache.put("tables", Collections.emptySet(), "listing");
+        cache.invalidate("eth.blocks");
+
+        assertNull(cache.get("tables"));
+    }
+}
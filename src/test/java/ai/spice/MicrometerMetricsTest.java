@@ -0,0 +1,72 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package ai.spice;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.arrow.flight.FlightStatusCode;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import junit.framework.TestCase;
+
+public class MicrometerMetricsTest
+        extends TestCase {
+    public void testStreamMetrics() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        MicrometerMetrics metrics = new MicrometerMetrics(registry);
+
+        metrics.flightInfoReceived(TimeUnit.MILLISECONDS.toNanos(5));
+        metrics.streamOpened();
+        assertEquals(1.0, registry.get("spice.query.streams.in_flight").gauge().value());
+
+        metrics.firstBatchReceived(TimeUnit.MILLISECONDS.toNanos(7));
+        metrics.streamClosed(TimeUnit.MILLISECONDS.toNanos(20), 100, 4096, false);
+
+        assertEquals(0.0, registry.get("spice.query.streams.in_flight").gauge().value());
+        assertEquals(1, registry.get("spice.query.flight_info").timer().count());
+        assertEquals(1, registry.get("spice.query.first_batch").timer().count());
+        assertEquals(1, registry.get("spice.query.stream").tag("outcome", "success").timer().count());
+        assertEquals(100.0, registry.get("spice.query.rows").counter().count());
+        assertEquals(4096.0, registry.get("spice.query.bytes").counter().count());
+    }
+
+    public void testRetriesByCode() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        MicrometerMetrics metrics = new MicrometerMetrics(registry);
+
+        metrics.retried(FlightStatusCode.UNAVAILABLE);
+        metrics.retried(FlightStatusCode.UNAVAILABLE);
+        metrics.retried(FlightStatusCode.INTERNAL);
+
+        assertEquals(2.0, registry.get("spice.query.retries").tag("code", "UNAVAILABLE").counter().count());
+        assertEquals(1.0, registry.get("spice.query.retries").tag("code", "INTERNAL").counter().count());
+
+        metrics.hedged();
+        assertEquals(1.0, registry.get("spice.query.hedges").counter().count());
+
+        metrics.transferred(400, 1000, 10, 10);
+        assertEquals(400.0, registry.get("spice.transport.bytes").tags("direction", "received", "size", "wire")
+                .counter().count());
+        assertEquals(1000.0, registry.get("spice.transport.bytes")
+                .tags("direction", "received", "size", "uncompressed").counter().count());
+    }
+}
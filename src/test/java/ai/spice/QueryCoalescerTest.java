@@ -0,0 +1,268 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package ai.spice;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.OutOfMemoryException;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+import junit.framework.TestCase;
+
+public class QueryCoalescerTest
+        extends TestCase {
+    private static final Schema SCHEMA = new Schema(
+            Arrays.asList(Field.nullable("id", new ArrowType.Int(64, true))));
+
+    /**
+     * Returns batches of one row holding the batch number, like a query result.
+     */
+    private static final class CountingReader extends QueryReader {
+        private final int batches;
+        private int next = 0;
+        private volatile boolean cancelled = false;
+
+        CountingReader(BufferAllocator allocator, int batches) {
+            super(allocator);
+            this.batches = batches;
+        }
+
+        @Override
+        public void cancel() {
+            this.cancelled = true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return this.cancelled;
+        }
+
+        @Override
+        public boolean loadNextBatch() throws IOException {
+            VectorSchemaRoot root = getVectorSchemaRoot();
+            if (this.next >= this.batches) {
+                root.setRowCount(0);
+                return false;
+            }
+            BigIntVector ids = (BigIntVector) root.getVector("id");
+            ids.allocateNew(1);
+            ids.set(0, this.next++);
+            root.setRowCount(1);
+            return true;
+        }
+
+        @Override
+        public long bytesRead() {
+            return 0;
+        }
+
+        @Override
+        protected void closeReadSource() {
+        }
+
+        @Override
+        protected Schema readSchema() {
+            return SCHEMA;
+        }
+    }
+
+    private BufferAllocator allocator;
+    private Path spillDirectory;
+    private QueryCoalescer coalescer;
+    private final AtomicInteger executions = new AtomicInteger();
+
+    @Override
+    protected void setUp() throws IOException {
+        this.allocator = new RootAllocator();
+        this.spillDirectory = Files.createTempDirectory("spice-coalescer-test");
+        this.coalescer = this.coalescer(1024 * 1024);
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        this.coalescer.close();
+        this.allocator.close();
+        Files.delete(this.spillDirectory);
+    }
+
+    private QueryCoalescer coalescer(long maxReplayBytes) {
+        return new QueryCoalescer(this.allocator.newChildAllocator("coalescer", 0, Long.MAX_VALUE), maxReplayBytes,
+                this.spillDirectory);
+    }
+
+    private long spillFiles() throws IOException {
+        try (Stream<Path> files = Files.list(this.spillDirectory)) {
+            return files.count();
+        }
+    }
+
+    private Supplier<CompletableFuture<QueryReader>> execute(int batches) {
+        return () -> {
+            this.executions.incrementAndGet();
+            return CompletableFuture.completedFuture(this.open(batches));
+        };
+    }
+
+    private QueryReader open(int batches) {
+        BufferAllocator queryAllocator = this.allocator.newChildAllocator("query", 0, Long.MAX_VALUE);
+        return new CountingReader(queryAllocator, batches) {
+            @Override
+            protected void closeReadSource() {
+                queryAllocator.close();
+            }
+        };
+    }
+
+    private static List<Long> read(QueryReader reader, int maxBatches) throws IOException {
+        List<Long> ids = new ArrayList<>();
+        while (ids.size() < maxBatches && reader.loadNextBatch()) {
+            ids.add(((BigIntVector) reader.getVectorSchemaRoot().getVector("id")).get(0));
+        }
+        return ids;
+    }
+
+    public void testSharesOneExecution() throws Exception {
+        try (QueryReader first = this.coalescer.query("SELECT 1", Long.MAX_VALUE, this.execute(3)).get();
+                QueryReader second = this.coalescer.query("SELECT 1", Long.MAX_VALUE, this.execute(3)).get()) {
+            assertEquals(Arrays.asList(0L, 1L, 2L), read(first, Integer.MAX_VALUE));
+            assertEquals(Arrays.asList(0L, 1L, 2L), read(second, Integer.MAX_VALUE));
+        }
+        assertEquals(1, this.executions.get());
+        assertEquals(0, this.coalescer.inFlight());
+    }
+
+    public void testLateSubscriberReplaysReceivedBatches() throws Exception {
+        try (QueryReader first = this.coalescer.query("SELECT 1", Long.MAX_VALUE, this.execute(3)).get()) {
+            assertEquals(Arrays.asList(0L, 1L), read(first, 2));
+
+            try (QueryReader late = this.coalescer.query("SELECT 1", Long.MAX_VALUE, this.execute(3)).get()) {
+                assertEquals(Arrays.asList(0L, 1L, 2L), read(late, Integer.MAX_VALUE));
+            }
+            assertEquals(Arrays.asList(2L), read(first, Integer.MAX_VALUE));
+        }
+        assertEquals(1, this.executions.get());
+    }
+
+    public void testCompletedQueryIsExecutedAgain() throws Exception {
+        try (QueryReader first = this.coalescer.query("SELECT 1", Long.MAX_VALUE, this.execute(2)).get()) {
+            read(first, Integer.MAX_VALUE);
+        }
+        try (QueryReader second = this.coalescer.query("SELECT 1", Long.MAX_VALUE, this.execute(2)).get()) {
+            assertEquals(Arrays.asList(0L, 1L), read(second, Integer.MAX_VALUE));
+        }
+        assertEquals(2, this.executions.get());
+    }
+
+    public void testFailedExecutionIsNotShared() throws Exception {
+        ExecutionException failure = new ExecutionException("runtime unavailable", null);
+        try {
+            this.coalescer.query("SELECT 1", Long.MAX_VALUE, () -> CompletableFuture.failedFuture(failure)).get();
+            fail("Expected the execution to fail");
+        } catch (ExecutionException e) {
+            assertSame(failure, e.getCause());
+        }
+
+        try (QueryReader reader = this.coalescer.query("SELECT 1", Long.MAX_VALUE, this.execute(1)).get()) {
+            assertEquals(Arrays.asList(0L), read(reader, Integer.MAX_VALUE));
+        }
+    }
+
+    public void testConcurrentQueriesShareOneExecution() throws Exception {
+        int callers = 8;
+        CompletableFuture<QueryReader> execution = new CompletableFuture<>();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        try {
+            List<Future<CompletableFuture<QueryReader>>> calls = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                calls.add(executor.submit(() -> {
+                    start.await();
+                    return this.coalescer.query("SELECT 1", Long.MAX_VALUE, () -> {
+                        this.executions.incrementAndGet();
+                        return execution;
+                    });
+                }));
+            }
+            start.countDown();
+            List<CompletableFuture<QueryReader>> readers = new ArrayList<>();
+            for (Future<CompletableFuture<QueryReader>> call : calls) {
+                readers.add(call.get());
+            }
+            // the query is still being executed, so every caller has subscribed to it
+            assertEquals(1, this.executions.get());
+
+            execution.complete(this.open(2));
+            for (CompletableFuture<QueryReader> reader : readers) {
+                try (QueryReader results = reader.get()) {
+                    assertEquals(Arrays.asList(0L, 1L), read(results, Integer.MAX_VALUE));
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, this.executions.get());
+    }
+
+    public void testLaggingSubscriberReadsSpilledBatches() throws Exception {
+        this.coalescer.close();
+        // every batch exceeds the budget, only the first one is kept in memory
+        this.coalescer = this.coalescer(1);
+
+        try (QueryReader fast = this.coalescer.query("SELECT 1", Long.MAX_VALUE, this.execute(4)).get();
+                QueryReader slow = this.coalescer.query("SELECT 1", Long.MAX_VALUE, this.execute(4)).get()) {
+            assertEquals(Arrays.asList(0L, 1L, 2L, 3L), read(fast, Integer.MAX_VALUE));
+            assertEquals("The batches held for the slow subscriber should be spilled", 1, this.spillFiles());
+            assertEquals(Arrays.asList(0L, 1L, 2L, 3L), read(slow, Integer.MAX_VALUE));
+        }
+        assertEquals(1, this.executions.get());
+        assertEquals("The spill file should be deleted once every subscriber left", 0, this.spillFiles());
+    }
+
+    public void testMemoryLimitAppliesToSharedBatches() throws Exception {
+        try (QueryReader reader = this.coalescer.query("SELECT 1", 1, this.execute(1)).get()) {
+            reader.loadNextBatch();
+            fail("Expected the batch to exceed the memory limit");
+        } catch (IOException e) {
+            assertTrue(e.getCause() instanceof OutOfMemoryException);
+        }
+    }
+}
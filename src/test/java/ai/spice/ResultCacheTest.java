@@ -0,0 +1,167 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package ai.spice;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+import junit.framework.TestCase;
+
+public class ResultCacheTest
+        extends TestCase {
+    private static final Schema SCHEMA = new Schema(
+            Arrays.asList(Field.nullable("id", new ArrowType.Int(64, true))));
+
+    /**
+     * Returns batches of one row holding the batch number, like a query result.
+     */
+    private static final class CountingReader extends QueryReader {
+        private final int batches;
+        private int next = 0;
+
+        CountingReader(BufferAllocator allocator, int batches) {
+            super(allocator);
+            this.batches = batches;
+        }
+
+        @Override
+        public void cancel() {
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public boolean loadNextBatch() throws IOException {
+            VectorSchemaRoot root = getVectorSchemaRoot();
+            if (this.next >= this.batches) {
+                root.setRowCount(0);
+                return false;
+            }
+            BigIntVector ids = (BigIntVector) root.getVector("id");
+            ids.allocateNew(1);
+            ids.set(0, this.next++);
+            root.setRowCount(1);
+            return true;
+        }
+
+        @Override
+        public long bytesRead() {
+            return 0;
+        }
+
+        @Override
+        protected void closeReadSource() {
+        }
+
+        @Override
+        protected Schema readSchema() {
+            return SCHEMA;
+        }
+    }
+
+    private BufferAllocator allocator;
+    private ResultCache cache;
+
+    @Override
+    protected void setUp() {
+        this.allocator = new RootAllocator();
+        this.cache = new ResultCache(this.allocator.newChildAllocator("cache", 0, Long.MAX_VALUE), 1024 * 1024,
+                TimeUnit.MINUTES.toNanos(1));
+    }
+
+    @Override
+    protected void tearDown() {
+        this.cache.close();
+        this.allocator.close();
+    }
+
+    private QueryReader execute(String sql, boolean preserveOrder, int batches) {
+        return this.cache.record(sql, preserveOrder, new CountingReader(this.allocator, batches));
+    }
+
+    private static List<Long> read(QueryReader reader) throws IOException {
+        List<Long> ids = new ArrayList<>();
+        try {
+            while (reader.loadNextBatch()) {
+                ids.add(((BigIntVector) reader.getVectorSchemaRoot().getVector("id")).get(0));
+            }
+        } finally {
+            reader.close();
+        }
+        return ids;
+    }
+
+    public void testHitAfterCompleteRead() throws IOException {
+        assertNull(this.cache.open("SELECT * FROM t", true));
+        assertEquals(Arrays.asList(0L, 1L), read(this.execute("SELECT * FROM t", true, 2)));
+
+        QueryReader hit = this.cache.open("SELECT *  FROM t;", true);
+        assertNotNull("A query read to the end should be cached", hit);
+        assertEquals(Arrays.asList(0L, 1L), read(hit));
+    }
+
+    public void testOrderedAndUnorderedResultsAreSeparate() throws IOException {
+        read(this.execute("SELECT * FROM t", false, 2));
+
+        assertNull("An unordered result must not be replayed in order", this.cache.open("SELECT * FROM t", true));
+        QueryReader hit = this.cache.open("SELECT * FROM t", false);
+        assertNotNull(hit);
+        hit.close();
+    }
+
+    public void testInvalidateRemovesEntries() throws IOException {
+        read(this.execute("SELECT * FROM t", true, 1));
+        read(this.execute("SELECT * FROM u", true, 1));
+
+        this.cache.invalidate("t");
+
+        assertNull(this.cache.open("SELECT * FROM t", true));
+        QueryReader hit = this.cache.open("SELECT * FROM u", true);
+        assertNotNull(hit);
+        hit.close();
+    }
+
+    public void testResultReadAcrossInvalidationIsNotCached() throws IOException {
+        QueryReader reader = this.execute("SELECT * FROM t", true, 2);
+        assertTrue(reader.loadNextBatch());
+
+        // the dataset is refreshed while the query is being read
+        this.cache.invalidate("t");
+        assertEquals(Arrays.asList(1L), read(reader));
+
+        assertNull("A result started before a refresh must not be cached", this.cache.open("SELECT * FROM t", true));
+    }
+}
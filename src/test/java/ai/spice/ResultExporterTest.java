@@ -0,0 +1,176 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package ai.spice;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowFileReader;
+import org.apache.arrow.vector.ipc.ArrowReader;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+import junit.framework.TestCase;
+
+public class ResultExporterTest
+        extends TestCase {
+    private static final Schema SCHEMA = new Schema(
+            Arrays.asList(Field.nullable("id", new ArrowType.Int(64, true))));
+
+    /**
+     * Returns batches of one row holding the batch number, like a query result.
+     */
+    private static final class CountingReader extends QueryReader {
+        private final int batches;
+        private int next = 0;
+
+        CountingReader(BufferAllocator allocator, int batches) {
+            super(allocator);
+            this.batches = batches;
+        }
+
+        @Override
+        public void cancel() {
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public boolean loadNextBatch() throws IOException {
+            VectorSchemaRoot root = getVectorSchemaRoot();
+            if (this.next >= this.batches) {
+                root.setRowCount(0);
+                return false;
+            }
+            BigIntVector ids = (BigIntVector) root.getVector("id");
+            ids.allocateNew(1);
+            ids.set(0, this.next++);
+            root.setRowCount(1);
+            return true;
+        }
+
+        @Override
+        public long bytesRead() {
+            return 0;
+        }
+
+        @Override
+        protected void closeReadSource() {
+        }
+
+        @Override
+        protected Schema readSchema() {
+            return SCHEMA;
+        }
+    }
+
+    private BufferAllocator allocator;
+    private Path directory;
+
+    @Override
+    protected void setUp() throws IOException {
+        this.allocator = new RootAllocator();
+        this.directory = Files.createTempDirectory("spice-export-test");
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        this.allocator.close();
+        try (Stream<Path> paths = Files.walk(this.directory)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    private ExportResult export(int batches, ExportFormat format, long maxFileBytes) throws IOException {
+        try (QueryReader reader = new CountingReader(this.allocator, batches)) {
+            return new ResultExporter(reader, this.directory, format, maxFileBytes, this.allocator)
+                    .run(System.nanoTime());
+        }
+    }
+
+    private long countRows(Path file, ExportFormat format) throws IOException {
+        try (FileChannel channel = FileChannel.open(file);
+                ArrowReader reader = format == ExportFormat.ARROW_FILE ? new ArrowFileReader(channel, this.allocator)
+                        : new ArrowStreamReader(channel, this.allocator)) {
+            assertEquals(SCHEMA, reader.getVectorSchemaRoot().getSchema());
+            long rows = 0;
+            while (reader.loadNextBatch()) {
+                rows += reader.getVectorSchemaRoot().getRowCount();
+            }
+            return rows;
+        }
+    }
+
+    public void testRollsFilesAtThreshold() throws IOException {
+        ExportResult result = this.export(5, ExportFormat.ARROW_FILE, 1);
+
+        assertEquals(5, result.getRows());
+        assertEquals(5, result.getBatches());
+        assertEquals(5, result.getFiles().size());
+        assertEquals(this.directory.resolve("part-00000.arrow"), result.getFiles().get(0));
+        for (Path file : result.getFiles()) {
+            assertEquals(1, this.countRows(file, ExportFormat.ARROW_FILE));
+        }
+    }
+
+    public void testStreamFormat() throws IOException {
+        ExportResult result = this.export(5, ExportFormat.ARROW_STREAM, Long.MAX_VALUE);
+
+        assertEquals(1, result.getFiles().size());
+        assertEquals(5, this.countRows(result.getFiles().get(0), ExportFormat.ARROW_STREAM));
+    }
+
+    public void testEmptyResultWritesSchema() throws IOException {
+        ExportResult result = this.export(0, ExportFormat.ARROW_FILE, Long.MAX_VALUE);
+
+        assertEquals(0, result.getRows());
+        assertEquals(1, result.getFiles().size());
+        assertEquals(0, this.countRows(result.getFiles().get(0), ExportFormat.ARROW_FILE));
+    }
+
+    public void testExistingFilesAreNotOverwritten() throws IOException {
+        Files.write(this.directory.resolve("part-00000.arrow"), new byte[] { 1 });
+        try {
+            this.export(1, ExportFormat.ARROW_FILE, Long.MAX_VALUE);
+            fail("Expected the export to fail");
+        } catch (IOException e) {
+            // expected
+        }
+        assertEquals(1, Files.size(this.directory.resolve("part-00000.arrow")));
+    }
+}
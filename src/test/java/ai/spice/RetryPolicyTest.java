@@ -0,0 +1,94 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package ai.spice;
+
+import java.time.Duration;
+
+import junit.framework.TestCase;
+
+public class RetryPolicyTest
+        extends TestCase {
+    public void testBackoffIsCappedWithJitter() {
+        RetryPolicy policy = new RetryPolicy().withBackoff(Duration.ofMillis(10), Duration.ofMillis(40));
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(policy.backoffMillis(1, 0) <= 10);
+            assertTrue(policy.backoffMillis(2, 0) <= 20);
+            assertTrue(policy.backoffMillis(3, 0) <= 40);
+            assertTrue(policy.backoffMillis(100, 0) <= 40);
+            assertTrue(policy.backoffMillis(3, 0) >= 0);
+        }
+    }
+
+    public void testDeadline() {
+        RetryPolicy policy = new RetryPolicy()
+                .withMaxRetries(10)
+                .withBackoff(Duration.ofSeconds(1), Duration.ofSeconds(1))
+                .withDeadline(Duration.ofMillis(100));
+
+        assertFalse(policy.shouldStop(1, 50));
+        assertTrue(policy.shouldStop(1, 100));
+        assertTrue("Backoff should not wait past the deadline", policy.backoffMillis(1, 90) <= 10);
+    }
+
+    public void testMaxRetries() {
+        RetryPolicy policy = new RetryPolicy().withMaxRetries(2);
+
+        assertFalse(policy.shouldStop(2, 0));
+        assertTrue(policy.shouldStop(3, 0));
+    }
+
+    public void testInvalidSettings() {
+        try {
+            new RetryPolicy().withBackoff(Duration.ofSeconds(2), Duration.ofSeconds(1));
+            fail("Should reject a maximum backoff shorter than the initial backoff");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            new RetryPolicy().withDeadline(Duration.ZERO);
+            fail("Should reject an empty deadline");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testLatencyPercentile() {
+        LatencyWindow window = new LatencyWindow(100, 10);
+        for (int i = 1; i <= 9; i++) {
+            window.record(i);
+        }
+        assertEquals(-1, window.percentile(0.95));
+
+        for (int i = 10; i <= 100; i++) {
+            window.record(i);
+        }
+        assertEquals(95, window.percentile(0.95));
+
+        // the oldest samples are replaced
+        for (int i = 0; i < 100; i++) {
+            window.record(1000);
+        }
+        assertEquals(1000, window.percentile(0.5));
+    }
+}
@@ -0,0 +1,141 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package ai.spice;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+
+import junit.framework.TestCase;
+
+public class RowIteratorTest
+        extends TestCase {
+
+    // two batches of 3 and 2 rows, with a null name in the second batch
+    private static byte[] writeBatches(BufferAllocator allocator) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (BigIntVector id = new BigIntVector("id", allocator);
+                Float8Vector amount = new Float8Vector("amount", allocator);
+                VarCharVector name = new VarCharVector("name", allocator);
+                VectorSchemaRoot root = VectorSchemaRoot.of(id, amount, name);
+                ArrowStreamWriter writer = new ArrowStreamWriter(root, null, out)) {
+            writer.start();
+            int next = 0;
+            for (int batchSize : new int[] { 3, 2 }) {
+                root.allocateNew();
+                for (int i = 0; i < batchSize; i++, next++) {
+                    id.set(i, next);
+                    amount.set(i, next * 1.5);
+                    if (next == 4) {
+                        name.setNull(i);
+                    } else {
+                        name.setSafe(i, ("row-" + next).getBytes(StandardCharsets.UTF_8));
+                    }
+                }
+                root.setRowCount(batchSize);
+                writer.writeBatch();
+            }
+            writer.end();
+        }
+        return out.toByteArray();
+    }
+
+    public void testRowIterator() throws Exception {
+        try (BufferAllocator allocator = new RootAllocator()) {
+            byte[] data = writeBatches(allocator);
+            List<String> names = new ArrayList<>();
+            long ids = 0;
+            try (RowIterator rows = RowIterator.of(new ArrowStreamReader(new ByteArrayInputStream(data), allocator))) {
+                while (rows.hasNext()) {
+                    Row row = rows.next();
+                    ids += row.getLong("id");
+                    assertEquals(row.getLong(0) * 1.5, row.getDouble("amount"));
+                    names.add(row.getString("name"));
+                }
+                assertFalse(rows.hasNext());
+            }
+
+            assertEquals(0 + 1 + 2 + 3 + 4, ids);
+            assertEquals(5, names.size());
+            assertEquals("row-3", names.get(3));
+            assertNull(names.get(4));
+        }
+    }
+
+    public void testRowStream() throws Exception {
+        try (BufferAllocator allocator = new RootAllocator()) {
+            byte[] data = writeBatches(allocator);
+            RowIterator rows = RowIterator.of(new ArrowStreamReader(new ByteArrayInputStream(data), allocator));
+            long nulls;
+            try (Stream<Row> stream = rows.stream()) {
+                nulls = stream.filter(row -> row.isNull("name")).count();
+            }
+            assertEquals(1, nulls);
+        }
+    }
+
+    public void testColumnarResult() throws Exception {
+        try (BufferAllocator allocator = new RootAllocator()) {
+            byte[] data = writeBatches(allocator);
+            double total = 0;
+            int rowCount = 0;
+            try (ColumnarResult result = ColumnarResult
+                    .of(new ArrowStreamReader(new ByteArrayInputStream(data), allocator))) {
+                ColumnarResult.LongColumn id = result.longColumn("id");
+                ColumnarResult.DoubleColumn amount = result.doubleColumn("amount");
+                ColumnarResult.StringColumn name = result.stringColumn("name");
+                while (result.next()) {
+                    for (int i = 0; i < result.getRowCount(); i++) {
+                        total += amount.get(i);
+                        assertEquals(id.get(i) * 1.5, amount.get(i));
+                        if (id.get(i) == 4) {
+                            assertTrue(name.isNull(i));
+                        } else {
+                            assertEquals("row-" + id.get(i), name.get(i));
+                        }
+                        rowCount++;
+                    }
+                }
+                try {
+                    result.longColumn("missing");
+                    fail("Should reject unknown columns");
+                } catch (IllegalArgumentException e) {
+                    assertTrue(e.getMessage().contains("missing"));
+                }
+            }
+            assertEquals(5, rowCount);
+            assertEquals((0 + 1 + 2 + 3 + 4) * 1.5, total);
+        }
+    }
+}
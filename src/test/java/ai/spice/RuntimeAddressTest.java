@@ -0,0 +1,68 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package ai.spice;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class RuntimeAddressTest
+        extends TestCase {
+    public void testFromFile() throws IOException {
+        Path file = Files.createTempFile("spice-runtimes", ".txt");
+        try {
+            Files.write(file, ("# replicas\n"
+                    + "grpc://10.0.0.1:50051 http://10.0.0.1:8090\n"
+                    + "\n"
+                    + "  grpc://10.0.0.2:50051  \n").getBytes(StandardCharsets.UTF_8));
+
+            List<RuntimeAddress> runtimes = RuntimeAddress.fromFile(file);
+            assertEquals(2, runtimes.size());
+            assertEquals(URI.create("grpc://10.0.0.1:50051"), runtimes.get(0).getFlightAddress());
+            assertEquals(URI.create("http://10.0.0.1:8090"), runtimes.get(0).getHttpAddress());
+            assertEquals(URI.create("grpc://10.0.0.2:50051"), runtimes.get(1).getFlightAddress());
+            assertNull(runtimes.get(1).getHttpAddress());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    public void testFromFileRejectsInvalidLines() throws IOException {
+        Path file = Files.createTempFile("spice-runtimes", ".txt");
+        try {
+            Files.write(file, "grpc://a:1 http://a:2 extra\n".getBytes(StandardCharsets.UTF_8));
+            try {
+                RuntimeAddress.fromFile(file);
+                fail("Should reject a line with more than two addresses");
+            } catch (IOException e) {
+                assertTrue(e.getMessage().contains(":1:"));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
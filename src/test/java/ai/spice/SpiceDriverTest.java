@@ -0,0 +1,109 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package ai.spice;
+
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.Properties;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.DateDayVector;
+import org.apache.arrow.vector.DecimalVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+
+import junit.framework.TestCase;
+
+public class SpiceDriverTest
+        extends TestCase {
+    public void testAcceptsUrl() {
+        SpiceDriver driver = new SpiceDriver();
+
+        assertTrue(driver.acceptsURL("jdbc:spice://localhost:50051"));
+        assertTrue(driver.acceptsURL("jdbc:spice:cloud"));
+        assertFalse(driver.acceptsURL("jdbc:postgresql://localhost/db"));
+        assertFalse(driver.acceptsURL(null));
+    }
+
+    public void testParseMergesUrlParameters() {
+        Properties info = new Properties();
+        info.setProperty("apiKey", "from-info");
+        info.setProperty("maxRetries", "5");
+
+        Properties properties = SpiceDriver.parse("jdbc:spice:cloud?apiKey=from%20url&userAgent=tool", info);
+
+        assertEquals("from url", properties.getProperty("apiKey"));
+        assertEquals("5", properties.getProperty("maxRetries"));
+        assertEquals("tool", properties.getProperty("userAgent"));
+    }
+
+    public void testFlightAddressDefaultsPort() throws URISyntaxException {
+        assertEquals(URI.create("http://localhost:50051"), SpiceDriver.flightAddress("//localhost", false));
+        assertEquals(URI.create("https://spice.internal:50051"), SpiceDriver.flightAddress("//spice.internal", true));
+        assertEquals(URI.create("http://localhost:15051"), SpiceDriver.flightAddress("//localhost:15051", false));
+        try {
+            SpiceDriver.flightAddress("//:50051", false);
+            fail("Expected a URL without a host to be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testFetchSizeMapsToPrefetchBatches() {
+        assertEquals(1, SpiceStatement.prefetchBatches(1));
+        assertEquals(1, SpiceStatement.prefetchBatches(8192));
+        assertEquals(2, SpiceStatement.prefetchBatches(8193));
+        assertEquals(64, SpiceStatement.prefetchBatches(Integer.MAX_VALUE));
+    }
+
+    public void testBindInfersParameterTypes() throws SQLException {
+        try (BufferAllocator allocator = new RootAllocator();
+                VectorSchemaRoot root = JdbcParameters.bind(null,
+                        Arrays.asList(42L, "taxi", new BigDecimal("1.50"), Date.valueOf("2024-03-01"), null),
+                        allocator)) {
+            assertEquals(1, root.getRowCount());
+            assertEquals(42L, ((BigIntVector) root.getVector(0)).get(0));
+            assertEquals("taxi", new String(((VarCharVector) root.getVector(1)).get(0)));
+            assertEquals(new BigDecimal("1.50"), ((DecimalVector) root.getVector(2)).getObject(0));
+            assertEquals(Date.valueOf("2024-03-01").toLocalDate().toEpochDay(),
+                    ((DateDayVector) root.getVector(3)).get(0));
+            assertTrue(root.getVector(4).isNull(0));
+        }
+    }
+
+    public void testResultTypes() {
+        assertEquals(Types.BIGINT, SpiceResultSetMetaData.sqlType(new ArrowType.Int(64, true)));
+        assertEquals(Types.VARCHAR, SpiceResultSetMetaData.sqlType(ArrowType.Utf8.INSTANCE));
+        assertEquals(Types.TIMESTAMP, SpiceResultSetMetaData.sqlType(
+                new ArrowType.Timestamp(org.apache.arrow.vector.types.TimeUnit.MICROSECOND, null)));
+        assertEquals(Types.TIMESTAMP_WITH_TIMEZONE, SpiceResultSetMetaData.sqlType(
+                new ArrowType.Timestamp(org.apache.arrow.vector.types.TimeUnit.MICROSECOND, "UTC")));
+    }
+}
@@ -0,0 +1,88 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package ai.spice;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+
+import junit.framework.TestCase;
+
+public class SpillFileTest
+        extends TestCase {
+
+    private static VectorSchemaRoot batch(BufferAllocator allocator, int first, int rows) {
+        BigIntVector id = new BigIntVector("id", allocator);
+        VarCharVector name = new VarCharVector("name", allocator);
+        VectorSchemaRoot root = VectorSchemaRoot.of(id, name);
+        root.allocateNew();
+        for (int i = 0; i < rows; i++) {
+            id.set(i, first + i);
+            name.setSafe(i, ("row-" + (first + i)).getBytes(StandardCharsets.UTF_8));
+        }
+        root.setRowCount(rows);
+        return root;
+    }
+
+    public void testSpillsBeyondThreshold() throws Exception {
+        Path directory = Files.createTempDirectory("spice-spill-test");
+        try (BufferAllocator allocator = new RootAllocator()) {
+            VectorSchemaRoot first = batch(allocator, 0, 100);
+            // room for the first batch only
+            SpillFile spill = new SpillFile(directory, Batches.sizeInBytes(first));
+
+            Object kept = spill.admit(first);
+            Object spilled = spill.admit(batch(allocator, 100, 100));
+            assertSame(first, kept);
+            assertTrue(spilled instanceof SpillFile.Spilled);
+            assertTrue(spill.spilledBytes() > 0);
+
+            spill.taken(first);
+            first.close();
+
+            try (VectorSchemaRoot read = spill.read((SpillFile.Spilled) spilled, allocator)) {
+                assertEquals(100, read.getRowCount());
+                assertEquals(100L, ((BigIntVector) read.getVector("id")).get(0));
+                assertEquals("row-199", read.getVector("name").getObject(99).toString());
+            }
+
+            // memory was released by the consumer, so the next batch stays in memory
+            VectorSchemaRoot third = batch(allocator, 200, 100);
+            assertSame(third, spill.admit(third));
+            third.close();
+
+            spill.close();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals("The spill file should be deleted on close", 0, files.count());
+        }
+        Files.delete(directory);
+    }
+}
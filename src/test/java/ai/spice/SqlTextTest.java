@@ -0,0 +1,100 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package ai.spice;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+public class SqlTextTest
+        extends TestCase {
+    public void testNormalize() {
+        assertEquals("SELECT * FROM taxi_trips LIMIT 10",
+                SqlText.normalize("  SELECT *\n  FROM   taxi_trips\tLIMIT 10 ;  "));
+        assertEquals("SELECT 'a  b' FROM \"my  table\"",
+                SqlText.normalize("SELECT 'a  b'   FROM \"my  table\";"));
+    }
+
+    public void testNormalizeRemovesComments() {
+        String filtered = SqlText.resultKey("SELECT a FROM t -- note\nWHERE id = 1", true);
+        String unfiltered = SqlText.resultKey("SELECT a FROM t -- note WHERE id = 1", true);
+        assertFalse(filtered.equals(unfiltered));
+        assertEquals("SELECT a FROM t WHERE id = 1", SqlText.normalize("SELECT a FROM t -- note\nWHERE id = 1"));
+        assertEquals("SELECT a FROM t", SqlText.normalize("SELECT a FROM t -- note WHERE id = 1"));
+        assertEquals("SELECT a FROM t WHERE id = 1",
+                SqlText.normalize("SELECT a /* first\nline */ FROM t WHERE /**/ id = 1"));
+        assertEquals("SELECT '-- not a comment', \"/* nor */\" FROM t",
+                SqlText.normalize("SELECT '-- not a comment', \"/* nor */\" FROM t"));
+    }
+
+    public void testResultKeyIsOrderAware() {
+        assertEquals(SqlText.resultKey("SELECT * FROM t;", true), SqlText.resultKey("SELECT *  FROM t", true));
+        assertFalse(SqlText.resultKey("SELECT * FROM t", true).equals(SqlText.resultKey("SELECT * FROM t", false)));
+    }
+
+    public void testReferencedTables() {
+        Set<String> tables = SqlText.referencedTables(
+                "SELECT * FROM spice.public.Taxi_Trips t JOIN \"Zones\" z ON t.zone = z.id");
+
+        assertTrue(tables.contains("spice.public.taxi_trips"));
+        assertTrue(tables.contains("taxi_trips"));
+        assertTrue(tables.contains("zones"));
+    }
+
+    public void testCommaJoins() {
+        Set<String> tables = SqlText.referencedTables(
+                "SELECT * FROM trips t, zones AS z, \"Public\".vendors WHERE t.zone = z.id");
+
+        assertTrue(tables.contains("trips"));
+        assertTrue(tables.contains("zones"));
+        assertTrue(tables.contains("public.vendors"));
+        assertTrue(tables.contains("vendors"));
+        assertTrue(SqlText.mayReference(tables, "zones"));
+    }
+
+    public void testNestedQueries() {
+        Set<String> tables = SqlText.referencedTables("SELECT EXTRACT(YEAR FROM pickup) FROM (SELECT * FROM a, b) s,"
+                + " c JOIN d ON c.id = d.id, e WHERE c.id IN (SELECT id FROM f) -- FROM g\nORDER BY 1, 2");
+
+        assertEquals(new HashSet<>(Arrays.asList("a", "b", "c", "d", "e", "f")), tables);
+    }
+
+    public void testUnknownFromItems() {
+        assertTrue("Table functions may read any table",
+                SqlText.referencedTables("SELECT * FROM a, read_parquet('x.parquet')").isEmpty());
+        assertTrue(SqlText.referencedTables("SELECT * FROM a, LATERAL (SELECT 1)").isEmpty());
+        assertTrue(SqlText.referencedTables("SELECT * FROM a WHERE b = 'unterminated").isEmpty());
+    }
+
+    public void testMayReference() {
+        Set<String> tables = SqlText.referencedTables("SELECT * FROM taxi_trips");
+
+        assertTrue(SqlText.mayReference(tables, "taxi_trips"));
+        assertTrue(SqlText.mayReference(tables, "public.taxi_trips"));
+        assertFalse(SqlText.mayReference(tables, "eth.blocks"));
+        assertTrue("Unknown tables should match any dataset",
+                SqlText.mayReference(SqlText.referencedTables("SELECT 1"), "eth.blocks"));
+    }
+}
@@ -0,0 +1,187 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package ai.spice;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+import junit.framework.TestCase;
+
+public class SubscriptionTest
+        extends TestCase {
+    private static final Schema SCHEMA = new Schema(
+            Arrays.asList(Field.nullable("id", new ArrowType.Int(64, true))));
+    private static final Pattern PREDICATE = Pattern.compile("WHERE \"id\" > (-?\\d+)$");
+
+    /**
+     * Returns the given ids as a single batch.
+     */
+    private static final class IdReader extends QueryReader {
+        private final List<Long> ids;
+        private boolean read = false;
+
+        IdReader(BufferAllocator allocator, List<Long> ids) {
+            super(allocator);
+            this.ids = ids;
+        }
+
+        @Override
+        public void cancel() {
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public boolean loadNextBatch() throws IOException {
+            VectorSchemaRoot root = getVectorSchemaRoot();
+            if (this.read || this.ids.isEmpty()) {
+                root.setRowCount(0);
+                return false;
+            }
+            this.read = true;
+            BigIntVector vector = (BigIntVector) root.getVector("id");
+            vector.allocateNew(this.ids.size());
+            for (int i = 0; i < this.ids.size(); i++) {
+                vector.set(i, this.ids.get(i));
+            }
+            root.setRowCount(this.ids.size());
+            return true;
+        }
+
+        @Override
+        public long bytesRead() {
+            return 0;
+        }
+
+        @Override
+        protected void closeReadSource() {
+        }
+
+        @Override
+        protected Schema readSchema() {
+            return SCHEMA;
+        }
+    }
+
+    /**
+     * A table of ids, answering the incremental queries of a subscription like
+     * the runtime would.
+     */
+    private static final class Table implements Subscription.Source {
+        private final BufferAllocator allocator;
+        private final List<Long> rows = new ArrayList<>();
+        private final List<String> queries = new ArrayList<>();
+
+        Table(BufferAllocator allocator) {
+            this.allocator = allocator;
+        }
+
+        @Override
+        public QueryReader query(String sql) {
+            this.queries.add(sql);
+            Matcher predicate = PREDICATE.matcher(sql);
+            long after = predicate.find() ? Long.parseLong(predicate.group(1)) : Long.MIN_VALUE;
+            List<Long> ids = new ArrayList<>();
+            for (long id : this.rows) {
+                if (id > after) {
+                    ids.add(id);
+                }
+            }
+            return new IdReader(this.allocator, ids);
+        }
+
+        @Override
+        public void refreshAppend(String dataset) {
+        }
+    }
+
+    /**
+     * Collects the delivered ids.
+     */
+    private static final class Collector implements SubscriptionListener {
+        private final List<Long> ids = new ArrayList<>();
+
+        @Override
+        public void onBatch(VectorSchemaRoot batch) {
+            BigIntVector vector = (BigIntVector) batch.getVector("id");
+            for (int i = 0; i < batch.getRowCount(); i++) {
+                this.ids.add(vector.get(i));
+            }
+        }
+    }
+
+    public void testRowsAreDeliveredOnce() throws Exception {
+        try (BufferAllocator allocator = new RootAllocator()) {
+            Table table = new Table(allocator);
+            Collector collector = new Collector();
+            Subscription subscription = new Subscription(table, "SELECT * FROM events -- all events", "id",
+                    new SubscriptionOptions(), collector, null, null);
+
+            table.rows.addAll(Arrays.asList(1L, 2L, 3L));
+            subscription.pollOnce();
+            assertEquals(Arrays.asList(1L, 2L, 3L), collector.ids);
+            assertEquals("3", subscription.getWatermark());
+
+            subscription.pollOnce();
+            assertEquals("A poll without new rows should deliver nothing", 3, collector.ids.size());
+            assertEquals("3", subscription.getWatermark());
+
+            table.rows.addAll(Arrays.asList(4L, 5L));
+            subscription.pollOnce();
+            assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 5L), collector.ids);
+
+            Set<Long> unique = new HashSet<>(collector.ids);
+            assertEquals("No row should be delivered twice", collector.ids.size(), unique.size());
+            assertTrue(table.queries.get(2).endsWith("WHERE \"id\" > 3"));
+        }
+    }
+
+    public void testStartAfter() throws Exception {
+        try (BufferAllocator allocator = new RootAllocator()) {
+            Table table = new Table(allocator);
+            table.rows.addAll(Arrays.asList(1L, 2L, 3L));
+            Collector collector = new Collector();
+            Subscription subscription = new Subscription(table, "SELECT * FROM events", "id",
+                    new SubscriptionOptions().withStartAfter("2"), collector, null, null);
+
+            subscription.pollOnce();
+            assertEquals(Arrays.asList(3L), collector.ids);
+        }
+    }
+}
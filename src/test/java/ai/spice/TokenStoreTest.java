@@ -0,0 +1,173 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package ai.spice;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class TokenStoreTest
+        extends TestCase {
+    private static final URI ADDRESS = URI.create("grpc+tcp://localhost:50051");
+
+    private static String jwt(long expiresAtSeconds) {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return encoder.encodeToString("{\"alg\":\"none\"}".getBytes(StandardCharsets.UTF_8)) + "."
+                + encoder.encodeToString(("{\"exp\":" + expiresAtSeconds + "}").getBytes(StandardCharsets.UTF_8))
+                + ".signature";
+    }
+
+    public void testSingleHandshakeForConcurrentCallers() throws Exception {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            TokenStore store = new TokenStore();
+            AtomicInteger handshakes = new AtomicInteger();
+            CountDownLatch release = new CountDownLatch(1);
+            TokenStore.Handshake handshake = () -> {
+                handshakes.incrementAndGet();
+                release.await();
+                return "token";
+            };
+
+            TokenStore.Entry entry = store.entry(ADDRESS, "app|key");
+            CompletableFuture<TokenStore.Token> first = entry.token(handshake, executor);
+            CompletableFuture<TokenStore.Token> second = store.entry(ADDRESS, "app|key").token(handshake, executor);
+            release.countDown();
+
+            assertSame(first.get(5, TimeUnit.SECONDS), second.get(5, TimeUnit.SECONDS));
+            assertEquals(1, handshakes.get());
+            assertSame(first.get(), entry.token(handshake, executor).get());
+            assertEquals(1, handshakes.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public void testEachRuntimeHasItsOwnToken() throws Exception {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            TokenStore store = new TokenStore();
+            AtomicInteger handshakes = new AtomicInteger();
+            TokenStore.Handshake handshake = () -> "token-" + handshakes.incrementAndGet();
+            URI replica = URI.create("grpc+tcp://replica:50051");
+
+            TokenStore.Token first = store.entry(ADDRESS, "app|key").token(handshake, executor).get(5,
+                    TimeUnit.SECONDS);
+            TokenStore.Token second = store.entry(replica, "app|key").token(handshake, executor).get(5,
+                    TimeUnit.SECONDS);
+            assertNotSame(first, second);
+            assertEquals(2, handshakes.get());
+            assertSame(second, store.entry(replica, "app|key").current());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public void testRefreshReplacesRejectedToken() throws Exception {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            AtomicInteger handshakes = new AtomicInteger();
+            TokenStore.Handshake handshake = () -> "token-" + handshakes.incrementAndGet();
+            TokenStore.Entry entry = new TokenStore().entry(ADDRESS, "app|key");
+
+            TokenStore.Token rejected = entry.token(handshake, executor).get(5, TimeUnit.SECONDS);
+            TokenStore.Token renewed = entry.refresh(rejected, handshake, executor).get(5, TimeUnit.SECONDS);
+            assertNotSame(rejected, renewed);
+            assertEquals(2, handshakes.get());
+
+            // a caller still holding the rejected token gets the renewed one without a handshake
+            assertSame(renewed, entry.refresh(rejected, handshake, executor).get(5, TimeUnit.SECONDS));
+            assertEquals(2, handshakes.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public void testFailedHandshakeIsRetried() throws Exception {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            AtomicInteger handshakes = new AtomicInteger();
+            TokenStore.Handshake handshake = () -> {
+                if (handshakes.incrementAndGet() == 1) {
+                    throw new IllegalStateException("unavailable");
+                }
+                return "token";
+            };
+            TokenStore.Entry entry = new TokenStore().entry(ADDRESS, "app|key");
+
+            try {
+                entry.token(handshake, executor).get(5, TimeUnit.SECONDS);
+                fail("Should fail with the handshake error");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+            assertNotNull(entry.token(handshake, executor).get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public void testJwtExpiry() {
+        long now = System.currentTimeMillis() / 1000;
+        long nanos = System.nanoTime();
+
+        TokenStore.Token expiring = TokenStore.Token.of(jwt(now + 30));
+        assertFalse(expiring.isExpired(nanos));
+        assertTrue(expiring.isExpired(nanos + Duration.ofSeconds(60).toNanos()));
+
+        TokenStore.Token opaque = TokenStore.Token.of("opaque-token");
+        assertFalse(opaque.isExpired(nanos + Duration.ofDays(365).toNanos()));
+    }
+
+    public void testProactiveRefresh() throws Exception {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            long now = System.currentTimeMillis() / 1000;
+            AtomicInteger handshakes = new AtomicInteger();
+            TokenStore.Handshake handshake = () -> handshakes.incrementAndGet() == 1 ? jwt(now + 30) : jwt(now + 3600);
+            TokenStore.Entry entry = new TokenStore(Duration.ofMinutes(1)).entry(ADDRESS, "app|key");
+
+            TokenStore.Token expiring = entry.token(handshake, executor).get(5, TimeUnit.SECONDS);
+            // still valid, returned right away while a new token is fetched in the background
+            assertSame(expiring, entry.token(handshake, executor).get(5, TimeUnit.SECONDS));
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (entry.current() == expiring && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertNotSame(expiring, entry.current());
+            assertEquals(2, handshakes.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package ai.spice;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+public class VirtualThreadsTest
+        extends TestCase {
+    public void testAvailability() {
+        boolean jdk21 = Runtime.version().feature() >= 21;
+        assertEquals(jdk21, VirtualThreads.isAvailable());
+    }
+
+    public void testExecutor() throws Exception {
+        if (!VirtualThreads.isAvailable()) {
+            try {
+                VirtualThreads.newExecutor("test");
+                fail("Should not create a virtual thread executor without JDK support");
+            } catch (UnsupportedOperationException e) {
+                // expected
+            }
+            return;
+        }
+
+        ExecutorService executor = VirtualThreads.newExecutor("test");
+        try {
+            Future<String> name = executor.submit(() -> Thread.currentThread().getName());
+            assertTrue(name.get(5, TimeUnit.SECONDS).startsWith("test-"));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public void testParkingBlockStrategy() throws Exception {
+        long start = System.nanoTime();
+        VirtualThreads.PARKING_BLOCK_STRATEGY.block(20);
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+
+        Thread.currentThread().interrupt();
+        try {
+            VirtualThreads.PARKING_BLOCK_STRATEGY.block(1000);
+            fail("Should stop waiting when interrupted");
+        } catch (InterruptedException e) {
+            assertFalse(Thread.currentThread().isInterrupted());
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+Copyright 2024 The Spice.ai OSS Authors
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+package ai.spice;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.TimeStampMicroVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+
+import junit.framework.TestCase;
+
+public class WatermarkTest
+        extends TestCase {
+    public void testIncrementalQuery() {
+        assertEquals("SELECT * FROM (SELECT * FROM events\n) AS spice_subscription",
+                Watermark.incrementalQuery("SELECT * FROM events; ", "id", null));
+        assertEquals("SELECT * FROM (SELECT * FROM events\n) AS spice_subscription WHERE \"Id\" > 42",
+                Watermark.incrementalQuery("SELECT * FROM events", "Id", "42"));
+    }
+
+    public void testLineCommentsAreKept() {
+        String sql = "SELECT *\nFROM events -- every event\nWHERE kind = 'click' -- clicks only";
+
+        assertEquals("SELECT * FROM (" + sql + "\n) AS spice_subscription WHERE \"id\" > 42",
+                Watermark.incrementalQuery(sql + ";\n", "id", "42"));
+        assertEquals(new HashSet<>(Arrays.asList("events")),
+                SqlText.referencedTables(Watermark.incrementalQuery(sql, "id", "42")));
+    }
+
+    public void testIntegerWatermark() {
+        try (BufferAllocator allocator = new RootAllocator();
+                BigIntVector ids = new BigIntVector("id", allocator)) {
+            ids.allocateNew(3);
+            ids.set(0, 7);
+            ids.setNull(1);
+            ids.set(2, 42);
+            ids.setValueCount(3);
+
+            Watermark watermark = new Watermark("id");
+            assertNull(watermark.literal());
+            watermark.observe(new VectorSchemaRoot(Arrays.asList(ids)));
+            assertEquals("42", watermark.literal());
+        }
+    }
+
+    public void testTimestampWatermark() {
+        try (BufferAllocator allocator = new RootAllocator();
+                TimeStampMicroVector times = new TimeStampMicroVector("ts", allocator)) {
+            times.allocateNew(2);
+            times.set(0, 1_704_067_200_000_000L);
+            times.set(1, 1_704_067_200_500_000L);
+            times.setValueCount(2);
+
+            Watermark watermark = new Watermark("ts");
+            watermark.observe(new VectorSchemaRoot(Arrays.asList(times)));
+            assertEquals("TIMESTAMP '2024-01-01T00:00:00.500'", watermark.literal());
+        }
+    }
+
+    public void testStringWatermarkIsQuoted() {
+        try (BufferAllocator allocator = new RootAllocator();
+                VarCharVector keys = new VarCharVector("key", allocator)) {
+            keys.allocateNew(2);
+            keys.setSafe(0, "a".getBytes());
+            keys.setSafe(1, "it's".getBytes());
+            keys.setValueCount(2);
+
+            Watermark watermark = new Watermark("key");
+            watermark.observe(new VectorSchemaRoot(Arrays.asList(keys)));
+            assertEquals("'it''s'", watermark.literal());
+        }
+    }
+
+    public void testMissingColumn() {
+        try (BufferAllocator allocator = new RootAllocator();
+                BigIntVector ids = new BigIntVector("id", allocator)) {
+            new Watermark("ts").observe(new VectorSchemaRoot(Arrays.asList(ids)));
+            fail("Expected the missing column to be reported");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("ts"));
+        }
+    }
+}